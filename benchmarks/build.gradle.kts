@@ -0,0 +1,38 @@
+// JMH benchmarks for the tile decoding and baking pipeline. These run headlessly on the
+// fixtures bundled with the test resources.
+//
+//   ./gradlew :benchmarks:jmh
+//   ./gradlew :benchmarks:jmh -Pjmh.include=DracoDecodeBenchmark -Pjmh.args="-f 1 -wi 3 -i 5"
+
+configurations {
+    // Libraries that the mod gets from Minecraft at runtime
+    named("runtimeOnly") { extendsFrom(getByName("compileAndTestOnly")) }
+}
+
+dependencies {
+    implementation(project(":terraplusplus"))
+    implementation(project(":ogc3dtiles"))
+    implementation(project(":draco"))
+    implementation(project(":core"))
+
+    implementation("org.openjdk.jmh:jmh-core:1.37")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+sourceSets.named("main") {
+    resources.srcDir(project(":ogc3dtiles").file("src/test/resources"))
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    val outputDir = layout.buildDirectory.dir("jmh")
+    workingDir(outputDir)
+    doFirst { outputDir.get().asFile.mkdirs() }
+
+    val include = project.findProperty("jmh.include")?.toString()
+    val extraArgs = project.findProperty("jmh.args")?.toString()?.split(" ")?.filter { it.isNotEmpty() }
+    args(listOfNotNull(include) + (extraArgs ?: emptyList()) + listOf("-rf", "json", "-rff", "results.json"))
+}
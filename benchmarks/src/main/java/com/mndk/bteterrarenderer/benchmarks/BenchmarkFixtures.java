@@ -0,0 +1,44 @@
+package com.mndk.bteterrarenderer.benchmarks;
+
+import com.mndk.bteterrarenderer.core.BTETerraRendererCore;
+import com.mndk.bteterrarenderer.mcconnector.client.TestEnvironmentDummyMinecraft;
+import com.mndk.bteterrarenderer.ogc3dtiles.TileData;
+import com.mndk.bteterrarenderer.ogc3dtiles.TileResourceManager;
+import com.mndk.bteterrarenderer.ogc3dtiles.math.SpheroidCoordinatesConverter;
+import com.mndk.bteterrarenderer.util.IOUtil;
+import lombok.experimental.UtilityClass;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+@UtilityClass
+public class BenchmarkFixtures {
+
+    /** Google photorealistic 3D tiles models, all of them Draco-compressed */
+    public final String MODEL_TEST1 = "glb_models/model_test1.glb";
+    public final String MODEL_TEST2 = "glb_models/model_test2.glb";
+    public final String MODEL_TEST3 = "glb_models/model_test3.glb";
+    public final String MODEL_TEST4 = "glb_models/model_test4.glb";
+
+    public final SpheroidCoordinatesConverter COORD_CONVERTER = SpheroidCoordinatesConverter.WGS84;
+
+    private boolean coreInitialized = false;
+
+    public synchronized void initializeCore() {
+        if (coreInitialized) return;
+        BTETerraRendererCore.initialize(TestEnvironmentDummyMinecraft.getInstance());
+        coreInitialized = true;
+    }
+
+    public byte[] readResource(String name) throws IOException {
+        try (InputStream stream = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(name)) {
+            if (stream == null) throw new IOException(name + " not found");
+            return IOUtil.readAllBytes(stream);
+        }
+    }
+
+    public TileData parseTile(byte[] data) throws IOException {
+        return TileResourceManager.parse(new ByteArrayInputStream(data), COORD_CONVERTER);
+    }
+}
@@ -0,0 +1,54 @@
+package com.mndk.bteterrarenderer.benchmarks;
+
+import com.mndk.bteterrarenderer.util.concurrent.CacheStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cache lookups done for every visible tile on every frame, under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(4)
+public class CacheStorageBenchmark {
+
+    private static final int MAXIMUM_SIZE = 1024;
+    private static final int HOT_KEYS = 64;
+
+    /** Number of distinct keys. Anything above {@link #MAXIMUM_SIZE} forces evictions */
+    @Param({ "512", "4096" })
+    public int keySpace;
+
+    private CacheStorage<Integer, Integer> storage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.storage = new CacheStorage<>(-1, MAXIMUM_SIZE, -1, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.storage.close();
+    }
+
+    private Integer get(int key) {
+        return this.storage.getOrCompute(key, () -> CompletableFuture.completedFuture(key));
+    }
+
+    @Benchmark
+    public Integer randomKey() {
+        return this.get(ThreadLocalRandom.current().nextInt(this.keySpace));
+    }
+
+    @Benchmark
+    public Integer hotKey() {
+        return this.get(ThreadLocalRandom.current().nextInt(HOT_KEYS));
+    }
+}
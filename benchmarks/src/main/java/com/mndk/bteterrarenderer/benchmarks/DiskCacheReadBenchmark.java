@@ -0,0 +1,80 @@
+package com.mndk.bteterrarenderer.benchmarks;
+
+import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
+import com.mndk.bteterrarenderer.dep.terraplusplus.http.Disk;
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures cache hits in the per-file cache, read in batches as when a screen of tiles is loaded.
+ * Each pool size runs in its own fork, since the disk threads are only read when {@link Disk} is initialized.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@OperationsPerInvocation(DiskCacheReadBenchmark.BATCH_SIZE)
+public class DiskCacheReadBenchmark {
+
+    static final int BATCH_SIZE = 64;
+    private static final int FILE_COUNT = 256;
+    private static final int FILE_SIZE = 16 * 1024;
+
+    /** 1 reads on the single disk thread, anything more through the I/O pool */
+    @Param({ "1", "2", "4", "8" })
+    public int diskThreads;
+
+    private Path root;
+    private Path[] files;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        TerraConfig.http.diskThreads = this.diskThreads;
+        BenchmarkFixtures.initializeCore();
+
+        this.root = Files.createTempDirectory("disk-cache-benchmark");
+        this.files = new Path[FILE_COUNT];
+        Random random = new Random(0);
+        byte[] data = new byte[FILE_SIZE];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            random.nextBytes(data);
+            this.files[i] = Files.write(this.root.resolve("file" + i), data);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(this.root)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Files.delete(this.root);
+    }
+
+    @Benchmark
+    public int readBatch() {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<ByteBuf>[] futures = new CompletableFuture[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            futures[i] = Disk.read(this.files[this.next++ % FILE_COUNT]);
+        }
+
+        int bytes = 0;
+        for (CompletableFuture<ByteBuf> future : futures) {
+            ByteBuf buf = future.join();
+            bytes += buf.readableBytes();
+            buf.release();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,70 @@
+package com.mndk.bteterrarenderer.benchmarks;
+
+import com.mndk.bteterrarenderer.draco.compression.DracoDecoder;
+import com.mndk.bteterrarenderer.draco.core.DecoderBuffer;
+import com.mndk.bteterrarenderer.draco.core.StatusChain;
+import com.mndk.bteterrarenderer.draco.core.StatusOr;
+import com.mndk.bteterrarenderer.draco.mesh.Mesh;
+import com.mndk.bteterrarenderer.ogc3dtiles.gltf.extensions.DracoMeshCompression;
+import com.mndk.bteterrarenderer.ogc3dtiles.gltf.extensions.GltfExtensionsUtil;
+import de.javagl.jgltf.model.GltfModel;
+import de.javagl.jgltf.model.MeshModel;
+import de.javagl.jgltf.model.MeshPrimitiveModel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Draco mesh decoder alone, on the compressed payloads embedded in the test models.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DracoDecodeBenchmark {
+
+    @Param({
+            BenchmarkFixtures.MODEL_TEST1,
+            BenchmarkFixtures.MODEL_TEST2,
+            BenchmarkFixtures.MODEL_TEST3,
+            BenchmarkFixtures.MODEL_TEST4
+    })
+    public String model;
+
+    private final List<ByteBuffer> payloads = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        GltfModel gltfModel = BenchmarkFixtures.parseTile(BenchmarkFixtures.readResource(this.model)).getGltfModelInstance();
+        if (gltfModel == null) throw new IOException("model is null");
+
+        for (MeshModel meshModel : gltfModel.getMeshModels()) {
+            for (MeshPrimitiveModel primitiveModel : meshModel.getMeshPrimitiveModels()) {
+                DracoMeshCompression draco = GltfExtensionsUtil.getExtension(primitiveModel, DracoMeshCompression.class);
+                if (draco == null) continue;
+                this.payloads.add(gltfModel.getBufferViewModels().get(draco.getBufferView()).getBufferViewData());
+            }
+        }
+        if (this.payloads.isEmpty()) throw new IllegalStateException(this.model + " has no Draco payload");
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException {
+        for (ByteBuffer payload : this.payloads) {
+            DecoderBuffer buffer = new DecoderBuffer();
+            buffer.init(payload.duplicate());
+
+            StatusChain chain = new StatusChain();
+            StatusOr<Mesh> statusOr = new DracoDecoder().decodeMeshFromBuffer(buffer);
+            if (statusOr.isError(chain)) throw chain.get().getException();
+            blackhole.consume(statusOr.getValue());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.mndk.bteterrarenderer.benchmarks;
+
+import com.mndk.bteterrarenderer.core.loader.LoaderRegistry;
+import com.mndk.bteterrarenderer.core.tile.flat.FlatTileMapService;
+import com.mndk.bteterrarenderer.dep.terraplusplus.projection.OutOfProjectionBoundsException;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.GraphicsModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the subdivided quad of a flat tile, through {@link FlatTileMapService#getErrorModel}.
+ * Its texture is never baked without a game, so the quad is all the work that it does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FlatTileQuadBenchmark {
+
+    // Gyeongbokgung
+    private static final double LONGITUDE = 126.97683816936377, LATITUDE = 37.57593302824052;
+
+    @Param({ "0", "1", "2", "3", "4", "5" })
+    public int subdivisionLevel;
+
+    private FlatTileMapService tms;
+    private FlatTileMapService.Key key;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OutOfProjectionBoundsException {
+        BenchmarkFixtures.initializeCore();
+        this.tms = (FlatTileMapService) LoaderRegistry.tms().getResult().getItem("Global", "osm");
+        if (this.tms == null) throw new IllegalStateException("Global/osm map not found");
+
+        int[] tileCoord = this.tms.getCoordTranslator().geoCoordToTileCoord(LONGITUDE, LATITUDE, 0);
+        this.key = new FlatTileMapService.Key(tileCoord[0], tileCoord[1], 0, this.subdivisionLevel);
+    }
+
+    @Benchmark
+    public List<GraphicsModel> computeTileQuad() throws OutOfProjectionBoundsException {
+        return this.tms.getErrorModel(this.key);
+    }
+}
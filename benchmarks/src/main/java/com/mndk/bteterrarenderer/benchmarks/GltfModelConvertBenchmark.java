@@ -0,0 +1,51 @@
+package com.mndk.bteterrarenderer.benchmarks;
+
+import com.mndk.bteterrarenderer.core.graphics.PreBakedModel;
+import com.mndk.bteterrarenderer.core.projection.Projections;
+import com.mndk.bteterrarenderer.core.tile.ogc3dtiles.GltfModelConverter;
+import de.javagl.jgltf.model.GltfModel;
+import org.joml.Matrix4d;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures baking a parsed glTF model into {@link PreBakedModel}s, which includes the Draco decoding,
+ * the coordinate conversion and the vertex packing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GltfModelConvertBenchmark {
+
+    @Param({
+            BenchmarkFixtures.MODEL_TEST1,
+            BenchmarkFixtures.MODEL_TEST2,
+            BenchmarkFixtures.MODEL_TEST3,
+            BenchmarkFixtures.MODEL_TEST4
+    })
+    public String model;
+
+    private GltfModel gltfModel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.initializeCore();
+        this.gltfModel = BenchmarkFixtures.parseTile(BenchmarkFixtures.readResource(this.model)).getGltfModelInstance();
+        if (this.gltfModel == null) throw new IOException("model is null");
+        if (this.convert().isEmpty()) throw new IllegalStateException(this.model + " produced no models");
+    }
+
+    @Benchmark
+    public List<PreBakedModel> convert() {
+        // The converter modifies the transform, so a new one is needed every time
+        Matrix4d transform = new Matrix4d().rotateX(Math.PI / 2);
+        return GltfModelConverter.convertModel(this.gltfModel, transform,
+                Projections.BTE, BenchmarkFixtures.COORD_CONVERTER);
+    }
+}
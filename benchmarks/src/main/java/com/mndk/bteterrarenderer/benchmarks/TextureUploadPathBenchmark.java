@@ -0,0 +1,49 @@
+package com.mndk.bteterrarenderer.benchmarks;
+
+import com.mndk.bteterrarenderer.util.IOUtil;
+import com.mndk.bteterrarenderer.util.image.RawImage;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the raw pixel texture path against the PNG round-trip that the texture managers
+ * used to do. Since native images are not available without Minecraft, the PNG path is
+ * measured up to the decoded pixels, which is the part that the raw path replaces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TextureUploadPathBenchmark {
+
+    private static final int IMAGE_SIZE = 512;
+
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        this.image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < IMAGE_SIZE; ++y) {
+            for (int x = 0; x < IMAGE_SIZE; ++x) this.image.setRGB(x, y, random.nextInt() | 0xFF000000);
+        }
+    }
+
+    @Benchmark
+    public int[] pngRoundTrip() throws IOException {
+        BufferedImage decoded = ImageIO.read(IOUtil.imageToInputStream(this.image));
+        return decoded.getRGB(0, 0, decoded.getWidth(), decoded.getHeight(), null, 0, decoded.getWidth());
+    }
+
+    @Benchmark
+    public RawImage rawPixels() {
+        return RawImage.fromImage(this.image);
+    }
+}
@@ -0,0 +1,40 @@
+package com.mndk.bteterrarenderer.benchmarks;
+
+import com.mndk.bteterrarenderer.ogc3dtiles.TileData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a downloaded tile into its glTF model. This includes the glb container
+ * parsing, but not the Draco decoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TileParseBenchmark {
+
+    @Param({
+            BenchmarkFixtures.MODEL_TEST1,
+            BenchmarkFixtures.MODEL_TEST2,
+            BenchmarkFixtures.MODEL_TEST3,
+            BenchmarkFixtures.MODEL_TEST4
+    })
+    public String model;
+
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.data = BenchmarkFixtures.readResource(this.model);
+    }
+
+    @Benchmark
+    public TileData parse() throws IOException {
+        return BenchmarkFixtures.parseTile(this.data);
+    }
+}
@@ -0,0 +1,52 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.projection.dymaxion;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the startup cost of the conformal projection's vector fields: decoding the LZMA resource and solving
+ * the forward field, as on the first run, versus reading the unpacked copies, as on every later run. This lives
+ * in the same package as {@link ConformalDynmaxionProjection} to reach its package-private loaders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(3)
+public class ConformalTableLoadBenchmark {
+
+    private File cacheDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.cacheDirectory = Files.createTempDirectory("conformal-bench").toFile();
+        this.load(this.cacheDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = this.cacheDirectory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        this.cacheDirectory.delete();
+    }
+
+    private ConformalDynmaxionProjection.InvertableVectorField load(File cacheDirectory) throws IOException {
+        ConformalDynmaxionProjection.InvertableVectorField inverse = ConformalDynmaxionProjection.loadInverse(cacheDirectory);
+        return ConformalDynmaxionProjection.loadForward(inverse, cacheDirectory);
+    }
+
+    @Benchmark
+    public ConformalDynmaxionProjection.InvertableVectorField unpack() throws IOException {
+        return this.load(null);
+    }
+
+    @Benchmark
+    public ConformalDynmaxionProjection.InvertableVectorField readUnpacked() throws IOException {
+        return this.load(this.cacheDirectory);
+    }
+}
@@ -0,0 +1,69 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.projection.dymaxion;
+
+import com.mndk.bteterrarenderer.dep.terraplusplus.util.MathUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the conformal triangle transform starting from the forward field's guess against the previous
+ * implementation, which ran five Newton's method iterations from the untransformed point. Like
+ * {@link ConformalTableLoadBenchmark}, this lives in the projection's package to reach the transform directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@OperationsPerInvocation(ConformalTriangleTransformBenchmark.POINTS)
+public class ConformalTriangleTransformBenchmark {
+
+    static final int POINTS = 4096;
+
+    private final ConformalDynmaxionProjection projection = new ConformalDynmaxionProjection();
+    private final double[] scratch = new double[DymaxionProjection.SCRATCH_LENGTH];
+    /** Random points on the Dymaxion triangle, as {x0, y0, x1, y1, ...} */
+    private double[] points;
+    private ConformalDynmaxionProjection.InvertableVectorField forward;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        double arc = DymaxionProjection.ARC;
+        this.points = new double[POINTS * 2];
+        for (int i = 0; i < POINTS; i++) {
+            double u = random.nextDouble(), v = random.nextDouble();
+            if (u + v > 1) {
+                u = 1 - u;
+                v = 1 - v;
+            }
+            this.points[i * 2] = (u + 0.5 * v - 0.5) * arc;
+            this.points[i * 2 + 1] = (0.5 * MathUtils.ROOT3 * v - MathUtils.ROOT3 / 6) * arc;
+        }
+        this.forward = ConformalDynmaxionProjection.FORWARD_CACHE.get();
+    }
+
+    private double transformAll(ConformalDynmaxionProjection.InvertableVectorField forward, int iterations, double tolerance) {
+        double sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+            this.scratch[0] = this.points[i * 2];
+            this.scratch[1] = this.points[i * 2 + 1];
+            this.projection.conformalTriangleTransform(forward, iterations, tolerance, this.scratch);
+            sum += this.scratch[0] + this.scratch[1];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double newtonFromPoint() {
+        return this.transformAll(null, 5, 0);
+    }
+
+    @Benchmark
+    public double forwardGuess() {
+        return this.transformAll(this.forward,
+                ConformalDynmaxionProjection.NEWTON_ITERATIONS, ConformalDynmaxionProjection.NEWTON_TOLERANCE);
+    }
+}
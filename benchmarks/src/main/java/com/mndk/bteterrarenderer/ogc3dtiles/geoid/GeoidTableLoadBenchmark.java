@@ -0,0 +1,49 @@
+package com.mndk.bteterrarenderer.ogc3dtiles.geoid;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the startup cost of the EGM96 geoid grid: unpacking it from the gzipped resource, as on the first
+ * run, versus mapping the unpacked copy, as on every later run. This lives in the same package as
+ * {@link Egm96Ww15mghData} to reach {@link Egm96Ww15mghData#load(File)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(3)
+public class GeoidTableLoadBenchmark {
+
+    private File cacheDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.cacheDirectory = Files.createTempDirectory("geoid-bench").toFile();
+        Egm96Ww15mghData.load(this.cacheDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = this.cacheDirectory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        this.cacheDirectory.delete();
+    }
+
+    @Benchmark
+    public FloatBuffer unpack() throws IOException {
+        return Egm96Ww15mghData.load(null);
+    }
+
+    @Benchmark
+    public float mapUnpacked() throws IOException {
+        FloatBuffer data = Egm96Ww15mghData.load(this.cacheDirectory);
+        return data.get(data.limit() / 2); // Touch a page, as the first lookup would
+    }
+}
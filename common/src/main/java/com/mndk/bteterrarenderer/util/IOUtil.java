@@ -19,7 +19,7 @@ public class IOUtil {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
         int nRead;
-        byte[] data = new byte[4];
+        byte[] data = new byte[8192];
 
         while((nRead = stream.read(data, 0, data.length)) != -1) {
             buffer.write(data, 0, nRead);
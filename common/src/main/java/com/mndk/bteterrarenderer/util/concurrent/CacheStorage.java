@@ -3,20 +3,21 @@ package com.mndk.bteterrarenderer.util.concurrent;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-import com.mndk.bteterrarenderer.util.BTRUtil;
 import com.mndk.bteterrarenderer.util.Loggers;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.Closeable;
-import java.util.ArrayList;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -25,7 +26,10 @@ public class CacheStorage<K, V> implements Closeable {
 
     public static final long DEFAULT_CACHE_EXPIRE_MILLISECONDS = 1000 * 60 * 30; // 30 minutes
     public static final int DEFAULT_CACHE_MAXIMUM_SIZE = -1;
+    public static final long DEFAULT_CACHE_MAXIMUM_WEIGHT_BYTES = -1;
     public static final boolean DEFAULT_CACHE_DEBUG = false;
+    /** Maximum number of expired entries deleted per {@link #cleanUp()} call */
+    private static final int CLEANUP_BATCH_SIZE = 16;
 
     private void log(String message) {
         if (this.debug) Loggers.get(this.getClass()).info(message);
@@ -35,10 +39,17 @@ public class CacheStorage<K, V> implements Closeable {
     private final long expireMilliseconds;
     /** Maximum cache size. Set to -1 for no limits */
     private final int maximumSize;
+    /** Maximum sum of the values' weights, in bytes. See {@link #weigh}. Set to -1 for no limits */
+    private final long maximumWeight;
     protected final boolean debug;
 
     private final AtomicInteger processingCount = new AtomicInteger(0);
+    private final AtomicLong cancelledCount = new AtomicLong(0);
+    /** Incremented on every {@link #cancelUnrequested} call */
+    private final AtomicLong tick = new AtomicLong(0);
     private final Map<K, CacheWrapper> map = new ConcurrentHashMap<>();
+    private final Set<CacheWrapper> processing = ConcurrentHashMap.newKeySet();
+    private final AccessOrderList accessOrder = new AccessOrderList();
 
     /**
      * Constructs a ProcessorCacheStorage with the specified configuration.
@@ -49,9 +60,11 @@ public class CacheStorage<K, V> implements Closeable {
     public CacheStorage(@Nullable Config config) {
         Long expireMilliseconds = config != null ? config.getExpireMilliseconds() : null;
         Integer maximumSize = config != null ? config.getMaximumSize() : null;
+        Long maximumWeight = config != null ? config.getMaximumWeightBytes() : null;
         Boolean debug = config != null ? config.getDebug() : null;
         this.expireMilliseconds = expireMilliseconds != null ? expireMilliseconds : DEFAULT_CACHE_EXPIRE_MILLISECONDS;
         this.maximumSize = maximumSize != null ? maximumSize : DEFAULT_CACHE_MAXIMUM_SIZE;
+        this.maximumWeight = maximumWeight != null ? maximumWeight : DEFAULT_CACHE_MAXIMUM_WEIGHT_BYTES;
         this.debug = debug != null ? debug : DEFAULT_CACHE_DEBUG;
     }
 
@@ -59,18 +72,35 @@ public class CacheStorage<K, V> implements Closeable {
     protected V whenError(K key, Throwable error) { return null; }
     protected void delete(V value) {}
 
+    /**
+     * Returns the approximate memory cost of the value in bytes, which counts towards the
+     * {@code maximum_weight_bytes} budget. Values weigh nothing by default.
+     */
+    protected long weigh(K key, V value) { return 0; }
+
     public int getProcessingCount() {
         return processingCount.get();
     }
 
+    /** @return The number of computations cancelled by {@link #cancelUnrequested} so far */
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    /** @return The sum of the weights of all processed values */
+    public long getTotalWeight() {
+        return this.accessOrder.getTotalWeight();
+    }
+
     @Nullable
     public final V getOrCompute(K key, @Nonnull Supplier<CompletableFuture<V>> function) {
         CacheWrapper wrapper = this.getWrapper(key);
         synchronized (wrapper) {
+            wrapper.lastRequestedTick = this.tick.get();
             switch (wrapper.state) {
                 case NOT_PROCESSED: wrapper.state = ProcessingState.PROCESSING; break;
                 case PROCESSING: return this.whenProcessing(key);
-                case PROCESSED: return this.updateAndGetValue(key);
+                case PROCESSED: return this.updateAndGetValue(wrapper);
                 case ERROR: return this.whenError(key, wrapper.error);
                 default: throw new IllegalStateException("Invalid processing state: " + wrapper.state);
             }
@@ -81,14 +111,66 @@ public class CacheStorage<K, V> implements Closeable {
         if (future == null) {
             this.processingCount.decrementAndGet();
             synchronized (wrapper) { wrapper.state = ProcessingState.NOT_PROCESSED; }
-        } else future.whenComplete((models, error) -> {
-            this.storeValue(key, models, error, this::delete);
-            this.processingCount.decrementAndGet();
-            if (error != null) Loggers.get(this).error("Error processing cache value", error);
-        });
+        } else {
+            wrapper.future = future;
+            this.processing.add(wrapper);
+            future.whenComplete((models, error) -> {
+                this.processing.remove(wrapper);
+                wrapper.future = null;
+                if (isCancellation(error)) {
+                    // Forget about the computation so that it can be started again when requested
+                    synchronized (wrapper) { wrapper.state = ProcessingState.NOT_PROCESSED; }
+                    this.cancelledCount.incrementAndGet();
+                    log("Cancelled value of key=" + key);
+                } else {
+                    this.storeValue(key, models, error, this::delete);
+                    if (error != null) Loggers.get(this).error("Error processing cache value", error);
+                }
+                this.processingCount.decrementAndGet();
+            });
+        }
         return this.whenProcessing(key);
     }
 
+    /**
+     * Returns the processed value of the key without computing it, waiting for a lock, or marking it as used.
+     * Meant for cheap probes on the render thread, e.g. for finding a substitute for a value that is still
+     * being computed.
+     *
+     * @return The processed value, or {@code null} if it's not processed or not in the cache
+     */
+    @Nullable
+    public final V getIfPresent(K key) {
+        CacheWrapper wrapper = this.map.get(key);
+        if (wrapper == null || wrapper.state != ProcessingState.PROCESSED) return null;
+        return wrapper.value;
+    }
+
+    /**
+     * Cancels the computations whose keys have not been requested by {@link #getOrCompute} during the last
+     * {@code maxIdleTicks} calls of this method. Meant to be called once per frame.<br>
+     * The cancelled keys go back to the unprocessed state, so they are computed again once requested.
+     * Whether the work behind a future actually stops depends on how its supplier reacts to the cancellation.
+     *
+     * @param maxIdleTicks The number of calls a computation may go without being requested
+     * @return The number of computations cancelled by this call
+     */
+    public int cancelUnrequested(int maxIdleTicks) {
+        long now = this.tick.incrementAndGet();
+        int cancelled = 0;
+        for (CacheWrapper wrapper : this.processing) {
+            CompletableFuture<V> future = wrapper.future;
+            if (future == null || now - wrapper.lastRequestedTick <= maxIdleTicks) continue;
+            if (future.cancel(false)) cancelled++;
+        }
+        return cancelled;
+    }
+
+    private static boolean isCancellation(@Nullable Throwable error) {
+        if (error instanceof CompletionException) error = error.getCause();
+        return error instanceof CancellationException;
+    }
+
     /**
      * Retrieves the cache wrapper for the given key, creating a new one if it does not exist.
      *
@@ -97,30 +179,28 @@ public class CacheStorage<K, V> implements Closeable {
      */
     @Nonnull
     private CacheWrapper getWrapper(K key) {
-        return map.computeIfAbsent(key, k -> new CacheWrapper(ProcessingState.NOT_PROCESSED, null, -1, null, null));
+        return map.computeIfAbsent(key, CacheWrapper::new);
     }
 
     /**
-     * Returns the output resource and refreshes its last updated time.
+     * Returns the output resource and marks it as the most recently used one.
+     * The caller must hold the wrapper's monitor.
      *
-     * @param key The key for which to retrieve the output resource.
+     * @param wrapper The wrapper from which to retrieve the output resource.
      * @return The output resource.
      * @throws NullPointerException If the resource does not exist, yet has been processed, or an error was thrown
      *                              while processing it.
      */
-    private V updateAndGetValue(K key) {
-        CacheWrapper wrapper = this.getWrapper(key);
-        synchronized (wrapper) {
-            if (wrapper.state != ProcessingState.PROCESSED) throw new NullPointerException();
-            V value = wrapper.value;
-            wrapper.lastUpdated = System.currentTimeMillis();
-            return value;
-        }
+    private V updateAndGetValue(CacheWrapper wrapper) {
+        if (wrapper.state != ProcessingState.PROCESSED) throw new NullPointerException();
+        this.accessOrder.touch(wrapper, System.currentTimeMillis());
+        return wrapper.value;
     }
 
     /**
      * Stores the value associated with the given key in the cache.
-     * If the cache size exceeds the maximum size, the oldest entry is deleted.
+     * If the cache size exceeds the maximum size, or the value doesn't fit in the weight budget,
+     * the least recently used entries are deleted.
      *
      * @param key            The key to store the value for.
      * @param value          The value to store.
@@ -132,110 +212,167 @@ public class CacheStorage<K, V> implements Closeable {
             this.deleteOldest();
         }
 
-        CacheWrapper wrapper = this.getWrapper(BTRUtil.uncheckedCast(key));
+        long weight = error == null && value != null ? this.weigh(key, value) : 0;
+        if (this.maximumWeight != -1) {
+            while (this.accessOrder.getTotalWeight() + weight > this.maximumWeight) {
+                if (!this.deleteOldest()) break;
+            }
+        }
+
+        CacheWrapper wrapper = this.getWrapper(key);
         synchronized (wrapper) {
-            wrapper.lastUpdated = System.currentTimeMillis();
-            wrapper.state = error != null ? ProcessingState.ERROR : ProcessingState.PROCESSED;
             wrapper.value = value;
             wrapper.error = error;
             wrapper.deletingFunction = deletingFunction;
+            wrapper.state = error != null ? ProcessingState.ERROR : ProcessingState.PROCESSED;
+            if (wrapper.state == ProcessingState.PROCESSED) {
+                this.accessOrder.addLast(wrapper, weight, System.currentTimeMillis());
+            }
         }
 
         log("Added value[" + wrapper.state + "] of key=" + key + " (Size: " + map.size() + ")");
     }
 
     /**
-     * Deletes the value associated with the given key from the cache.
+     * Deletes the value of the given wrapper and removes it from the cache.
+     * The wrapper must have already been unlinked from the access order.
      *
-     * @param key The key for which to delete the value.
+     * @param wrapper The wrapper to delete.
      */
-    private void deleteValueByKey(K key) {
-        CacheWrapper wrapper = this.getWrapper(key);
+    private void deleteWrapper(CacheWrapper wrapper) {
         synchronized (wrapper) {
             if (wrapper.deletingFunction != null) {
                 wrapper.deletingFunction.accept(wrapper.value);
             }
         }
-        map.remove(key);
-        log("Deleted value of key=" + key + " (Size: " + map.size() + ")");
+        map.remove(wrapper.key, wrapper);
+        log("Deleted value of key=" + wrapper.key + " (Size: " + map.size() + ")");
     }
 
     /**
-     * Deletes the oldest processed value from the cache.
-     * This method is called when the cache size exceeds the maximum size.
+     * Deletes the least recently used processed value from the cache.
+     * This method is called when the cache size or weight exceeds the maximum.
+     *
+     * @return {@code false} if there was no processed value to delete
      */
-    private void deleteOldest() {
-        K oldestKey = null;
-        long oldest = Long.MAX_VALUE;
-
-        for (Map.Entry<K, CacheWrapper> entry : map.entrySet()) {
-            CacheWrapper wrapper = entry.getValue();
-            synchronized (wrapper) {
-                if (wrapper.state != ProcessingState.PROCESSED) continue;
-                if (wrapper.lastUpdated < oldest) {
-                    oldestKey = entry.getKey();
-                    oldest = wrapper.lastUpdated;
-                }
-            }
-        }
-        if (oldestKey == null) return;
-        this.deleteValueByKey(oldestKey);
+    private boolean deleteOldest() {
+        CacheWrapper oldest = this.accessOrder.pollFirstOlderThan(Long.MAX_VALUE);
+        if (oldest == null) return false;
+        this.deleteWrapper(oldest);
+        return true;
     }
 
     /**
      * Cleans up expired cache entries.
-     * This method iterates through the cache and removes entries that have expired based on the configured expiration time.
+     * Since the processed entries are kept in the order they were last used, this method only
+     * visits the expired ones, and stops after {@link #CLEANUP_BATCH_SIZE} deletions so that
+     * a large expiry doesn't make a single frame stall. The remaining entries are deleted on
+     * the following calls.
      * If the expiration time is set to -1, no entries will be removed.
      */
     public void cleanUp() {
-        long now = System.currentTimeMillis();
-        ArrayList<K> deleteList = new ArrayList<>();
-        map.forEach((key, cacheWrapper) -> {
-            if (cacheWrapper.state != ProcessingState.PROCESSED) return;
-            if (this.expireMilliseconds == -1 || cacheWrapper.lastUpdated + this.expireMilliseconds > now) return;
-            deleteList.add(key);
-        });
-        if (deleteList.isEmpty()) return;
-
-        log("Cleaning up...");
-        for (K key : deleteList) {
-            this.deleteValueByKey(key);
+        if (this.expireMilliseconds == -1) return;
+        long expireBefore = System.currentTimeMillis() - this.expireMilliseconds;
+
+        for (int i = 0; i < CLEANUP_BATCH_SIZE; i++) {
+            CacheWrapper expired = this.accessOrder.pollFirstOlderThan(expireBefore);
+            if (expired == null) return;
+            if (i == 0) log("Cleaning up...");
+            this.deleteWrapper(expired);
         }
     }
 
     /**
      * Closes the cache storage and cleans up all processed values.
-     * This method iterates through the cache and removes all processed entries.
      * If a deleting function is associated with a value, it will be called.
      */
     @Override
     public void close() {
-        // Cleanup all values
-        ArrayList<K> deleteList = new ArrayList<>();
-        for (Map.Entry<K, CacheWrapper> entry : map.entrySet()) {
-            CacheWrapper wrapper = entry.getValue();
-            synchronized (wrapper) {
-                if (wrapper.state != ProcessingState.PROCESSED) continue;
-            }
-            deleteList.add(entry.getKey());
-        }
-
         log("Closing...");
-        for (K key : deleteList) {
-            this.deleteValueByKey(key);
+        CacheWrapper wrapper;
+        while ((wrapper = this.accessOrder.pollFirstOlderThan(Long.MAX_VALUE)) != null) {
+            this.deleteWrapper(wrapper);
         }
     }
 
-    @AllArgsConstructor
+    @RequiredArgsConstructor
     private class CacheWrapper {
-        private ProcessingState state;
+        private final K key;
+        /** Written after {@link #value}, so that {@link #getIfPresent} sees the value once it sees the state */
+        private volatile ProcessingState state = ProcessingState.NOT_PROCESSED;
         @Nullable
         private V value;
-        private long lastUpdated;
         @Nullable
         private Throwable error;
         @Nullable
         private Consumer<V> deletingFunction;
+        @Nullable
+        private volatile CompletableFuture<V> future;
+        private volatile long lastRequestedTick;
+
+        // Guarded by the access order list
+        private long lastUpdated = -1;
+        private long weight = 0;
+        @Nullable
+        private CacheWrapper prev, next;
+    }
+
+    /**
+     * Doubly-linked list of the processed wrappers, from the least recently used to the most
+     * recently used one. Every operation costs O(1), so the render thread's accesses never
+     * have to wait for a full scan of the cache.<br>
+     * Lock order: a wrapper's monitor may be held while calling these methods, but not the other way around.
+     */
+    private class AccessOrderList {
+        private final CacheWrapper head = new CacheWrapper(null);
+        private long totalWeight = 0;
+
+        private AccessOrderList() {
+            head.prev = head.next = head;
+        }
+
+        /** Links the wrapper at the end of the list. Does nothing if it's already linked */
+        private synchronized void addLast(CacheWrapper wrapper, long weight, long now) {
+            if (wrapper.next != null) return;
+            wrapper.weight = weight;
+            this.totalWeight += weight;
+            this.linkLast(wrapper, now);
+        }
+
+        /** Moves the wrapper to the end of the list. Does nothing if it has already been unlinked */
+        private synchronized void touch(CacheWrapper wrapper, long now) {
+            if (wrapper.next == null) return;
+            this.unlink(wrapper);
+            this.linkLast(wrapper, now);
+        }
+
+        /** Unlinks and returns the least recently used wrapper, if it was last used before the given time */
+        @Nullable
+        private synchronized CacheWrapper pollFirstOlderThan(long time) {
+            CacheWrapper first = head.next;
+            if (first == head || first.lastUpdated >= time) return null;
+            this.unlink(first);
+            this.totalWeight -= first.weight;
+            return first;
+        }
+
+        private synchronized long getTotalWeight() {
+            return this.totalWeight;
+        }
+
+        private void linkLast(CacheWrapper wrapper, long now) {
+            wrapper.lastUpdated = now;
+            wrapper.prev = head.prev;
+            wrapper.next = head;
+            head.prev.next = wrapper;
+            head.prev = wrapper;
+        }
+
+        private void unlink(CacheWrapper wrapper) {
+            wrapper.prev.next = wrapper.next;
+            wrapper.next.prev = wrapper.prev;
+            wrapper.prev = wrapper.next = null;
+        }
     }
 
     @Getter
@@ -243,6 +380,7 @@ public class CacheStorage<K, V> implements Closeable {
     public static class Config {
         @Nullable private final Long expireMilliseconds;
         @Nullable private final Integer maximumSize;
+        @Nullable private final Long maximumWeightBytes;
         @Nullable private final Boolean debug;
 
         /**
@@ -252,6 +390,8 @@ public class CacheStorage<K, V> implements Closeable {
          *                           If {@code null}, defaults to {@link #DEFAULT_CACHE_EXPIRE_MILLISECONDS}.
          * @param maximumSize        The maximum number of cache entries. If {@code null},
          *                           defaults to {@link #DEFAULT_CACHE_MAXIMUM_SIZE}.
+         * @param maximumWeightBytes The maximum total weight of the cache entries in bytes. If {@code null},
+         *                           defaults to {@link #DEFAULT_CACHE_MAXIMUM_WEIGHT_BYTES}.
          * @param debug              Whether to enable debug logging. If {@code null},
          *                           defaults to {@link #DEFAULT_CACHE_DEBUG}.
          */
@@ -259,11 +399,24 @@ public class CacheStorage<K, V> implements Closeable {
         public Config(
                 @Nullable @JsonProperty(value = "expire_milliseconds") Long expireMilliseconds,
                 @Nullable @JsonProperty(value = "maximum_size") Integer maximumSize,
+                @Nullable @JsonProperty(value = "maximum_weight_bytes") Long maximumWeightBytes,
                 @Nullable @JsonProperty(value = "debug") Boolean debug
         ) {
             this.expireMilliseconds = expireMilliseconds != null ? expireMilliseconds : DEFAULT_CACHE_EXPIRE_MILLISECONDS;
             this.maximumSize = maximumSize != null ? maximumSize : DEFAULT_CACHE_MAXIMUM_SIZE;
+            this.maximumWeightBytes = maximumWeightBytes != null ? maximumWeightBytes : DEFAULT_CACHE_MAXIMUM_WEIGHT_BYTES;
             this.debug = debug != null ? debug : DEFAULT_CACHE_DEBUG;
         }
+
+        /**
+         * Returns a copy of this configuration with a fraction of its weight budget, for when one configured
+         * budget is split between several storages.
+         *
+         * @param share The fraction of {@code maximum_weight_bytes} to keep, between 0 and 1
+         */
+        public Config withWeightShare(double share) {
+            long maximumWeightBytes = this.maximumWeightBytes != -1 ? (long) (this.maximumWeightBytes * share) : -1;
+            return new Config(this.expireMilliseconds, this.maximumSize, maximumWeightBytes, this.debug);
+        }
     }
 }
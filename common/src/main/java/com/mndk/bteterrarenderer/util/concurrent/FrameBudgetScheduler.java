@@ -0,0 +1,158 @@
+package com.mndk.bteterrarenderer.util.concurrent;
+
+import com.mndk.bteterrarenderer.util.Loggers;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs tasks on the thread that calls {@link #process}, as many per call as fit in a time budget.<br>
+ * Pending tasks are run in order of priority, lowest value first, which is re-read on every call so that a task
+ * may move up or down the queue while it waits. Before running a task, its cost is estimated from its weight and
+ * the time the previous tasks took per unit of weight; if it wouldn't fit in what's left of the budget, it's left
+ * for the next call. At least one task is run per call, so that a task larger than the whole budget isn't stuck.<br>
+ * Tasks can be submitted from any thread.
+ */
+public class FrameBudgetScheduler implements Executor {
+
+    /** The priority and weight of the tasks submitted through {@link #execute} */
+    public static final double DEFAULT_PRIORITY = 0, DEFAULT_WEIGHT = 1;
+    /** How much the latest measurement counts towards the cost estimate */
+    private static final double COST_SMOOTHING = 0.2;
+    private static final Comparator<Task> ORDER = Comparator.<Task>comparingDouble(task -> task.priorityValue)
+            .thenComparingLong(task -> task.sequence);
+
+    private final LongSupplier nanoTime;
+    private final Queue<Task> incoming = new ConcurrentLinkedQueue<>();
+    /** Only touched by the processing thread */
+    private final List<Task> pending = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final AtomicInteger queueDepth = new AtomicInteger(0);
+
+    /** Estimated nanoseconds per unit of weight, or {@code NaN} if nothing has been measured yet */
+    private volatile double nanosPerWeight = Double.NaN;
+    private volatile int lastRunCount = 0;
+    private volatile long lastRunNanos = 0;
+
+    public FrameBudgetScheduler() {
+        this(System::nanoTime);
+    }
+
+    FrameBudgetScheduler(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable command) {
+        this.submit(command, () -> DEFAULT_PRIORITY, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * @param priority The task's priority, lower values are run first. Read on every {@link #process} call
+     * @param weight The task's relative cost, e.g. the number of pixels it uploads. Values below 1 count as 1
+     */
+    public void submit(@Nonnull Runnable command, DoubleSupplier priority, double weight) {
+        this.queueDepth.incrementAndGet();
+        this.incoming.offer(new Task(command, priority, weight, this.sequence.getAndIncrement()));
+    }
+
+    /**
+     * Returns an executor that submits its tasks with the given priority and weight.<br>
+     * The weight is read once per task, when the task is submitted. This lets it depend on the result of the
+     * stage before, e.g. {@code future.thenApplyAsync(fn, scheduler.withPriority(p, () -> weigh(future.join())))}.
+     */
+    public Executor withPriority(DoubleSupplier priority, DoubleSupplier weight) {
+        return command -> this.submit(command, priority, weight.getAsDouble());
+    }
+
+    /**
+     * Runs the pending tasks in order of priority until the next one is estimated not to fit in the budget.
+     *
+     * @param budgetNanos The time to spend, in nanoseconds
+     * @return The number of tasks run
+     */
+    public int process(long budgetNanos) {
+        long start = this.nanoTime.getAsLong();
+        for (Task task; (task = this.incoming.poll()) != null; ) this.pending.add(task);
+        if (this.pending.isEmpty()) {
+            this.lastRunCount = 0;
+            this.lastRunNanos = 0;
+            return 0;
+        }
+
+        for (Task task : this.pending) task.priorityValue = task.priority.getAsDouble();
+        this.pending.sort(ORDER);
+
+        int count = 0;
+        long now = start;
+        while (count < this.pending.size()) {
+            Task task = this.pending.get(count);
+            if (count > 0 && now - start + this.estimateNanos(task) > budgetNanos) break;
+            count++;
+            this.queueDepth.decrementAndGet();
+
+            try { task.command.run(); }
+            catch (RuntimeException e) { Loggers.get(this).error("Caught exception while running a scheduled task", e); }
+
+            long end = this.nanoTime.getAsLong();
+            this.measure(task, end - now);
+            now = end;
+        }
+        this.pending.subList(0, count).clear();
+
+        this.lastRunCount = count;
+        this.lastRunNanos = now - start;
+        return count;
+    }
+
+    private double estimateNanos(Task task) {
+        double nanosPerWeight = this.nanosPerWeight;
+        return Double.isNaN(nanosPerWeight) ? 0 : nanosPerWeight * task.weight;
+    }
+
+    private void measure(Task task, long nanos) {
+        double measured = nanos / task.weight;
+        double estimate = this.nanosPerWeight;
+        this.nanosPerWeight = Double.isNaN(estimate) ? measured : estimate + COST_SMOOTHING * (measured - estimate);
+    }
+
+    /** @return The number of tasks waiting to be run */
+    public int getQueueDepth() {
+        return this.queueDepth.get();
+    }
+
+    /** @return The number of tasks run by the last {@link #process} call */
+    public int getLastRunCount() {
+        return this.lastRunCount;
+    }
+
+    /** @return The time spent by the last {@link #process} call, in milliseconds */
+    public double getLastRunMillis() {
+        return this.lastRunNanos / 1e6;
+    }
+
+    private static class Task {
+        private final Runnable command;
+        private final DoubleSupplier priority;
+        private final double weight;
+        private final long sequence;
+        /** The priority as of the current {@link #process} call */
+        private double priorityValue;
+
+        private Task(Runnable command, DoubleSupplier priority, double weight, long sequence) {
+            this.command = command;
+            this.priority = priority;
+            this.weight = Math.max(weight, 1);
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.mndk.bteterrarenderer.util.concurrent;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.concurrent.CompletableFuture;
+
+@UtilityClass
+public class FutureUtil {
+
+    /**
+     * Makes the cancellation of {@code downstream} also cancel {@code upstream}.<br>
+     * {@link CompletableFuture} only propagates completion downstream, so without this, cancelling the last stage
+     * of a chain leaves the earlier stages running.
+     *
+     * @return {@code downstream}
+     */
+    public <T> CompletableFuture<T> cancelUpstream(CompletableFuture<T> downstream, CompletableFuture<?> upstream) {
+        downstream.whenComplete((value, error) -> {
+            if (downstream.isCancelled()) upstream.cancel(false);
+        });
+        return downstream;
+    }
+}
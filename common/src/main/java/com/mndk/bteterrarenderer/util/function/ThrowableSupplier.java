@@ -0,0 +1,6 @@
+package com.mndk.bteterrarenderer.util.function;
+
+@FunctionalInterface
+public interface ThrowableSupplier<T, E extends Throwable> {
+    T get() throws E;
+}
@@ -0,0 +1,269 @@
+package com.mndk.bteterrarenderer.util.image;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import lombok.experimental.UtilityClass;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.annotation.Nullable;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decodes downloaded images into {@link BufferedImage#TYPE_INT_ARGB} images. Their pixels are packed the same way as
+ * {@link RawImage}'s, so that extracting them for a texture upload is a plain copy.<br>
+ * Image codecs aren't thread-safe, so every thread keeps its own set of them. Images are read straight from the buffer,
+ * without copying it or going through {@link ImageIO}'s disk cache.
+ */
+@UtilityClass
+public class ImageDecoder {
+
+    public enum Format {
+        PNG("png"), JPEG("jpeg"), GIF("gif"), BMP("bmp"),
+        /** Anything else that an installed {@link ImageIO} plugin can read */
+        OTHER(null),
+        SVG(null);
+
+        @Nullable private final String formatName;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        Format(@Nullable String formatName) {
+            this.formatName = formatName;
+        }
+
+        public long getDecodeCount() {
+            return this.count.sum();
+        }
+
+        public double getAverageDecodeMillis() {
+            long count = this.count.sum();
+            return count == 0 ? 0 : this.nanos.sum() / 1e6 / count;
+        }
+
+        private void record(long nanos) {
+            this.count.increment();
+            this.nanos.add(nanos);
+        }
+    }
+
+    private final ThreadLocal<Codecs> CODECS = ThreadLocal.withInitial(Codecs::new);
+
+    /**
+     * Decodes a PNG, JPEG, GIF, BMP or SVG image, or any other image that an installed {@link ImageIO} plugin can read.
+     * The buffer's reader index is left untouched.
+     *
+     * @return The image, always of the {@link BufferedImage#TYPE_INT_ARGB} type
+     * @throws IOException If the image couldn't be decoded
+     */
+    public BufferedImage decodeImage(ByteBuf buf) throws IOException {
+        Format format = detectFormat(buf);
+        long start = System.nanoTime();
+        BufferedImage image = format != Format.SVG ? decodeBitmap(format, buf) : null;
+        if (image == null) {
+            // An unknown format might still be an svg that doesn't start with a tag, e.g. after a long comment
+            if (format != Format.SVG && format != Format.OTHER) throw new IOException("No codec available for " + format);
+            format = Format.SVG;
+            image = decodeSvg(buf);
+        }
+        format.record(System.nanoTime() - start);
+        return image;
+    }
+
+    /** @return Decode counts and average times per format, e.g. {@code "png: 120 (3.21ms)"}, for the formats seen so far */
+    public String getTimingSummary() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (Format format : Format.values()) {
+            if (format.getDecodeCount() == 0) continue;
+            joiner.add(String.format("%s: %d (%.2fms)", format.name().toLowerCase(), format.getDecodeCount(), format.getAverageDecodeMillis()));
+        }
+        return joiner.toString();
+    }
+
+    private Format detectFormat(ByteBuf buf) {
+        int i = buf.readerIndex(), length = buf.readableBytes();
+        if (length >= 8 && buf.getLong(i) == 0x89504E470D0A1A0AL) return Format.PNG;
+        if (length >= 3 && buf.getUnsignedMedium(i) == 0xFFD8FF) return Format.JPEG;
+        if (length >= 4 && buf.getInt(i) == 0x47494638) return Format.GIF; // GIF8
+        if (length >= 2 && buf.getUnsignedShort(i) == 0x424D) return Format.BMP; // BM
+        for (int end = i + Math.min(length, 64); i < end; i++) {
+            byte b = buf.getByte(i);
+            if (b == '<') return Format.SVG;
+            if (!Character.isWhitespace(b) && (b & 0xFF) != 0xEF && (b & 0xFF) != 0xBB && (b & 0xFF) != 0xBF) break; // UTF-8 BOM
+        }
+        return Format.OTHER;
+    }
+
+    /** @return The image, or {@code null} if there's no codec for the format */
+    @Nullable
+    private BufferedImage decodeBitmap(Format format, ByteBuf buf) throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteBufInputStream(buf.duplicate()))) {
+            boolean pooled = format != Format.OTHER;
+            ImageReader reader = pooled ? CODECS.get().reader(format) : anyReader(input);
+            if (reader == null) return null;
+
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Let the codec write packed ARGB directly if it can, so that there's nothing left to convert
+                for (Iterator<ImageTypeSpecifier> it = reader.getImageTypes(0); it.hasNext(); ) {
+                    ImageTypeSpecifier type = it.next();
+                    if (type.getBufferedImageType() == BufferedImage.TYPE_INT_ARGB) {
+                        param.setDestinationType(type);
+                        break;
+                    }
+                }
+                return toArgbImage(reader.read(0, param));
+            } finally {
+                if (pooled) reader.reset();
+                else reader.dispose();
+            }
+        }
+    }
+
+    @Nullable
+    private ImageReader anyReader(ImageInputStream input) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        return readers.hasNext() ? readers.next() : null;
+    }
+
+    private BufferedImage decodeSvg(ByteBuf buf) throws IOException {
+        Codecs codecs = CODECS.get();
+        try (InputStream svgStream = fixBrokenSvgFile(codecs, new ByteBufInputStream(buf.duplicate()))) {
+            BufferedImageTranscoder transcoder = codecs.svgTranscoder();
+            try {
+                transcoder.transcode(new TranscoderInput(svgStream), new TranscoderOutput());
+                if (transcoder.image == null) throw new IOException("svg produced no image");
+                return toArgbImage(transcoder.image);
+            } finally {
+                transcoder.image = null;
+            }
+        } catch (SAXException | TransformerException | TranscoderException e) {
+            throw new IOException("Could not read svg image", e);
+        }
+    }
+
+    private InputStream fixBrokenSvgFile(Codecs codecs, InputStream brokenSvgStream) throws IOException, SAXException, TransformerException {
+        // "The attribute 'offset' of the element <stop> is required" error handler
+        Document svgDocument = codecs.documentBuilder().parse(brokenSvgStream);
+        NodeList stopTags = svgDocument.getElementsByTagName("stop");
+        for (int i = 0; i < stopTags.getLength(); i++) {
+            NamedNodeMap stopNodeAttributes = stopTags.item(i).getAttributes();
+            Node offsetNode = stopNodeAttributes.getNamedItem("offset");
+            if (offsetNode != null) continue;
+
+            Attr newOffsetNode = svgDocument.createAttribute("offset");
+            newOffsetNode.setValue("0");
+            stopNodeAttributes.setNamedItem(newOffsetNode);
+        }
+
+        StringWriter writer = new StringWriter();
+        codecs.transformer().transform(new DOMSource(svgDocument), new StreamResult(writer));
+        return new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BufferedImage toArgbImage(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) return image;
+        RawImage pixels = RawImage.fromImage(image);
+        return wrap(pixels.getWidth(), pixels.getHeight(), pixels.getArgb());
+    }
+
+    /** Creates a {@link BufferedImage#TYPE_INT_ARGB} image backed by the given array, without copying it */
+    BufferedImage wrap(int width, int height, int[] argb) {
+        DataBufferInt buffer = new DataBufferInt(argb, argb.length);
+        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width,
+                new int[] { 0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000 }, null);
+        return new BufferedImage(ColorModel.getRGBdefault(), raster, false, null);
+    }
+
+    /** The codecs of one thread, created as they're first needed */
+    private static class Codecs {
+        private final Map<Format, ImageReader> readers = new EnumMap<>(Format.class);
+        private DocumentBuilder documentBuilder;
+        private Transformer transformer;
+        private BufferedImageTranscoder svgTranscoder;
+
+        @Nullable
+        private ImageReader reader(Format format) {
+            if (this.readers.containsKey(format)) return this.readers.get(format);
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(format.formatName);
+            ImageReader reader = readers.hasNext() ? readers.next() : null;
+            this.readers.put(format, reader);
+            return reader;
+        }
+
+        private DocumentBuilder documentBuilder() {
+            if (this.documentBuilder == null) {
+                try { this.documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder(); }
+                catch (ParserConfigurationException e) { throw new RuntimeException(e); }
+            }
+            this.documentBuilder.reset();
+            return this.documentBuilder;
+        }
+
+        private Transformer transformer() {
+            if (this.transformer == null) {
+                try { this.transformer = TransformerFactory.newInstance().newTransformer(); }
+                catch (TransformerConfigurationException e) { throw new RuntimeException(e); }
+            }
+            return this.transformer;
+        }
+
+        private BufferedImageTranscoder svgTranscoder() {
+            if (this.svgTranscoder == null) this.svgTranscoder = new BufferedImageTranscoder();
+            return this.svgTranscoder;
+        }
+    }
+
+    /** Keeps the rendered image, instead of encoding it to PNG only to have it decoded again */
+    private static class BufferedImageTranscoder extends ImageTranscoder {
+        private BufferedImage image;
+
+        @Override
+        public BufferedImage createImage(int width, int height) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @Override
+        public void writeImage(BufferedImage image, TranscoderOutput output) {
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.mndk.bteterrarenderer.util.image;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Uncompressed image pixels, packed row by row as {@code 0xAARRGGBB} integers
+ * (the same layout as {@link BufferedImage#getRGB(int, int)}).<br>
+ * This lets texture uploads skip the PNG encode/decode round-trip. Since reading pixels out of
+ * a {@link BufferedImage} can be expensive, {@link #fromImage(BufferedImage)} should be
+ * called off the render thread.
+ */
+@Getter
+@RequiredArgsConstructor
+public class RawImage {
+    private final int width;
+    private final int height;
+    private final int[] argb;
+
+    public int getArgb(int x, int y) {
+        return this.argb[y * this.width + x];
+    }
+
+    /**
+     * Returns the pixel at the given position in the {@code 0xAABBGGRR} order, which is
+     * what most native image implementations store in the memory (RGBA bytes on little-endian).
+     */
+    public int getAbgr(int x, int y) {
+        return argbToAbgr(this.getArgb(x, y));
+    }
+
+    public BufferedImage toBufferedImage() {
+        BufferedImage image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, this.width, this.height, this.argb, 0, this.width);
+        return image;
+    }
+
+    public static RawImage fromImage(@Nonnull BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] argb = readPacked(image);
+        if (argb == null) argb = image.getRGB(0, 0, width, height, null, 0, width);
+        return new RawImage(width, height, argb);
+    }
+
+    /**
+     * Reads the pixels straight out of the image's buffer for the types that image codecs usually produce,
+     * instead of converting them one by one through the color model like {@link BufferedImage#getRGB} does.
+     * @return The pixels, or {@code null} if the image isn't laid out in one of those ways
+     */
+    @Nullable
+    private static int[] readPacked(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if (raster.getParent() != null || buffer.getNumBanks() != 1 || buffer.getOffset() != 0) return null;
+
+        int pixels = image.getWidth() * image.getHeight();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] data = ((DataBufferInt) buffer).getData();
+                return data.length == pixels ? Arrays.copyOf(data, pixels) : null;
+            }
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] data = ((DataBufferInt) buffer).getData();
+                if (data.length != pixels) return null;
+                int[] argb = new int[pixels];
+                for (int i = 0; i < pixels; i++) argb[i] = 0xFF000000 | data[i];
+                return argb;
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) buffer).getData();
+                if (data.length != pixels * 4) return null;
+                int[] argb = new int[pixels];
+                for (int i = 0, j = 0; i < pixels; i++, j += 4) {
+                    argb[i] = (data[j] & 0xFF) << 24 | (data[j + 3] & 0xFF) << 16 | (data[j + 2] & 0xFF) << 8 | (data[j + 1] & 0xFF);
+                }
+                return argb;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] data = ((DataBufferByte) buffer).getData();
+                if (data.length != pixels * 3) return null;
+                int[] argb = new int[pixels];
+                for (int i = 0, j = 0; i < pixels; i++, j += 3) {
+                    argb[i] = 0xFF000000 | (data[j + 2] & 0xFF) << 16 | (data[j + 1] & 0xFF) << 8 | (data[j] & 0xFF);
+                }
+                return argb;
+            }
+            default:
+                return null;
+        }
+    }
+
+    public static int argbToAbgr(int argb) {
+        return (argb & 0xFF00FF00) | ((argb >> 16) & 0xFF) | ((argb & 0xFF) << 16);
+    }
+}
@@ -0,0 +1,97 @@
+package com.mndk.bteterrarenderer.util.loader;
+
+import com.mndk.bteterrarenderer.util.Loggers;
+import com.mndk.bteterrarenderer.util.function.ThrowableSupplier;
+import lombok.experimental.UtilityClass;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads large lookup tables that ship compressed in the jar. The first load unpacks the table and keeps the
+ * result as a file in the cache directory, so that later loads only have to memory-map that file instead of
+ * decompressing and parsing the resource again.<br>
+ * File layout: the magic {@code "BTRTABLE"}, the table version (int), the payload length (long), then the payload.
+ */
+@UtilityClass
+public class UnpackedTableLoader {
+
+    private final long MAGIC = 0x4254525441424C45L; // "BTRTABLE"
+    private final int HEADER_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    /**
+     * @param cacheDirectory The directory to keep unpacked tables in, or {@code null} to unpack the table every time
+     * @param name           The file name of the unpacked table
+     * @param version        The version of the table's content and layout. Copies of other versions are unpacked again
+     * @param unpacker       Unpacks the table from its resource
+     * @return The table, from position 0 to its end. Read-only and memory-mapped if it was loaded from the cache
+     */
+    public ByteBuffer load(@Nullable File cacheDirectory, String name, int version,
+                           ThrowableSupplier<ByteBuffer, IOException> unpacker) throws IOException {
+        Path file = cacheDirectory != null ? cacheDirectory.toPath().resolve(name) : null;
+        if (file != null) {
+            ByteBuffer cached = map(file, version);
+            if (cached != null) return cached;
+        }
+
+        ByteBuffer table = unpacker.get();
+        if (file != null) {
+            try {
+                write(file, version, table.duplicate());
+                Loggers.get(UnpackedTableLoader.class).info("Unpacked table {} to {}", name, file);
+            } catch (IOException e) {
+                Loggers.get(UnpackedTableLoader.class).warn("Could not write unpacked table {}", file, e);
+            }
+        }
+        return table;
+    }
+
+    /** @return The payload, or {@code null} if there's no complete copy of the given version */
+    @Nullable
+    private ByteBuffer map(Path file, int version) {
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getLong() != MAGIC || buffer.getInt() != version || buffer.getLong() != size - HEADER_SIZE) {
+                return null;
+            }
+            return buffer.slice();
+        } catch (IOException e) {
+            Loggers.get(UnpackedTableLoader.class).warn("Could not read unpacked table {}", file, e);
+            return null;
+        }
+    }
+
+    private void write(Path file, int version, ByteBuffer payload) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putLong(MAGIC).putInt(version).putLong(payload.remaining()).flip();
+                while (header.hasRemaining()) channel.write(header);
+                while (payload.hasRemaining()) channel.write(payload);
+            }
+            // Other instances may be reading the same file, so it's replaced as a whole
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
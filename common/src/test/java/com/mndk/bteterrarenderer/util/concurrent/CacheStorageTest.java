@@ -0,0 +1,135 @@
+package com.mndk.bteterrarenderer.util.concurrent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class CacheStorageTest {
+
+    private static class TestStorage extends CacheStorage<Integer, Integer> {
+        private final List<Integer> deleted = new ArrayList<>();
+
+        private TestStorage(long expireMilliseconds, int maximumSize, long maximumWeight) {
+            super(expireMilliseconds, maximumSize, maximumWeight, false);
+        }
+
+        private Integer get(int key) {
+            return this.getOrCompute(key, () -> CompletableFuture.completedFuture(key));
+        }
+
+        @Override
+        protected void delete(Integer value) {
+            this.deleted.add(value);
+        }
+
+        @Override
+        protected long weigh(Integer key, Integer value) {
+            return value;
+        }
+    }
+
+    @Test
+    public void givenFullStorage_testLeastRecentlyUsedIsEvicted() {
+        TestStorage storage = new TestStorage(-1, 4, -1);
+        storage.get(0);
+        storage.get(1);
+        storage.get(2);
+        Assert.assertEquals(Integer.valueOf(0), storage.get(0)); // 1 is now the least recently used one
+
+        storage.get(3);
+        Assert.assertEquals(Arrays.asList(1), storage.deleted);
+        storage.get(4);
+        Assert.assertEquals(Arrays.asList(1, 2), storage.deleted);
+
+        storage.close();
+        Assert.assertEquals(Arrays.asList(1, 2, 0, 3, 4), storage.deleted);
+    }
+
+    @Test
+    public void givenExpiredEntries_testCleanUpIsIncremental() throws InterruptedException {
+        TestStorage storage = new TestStorage(10, -1, -1);
+        for (int i = 0; i < 40; i++) storage.get(i);
+        Thread.sleep(50);
+
+        storage.cleanUp();
+        Assert.assertTrue(storage.deleted.size() < 40);
+        for (int i = 0; i < 40 && storage.deleted.size() < 40; i++) storage.cleanUp();
+        Assert.assertEquals(40, storage.deleted.size());
+        Assert.assertEquals(Integer.valueOf(0), storage.deleted.get(0));
+    }
+
+    @Test
+    public void givenUnrequestedKeys_testComputationIsCancelledAndRestartable() {
+        TestStorage storage = new TestStorage(-1, -1, -1);
+        CompletableFuture<Integer> kept = new CompletableFuture<>(), dropped = new CompletableFuture<>();
+        storage.getOrCompute(0, () -> kept);
+        storage.getOrCompute(1, () -> dropped);
+
+        for (int frame = 0; frame < 2; frame++) {
+            Assert.assertEquals(0, storage.cancelUnrequested(2));
+            storage.getOrCompute(0, () -> kept);
+        }
+        Assert.assertEquals(1, storage.cancelUnrequested(2));
+        Assert.assertTrue(dropped.isCancelled());
+        Assert.assertFalse(kept.isDone());
+        Assert.assertEquals(1, storage.getCancelledCount());
+        Assert.assertEquals(1, storage.getProcessingCount());
+
+        // The cancelled key is computed again once requested
+        Assert.assertNull(storage.get(1));
+        Assert.assertEquals(Integer.valueOf(1), storage.get(1));
+        Assert.assertTrue(storage.deleted.isEmpty());
+    }
+
+    @Test
+    public void givenProcessingKey_testGetIfPresentNeitherComputesNorTouches() {
+        TestStorage storage = new TestStorage(-1, 3, -1);
+        CompletableFuture<Integer> pending = new CompletableFuture<>();
+        storage.getOrCompute(0, () -> pending);
+        Assert.assertNull(storage.getIfPresent(0));
+        Assert.assertNull(storage.getIfPresent(1));
+        Assert.assertEquals(1, storage.getProcessingCount());
+
+        pending.complete(0);
+        storage.get(1);
+        Assert.assertEquals(Integer.valueOf(0), storage.getIfPresent(0));
+
+        // 0 is still the least recently used one
+        storage.get(2);
+        Assert.assertEquals(Arrays.asList(0), storage.deleted);
+    }
+
+    @Test
+    public void givenWeightBudget_testEvictionKeepsTotalWeightUnderLimit() {
+        TestStorage storage = new TestStorage(-1, -1, 10);
+        storage.get(3);
+        storage.get(4);
+        Assert.assertEquals(7, storage.getTotalWeight());
+
+        storage.get(5);
+        Assert.assertEquals(Arrays.asList(3), storage.deleted);
+        Assert.assertEquals(9, storage.getTotalWeight());
+
+        // Values heavier than the whole budget are still stored, after everything else is evicted
+        storage.get(20);
+        Assert.assertEquals(Arrays.asList(3, 4, 5), storage.deleted);
+        Assert.assertEquals(20, storage.getTotalWeight());
+    }
+
+    @Test
+    public void givenWeightShare_testOnlyWeightBudgetIsScaled() {
+        CacheStorage.Config config = new CacheStorage.Config(1000L, 50, 1000L, null);
+        CacheStorage.Config share = config.withWeightShare(0.25);
+        Assert.assertEquals(250, (long) share.getMaximumWeightBytes());
+        Assert.assertEquals(1000, (long) share.getExpireMilliseconds());
+        Assert.assertEquals(50, (int) share.getMaximumSize());
+
+        // An unlimited budget stays unlimited
+        CacheStorage.Config unlimited = new CacheStorage.Config(null, null, null, null);
+        Assert.assertEquals(-1, (long) unlimited.withWeightShare(0.25).getMaximumWeightBytes());
+    }
+}
@@ -0,0 +1,97 @@
+package com.mndk.bteterrarenderer.util.concurrent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+public class FrameBudgetSchedulerTest {
+
+    private static final long MILLIS = 1_000_000;
+
+    /** Advances only when a task "runs", so that the tests don't depend on the machine's speed */
+    private final AtomicLong clock = new AtomicLong(0);
+    private final FrameBudgetScheduler scheduler = new FrameBudgetScheduler(this.clock::get);
+    private final List<Integer> ran = new ArrayList<>();
+
+    private void submit(int id, double priority, double weight, long costNanos) {
+        this.scheduler.submit(() -> {
+            this.clock.addAndGet(costNanos);
+            this.ran.add(id);
+        }, () -> priority, weight);
+    }
+
+    private void submit(int id, DoubleSupplier priority, long costNanos) {
+        this.scheduler.submit(() -> {
+            this.clock.addAndGet(costNanos);
+            this.ran.add(id);
+        }, priority, 1);
+    }
+
+    @Test
+    public void givenPriorities_testLowestRunsFirst() {
+        this.submit(0, 3, 1, MILLIS);
+        this.submit(1, 1, 1, MILLIS);
+        this.submit(2, 2, 1, MILLIS);
+        this.submit(3, 1, 1, MILLIS);
+
+        Assert.assertEquals(4, this.scheduler.process(100 * MILLIS));
+        Assert.assertEquals(Arrays.asList(1, 3, 2, 0), this.ran);
+    }
+
+    @Test
+    public void givenBudget_testTasksAreSpreadOverCalls() {
+        for (int i = 0; i < 5; i++) this.submit(i, 0, 1, 2 * MILLIS);
+
+        // The first task's cost is unknown, then each one is expected to take 2ms: 2 + 2 fits in 5, 2 + 2 + 2 doesn't
+        Assert.assertEquals(2, this.scheduler.process(5 * MILLIS));
+        Assert.assertEquals(3, this.scheduler.getQueueDepth());
+        Assert.assertEquals(4, this.scheduler.getLastRunMillis(), 1e-9);
+        Assert.assertEquals(2, this.scheduler.process(5 * MILLIS));
+        Assert.assertEquals(1, this.scheduler.process(5 * MILLIS));
+        Assert.assertEquals(0, this.scheduler.process(5 * MILLIS));
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), this.ran);
+    }
+
+    @Test
+    public void givenHeavyTask_testItIsDeferredButNotStarved() {
+        this.submit(0, 0, 1, MILLIS);
+        this.submit(1, 1, 16, 16 * MILLIS);
+        this.submit(2, 2, 1, MILLIS);
+
+        // Estimated at 16ms from the first task, the heavy one would blow the budget, and it blocks the ones behind it
+        Assert.assertEquals(1, this.scheduler.process(8 * MILLIS));
+        // It's first in line next time, and the first task always runs
+        Assert.assertEquals(1, this.scheduler.process(8 * MILLIS));
+        Assert.assertEquals(1, this.scheduler.process(8 * MILLIS));
+        Assert.assertEquals(Arrays.asList(0, 1, 2), this.ran);
+    }
+
+    @Test
+    public void givenChangedPriority_testQueueIsReordered() {
+        double[] priority = { 2 };
+        this.submit(0, 1, 1, MILLIS);
+        this.submit(1, () -> priority[0], MILLIS);
+        this.submit(2, () -> 3, MILLIS);
+        this.scheduler.process(0);
+
+        priority[0] = 4;
+        this.scheduler.process(0);
+        this.scheduler.process(0);
+        Assert.assertEquals(Arrays.asList(0, 2, 1), this.ran);
+    }
+
+    @Test
+    public void givenFailingTask_testOthersStillRun() {
+        this.scheduler.execute(() -> { throw new IllegalStateException("test"); });
+        this.submit(1, 0, 1, 0);
+
+        Assert.assertEquals(2, this.scheduler.process(MILLIS));
+        Assert.assertEquals(Arrays.asList(1), this.ran);
+        Assert.assertEquals(0, this.scheduler.getQueueDepth());
+    }
+}
@@ -0,0 +1,100 @@
+package com.mndk.bteterrarenderer.util.image;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ImageDecoderTest {
+
+    private static BufferedImage gradient(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 24 | (y * 255 / height) << 16 | (x ^ y) << 8 | 0x40);
+            }
+        }
+        return image;
+    }
+
+    private static ByteBuf encode(BufferedImage image, String formatName) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertTrue(ImageIO.write(image, formatName, out));
+        return Unpooled.wrappedBuffer(out.toByteArray());
+    }
+
+    @Test
+    public void givenPng_testPixelsArePackedArgb() throws IOException {
+        BufferedImage original = gradient(BufferedImage.TYPE_INT_ARGB, 64, 32);
+        long before = ImageDecoder.Format.PNG.getDecodeCount();
+
+        ByteBuf buf = encode(original, "png");
+        BufferedImage decoded = ImageDecoder.decodeImage(buf);
+
+        Assert.assertEquals(BufferedImage.TYPE_INT_ARGB, decoded.getType());
+        Assert.assertArrayEquals(RawImage.fromImage(original).getArgb(), RawImage.fromImage(decoded).getArgb());
+        Assert.assertEquals(0, buf.readerIndex());
+        Assert.assertEquals(before + 1, ImageDecoder.Format.PNG.getDecodeCount());
+    }
+
+    @Test
+    public void givenJpeg_testImageIsOpaqueArgb() throws IOException {
+        BufferedImage original = gradient(BufferedImage.TYPE_3BYTE_BGR, 32, 32);
+        BufferedImage decoded = ImageDecoder.decodeImage(encode(original, "jpeg"));
+
+        Assert.assertEquals(BufferedImage.TYPE_INT_ARGB, decoded.getType());
+        Assert.assertEquals(32, decoded.getWidth());
+        for (int argb : RawImage.fromImage(decoded).getArgb()) Assert.assertEquals(0xFF, argb >>> 24);
+        Assert.assertTrue(ImageDecoder.getTimingSummary().contains("jpeg: "));
+    }
+
+    @Test
+    public void givenConcurrentDecodes_testEveryImageIsIntact() throws Exception {
+        List<BufferedImage> originals = new ArrayList<>();
+        List<byte[]> encoded = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            BufferedImage image = gradient(BufferedImage.TYPE_INT_ARGB, 16 + i * 8, 16 + i * 4);
+            originals.add(image);
+            ByteBuf buf = encode(image, "png");
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            encoded.add(bytes);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<BufferedImage>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                byte[] bytes = encoded.get(i % encoded.size());
+                futures.add(executor.submit(() -> ImageDecoder.decodeImage(Unpooled.wrappedBuffer(bytes))));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                int[] expected = RawImage.fromImage(originals.get(i % originals.size())).getArgb();
+                Assert.assertArrayEquals(expected, RawImage.fromImage(futures.get(i).get()).getArgb());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void givenCommonImageTypes_testFastPathMatchesGetRgb() {
+        int[] types = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_3BYTE_BGR };
+        for (int type : types) {
+            BufferedImage image = gradient(type, 20, 10);
+            int[] expected = image.getRGB(0, 0, 20, 10, null, 0, 20);
+            Assert.assertArrayEquals(expected, RawImage.fromImage(image).getArgb());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.mndk.bteterrarenderer.util.loader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UnpackedTableLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger unpackCount = new AtomicInteger();
+
+    private ByteBuffer load(File directory, int version) throws IOException {
+        return UnpackedTableLoader.load(directory, "table.bin", version, () -> {
+            this.unpackCount.incrementAndGet();
+            ByteBuffer table = ByteBuffer.allocate(4096);
+            for (int i = 0; i < 1024; i++) table.putInt(i * 31);
+            table.flip();
+            return table;
+        });
+    }
+
+    @Test
+    public void givenUnpackedCopy_testItIsMappedInsteadOfUnpacking() throws IOException {
+        File directory = this.folder.getRoot();
+        ByteBuffer first = this.load(directory, 1);
+        ByteBuffer second = this.load(directory, 1);
+
+        Assert.assertEquals(1, this.unpackCount.get());
+        Assert.assertTrue(second.isDirect());
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(0, second.position());
+        Assert.assertEquals(31 * 1023, second.getInt(4092));
+    }
+
+    @Test
+    public void givenStaleOrTruncatedCopy_testTableIsUnpackedAgain() throws IOException {
+        File directory = this.folder.getRoot();
+        this.load(directory, 1);
+        this.load(directory, 2);
+        Assert.assertEquals(2, this.unpackCount.get());
+
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "table.bin"), "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        ByteBuffer table = this.load(directory, 2);
+        Assert.assertEquals(3, this.unpackCount.get());
+        Assert.assertEquals(4096, table.remaining());
+        Assert.assertEquals(4096, this.load(directory, 2).remaining());
+        Assert.assertEquals(3, this.unpackCount.get());
+    }
+
+    @Test
+    public void givenNoDirectory_testTableIsUnpackedEveryTime() throws IOException {
+        this.load(null, 1);
+        this.load(null, 1);
+        Assert.assertEquals(2, this.unpackCount.get());
+    }
+}
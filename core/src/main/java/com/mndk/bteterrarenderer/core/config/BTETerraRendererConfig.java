@@ -101,6 +101,60 @@ public class BTETerraRendererConfig {
         public double sidebarOpacity = 0.7;
     }
 
+    @ConfigName("Prefetch Settings")
+    @ConfigComment("Settings for fetching flat map tiles ahead of the camera while moving.")
+    public final PrefetchConfig PREFETCH = new PrefetchConfig();
+    @Getter @Setter @ConfigurableClass
+    public class PrefetchConfig {
+
+        @ConfigName("Lookahead Time")
+        @ConfigComment({
+                "How far ahead of the camera's movement to fetch tiles, in seconds.",
+                "Set this to 0 to disable prefetching."
+        })
+        @ConfigRangeDouble(min = 0, max = 30)
+        public double lookaheadSeconds = 3;
+
+        @ConfigName("Requests Per Second")
+        @ConfigComment("The maximum number of tile downloads started per second for prefetching.")
+        @ConfigRangeInt(min = 1, max = 256)
+        public int requestsPerSecond = 16;
+    }
+
+    @ConfigName("Performance Settings")
+    @ConfigComment("Settings for the work done on the render thread.")
+    public final PerformanceConfig PERFORMANCE = new PerformanceConfig();
+    @Getter @Setter @ConfigurableClass
+    public class PerformanceConfig {
+
+        @ConfigName("Frame Budget")
+        @ConfigComment({
+                "How long to spend baking tile textures each frame, in milliseconds.",
+                "Higher values make tiles show up sooner, at the cost of a lower frame rate while they load."
+        })
+        @ConfigRangeDouble(min = 0.5, max = 50)
+        public double frameBudgetMillis = 4;
+    }
+
+    @ConfigName("Cache Settings")
+    @ConfigComment("Settings for the data kept on disk between sessions.")
+    public final CacheConfig CACHE = new CacheConfig();
+    @Getter @Setter @ConfigurableClass
+    public class CacheConfig {
+
+        @ConfigName("Mesh Cache")
+        @ConfigComment("Keeps converted 3D tile meshes on disk, so that revisited tiles don't have to be converted again.")
+        public boolean meshCache = true;
+
+        @ConfigName("Mesh Cache Size")
+        @ConfigComment({
+                "The maximum size of the mesh cache, in megabytes.",
+                "The least recently used meshes are deleted once it grows past this."
+        })
+        @ConfigRangeInt(min = 16, max = 65536)
+        public int meshCacheSizeMegabytes = 1024;
+    }
+
     public void toggleRender() {
         HOLOGRAM.setDoRender(!HOLOGRAM.isDoRender());
     }
@@ -1,14 +1,69 @@
 package com.mndk.bteterrarenderer.core.graphics;
 
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShapes;
+import com.mndk.bteterrarenderer.util.image.RawImage;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 
 import javax.annotation.Nullable;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Data
+@RequiredArgsConstructor
 public class PreBakedModel {
+    /** The texture, until {@link #extractPixels()} replaces it with {@link #pixels} */
     @Nullable
     private final BufferedImage image;
     private final GraphicsShapes shapes;
+    /** Pixels extracted from {@link #image}, if {@link #extractPixels()} has been called */
+    @Nullable
+    private final RawImage pixels;
+
+    public PreBakedModel(@Nullable BufferedImage image, GraphicsShapes shapes) {
+        this(image, shapes, null);
+    }
+
+    /**
+     * Reads the pixels out of the image so that the texture can be uploaded without
+     * an image codec. This should not be called on the render thread.
+     * The image isn't needed anymore after this, so the returned model doesn't hold onto it.
+     * @return A new model with its pixels extracted, or itself if there's nothing to extract
+     */
+    public PreBakedModel extractPixels() {
+        if (this.image == null || this.pixels != null) return this;
+        return new PreBakedModel(null, this.shapes, RawImage.fromImage(this.image));
+    }
+
+    /**
+     * Merges the models that have the same image into one, so that each image is uploaded and drawn only once.
+     * Images are compared by identity, so duplicates should be resolved to the same instance beforehand.
+     * @return The merged models, in the order of their images' first appearance
+     */
+    public static List<PreBakedModel> mergeByImage(List<PreBakedModel> models) {
+        Map<BufferedImage, List<PreBakedModel>> groups = new IdentityHashMap<>();
+        List<BufferedImage> order = new ArrayList<>();
+        for (PreBakedModel model : models) {
+            groups.computeIfAbsent(model.getImage(), image -> {
+                order.add(image);
+                return new ArrayList<>();
+            }).add(model);
+        }
+        if (order.size() == models.size()) return models;
+
+        List<PreBakedModel> result = new ArrayList<>(order.size());
+        for (BufferedImage image : order) {
+            List<PreBakedModel> group = groups.get(image);
+            if (group.size() == 1) { result.add(group.get(0)); continue; }
+
+            GraphicsShapes shapes = new GraphicsShapes();
+            for (PreBakedModel model : group) shapes.addAll(model.getShapes());
+            shapes.trimToSize();
+            result.add(new PreBakedModel(image, shapes, group.get(0).getPixels()));
+        }
+        return result;
+    }
 }
@@ -0,0 +1,309 @@
+package com.mndk.bteterrarenderer.core.graphics;
+
+import com.mndk.bteterrarenderer.BTETerraRenderer;
+import com.mndk.bteterrarenderer.core.config.BTETerraRendererConfig;
+import com.mndk.bteterrarenderer.mcconnector.McConnector;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.DrawingFormat;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShapes;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
+import com.mndk.bteterrarenderer.util.Loggers;
+import com.mndk.bteterrarenderer.util.image.RawImage;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A disk cache of converted models, so that revisiting a tile can skip the download, parse, decode and
+ * projection steps and go straight to baking.<br>
+ * Each entry is stored in its own file, named after the SHA-256 digest of its key:
+ * <pre>
+ * [int magic][int version][utf-8 key][utf-8 copyright, or a length of -1 if there is none][int model count]
+ * per model: [texture][int format count] per format: [byte format id][{@link PackedVertexBuffer}]
+ * texture:   [int width][int height][width * height ARGB ints], or a width of -1 if there is none
+ * </pre>
+ * The copyright is stored alongside the models so that a cached tile can be listed without being downloaded.
+ * Files with a different magic or version are treated as missing and deleted. The least recently
+ * read or written files are deleted once the total size grows past the limit.
+ */
+public class PreBakedModelCache {
+
+    private static final int MAGIC = 0x4254524D; // "BTRM"
+    /** Increment this whenever the file layout, or the way the models are converted, changes */
+    private static final int VERSION = 3;
+    private static final int NO_TEXTURE = -1;
+    private static final int NO_COPYRIGHT = -1;
+    /** Evicting down to this fraction of the limit, so that the directory isn't scanned on every write */
+    private static final double EVICTION_TARGET = 0.9;
+    private static final String TMP_PREFIX = "tmp-";
+    private static final DrawingFormat<?>[] FORMATS = { DrawingFormat.QUAD_PT, DrawingFormat.TRI_PTN };
+
+    private static PreBakedModelCache instance;
+
+    private final Path root;
+    private final LongSupplier maximumBytes;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong tmpCounter = new AtomicLong();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "BTETerraRenderer mesh cache writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param root         The directory to keep the files in
+     * @param maximumBytes Supplies the maximum total size of the files
+     */
+    public PreBakedModelCache(Path root, LongSupplier maximumBytes) throws IOException {
+        this.root = Files.createDirectories(root);
+        this.maximumBytes = maximumBytes;
+        try (Stream<Path> stream = Files.list(this.root)) {
+            for (Path file : stream.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                if (file.getFileName().toString().startsWith(TMP_PREFIX)) Files.deleteIfExists(file);
+                else this.totalBytes.addAndGet(Files.size(file));
+            }
+        }
+    }
+
+    /**
+     * @return The cache shared by the tile map services, or {@code null} if it's disabled or couldn't be opened
+     */
+    @Nullable
+    public static synchronized PreBakedModelCache get() {
+        if (!BTETerraRendererConfig.CACHE.isMeshCache()) return null;
+        if (instance == null) {
+            File gameDirectory = McConnector.common().getGameDirectory();
+            Path root = new File(gameDirectory, BTETerraRenderer.MODID + "/mesh_cache").toPath();
+            try {
+                instance = new PreBakedModelCache(root,
+                        () -> BTETerraRendererConfig.CACHE.getMeshCacheSizeMegabytes() * 1024L * 1024L);
+            } catch (IOException e) {
+                Loggers.get(PreBakedModelCache.class).error("Could not open mesh cache", e);
+                BTETerraRendererConfig.CACHE.setMeshCache(false);
+                return null;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return The cached entry, or {@code null} if there is none for the key
+     */
+    @Nullable
+    public Entry read(String key) {
+        Path file = this.fileOf(key);
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Loggers.get(this).warn("Could not read mesh cache file " + file, e);
+            return null;
+        }
+
+        try {
+            Entry entry = decode(buffer.order(ByteOrder.LITTLE_ENDIAN), key);
+            if (entry != null) return entry;
+        } catch (BufferUnderflowException | IllegalArgumentException | ArithmeticException e) {
+            Loggers.get(this).warn("Corrupted mesh cache file " + file, e);
+        }
+        this.delete(file);
+        return null;
+    }
+
+    /**
+     * Writes the models in the background. Models whose pixels haven't been
+     * {@link PreBakedModel#extractPixels() extracted} are stored without a texture.
+     */
+    public void writeAsync(String key, @Nullable String copyright, List<PreBakedModel> models) {
+        this.writer.execute(() -> {
+            try { this.write(key, copyright, models); }
+            catch (IOException e) { Loggers.get(this).warn("Could not write mesh cache entry for " + key, e); }
+        });
+    }
+
+    public void write(String key, @Nullable String copyright, List<PreBakedModel> models) throws IOException {
+        ByteBuffer buffer = encode(key, copyright, models);
+        Path file = this.fileOf(key);
+        Path tmpFile = this.root.resolve(TMP_PREFIX + this.tmpCounter.incrementAndGet());
+        try {
+            Files.write(tmpFile, buffer.array());
+            long previousSize = Files.exists(file) ? Files.size(file) : 0;
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            this.totalBytes.addAndGet(buffer.capacity() - previousSize);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        this.evictIfNeeded();
+    }
+
+    /** @return The total size of the cache files, in bytes */
+    public long getTotalBytes() {
+        return this.totalBytes.get();
+    }
+
+    private synchronized void evictIfNeeded() throws IOException {
+        long maximum = this.maximumBytes.getAsLong();
+        if (this.totalBytes.get() <= maximum) return;
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(this.root)) {
+            files = stream.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().startsWith(TMP_PREFIX))
+                    .collect(Collectors.toList());
+        }
+        Map<Path, FileTime> times = new HashMap<>();
+        for (Path file : files) {
+            try { times.put(file, Files.getLastModifiedTime(file)); }
+            catch (NoSuchFileException e) { times.put(file, FileTime.fromMillis(0)); }
+        }
+        files.sort(Comparator.comparing(times::get));
+
+        long target = (long) (maximum * EVICTION_TARGET);
+        for (int i = 0; i < files.size() && this.totalBytes.get() > target; i++) {
+            this.delete(files.get(i));
+        }
+    }
+
+    private void delete(Path file) {
+        try {
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) this.totalBytes.addAndGet(-size);
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            Loggers.get(this).warn("Could not delete mesh cache file " + file, e);
+        }
+    }
+
+    private Path fileOf(String key) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest(key)) name.append(String.format("%02x", b));
+        return this.root.resolve(name.toString());
+    }
+
+    private static byte[] digest(String key) {
+        try { return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)); }
+        catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+    }
+
+    private static ByteBuffer encode(String key, @Nullable String copyright, List<PreBakedModel> models) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] copyrightBytes = copyright != null ? copyright.getBytes(StandardCharsets.UTF_8) : null;
+        int size = 4 + 4 + 4 + keyBytes.length + 4 + (copyrightBytes != null ? copyrightBytes.length : 0) + 4;
+        for (PreBakedModel model : models) {
+            RawImage pixels = model.getPixels();
+            size += 4 + (pixels != null ? 4 + pixels.getArgb().length * 4 : 0) + 4;
+            for (PackedVertexBuffer vertices : model.getShapes().getVertices().values()) {
+                size += 1 + vertices.getSerializedSize();
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(keyBytes.length).put(keyBytes);
+        if (copyrightBytes != null) buffer.putInt(copyrightBytes.length).put(copyrightBytes);
+        else buffer.putInt(NO_COPYRIGHT);
+        buffer.putInt(models.size());
+        for (PreBakedModel model : models) {
+            RawImage pixels = model.getPixels();
+            if (pixels != null) {
+                buffer.putInt(pixels.getWidth()).putInt(pixels.getHeight());
+                buffer.asIntBuffer().put(pixels.getArgb());
+                buffer.position(buffer.position() + pixels.getArgb().length * 4);
+            } else {
+                buffer.putInt(NO_TEXTURE);
+            }
+
+            Map<DrawingFormat<?>, PackedVertexBuffer> vertices = model.getShapes().getVertices();
+            buffer.putInt(vertices.size());
+            vertices.forEach((format, vertexBuffer) -> {
+                buffer.put((byte) formatId(format));
+                vertexBuffer.write(buffer);
+            });
+        }
+        return buffer;
+    }
+
+    /**
+     * @return The decoded entry, or {@code null} if the file was written by another version or for another key
+     */
+    @Nullable
+    private static Entry decode(ByteBuffer buffer, String key) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+        byte[] keyBytes = new byte[checkCount(buffer.getInt(), buffer)];
+        buffer.get(keyBytes);
+        if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))) return null;
+
+        String copyright = null;
+        int copyrightLength = buffer.getInt();
+        if (copyrightLength != NO_COPYRIGHT) {
+            byte[] copyrightBytes = new byte[checkCount(copyrightLength, buffer)];
+            buffer.get(copyrightBytes);
+            copyright = new String(copyrightBytes, StandardCharsets.UTF_8);
+        }
+
+        int modelCount = checkCount(buffer.getInt(), buffer);
+        List<PreBakedModel> models = new ArrayList<>(modelCount);
+        for (int i = 0; i < modelCount; i++) {
+            RawImage pixels = null;
+            int width = buffer.getInt();
+            if (width != NO_TEXTURE) {
+                int height = buffer.getInt();
+                if (width < 0 || height < 0) throw new IllegalArgumentException("invalid texture size");
+                int[] argb = new int[checkCount(Math.multiplyExact(Math.multiplyExact(width, height), 4), buffer) / 4];
+                buffer.asIntBuffer().get(argb);
+                buffer.position(buffer.position() + argb.length * 4);
+                pixels = new RawImage(width, height, argb);
+            }
+
+            GraphicsShapes shapes = new GraphicsShapes();
+            int formatCount = checkCount(buffer.getInt(), buffer);
+            for (int j = 0; j < formatCount; j++) {
+                int id = buffer.get();
+                if (id < 0 || id >= FORMATS.length) throw new IllegalArgumentException("invalid format id: " + id);
+                shapes.setVertices(FORMATS[id], PackedVertexBuffer.read(buffer));
+            }
+            models.add(new PreBakedModel(null, shapes, pixels));
+        }
+        return new Entry(copyright, models);
+    }
+
+    private static int formatId(DrawingFormat<?> format) {
+        for (int i = 0; i < FORMATS.length; i++) {
+            if (FORMATS[i] == format) return i;
+        }
+        throw new IllegalArgumentException("unknown drawing format: " + format);
+    }
+
+    private static int checkCount(int count, ByteBuffer buffer) {
+        if (count < 0 || count > buffer.remaining()) throw new IllegalArgumentException("invalid count: " + count);
+        return count;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Entry {
+        @Nullable
+        private final String copyright;
+        /** Decoded anew on every read, so they can be baked without affecting other readers */
+        private final List<PreBakedModel> models;
+    }
+}
@@ -345,7 +345,7 @@ public class MapRenderingOptionsSidebar extends GuiSidebar {
     }
 
     private static class IconStorage extends CacheStorage<URL, NativeTextureWrapper> {
-        protected IconStorage() { super(-1, -1, false); }
+        protected IconStorage() { super(-1, -1, -1, false); }
 
         @Override
         protected void delete(NativeTextureWrapper value) {
@@ -4,6 +4,7 @@ import com.mndk.bteterrarenderer.util.image.ImageUtil;
 import com.mndk.bteterrarenderer.dep.terraplusplus.http.Http;
 import com.mndk.bteterrarenderer.util.Loggers;
 import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
 import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
@@ -12,6 +13,7 @@ import java.awt.image.BufferedImage;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,14 +25,28 @@ public class HttpResourceManager {
     private final Map<String, Integer> MCR_ENTRIES = new ConcurrentHashMap<>();
 
     public CompletableFuture<BufferedImage> downloadAsImage(String url, @Nullable Integer maxConcurrentRequests) {
-        return download(url, maxConcurrentRequests).thenApplyAsync(buf -> {
+        return downloadAsImage(url, maxConcurrentRequests, Http.DEFAULT_PRIORITY);
+    }
+
+    public CompletableFuture<BufferedImage> downloadAsImage(String url, @Nullable Integer maxConcurrentRequests,
+                                                            DoubleSupplier priority) {
+        return download(url, maxConcurrentRequests, priority).thenApplyAsync(buf -> {
             try { return ImageUtil.bufferToImage(buf); }
             catch (Exception e) { throw new RuntimeException(e); }
+            finally { ReferenceCountUtil.release(buf); }
         });
     }
 
-    @SneakyThrows
     public CompletableFuture<ByteBuf> download(String url, @Nullable Integer maxConcurrentRequests) {
+        return download(url, maxConcurrentRequests, Http.DEFAULT_PRIORITY);
+    }
+
+    /**
+     * @param priority Supplies the current priority of the request. Queued requests with lower values are sent first.
+     *                 See {@link RequestPriority} for a priority that can be updated every frame.
+     */
+    @SneakyThrows
+    public CompletableFuture<ByteBuf> download(String url, @Nullable Integer maxConcurrentRequests, DoubleSupplier priority) {
         if (maxConcurrentRequests != null) {
             Matcher matcher = PROTOCOL_HOST_PORT.matcher(url);
             if (matcher.matches()) {
@@ -46,6 +62,6 @@ public class HttpResourceManager {
                 }
             }
         }
-        return Http.get(url);
+        return Http.get(url, priority);
     }
 }
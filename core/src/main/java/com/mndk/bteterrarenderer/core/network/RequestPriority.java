@@ -0,0 +1,30 @@
+package com.mndk.bteterrarenderer.core.network;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * A request priority that can be changed while the request is still waiting to be sent.
+ * Requests with lower values are sent first.
+ */
+public final class RequestPriority implements DoubleSupplier {
+
+    /** The priority of requests that are no longer wanted by anything on screen. */
+    public static final double UNUSED = Double.MAX_VALUE;
+    /** The priority of requests made ahead of time, for things that aren't on screen yet. */
+    public static final double PREFETCH = Double.MAX_VALUE / 2;
+
+    private volatile double value;
+
+    public RequestPriority(double value) {
+        this.value = value;
+    }
+
+    public void set(double value) {
+        this.value = value;
+    }
+
+    @Override
+    public double getAsDouble() {
+        return this.value;
+    }
+}
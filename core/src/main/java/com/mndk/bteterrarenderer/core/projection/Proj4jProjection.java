@@ -62,6 +62,27 @@ public class Proj4jProjection implements GeographicProjection {
 		return new double[] {result.x, result.y};
 	}
 
+	@Override
+	public void fromGeo(double[] lonLat, double[] out, int count) {
+		transformAll(toTargetCrs, lonLat, out, count);
+	}
+
+	@Override
+	public void toGeo(double[] xy, double[] out, int count) {
+		transformAll(toWgs, xy, out, count);
+	}
+
+	private static void transformAll(CoordinateTransform transform, double[] in, double[] out, int count) {
+		ProjCoordinate source = new ProjCoordinate(), result = new ProjCoordinate();
+		for (int i = 0, j = 0; i < count; i++, j += 2) {
+			source.x = in[j];
+			source.y = in[j + 1];
+			transform.transform(source, result);
+			out[j] = result.x;
+			out[j + 1] = result.y;
+		}
+	}
+
 	@Override
 	public double metersPerUnit() {
 		return 0;
@@ -1,8 +1,10 @@
 package com.mndk.bteterrarenderer.core.tile;
 
 import com.mndk.bteterrarenderer.BTETerraRenderer;
+import com.mndk.bteterrarenderer.core.config.BTETerraRendererConfig;
 import com.mndk.bteterrarenderer.core.graphics.PreBakedModel;
 import com.mndk.bteterrarenderer.core.network.HttpResourceManager;
+import com.mndk.bteterrarenderer.core.network.RequestPriority;
 import com.mndk.bteterrarenderer.core.projection.Projections;
 import com.mndk.bteterrarenderer.dep.terraplusplus.projection.GeographicProjection;
 import com.mndk.bteterrarenderer.dep.terraplusplus.projection.OutOfProjectionBoundsException;
@@ -10,6 +12,9 @@ import com.mndk.bteterrarenderer.mcconnector.McConnector;
 import com.mndk.bteterrarenderer.mcconnector.client.WindowDimension;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.GraphicsModel;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.NativeTextureWrapper;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.TextureAtlas;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.TextureManager;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShapes;
 import com.mndk.bteterrarenderer.mcconnector.client.gui.GuiDrawContextWrapper;
 import com.mndk.bteterrarenderer.mcconnector.client.mcfx.McFX;
 import com.mndk.bteterrarenderer.mcconnector.client.mcfx.McFXElement;
@@ -20,7 +25,10 @@ import com.mndk.bteterrarenderer.mcconnector.util.math.McCoordTransformer;
 import com.mndk.bteterrarenderer.util.Loggers;
 import com.mndk.bteterrarenderer.util.accessor.PropertyAccessor;
 import com.mndk.bteterrarenderer.util.concurrent.CacheStorage;
-import com.mndk.bteterrarenderer.util.concurrent.ManualThreadExecutor;
+import com.mndk.bteterrarenderer.util.concurrent.FrameBudgetScheduler;
+import com.mndk.bteterrarenderer.util.concurrent.FutureUtil;
+import com.mndk.bteterrarenderer.util.image.ImageDecoder;
+import com.mndk.bteterrarenderer.util.image.RawImage;
 import com.mndk.bteterrarenderer.util.json.JsonString;
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -32,18 +40,31 @@ import javax.annotation.Nullable;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.DoubleSupplier;
 
 @Getter
 @RequiredArgsConstructor
 public abstract class AbstractTileMapService<TileId> implements TileMapService {
 
-    private static final ManualThreadExecutor TEXTURE_BAKER = new ManualThreadExecutor();
+    private static final FrameBudgetScheduler TEXTURE_BAKER = new FrameBudgetScheduler();
+    /** Decodes the textures off the render thread, without tying up the common pool with image codec work */
+    private static final ExecutorService PIXEL_EXTRACTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "BTETerraRenderer pixel extractor");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     public static final int DEFAULT_MAX_THREAD = 2;
+    /** Work for tiles that haven't been requested for this many frames is cancelled */
+    protected static final int CANCEL_AFTER_FRAMES = 60;
+    /** Width and height of the texture atlas pages. Kept small enough that re-uploading a page is cheap */
+    private static final int ATLAS_PAGE_SIZE = 1024;
 
     private final int nThreads;
     private final Translatable<String> name;
@@ -60,9 +81,31 @@ public abstract class AbstractTileMapService<TileId> implements TileMapService {
     private transient final ModelStorage storage;
     private transient McFXElement hudElement;
     private final transient McFXElement bakingIndicatorWrapper = McFX.div().setColor(0xFFFFFFFF);
+    private final transient McFXElement cancelledIndicatorWrapper = McFX.div().setColor(0xFFFFFFFF);
+    private final transient McFXElement queueIndicatorWrapper = McFX.div().setColor(0xFFFFFFFF);
+    private final transient McFXElement decodeIndicatorWrapper = McFX.div().setColor(0xFFFFFFFF);
     private final transient McFXImage hudImage = McFX.image().setDimension(null, 32);
+    @Getter(AccessLevel.NONE) @Nullable
+    private transient TextureAtlas textureAtlas;
+    /** Atlas slots of the baked models, by identity since models with equal shapes may hold different slots */
+    @Getter(AccessLevel.NONE)
+    private final transient Map<GraphicsModel, TextureAtlas.Slot> atlasSlots = Collections.synchronizedMap(new IdentityHashMap<>());
+    /** Positions of the tiles in the last render list, which puts the nearest or coarsest tiles first */
+    @Getter(AccessLevel.NONE)
+    private transient volatile Map<TileId, Integer> renderOrder = Collections.emptyMap();
+    /** {@link System#nanoTime()} by which the current frame's work should be done */
+    @Getter(AccessLevel.NONE)
+    private transient long frameDeadline;
 
     protected AbstractTileMapService(TileMapServiceCommonProperties properties) {
+        this(properties, 1);
+    }
+
+    /**
+     * @param modelCacheShare The fraction of the cache's weight budget that the baked models may use. Services that
+     *                        keep other weighed caches give them the rest, so that the total stays within the budget.
+     */
+    protected AbstractTileMapService(TileMapServiceCommonProperties properties, double modelCacheShare) {
         this.name = properties.getName();
         this.dummyTileUrl = properties.getTileUrl();
         this.iconUrl = properties.getIconUrl();
@@ -73,17 +116,22 @@ public abstract class AbstractTileMapService<TileId> implements TileMapService {
         this.nThreads = properties.getNThreads();
         this.hologramProjection = properties.getHologramProjection();
         this.stateAccessors.addAll(this.makeStateAccessors());
-        this.storage = new ModelStorage(properties.getCacheConfig());
+        CacheStorage.Config cacheConfig = properties.getCacheConfig();
+        this.storage = new ModelStorage(cacheConfig != null ? cacheConfig.withWeightShare(modelCacheShare) : null);
     }
 
     @Override
     public final List<GraphicsModel> getModels(McCoord cameraPos, double yawDegrees, double pitchDegrees) {
-        // Bake textures
+        // Bake textures, nearest tiles first, for as long as the frame budget allows
+        this.frameDeadline = System.nanoTime() + (long) (BTETerraRendererConfig.PERFORMANCE.getFrameBudgetMillis() * 1e6);
         this.preRender(cameraPos);
-        TEXTURE_BAKER.process(2);
+        TEXTURE_BAKER.process(this.getRemainingFrameBudgetNanos());
 
         // Get tileId list
         List<TileId> renderTileIdList = this.getRenderTileIdList(cameraPos, yawDegrees, pitchDegrees);
+        Map<TileId, Integer> renderOrder = new HashMap<>();
+        for (TileId tileId : renderTileIdList) renderOrder.putIfAbsent(tileId, renderOrder.size());
+        this.renderOrder = renderOrder;
 
         // Get models based on tileId list
         List<GraphicsModel> result = new ArrayList<>();
@@ -92,6 +140,28 @@ public abstract class AbstractTileMapService<TileId> implements TileMapService {
             if (models == null) continue;
             result.addAll(models);
         }
+
+        // Stop working on the tiles that went out of view
+        this.storage.cancelUnrequested(CANCEL_AFTER_FRAMES);
+
+        if (this.textureAtlas == null) return result;
+        this.textureAtlas.flush();
+        return groupByTexture(result);
+    }
+
+    /**
+     * Orders the models so that the ones sharing a texture are next to each other, keeping the order of the
+     * textures' first appearance. Consecutive models with the same texture can be drawn in a single batch.
+     */
+    private static List<GraphicsModel> groupByTexture(List<GraphicsModel> models) {
+        Map<NativeTextureWrapper, List<GraphicsModel>> groups = new LinkedHashMap<>();
+        for (GraphicsModel model : models) {
+            groups.computeIfAbsent(model.getTextureObject(), texture -> new ArrayList<>()).add(model);
+        }
+        if (groups.size() == models.size()) return models;
+
+        List<GraphicsModel> result = new ArrayList<>(models.size());
+        for (List<GraphicsModel> group : groups.values()) result.addAll(group);
         return result;
     }
 
@@ -99,25 +169,76 @@ public abstract class AbstractTileMapService<TileId> implements TileMapService {
     private List<GraphicsModel> getModelsForId(TileId tileId) {
         return this.storage.getOrCompute(tileId, () -> {
             CompletableFuture<List<PreBakedModel>> future = this.processModel(tileId);
-            return future == null ? null : future.thenApplyAsync(this::bake, TEXTURE_BAKER);
+            if (future == null) return null;
+            // Pixel extraction is done here so that the baker doesn't have to run the image codec
+            CompletableFuture<List<PreBakedModel>> extracted = future.thenApplyAsync(AbstractTileMapService::extractPixels, PIXEL_EXTRACTOR);
+            // The baker is only handed the task once the pixels are extracted, so they can be weighed by then
+            Executor baker = TEXTURE_BAKER.withPriority(this.getRenderPriority(tileId),
+                    () -> countPixels(extracted.getNow(Collections.emptyList())));
+            CompletableFuture<List<GraphicsModel>> baked = extracted.thenApplyAsync(this::bake, baker);
+            // Stages that haven't started yet are skipped once the tile is cancelled
+            return FutureUtil.cancelUpstream(baked, future);
         });
     }
 
+    private static List<PreBakedModel> extractPixels(List<PreBakedModel> preBakedModels) {
+        List<PreBakedModel> result = new ArrayList<>(preBakedModels.size());
+        for (PreBakedModel preBakedModel : preBakedModels) {
+            result.add(preBakedModel.extractPixels());
+        }
+        return result;
+    }
+
+    /** The cost of baking the models, which is mostly in uploading their textures */
+    private static long countPixels(List<PreBakedModel> preBakedModels) {
+        long pixels = 0;
+        for (PreBakedModel preBakedModel : preBakedModels) {
+            RawImage pixelData = preBakedModel.getPixels();
+            BufferedImage image = preBakedModel.getImage();
+            if (pixelData != null) pixels += (long) pixelData.getWidth() * pixelData.getHeight();
+            else if (image != null) pixels += (long) image.getWidth() * image.getHeight();
+        }
+        return pixels;
+    }
+
     private List<GraphicsModel> bake(List<PreBakedModel> preBakedModels) {
         List<GraphicsModel> models = new ArrayList<>(preBakedModels.size());
+        TextureManager textureManager = McConnector.client().textureManager;
+        TextureAtlas atlas = this.getTextureAtlas();
         for (PreBakedModel preBakedModel : preBakedModels) {
-            BufferedImage image = preBakedModel.getImage();
-            NativeTextureWrapper textureObject = McConnector.client().textureManager
-                    .allocateAndGetTextureObject(BTETerraRenderer.MODID, image);
+            RawImage pixels = preBakedModel.getPixels();
+            TextureAtlas.Slot slot = atlas != null && pixels != null ? atlas.allocate(pixels) : null;
+            if (slot != null) {
+                GraphicsShapes shapes = preBakedModel.getShapes();
+                slot.mapTextureCoords(shapes);
+                GraphicsModel model = new GraphicsModel(slot.getTexture(), shapes);
+                this.atlasSlots.put(model, slot);
+                models.add(model);
+                continue;
+            }
+            NativeTextureWrapper textureObject = pixels != null
+                    ? textureManager.allocateAndGetTextureObject(BTETerraRenderer.MODID, pixels)
+                    : textureManager.allocateAndGetTextureObject(BTETerraRenderer.MODID, preBakedModel.getImage());
             models.add(new GraphicsModel(textureObject, preBakedModel.getShapes()));
         }
         return models;
     }
 
-    private static void delete(List<GraphicsModel> models) {
+    private void delete(List<GraphicsModel> models) {
         for (GraphicsModel model : models) {
-            McConnector.client().textureManager.deleteTextureObject(model.getTextureObject());
+            TextureAtlas.Slot slot = this.atlasSlots.remove(model);
+            if (slot != null) slot.release();
+            else McConnector.client().textureManager.deleteTextureObject(model.getTextureObject());
+        }
+    }
+
+    @Nullable
+    private TextureAtlas getTextureAtlas() {
+        if (!this.isTextureAtlasEnabled()) return null;
+        if (this.textureAtlas == null) {
+            this.textureAtlas = new TextureAtlas(McConnector.client().textureManager, BTETerraRenderer.MODID, ATLAS_PAGE_SIZE);
         }
+        return this.textureAtlas;
     }
 
     @Nonnull
@@ -142,7 +263,10 @@ public abstract class AbstractTileMapService<TileId> implements TileMapService {
                     McFX.div(4), // top padding: 4px
                     this.hudImage,
                     element,
-                    this.bakingIndicatorWrapper
+                    this.bakingIndicatorWrapper,
+                    this.queueIndicatorWrapper,
+                    this.cancelledIndicatorWrapper,
+                    this.decodeIndicatorWrapper
             );
             if (this.hudImageUrl != null) {
                 HttpResourceManager.downloadAsImage(this.hudImageUrl.toString(), null)
@@ -161,6 +285,16 @@ public abstract class AbstractTileMapService<TileId> implements TileMapService {
         int bakingCounter = this.storage.getProcessingCount();
         this.bakingIndicatorWrapper.setStringContent(bakingCounter != 0
                 ? "Baking " + bakingCounter + " model(s)..." : "");
+        int queuedTiles = this.getQueuedTaskCount(), queuedTextures = TEXTURE_BAKER.getQueueDepth();
+        this.queueIndicatorWrapper.setStringContent(queuedTiles != 0 || queuedTextures != 0
+                ? String.format("Queued %d tile(s), %d texture(s) (%.1fms/frame)",
+                        queuedTiles, queuedTextures, TEXTURE_BAKER.getLastRunMillis()) : "");
+        long cancelledModels = this.storage.getCancelledCount();
+        long cancelledDownloads = this.getCancelledDownloadCount();
+        this.cancelledIndicatorWrapper.setStringContent(cancelledModels != 0 || cancelledDownloads != 0
+                ? "Cancelled " + cancelledModels + " model(s), " + cancelledDownloads + " download(s)" : "");
+        String decodeTimings = ImageDecoder.getTimingSummary();
+        this.decodeIndicatorWrapper.setStringContent(!decodeTimings.isEmpty() ? "Decoded " + decodeTimings : "");
         this.hudElement.onWidthChange(width);
         context.pushMatrix();
         this.hudElement.drawComponent(context);
@@ -184,6 +318,67 @@ public abstract class AbstractTileMapService<TileId> implements TileMapService {
         this.storage.close();
     }
 
+    /**
+     * Looks up the baked models of a tile without requesting them. Doesn't lock, so this can be used
+     * from {@link #getLoadingModel} to find substitutes for the tile that is loading.
+     *
+     * @return The models, or {@code null} if the tile isn't baked yet
+     */
+    @Nullable
+    protected final List<GraphicsModel> getResidentModels(TileId tileId) {
+        return this.storage.getIfPresent(tileId);
+    }
+
+    /**
+     * @return The atlas slot holding the model's texture, or {@code null} if the model has a texture of its own.
+     *         Shapes drawn with the model's texture must have their texture coordinates mapped into the slot.
+     */
+    @Nullable
+    protected final TextureAtlas.Slot getAtlasSlot(GraphicsModel model) {
+        return this.atlasSlots.get(model);
+    }
+
+    /**
+     * @return The tile's position in the last render list, to be used as the priority of the work done for it.
+     *         Tiles that weren't in the list are worked on last.
+     */
+    protected final DoubleSupplier getRenderPriority(TileId tileId) {
+        return () -> {
+            Integer order = this.renderOrder.get(tileId);
+            return order != null ? order : RequestPriority.UNUSED;
+        };
+    }
+
+    /**
+     * @return How much time is left for the current frame's work, in nanoseconds. Meant to be passed on to
+     *         {@link FrameBudgetScheduler#process} from {@link #preRender}.
+     */
+    protected final long getRemainingFrameBudgetNanos() {
+        return Math.max(0, this.frameDeadline - System.nanoTime());
+    }
+
+    /**
+     * Whether to pack the tile textures into shared atlas pages, so that the tiles can be drawn in fewer
+     * batches. Only worth it for services whose tiles mostly have textures of the same size.
+     */
+    protected boolean isTextureAtlasEnabled() {
+        return false;
+    }
+
+    /**
+     * @return The number of tile downloads cancelled so far because the tiles went out of view
+     */
+    protected long getCancelledDownloadCount() {
+        return 0;
+    }
+
+    /**
+     * @return The number of tiles waiting for the service's own render-thread work before they can be baked
+     */
+    protected int getQueuedTaskCount() {
+        return 0;
+    }
+
     // ######################## <ABSTRACT METHODS> ########################
 
     @Nullable
@@ -251,7 +446,20 @@ public abstract class AbstractTileMapService<TileId> implements TileMapService {
 
         @Override
         protected void delete(List<GraphicsModel> value) {
-            AbstractTileMapService.delete(value);
+            AbstractTileMapService.this.delete(value);
+        }
+
+        @Override
+        protected long weigh(TileId key, List<GraphicsModel> value) {
+            long weight = 0;
+            for (GraphicsModel model : value) {
+                TextureAtlas.Slot slot = AbstractTileMapService.this.getAtlasSlot(model);
+                if (slot == null) { weight += model.estimateWeightBytes(); continue; }
+                // Only the slot counts, as the rest of the page is shared with the other tiles
+                weight += (long) slot.getWidth() * slot.getHeight() * GraphicsModel.BYTES_PER_PIXEL
+                        + model.getShapes().getVertexCount() * GraphicsModel.BYTES_PER_VERTEX;
+            }
+            return weight;
         }
     }
 
@@ -27,7 +27,8 @@ public class RenderManager {
         McCoord cameraPos = new McCoord(px + hologramConfig.getXAlign(), (float) py, pz + hologramConfig.getZAlign());
         List<GraphicsModel> models = tms.getModels(cameraPos, yawDegrees, pitchDegrees);
         McCoordTransformer transformer = tms.getModelPositionTransformer();
-        McCoordTransformer modelPosTransformer = pos -> transformer.transform(pos).subtract(cameraPos);
+        McCoordTransformer modelPosTransformer = transformer.andThen(
+                McCoordTransformer.translate(-cameraPos.getX(), -cameraPos.getY(), -cameraPos.getZ()));
         VertexBeginner beginner = tms.getVertexBeginner(
                 McConnector.client().bufferBuildersManager,
                 (float) hologramConfig.getOpacity()
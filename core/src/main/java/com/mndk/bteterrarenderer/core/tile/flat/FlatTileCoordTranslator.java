@@ -6,6 +6,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
+import javax.annotation.Nullable;
+
 @Getter
 @Setter
 @Accessors(chain = true)
@@ -74,6 +76,44 @@ public class FlatTileCoordTranslator {
         return this.projection.isTileCoordInBounds(tileCoord.getX(), tileCoord.getY(), absoluteZoom);
     }
 
+    /**
+     * Returns the tile {@code levels} zoom levels above the given one that contains it,
+     * if the tile grids of the two zoom levels line up.
+     *
+     * @param tileCoord Tile coordinate
+     * @param levels    How many zoom levels to go up
+     * @return The ancestor's coordinate, or {@code null} if the zoom level isn't available or doesn't line up
+     */
+    @Nullable
+    public final FlatTileRelCoord getAncestor(FlatTileRelCoord tileCoord, int levels) {
+        int ancestorRelativeZoom = tileCoord.getRelativeZoom() - levels;
+        int absoluteZoom = this.relativeZoomToAbsolute(tileCoord.getRelativeZoom());
+        int ancestorZoom = this.relativeZoomToAbsolute(ancestorRelativeZoom);
+        if (!this.projection.isQuadTreeAncestor(ancestorZoom, absoluteZoom)) return null;
+        return new FlatTileRelCoord(tileCoord.getX() >> levels, tileCoord.getY() >> levels, ancestorRelativeZoom);
+    }
+
+    /**
+     * @param tileCoord Tile coordinate
+     * @return The four tiles one zoom level below that make up the given one, or {@code null} if the zoom
+     *         level isn't available or doesn't line up
+     */
+    @Nullable
+    public final FlatTileRelCoord[] getChildren(FlatTileRelCoord tileCoord) {
+        int childRelativeZoom = tileCoord.getRelativeZoom() + 1;
+        int absoluteZoom = this.relativeZoomToAbsolute(tileCoord.getRelativeZoom());
+        int childZoom = this.relativeZoomToAbsolute(childRelativeZoom);
+        if (!this.projection.isQuadTreeAncestor(absoluteZoom, childZoom)) return null;
+
+        int x = tileCoord.getX() << 1, y = tileCoord.getY() << 1;
+        return new FlatTileRelCoord[] {
+                new FlatTileRelCoord(x, y, childRelativeZoom),
+                new FlatTileRelCoord(x + 1, y, childRelativeZoom),
+                new FlatTileRelCoord(x, y + 1, childRelativeZoom),
+                new FlatTileRelCoord(x + 1, y + 1, childRelativeZoom)
+        };
+    }
+
     public MatrixRow getCornerMatrixRow(int i) {
         return this.invertLatitude ^ this.flipVertically ? LAT_INVERTED_CORNER_MATRIX[i] : CORNER_MATRIX[i];
     }
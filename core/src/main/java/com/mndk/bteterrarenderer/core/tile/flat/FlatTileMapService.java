@@ -7,8 +7,10 @@ import com.mndk.bteterrarenderer.core.config.BTETerraRendererConfig;
 import com.mndk.bteterrarenderer.core.graphics.ImageTexturePair;
 import com.mndk.bteterrarenderer.core.graphics.PreBakedModel;
 import com.mndk.bteterrarenderer.core.network.HttpResourceManager;
+import com.mndk.bteterrarenderer.core.network.RequestPriority;
 import com.mndk.bteterrarenderer.core.tile.AbstractTileMapService;
 import com.mndk.bteterrarenderer.core.tile.TileMapServiceCommonProperties;
+import com.mndk.bteterrarenderer.dep.terraplusplus.http.Http;
 import com.mndk.bteterrarenderer.dep.terraplusplus.projection.OutOfProjectionBoundsException;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.*;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsQuad;
@@ -22,9 +24,12 @@ import com.mndk.bteterrarenderer.mcconnector.util.math.McCoordTransformer;
 import com.mndk.bteterrarenderer.util.Loggers;
 import com.mndk.bteterrarenderer.util.accessor.PropertyAccessor;
 import com.mndk.bteterrarenderer.util.concurrent.CacheStorage;
-import com.mndk.bteterrarenderer.util.concurrent.ManualThreadExecutor;
+import com.mndk.bteterrarenderer.util.concurrent.FrameBudgetScheduler;
+import com.mndk.bteterrarenderer.util.concurrent.FutureUtil;
 import com.mndk.bteterrarenderer.util.concurrent.MappedExecutors;
+import com.mndk.bteterrarenderer.util.image.ImageUtil;
 import com.mndk.bteterrarenderer.util.math.Interpolation;
+import io.netty.buffer.ByteBuf;
 import lombok.*;
 
 import javax.annotation.Nullable;
@@ -34,9 +39,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.Supplier;
+import java.util.function.DoubleSupplier;
 
 @Getter
 @JsonSerialize(using = FlatTileMapServiceSerializer.class)
@@ -49,8 +56,16 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
      */
     private static final double Y_EPSILON = 0.1;
     public static final int DEFAULT_ZOOM = 18;
+    /** How many zoom levels up to look for a baked tile to draw in place of a loading one */
+    private static final int MAX_SUBSTITUTE_LEVELS = 4;
+    /**
+     * The fraction of the cache's weight budget that the downloaded images may use, the rest going to the baked
+     * models. Every baked tile has its image cached as well, so they weigh about the same.
+     */
+    private static final double IMAGE_CACHE_SHARE = 0.5;
 
     private static final ImageTexturePair SOMETHING_WENT_WRONG, LOADING;
+    private static final ExecutorService IMAGE_DECODER = Executors.newCachedThreadPool();
 
     private transient int relativeZoom = 0;
     @Setter private transient int radius = 3;
@@ -63,20 +78,34 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
     private transient final MappedExecutors<Integer> imageFetcher;
     private transient final CacheStorage<FlatTileRelCoord, BufferedImage> imageCache;
     // This is to avoid quirky concurrent thingy
-    private transient final ManualThreadExecutor imageToPreModel;
+    private transient final FrameBudgetScheduler imageToPreModel;
+    private transient final FlatTilePrefetcher prefetcher;
+    /** Priorities of the prefetches in flight, so that they can be raised once the tiles come into view */
+    private transient final Map<FlatTileRelCoord, RequestPriority> prefetchPriorities = new ConcurrentHashMap<>();
 
     @Builder
     private FlatTileMapService(TileMapServiceCommonProperties properties,
                                FlatTileCoordTranslator coordTranslator,
                                FlatTileURLConverter urlConverter) {
-        super(properties);
+        super(properties, 1 - IMAGE_CACHE_SHARE);
         this.urlTemplate = properties.getTileUrl();
         this.coordTranslator = coordTranslator;
         this.urlConverter = urlConverter;
 
         this.imageFetcher = new MappedExecutors<>(Executors.newCachedThreadPool(), this.relativeZoom);
-        this.imageToPreModel = new ManualThreadExecutor();
-        this.imageCache = new CacheStorage<>(properties.getCacheConfig());
+        this.imageToPreModel = new FrameBudgetScheduler();
+        this.prefetcher = new FlatTilePrefetcher(
+                () -> BTETerraRendererConfig.PREFETCH.getLookaheadSeconds(),
+                () -> BTETerraRendererConfig.PREFETCH.getRequestsPerSecond()
+        );
+        CacheStorage.Config cacheConfig = properties.getCacheConfig();
+        this.imageCache = new CacheStorage<FlatTileRelCoord, BufferedImage>(
+                cacheConfig != null ? cacheConfig.withWeightShare(IMAGE_CACHE_SHARE) : null) {
+            @Override
+            protected long weigh(FlatTileRelCoord key, BufferedImage image) {
+                return (long) image.getWidth() * image.getHeight() * GraphicsModel.BYTES_PER_PIXEL;
+            }
+        };
     }
 
     private static float getFlatMapYAxis() {
@@ -91,7 +120,7 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
     @Override
     public McCoordTransformer getModelPositionTransformer() {
         float yAlign = (float) (getFlatMapYAxis() + Y_EPSILON);
-        return pos -> pos.add(new McCoord(0, yAlign, 0));
+        return McCoordTransformer.translate(0, yAlign, 0);
     }
 
     @Override
@@ -108,11 +137,51 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
 
     @Override
     protected void preRender(McCoord playerPos) {
-        this.imageToPreModel.process(2);
+        this.imageCache.cancelUnrequested(CANCEL_AFTER_FRAMES);
+        this.prefetch(playerPos);
+        this.imageToPreModel.process(this.getRemainingFrameBudgetNanos());
         SOMETHING_WENT_WRONG.bake();
         LOADING.bake();
     }
 
+    /**
+     * Warms the image cache with the tiles along the camera's predicted path, at a lower priority than the
+     * visible tiles. The images are only downloaded and decoded here; they're baked once the tiles come into view.
+     */
+    private void prefetch(McCoord cameraPos) {
+        this.prefetcher.update(cameraPos.getX(), cameraPos.getZ(), System.nanoTime());
+        if (this.coordTranslator == null || this.prefetcher.predictPath().isEmpty()) return;
+
+        double yDiff = getFlatMapYAxis() - cameraPos.getY();
+        if (Math.abs(yDiff) >= BTETerraRendererConfig.HOLOGRAM.getYDiffLimit()) return;
+
+        // The visible tiles are left to processModel, which requests them at a higher priority
+        Set<FlatTileRelCoord> visible = new HashSet<>();
+        for (Key key : this.getRenderTileIdList(cameraPos, 0, 0)) visible.add(key.relCoord);
+
+        this.prefetcher.prefetch(this.imageCache, visible, this::tilesAround, relCoord -> {
+            RequestPriority priority = new RequestPriority(RequestPriority.PREFETCH);
+            this.prefetchPriorities.put(relCoord, priority);
+            CompletableFuture<BufferedImage> future = this.fetchImage(relCoord, priority);
+            future.whenComplete((image, error) -> this.prefetchPriorities.remove(relCoord, priority));
+            return future;
+        });
+    }
+
+    private List<FlatTileRelCoord> tilesAround(double[] position) {
+        List<Key> keys = new ArrayList<>();
+        try {
+            double[] geo = this.getHologramProjection().toGeo(position[0], position[1]);
+            this.addDiamond(keys, this.coordTranslator.geoCoordToTileCoord(geo[0], geo[1], relativeZoom));
+        }
+        catch (OutOfProjectionBoundsException ignored) {}
+        catch (Exception e) { Loggers.get(this).warn("Caught exception while prefetching tile images", e); }
+
+        List<FlatTileRelCoord> result = new ArrayList<>(keys.size());
+        for (Key key : keys) result.add(key.relCoord);
+        return result;
+    }
+
     @Override
     public void moveAlongYAxis(double amount) {
         BTETerraRendererConfig.HOLOGRAM.flatMapYAxis += amount;
@@ -142,19 +211,7 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
             List<Key> result = new ArrayList<>();
             double[] geo = this.getHologramProjection().toGeo(cameraPos.getX(), cameraPos.getZ());
             int[] tileCoord = this.coordTranslator.geoCoordToTileCoord(geo[0], geo[1], relativeZoom);
-
-            // Diamond pattern
-            for (int i = 0; i < 2 * this.radius + 1; ++i) {
-                if (i == 0) {
-                    this.addTile(result, tileCoord, 0, 0);
-                }
-                for (int j = 0; j < i; ++j) {
-                    this.addTile(result, tileCoord, -j, j - i);
-                    this.addTile(result, tileCoord, j - i, +j);
-                    this.addTile(result, tileCoord, j, i - j);
-                    this.addTile(result, tileCoord, i - j, -j);
-                }
-            }
+            this.addDiamond(result, tileCoord);
             return result;
         }
         catch (OutOfProjectionBoundsException ignored) {}
@@ -162,6 +219,21 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
         return Collections.emptyList();
     }
 
+    private void addDiamond(List<Key> list, int[] tileCoord) {
+        // Diamond pattern
+        for (int i = 0; i < 2 * this.radius + 1; ++i) {
+            if (i == 0) {
+                this.addTile(list, tileCoord, 0, 0);
+            }
+            for (int j = 0; j < i; ++j) {
+                this.addTile(list, tileCoord, -j, j - i);
+                this.addTile(list, tileCoord, j - i, +j);
+                this.addTile(list, tileCoord, j, i - j);
+                this.addTile(list, tileCoord, i - j, -j);
+            }
+        }
+    }
+
     private void addTile(List<Key> list, int[] tileCoord, int dx, int dy) {
         if (Math.abs(dx) > radius || Math.abs(dy) > radius) return;
         // include current subdivision in tile key so shapes get rebuilt per subdivision change
@@ -177,15 +249,28 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
     }
 
     private GraphicsShapes computeTileQuad(Key tileKey) throws OutOfProjectionBoundsException {
+        return this.computeTileQuad(tileKey, tileKey.relCoord);
+    }
+
+    /**
+     * @param textureTile The tile whose texture is going to be drawn on the quad. If it's an ancestor of the
+     *                    tile, the texture coordinates are cropped to the part that covers the tile.
+     */
+    private GraphicsShapes computeTileQuad(Key tileKey, FlatTileRelCoord textureTile) throws OutOfProjectionBoundsException {
         // prepare for subdivision interpolation using cornerMatrix offsets
         FlatTileRelCoord relCoord = tileKey.relCoord;
+        int levels = Math.abs(relCoord.getRelativeZoom() - textureTile.getRelativeZoom());
+        int dx = relCoord.getX() - (textureTile.getX() << levels);
+        int dy = relCoord.getY() - (textureTile.getY() << levels);
+        double scale = 1.0 / (1 << levels);
 
         int[][] off = new int[4][2];
         double[] u = new double[4], v = new double[4];
         for (int i = 0; i < 4; i++) {
             FlatTileCoordTranslator.MatrixRow cm = coordTranslator.getCornerMatrixRow(i);
             off[i][0] = cm.getX(); off[i][1] = cm.getY();
-            u[i] = cm.getU(); v[i] = cm.getV();
+            double[] uv = this.textureCoordAt((dx + off[i][0]) * scale, (dy + off[i][1]) * scale);
+            u[i] = uv[0]; v[i] = uv[1];
         }
 
         int cells = 1 << tileKey.subdivisionLevel;
@@ -212,9 +297,26 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
             prevRowPosGrid = currRowPosGrid;
             currRowPosGrid = temp;
         }
+        shapes.trimToSize();
         return shapes;
     }
 
+    /**
+     * @param tx X offset within the texture's tile, from 0 to 1
+     * @param ty Y offset within the texture's tile, from 0 to 1
+     * @return The texture coordinate at the offset
+     */
+    private double[] textureCoordAt(double tx, double ty) {
+        double[] uv = new double[2];
+        for (int i = 0; i < 4; i++) {
+            FlatTileCoordTranslator.MatrixRow cm = coordTranslator.getCornerMatrixRow(i);
+            double weight = (cm.getX() == 1 ? tx : 1 - tx) * (cm.getY() == 1 ? ty : 1 - ty);
+            uv[0] += weight * cm.getU();
+            uv[1] += weight * cm.getV();
+        }
+        return uv;
+    }
+
     public boolean isRelativeZoomAvailable(int relativeZoom) {
         return this.coordTranslator != null && this.coordTranslator.isRelativeZoomAvailable(relativeZoom);
     }
@@ -223,30 +325,114 @@ public class FlatTileMapService extends AbstractTileMapService<FlatTileMapServic
     @Override
     protected CompletableFuture<List<PreBakedModel>> processModel(Key tileId) {
         FlatTileRelCoord relCoord = tileId.relCoord;
-        Executor executor = this.imageFetcher.getExecutor(relCoord.getRelativeZoom());
+        RequestPriority prefetched = this.prefetchPriorities.get(relCoord);
+        if (prefetched != null) prefetched.set(Http.DEFAULT_PRIORITY.getAsDouble());
 
-        String url = urlConverter.convertToUrl(this.urlTemplate, relCoord);
-        Supplier<BufferedImage> imageGetter = () -> {
-            try { return HttpResourceManager.downloadAsImage(url, this.getNThreads()).get(); }
-            catch (Exception e) { throw new RuntimeException("Failed to download image from " + url, e); }
-        };
-        BufferedImage img = imageCache.getOrCompute(relCoord, () -> CompletableFuture.supplyAsync(imageGetter, executor));
+        BufferedImage img = imageCache.getOrCompute(relCoord, () -> this.fetchImage(relCoord, Http.DEFAULT_PRIORITY));
         if (img == null) return null;
 
+        // Weighed by the number of cells the quad is subdivided into
         return CompletableFuture.supplyAsync(() -> {
             GraphicsShapes shapes;
             try { shapes = this.computeTileQuad(tileId); }
             catch (OutOfProjectionBoundsException e) { return Collections.emptyList(); }
             return Collections.singletonList(new PreBakedModel(img, shapes));
-        }, this.imageToPreModel);
+        }, this.imageToPreModel.withPriority(this.getRenderPriority(tileId), () -> 1 << (2 * tileId.subdivisionLevel)));
+    }
+
+    /**
+     * Downloads and decodes a tile image. Downloads of other zoom levels wait in {@link #imageFetcher} until
+     * the zoom is switched back, and cancelling the returned future cancels the download as well.
+     */
+    private CompletableFuture<BufferedImage> fetchImage(FlatTileRelCoord relCoord, DoubleSupplier priority) {
+        Executor executor = this.imageFetcher.getExecutor(relCoord.getRelativeZoom());
+        String url = urlConverter.convertToUrl(this.urlTemplate, relCoord);
+        CompletableFuture<BufferedImage> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (result.isDone()) return; // Cancelled while waiting for its zoom level
+            CompletableFuture<ByteBuf> download = HttpResourceManager.download(url, this.getNThreads(), priority);
+            FutureUtil.cancelUpstream(result, download);
+            download.whenComplete((buf, error) -> {
+                if (error != null) { result.completeExceptionally(new RuntimeException("Failed to download image from " + url, error)); return; }
+                if (buf == null) { result.completeExceptionally(new RuntimeException("Image not found: " + url)); return; }
+                // Not thenApplyAsync, since a skipped stage would never release the buffer
+                IMAGE_DECODER.execute(() -> {
+                    try {
+                        if (result.isDone()) return; // Cancelled
+                        result.complete(ImageUtil.bufferToImage(buf));
+                    }
+                    catch (Throwable t) { result.completeExceptionally(t); }
+                    finally { buf.release(); }
+                });
+            });
+        });
+        return result;
+    }
+
+    @Override
+    protected boolean isTextureAtlasEnabled() {
+        return true;
+    }
+
+    @Override
+    protected long getCancelledDownloadCount() {
+        return this.imageCache.getCancelledCount();
+    }
+
+    @Override
+    protected int getQueuedTaskCount() {
+        return this.imageToPreModel.getQueueDepth();
     }
 
     @Override
     public List<GraphicsModel> getLoadingModel(Key tileKey) throws OutOfProjectionBoundsException {
+        List<GraphicsModel> substitute = this.getSubstituteModels(tileKey);
+        if (substitute != null) return substitute;
+
         GraphicsShapes shapes = this.computeTileQuad(tileKey);
         return Collections.singletonList(new GraphicsModel(LOADING.getTextureObject(), shapes));
     }
 
+    /**
+     * Finds baked tiles of other zoom levels to draw while the tile is loading, so that changing the zoom
+     * doesn't flash the whole map with the loading texture. The tile's four children are used if they're
+     * all baked, and otherwise the nearest baked ancestor, cropped to the tile's area.
+     *
+     * @return The substitute models, or {@code null} if there are none
+     */
+    @Nullable
+    private List<GraphicsModel> getSubstituteModels(Key tileKey) throws OutOfProjectionBoundsException {
+        FlatTileRelCoord[] children = this.coordTranslator.getChildren(tileKey.relCoord);
+        if (children != null) {
+            List<GraphicsModel> result = new ArrayList<>();
+            boolean complete = true;
+            for (FlatTileRelCoord child : children) {
+                if (!this.coordTranslator.isTileCoordInBounds(child)) continue;
+                List<GraphicsModel> models = this.getResidentModels(new Key(child, tileKey.subdivisionLevel));
+                if (models == null) { complete = false; break; }
+                result.addAll(models);
+            }
+            if (complete && !result.isEmpty()) return result;
+        }
+
+        for (int levels = 1; levels <= MAX_SUBSTITUTE_LEVELS; levels++) {
+            FlatTileRelCoord ancestor = this.coordTranslator.getAncestor(tileKey.relCoord, levels);
+            if (ancestor == null) break;
+            List<GraphicsModel> models = this.getResidentModels(new Key(ancestor, tileKey.subdivisionLevel));
+            if (models == null || models.isEmpty()) continue;
+
+            List<GraphicsModel> result = new ArrayList<>(models.size());
+            for (GraphicsModel model : models) {
+                GraphicsShapes shapes = this.computeTileQuad(tileKey, ancestor);
+                TextureAtlas.Slot slot = this.getAtlasSlot(model);
+                if (slot != null) slot.mapTextureCoords(shapes);
+                result.add(new GraphicsModel(model.getTextureObject(), shapes));
+            }
+            return result;
+        }
+        return null;
+    }
+
     @Override
     public List<GraphicsModel> getErrorModel(Key tileKey) throws OutOfProjectionBoundsException {
         GraphicsShapes shapes = this.computeTileQuad(tileKey);
@@ -0,0 +1,140 @@
+package com.mndk.bteterrarenderer.core.tile.flat;
+
+import com.mndk.bteterrarenderer.util.concurrent.CacheStorage;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * Tracks the camera's horizontal velocity across frames to predict where it's heading, and limits how many
+ * tiles per second may be fetched ahead of time for the predicted path.
+ */
+public class FlatTilePrefetcher {
+
+    /** How far apart in time the predicted positions are */
+    static final double SAMPLE_INTERVAL_SECONDS = 0.25;
+    /** Time constant of the velocity smoothing, so that a single jittery frame doesn't swing the prediction */
+    private static final double SMOOTHING_SECONDS = 0.2;
+    /** Moving faster than this (in blocks per second) is treated as a teleport, and resets the velocity */
+    private static final double TELEPORT_SPEED = 1000;
+    /** Below this speed (in blocks per second) the camera is considered to be standing still */
+    private static final double MIN_SPEED = 1;
+
+    private final DoubleSupplier lookaheadSeconds;
+    private final DoubleSupplier requestsPerSecond;
+
+    private boolean hasPosition = false;
+    private double lastX, lastZ;
+    private long lastNanoTime;
+    @Getter private double velocityX, velocityZ;
+    private double tokens;
+
+    /**
+     * @param lookaheadSeconds  Supplies how far ahead in time to predict the camera's path. 0 disables prefetching
+     * @param requestsPerSecond Supplies the maximum number of prefetches started per second
+     */
+    public FlatTilePrefetcher(DoubleSupplier lookaheadSeconds, DoubleSupplier requestsPerSecond) {
+        this.lookaheadSeconds = lookaheadSeconds;
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * Updates the velocity and refills the request budget. Meant to be called once per frame.
+     *
+     * @param x        Camera X
+     * @param z        Camera Z
+     * @param nanoTime Time of the frame, from {@link System#nanoTime()}
+     */
+    public void update(double x, double z, long nanoTime) {
+        if (!this.hasPosition) {
+            this.hasPosition = true;
+            this.moveTo(x, z, nanoTime);
+            return;
+        }
+        double dt = (nanoTime - this.lastNanoTime) / 1e9;
+        if (dt <= 0) return;
+
+        double rate = this.requestsPerSecond.getAsDouble();
+        this.tokens = Math.min(Math.max(rate, 1), this.tokens + rate * dt);
+
+        double vx = (x - this.lastX) / dt, vz = (z - this.lastZ) / dt;
+        if (vx * vx + vz * vz > TELEPORT_SPEED * TELEPORT_SPEED) {
+            this.velocityX = this.velocityZ = 0;
+        } else {
+            double alpha = 1 - Math.exp(-dt / SMOOTHING_SECONDS);
+            this.velocityX += alpha * (vx - this.velocityX);
+            this.velocityZ += alpha * (vz - this.velocityZ);
+        }
+        this.moveTo(x, z, nanoTime);
+    }
+
+    private void moveTo(double x, double z, long nanoTime) {
+        this.lastX = x;
+        this.lastZ = z;
+        this.lastNanoTime = nanoTime;
+    }
+
+    /**
+     * @return The predicted camera positions as {@code {x, z}} pairs, one every {@link #SAMPLE_INTERVAL_SECONDS}
+     *         up to the lookahead time, nearest first. Empty if the camera is standing still.
+     */
+    public List<double[]> predictPath() {
+        double lookahead = this.lookaheadSeconds.getAsDouble();
+        double speedSquared = this.velocityX * this.velocityX + this.velocityZ * this.velocityZ;
+        if (!this.hasPosition || lookahead <= 0 || speedSquared < MIN_SPEED * MIN_SPEED) {
+            return Collections.emptyList();
+        }
+
+        int samples = (int) Math.ceil(lookahead / SAMPLE_INTERVAL_SECONDS);
+        List<double[]> path = new ArrayList<>(samples);
+        for (int i = 1; i <= samples; i++) {
+            double t = Math.min(i * SAMPLE_INTERVAL_SECONDS, lookahead);
+            path.add(new double[] { this.lastX + this.velocityX * t, this.lastZ + this.velocityZ * t });
+        }
+        return path;
+    }
+
+    /**
+     * Requests the tiles around the predicted path from the cache, nearest first. New computations are only
+     * started while there's budget left, but the tiles that are already being fetched are requested every time,
+     * so that {@link CacheStorage#cancelUnrequested} doesn't cancel them before they come into view.
+     * Meant to be called once per frame, after {@link #update}.
+     *
+     * @param cache   The cache to warm
+     * @param skipped Keys to leave alone, e.g. the visible ones. Every requested key is added to it
+     * @param tilesAt Maps a predicted {@code {x, z}} position to the keys of the tiles around it, nearest first
+     * @param fetch   Starts the computation of a key's value
+     */
+    public <K, V> void prefetch(CacheStorage<K, V> cache, Set<K> skipped,
+                                Function<double[], List<K>> tilesAt, Function<K, CompletableFuture<V>> fetch) {
+        for (double[] position : this.predictPath()) {
+            for (K key : tilesAt.apply(position)) {
+                if (!skipped.add(key) || cache.getIfPresent(key) != null) continue;
+                // The supplier is only called if the value isn't being computed already
+                cache.getOrCompute(key, () -> this.tryAcquire() ? fetch.apply(key) : null);
+            }
+        }
+    }
+
+    /**
+     * Takes one request from the budget.
+     *
+     * @return {@code false} if the budget for now has been used up
+     */
+    public boolean tryAcquire() {
+        if (this.tokens < 1) return false;
+        this.tokens--;
+        return true;
+    }
+
+    /** @return Whether {@link #tryAcquire()} would succeed */
+    public boolean hasBudget() {
+        return this.tokens >= 1;
+    }
+}
@@ -13,4 +13,11 @@ public interface FlatTileProjection {
     double[] toGeoCoord(double tileX, double tileY, int absoluteZoom) throws OutOfProjectionBoundsException;
     boolean isAbsoluteZoomAvailable(int absoluteZoom);
     boolean isTileCoordInBounds(int tileX, int tileY, int absoluteZoom);
+
+    /**
+     * @return Whether the tile grid at {@code absoluteZoom} is the one at {@code ancestorZoom} split into quarters
+     *         once per zoom level in between, i.e. whether tile {@code (x, y)} lies within tile
+     *         {@code (x >> n, y >> n)} of the ancestor zoom, {@code n} being the number of levels in between
+     */
+    boolean isQuadTreeAncestor(int ancestorZoom, int absoluteZoom);
 }
@@ -82,6 +82,25 @@ public class FlatTileProjectionImpl implements FlatTileProjection {
                 && (matrix.rangeY == null || (tileY >= matrix.rangeY[0] && tileY <= matrix.rangeY[1]));
     }
 
+    @Override
+    public boolean isQuadTreeAncestor(int ancestorZoom, int absoluteZoom) {
+        int levels = Math.abs(absoluteZoom - ancestorZoom);
+        if (levels == 0 || levels >= 31) return false;
+        TileMatrix ancestor = this.matrices.get(ancestorZoom), matrix = this.matrices.get(absoluteZoom);
+        if (ancestor == null || matrix == null) return false;
+
+        int scale = 1 << levels;
+        for (int i = 0; i < 2; i++) {
+            if (!nearlyEquals(ancestor.pointOfOrigin[i], matrix.pointOfOrigin[i], ancestor.actualTileSize[i])) return false;
+            if (!nearlyEquals(ancestor.actualTileSize[i], matrix.actualTileSize[i] * scale, ancestor.actualTileSize[i])) return false;
+        }
+        return true;
+    }
+
+    private static boolean nearlyEquals(double a, double b, double tileSize) {
+        return Math.abs(a - b) <= Math.abs(tileSize) * 1e-6;
+    }
+
     @JsonSerialize
     @JsonDeserialize
     public static class TileMatrix {
@@ -22,7 +22,7 @@ public class FlatTileURLConverter {
 
     private String convert(String template, int tileX, int tileY, int absoluteZoom) {
         String resolvedApiKey = apiKey == null ? "" : apiKey;
-        return replaceRandoms(template)
+        return replaceRandoms(template, tileX, tileY, absoluteZoom)
                 .replace("{z}", String.valueOf(absoluteZoom))
                 .replace("{x}", String.valueOf(tileX))
                 .replace("{y}", String.valueOf(tileY))
@@ -30,10 +30,15 @@ public class FlatTileURLConverter {
                 .replace("{api_key}", resolvedApiKey);
     }
 
-    private static String replaceRandoms(String url) {
+    /**
+     * Picks one of the choices for each {@code {random:...}} placeholder. The picks are seeded by the tile, so that a tile
+     * always resolves to the same URL, which lets it hit the cache and share in-flight requests.
+     */
+    private static String replaceRandoms(String url, int tileX, int tileY, int absoluteZoom) {
         Matcher m = RANDOM_PATTERN.matcher(url);
         StringBuffer buffer = new StringBuffer();
-        Random r = new Random();
+        // Scramble the seed, as the first values of Randoms with nearby seeds are close to each other
+        Random r = new Random(((31L * tileX + tileY) * 31L + absoluteZoom) * 0x9E3779B97F4A7C15L);
         while (m.find()) {
             String[] randoms = m.group(1).split(",");
             m.appendReplacement(buffer, randoms[r.nextInt(randoms.length)]);
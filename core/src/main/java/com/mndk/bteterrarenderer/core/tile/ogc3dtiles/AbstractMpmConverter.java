@@ -4,28 +4,15 @@ import com.mndk.bteterrarenderer.core.graphics.PreBakedModel;
 import com.mndk.bteterrarenderer.dep.terraplusplus.projection.GeographicProjection;
 import com.mndk.bteterrarenderer.dep.terraplusplus.projection.OutOfProjectionBoundsException;
 import com.mndk.bteterrarenderer.mcconnector.util.math.McCoord;
-import com.mndk.bteterrarenderer.ogc3dtiles.math.Spheroid3;
 import com.mndk.bteterrarenderer.ogc3dtiles.math.SpheroidCoordinatesConverter;
-import com.mndk.bteterrarenderer.util.IOUtil;
-import com.mndk.bteterrarenderer.util.Loggers;
-import de.javagl.jgltf.model.ImageModel;
 import de.javagl.jgltf.model.MaterialModel;
-import de.javagl.jgltf.model.TextureModel;
-import de.javagl.jgltf.model.v1.MaterialModelV1;
-import de.javagl.jgltf.model.v2.MaterialModelV2;
 import lombok.RequiredArgsConstructor;
-import org.joml.Matrix3d;
 import org.joml.Matrix4d;
 import org.joml.Vector2f;
 import org.joml.Vector3d;
 
 import javax.annotation.Nullable;
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.ByteBuffer;
 
 @RequiredArgsConstructor
 public abstract class AbstractMpmConverter {
@@ -33,61 +20,69 @@ public abstract class AbstractMpmConverter {
     private final Matrix4d transform;
     private final GeographicProjection projection;
     private final SpheroidCoordinatesConverter coordConverter;
+    private final GltfImageCache imageCache;
 
     protected abstract PreBakedModel convert() throws Exception;
 
-    private McCoord transformEarthCoordToGame(Vector3d earthCartesian) throws OutOfProjectionBoundsException {
-        Vector3d transformed = this.transform.transformPosition(earthCartesian, new Vector3d());
+    /**
+     * Converts the points of a whole mesh to the game coordinates. The geoid heights and the projection
+     * are both computed for the whole mesh at once.
+     * @param positions Earth-centered positions, in {x0, y0, z0, x1, y1, z1, ...}
+     * @param normals Normals in the same layout as {@code positions}, or {@code null} if the mesh has none
+     * @param tex Texture coordinates of each point
+     * @param count The number of points
+     */
+    ParsedPoint[] toParsedPoints(double[] positions, @Nullable double[] normals, Vector2f[] tex, int count)
+            throws OutOfProjectionBoundsException {
+        // Normals are projected as the points at the tips of the normals, placed right after the positions
+        int projectedCount = normals != null ? count * 2 : count;
+        double[] cartesian = new double[projectedCount * 3];
 
-        Spheroid3 s3 = coordConverter.toSpheroid(transformed);
-        double[] posXY = this.projection.fromGeo(s3.getLongitudeDegrees(), s3.getLatitudeDegrees());
-        return new McCoord(posXY[0], (float) s3.getHeight(), posXY[1]);
-    }
-
-    ParsedPoint toParsedPoint(
-            Vector3d pos, @Nullable Matrix4d posTransform,
-            @Nullable Vector3d normal, @Nullable Matrix3d normalTransform,
-            @Nullable Vector2f tex
-    ) throws OutOfProjectionBoundsException {
-        if (posTransform != null) pos = posTransform.transformPosition(pos, new Vector3d());
-        McCoord gamePos = this.transformEarthCoordToGame(pos);
+        Vector3d vector = new Vector3d();
+        for (int i = 0; i < count; i++) {
+            vector.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            putVector(cartesian, i, this.transform.transformPosition(vector));
+            if (normals == null) continue;
 
-        McCoord gameNormal = null;
-        if (normal != null) {
-            if (normalTransform != null) normal = normalTransform.transform(normal, new Vector3d());
-            gameNormal = this.transformEarthCoordToGame(pos.add(normal, new Vector3d())).subtract(gamePos).normalized();
+            vector.set(positions[i * 3] + normals[i * 3],
+                    positions[i * 3 + 1] + normals[i * 3 + 1],
+                    positions[i * 3 + 2] + normals[i * 3 + 2]);
+            putVector(cartesian, count + i, this.transform.transformPosition(vector));
         }
 
-        return new ParsedPoint(gamePos, tex, gameNormal);
-    }
-
-    public static BufferedImage readMaterialModel(MaterialModel materialModel) {
-        BufferedImage image = null;
-        if (materialModel instanceof MaterialModelV1) {
-            throw new UnsupportedOperationException("material model v1 not supported");
-        } else if (materialModel instanceof MaterialModelV2) {
-            MaterialModelV2 materialModelV2 = (MaterialModelV2) materialModel;
+        double[] geo = new double[projectedCount * 2];
+        double[] heights = new double[projectedCount];
+        this.coordConverter.toSpheroid(cartesian, geo, heights, projectedCount);
+        this.projection.fromGeo(geo, geo, projectedCount);
 
-            TextureModel textureModel = materialModelV2.getBaseColorTexture();
-            if (textureModel != null) image = readImageModel(textureModel.getImageModel());
-            // TODO: read mag/minFilter, wrapS/T from texture
-            // TODO: read emissive, normal, occlusion, and roughness texture from material
+        ParsedPoint[] points = new ParsedPoint[count];
+        for (int i = 0; i < count; i++) {
+            McCoord gamePos = new McCoord(geo[i * 2], (float) heights[i], geo[i * 2 + 1]);
+            McCoord gameNormal = null;
+            if (normals != null) {
+                int j = count + i;
+                gameNormal = new McCoord(geo[j * 2], (float) heights[j], geo[j * 2 + 1]).subtract(gamePos).normalized();
+            }
+            points[i] = new ParsedPoint(gamePos, tex[i], gameNormal);
         }
-        return image;
+        return points;
     }
 
-    public static BufferedImage readImageModel(ImageModel imageModel) {
-        try {
-            ByteBuffer byteBuffer = imageModel.getImageData();
-            byte[] data = IOUtil.readAllBytes(byteBuffer);
-            InputStream stream = new ByteArrayInputStream(data);
+    static void putVector(double[] array, int index, Vector3d vector) {
+        array[index * 3] = vector.x;
+        array[index * 3 + 1] = vector.y;
+        array[index * 3 + 2] = vector.z;
+    }
 
-            // TODO: Add compressedImage3DTiles extension
+    static void putVector(double[] array, int index, float[] vector) {
+        array[index * 3] = vector[0];
+        array[index * 3 + 1] = vector[1];
+        array[index * 3 + 2] = vector[2];
+    }
 
-            return ImageIO.read(stream);
-        } catch (IOException e) {
-            Loggers.get().error("Could not read image model", e);
-            return null;
-        }
+    /** @return The base color texture of the material, shared with the other primitives of the same model */
+    @Nullable
+    protected BufferedImage readMaterialModel(@Nullable MaterialModel materialModel) {
+        return this.imageCache.readMaterialModel(materialModel);
     }
 }
@@ -28,8 +28,9 @@ class DefaultMpmConverter extends AbstractMpmConverter {
 
     @Builder
     private DefaultMpmConverter(Matrix4d transform, GeographicProjection projection,
-                                SpheroidCoordinatesConverter coordConverter, MeshPrimitiveModel meshPrimitiveModel) {
-        super(transform, projection, coordConverter);
+                                SpheroidCoordinatesConverter coordConverter, GltfImageCache imageCache,
+                                MeshPrimitiveModel meshPrimitiveModel) {
+        super(transform, projection, coordConverter, imageCache);
         this.meshPrimitiveModel = meshPrimitiveModel;
     }
 
@@ -57,14 +58,19 @@ class DefaultMpmConverter extends AbstractMpmConverter {
         }
 
         int numPoints = positionAccessor.getCount();
-        ParsedPoint[] parsedPoints = new ParsedPoint[numPoints];
+        double[] positions = new double[numPoints * 3];
+        double[] normals = normalAccessor == null ? null : new double[numPoints * 3];
+        Vector2f[] tex = new Vector2f[numPoints];
         for (int i = 0; i < numPoints; i++) {
             Vector3d position = readVector3d(positionAccessor, i);
-            Vector3d normal = normalAccessor == null ? null : readVector3d(normalAccessor, i);
-            Vector2f tex = readTextureCoord(textureCoordAccessor, i);
-            parsedPoints[i] = this.toParsedPoint(position, positionTransform, normal, normalTransform, tex);
+            putVector(positions, i, positionTransform.transformPosition(position));
+            if (normals != null) {
+                Vector3d normal = readVector3d(normalAccessor, i);
+                putVector(normals, i, normalTransform.transform(normal));
+            }
+            tex[i] = readTextureCoord(textureCoordAccessor, i);
         }
-        return parsedPoints;
+        return this.toParsedPoints(positions, normals, tex, numPoints);
     }
 
     /**
@@ -100,6 +106,7 @@ class DefaultMpmConverter extends AbstractMpmConverter {
             Loggers.get().warn("meshMode not supported: {}", meshMode);
         }
 
+        shapes.trimToSize();
         return shapes;
     }
 
@@ -20,7 +20,6 @@ import de.javagl.jgltf.model.MeshPrimitiveModel;
 import lombok.Builder;
 import org.joml.Matrix4d;
 import org.joml.Vector2f;
-import org.joml.Vector3d;
 
 import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
@@ -36,9 +35,10 @@ public class DracoCompressedMpmConverter extends AbstractMpmConverter {
 
     @Builder
     private DracoCompressedMpmConverter(Matrix4d transform, GeographicProjection projection,
-                                        SpheroidCoordinatesConverter coordConverter, MeshPrimitiveModel meshPrimitiveModel,
+                                        SpheroidCoordinatesConverter coordConverter, GltfImageCache imageCache,
+                                        MeshPrimitiveModel meshPrimitiveModel,
                                         List<BufferViewModel> topLevelBufferViewModels, DracoMeshCompression extension) {
-        super(transform, projection, coordConverter);
+        super(transform, projection, coordConverter, imageCache);
         this.meshPrimitiveModel = meshPrimitiveModel;
         this.bufferViewModel = topLevelBufferViewModels.get(extension.getBufferView());
         this.attributeMapping = extension.getAttributes();
@@ -65,26 +65,25 @@ public class DracoCompressedMpmConverter extends AbstractMpmConverter {
         float[] texArray = new float[2];
 
         int numPoints = mesh.getNumPoints();
-        ParsedPoint[] parsedPoints = new ParsedPoint[numPoints];
+        double[] positions = new double[numPoints * 3];
+        double[] normals = normalAttribute == null ? null : new double[numPoints * 3];
+        Vector2f[] tex = new Vector2f[numPoints];
         for (PointIndex pointIndex : PointIndex.range(0, numPoints)) {
+            int i = pointIndex.getValue();
             positionAttribute.getMappedValue(pointIndex, Pointer.wrap(posArray));
-            Vector3d position = new Vector3d(posArray);
+            putVector(positions, i, posArray);
 
-            Vector3d normal = null;
-            if (normalAttribute != null) {
+            if (normals != null) {
                 normalAttribute.getMappedValue(pointIndex, Pointer.wrap(normArray));
-                normal = new Vector3d(normArray);
+                putVector(normals, i, normArray);
             }
 
-            Vector2f tex = null;
             if (texAttribute != null) {
                 texAttribute.getMappedValue(pointIndex, Pointer.wrap(texArray));
-                tex = new Vector2f(texArray);
+                tex[i] = new Vector2f(texArray);
             }
-
-            parsedPoints[pointIndex.getValue()] = this.toParsedPoint(position, null, normal, null, tex);
         }
-        return parsedPoints;
+        return this.toParsedPoints(positions, normals, tex, numPoints);
     }
 
     private static GraphicsShapes parsedPointsToShapes(Mesh mesh, ParsedPoint[] points) {
@@ -97,6 +96,7 @@ public class DracoCompressedMpmConverter extends AbstractMpmConverter {
             ParsedTriangle triangle = new ParsedTriangle(point0, point1, point2);
             shapes.add(DrawingFormat.TRI_PTN, triangle.toGraphics());
         }
+        shapes.trimToSize();
         return shapes;
     }
 
@@ -0,0 +1,77 @@
+package com.mndk.bteterrarenderer.core.tile.ogc3dtiles;
+
+import com.mndk.bteterrarenderer.util.IOUtil;
+import com.mndk.bteterrarenderer.util.Loggers;
+import com.mndk.bteterrarenderer.util.image.ImageDecoder;
+import de.javagl.jgltf.model.ImageModel;
+import de.javagl.jgltf.model.MaterialModel;
+import de.javagl.jgltf.model.TextureModel;
+import de.javagl.jgltf.model.v1.MaterialModelV1;
+import de.javagl.jgltf.model.v2.MaterialModelV2;
+import io.netty.buffer.Unpooled;
+
+import javax.annotation.Nullable;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Decodes the images of a glTF model, once per distinct image. Images that are referenced by several
+ * materials, or that are stored more than once with the same content, all come out as the same
+ * {@link BufferedImage} instance, so that the models using them can be merged and share one texture.<br>
+ * Meant to be used for a single model by a single thread.
+ */
+class GltfImageCache {
+
+    private final Map<ImageModel, BufferedImage> byImageModel = new IdentityHashMap<>();
+    /** Keyed by the SHA-256 digest of the encoded image */
+    private final Map<ByteBuffer, BufferedImage> byContent = new HashMap<>();
+
+    @Nullable
+    public BufferedImage readMaterialModel(@Nullable MaterialModel materialModel) {
+        BufferedImage image = null;
+        if (materialModel instanceof MaterialModelV1) {
+            throw new UnsupportedOperationException("material model v1 not supported");
+        } else if (materialModel instanceof MaterialModelV2) {
+            MaterialModelV2 materialModelV2 = (MaterialModelV2) materialModel;
+
+            TextureModel textureModel = materialModelV2.getBaseColorTexture();
+            if (textureModel != null) image = this.readImageModel(textureModel.getImageModel());
+            // TODO: read mag/minFilter, wrapS/T from texture
+            // TODO: read emissive, normal, occlusion, and roughness texture from material
+        }
+        return image;
+    }
+
+    @Nullable
+    public BufferedImage readImageModel(ImageModel imageModel) {
+        if (this.byImageModel.containsKey(imageModel)) return this.byImageModel.get(imageModel);
+
+        byte[] data = IOUtil.readAllBytes(imageModel.getImageData());
+        ByteBuffer digest = ByteBuffer.wrap(digest(data));
+        BufferedImage image;
+        if (this.byContent.containsKey(digest)) {
+            image = this.byContent.get(digest);
+        } else {
+            // TODO: Add compressedImage3DTiles extension
+            try { image = ImageDecoder.decodeImage(Unpooled.wrappedBuffer(data)); }
+            catch (IOException e) {
+                Loggers.get(this).error("Could not read image model", e);
+                image = null;
+            }
+            this.byContent.put(digest, image);
+        }
+        this.byImageModel.put(imageModel, image);
+        return image;
+    }
+
+    private static byte[] digest(byte[] data) {
+        try { return MessageDigest.getInstance("SHA-256").digest(data); }
+        catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+    }
+}
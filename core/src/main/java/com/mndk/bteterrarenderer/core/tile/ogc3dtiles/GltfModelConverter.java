@@ -30,6 +30,7 @@ public class GltfModelConverter {
     private final GeographicProjection projection;
     private final SpheroidCoordinatesConverter coordConverter;
     private final List<PreBakedModel> models = new ArrayList<>();
+    private final GltfImageCache imageCache = new GltfImageCache();
 
     public static List<PreBakedModel> convertModel(GltfModel model, Matrix4d transform,
                                                    GeographicProjection projection,
@@ -49,7 +50,8 @@ public class GltfModelConverter {
         for (SceneModel scene : this.topLevelModel.getSceneModels()) {
             this.convertSceneModel(scene, transform);
         }
-        return models;
+        // Photogrammetry tiles tend to have many small primitives sharing a few textures
+        return PreBakedModel.mergeByImage(models);
     }
 
     private void convertSceneModel(SceneModel sceneModel, Matrix4d transform) {
@@ -113,6 +115,7 @@ public class GltfModelConverter {
                     .transform(transform)
                     .projection(projection)
                     .coordConverter(coordConverter)
+                    .imageCache(imageCache)
                     .meshPrimitiveModel(meshPrimitiveModel)
                     .topLevelBufferViewModels(bufferViewModels)
                     .extension(draco)
@@ -122,6 +125,7 @@ public class GltfModelConverter {
                     .transform(transform)
                     .projection(projection)
                     .coordConverter(coordConverter)
+                    .imageCache(imageCache)
                     .meshPrimitiveModel(meshPrimitiveModel)
                     .build();
         }
@@ -1,16 +1,20 @@
 package com.mndk.bteterrarenderer.core.tile.ogc3dtiles;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.mndk.bteterrarenderer.BTETerraRenderer;
 import com.mndk.bteterrarenderer.core.config.BTETerraRendererConfig;
 import com.mndk.bteterrarenderer.core.graphics.ImageTexturePair;
 import com.mndk.bteterrarenderer.core.graphics.PreBakedModel;
+import com.mndk.bteterrarenderer.core.graphics.PreBakedModelCache;
 import com.mndk.bteterrarenderer.core.network.HttpResourceManager;
+import com.mndk.bteterrarenderer.core.network.RequestPriority;
 import com.mndk.bteterrarenderer.core.tile.AbstractTileMapService;
 import com.mndk.bteterrarenderer.core.tile.TileMapServiceCommonProperties;
-import com.mndk.bteterrarenderer.core.tile.ogc3dtiles.key.LocalTileNode;
 import com.mndk.bteterrarenderer.core.tile.ogc3dtiles.key.TileLocalKey;
 import com.mndk.bteterrarenderer.util.concurrent.CacheStorage;
+import com.mndk.bteterrarenderer.util.concurrent.FutureUtil;
 import com.mndk.bteterrarenderer.dep.terraplusplus.projection.GeographicProjection;
 import com.mndk.bteterrarenderer.dep.terraplusplus.projection.OutOfProjectionBoundsException;
 import com.mndk.bteterrarenderer.mcconnector.McConnector;
@@ -31,14 +35,12 @@ import com.mndk.bteterrarenderer.ogc3dtiles.TileResourceManager;
 import com.mndk.bteterrarenderer.ogc3dtiles.math.Spheroid3;
 import com.mndk.bteterrarenderer.ogc3dtiles.math.SpheroidCoordinatesConverter;
 import com.mndk.bteterrarenderer.ogc3dtiles.math.SpheroidFrustum;
-import com.mndk.bteterrarenderer.ogc3dtiles.tile.TileContentLink;
 import com.mndk.bteterrarenderer.ogc3dtiles.tile.Tileset;
 import com.mndk.bteterrarenderer.util.Loggers;
 import com.mndk.bteterrarenderer.util.accessor.PropertyAccessor;
 import de.javagl.jgltf.model.GltfModel;
-import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBuf;
 import lombok.*;
-import org.apache.commons.lang3.tuple.Pair;
 import org.joml.Matrix4d;
 import org.joml.Vector3d;
 
@@ -49,8 +51,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Getter
 @JsonSerialize(using = Ogc3dTileMapServiceSerializer.class)
@@ -80,7 +84,9 @@ public class Ogc3dTileMapService extends AbstractTileMapService<Ogc3dTileMapServ
     private final String geoidType;
 
     private transient final ExecutorService tileFetcher;
-    private transient final CacheStorage<Key, Pair<Matrix4d, TileData>> tileDataStorage;
+    private transient final CacheStorage<Key, LoadedTile> tileDataStorage;
+    /** Priorities of the tiles that are still being downloaded, updated on every traversal */
+    private transient final Map<Key, RequestPriority> requestPriorities = new ConcurrentHashMap<>();
     private transient final Map<String, Integer> copyrightOccurrences = new HashMap<>();
     private transient final McFXVerticalList hudList = McFX.vList(0, 0);
 
@@ -102,8 +108,8 @@ public class Ogc3dTileMapService extends AbstractTileMapService<Ogc3dTileMapServ
     public McCoordTransformer getModelPositionTransformer() {
         float yAlign = (float) BTETerraRendererConfig.HOLOGRAM.getYAlign();
         return this.yDistortion
-                ? (pos -> new McCoord(pos.getX(), (float) (pos.getY() * this.yDistMagnitude + yAlign), pos.getZ()))
-                : (pos -> pos.add(new McCoord(0, yAlign, 0)));
+                ? McCoordTransformer.scaleYAndTranslate(this.yDistMagnitude, 0, yAlign, 0)
+                : McCoordTransformer.translate(0, yAlign, 0);
     }
 
     @Override
@@ -134,6 +140,7 @@ public class Ogc3dTileMapService extends AbstractTileMapService<Ogc3dTileMapServ
 
     @Override
     protected void preRender(McCoord playerPos) {
+        this.tileDataStorage.cancelUnrequested(CANCEL_AFTER_FRAMES);
         WHITE_TEXTURE.bake();
         GeographicProjection projection = this.getHologramProjection();
         try {
@@ -243,88 +250,111 @@ public class Ogc3dTileMapService extends AbstractTileMapService<Ogc3dTileMapServ
     @Nullable
     private Tileset getRootTileset() {
         Key key = Key.ROOT;
-        Pair<Matrix4d, TileData> pair = this.downloadModel(key, new Matrix4d(), this.rootTilesetUrl);
-        if (pair == null) return null;
+        LoadedTile tile = this.downloadModel(key, new Matrix4d(), this.rootTilesetUrl, 0);
+        if (tile == null) return null;
 
-        TileData tileData = pair.getRight();
+        TileData tileData = tile.getData();
         if (tileData instanceof Tileset) return (Tileset) tileData;
         Loggers.get(this).warn("Root tile url is not a tile set");
         return null;
     }
 
     public List<Key> getIdListRecursively(SpheroidFrustum frustum) {
-        List<Key> result = new ArrayList<>();
-
-        Stack<Ogc3dTilesetBfsNode> nodes = new Stack<>();
         Tileset rootTileset = this.getRootTileset();
         if (rootTileset == null) return Collections.emptyList();
-        nodes.add(Ogc3dTilesetBfsNode.fromRoot(this, rootTileset, this.rootTilesetUrl));
-        this.copyrightOccurrences.clear();
-
-        while (!nodes.isEmpty()) {
-
-            // Get intersections from the current tileset
-            Ogc3dTilesetBfsNode node = nodes.pop();
-            List<LocalTileNode> intersections = node.selectIntersections(frustum);
-
-            for (LocalTileNode localTileNode : intersections) {
-                TileContentLink contentLink = localTileNode.getContentLink();
-                Matrix4d currentTransform = localTileNode.getTransform();
 
-                // Skip if the url is malformed
-                URL currentUrl;
-                try { currentUrl = contentLink.getTrueUrl(node.getParentUrl()); }
-                catch (MalformedURLException e) {
-                    Loggers.get(this).warn("Malformed URL: {} (parent: {})", contentLink, node.getParentUrl());
-                    continue;
-                }
-
-                TileLocalKey[] currentKeys = node.attachKey(localTileNode);
-                Key currentKey = new Key(currentKeys);
-
-                // Get data from cache
-                Pair<Matrix4d, TileData> parsedData = this.downloadModel(currentKey, currentTransform, currentUrl);
-                if (parsedData == null) continue;
+        // Tiles that are still in view get their priority back during the traversal
+        for (RequestPriority priority : this.requestPriorities.values()) {
+            priority.set(RequestPriority.UNUSED);
+        }
+        Ogc3dTilesetTraversal.Result traversal = Ogc3dTilesetTraversal.traverse(this, rootTileset, this.rootTilesetUrl, frustum);
+        this.copyrightOccurrences.clear();
+        for (String source : traversal.copyrightSources) {
+            this.copyrightOccurrences.merge(source, 1, Integer::sum);
+        }
+        return traversal.keys;
+    }
 
-				TileData child = parsedData.getRight();
-                if (child.getGltfModelInstance() != null) {
-                    result.add(currentKey);
-                }
+    @Override
+    protected @Nullable CompletableFuture<List<PreBakedModel>> processModel(Key key) {
+        LoadedTile tile = this.tileDataStorage.getOrCompute(key, () -> null);
+        if (tile == null) return null;
+        TileData tileData = tile.getData();
+        if (tileData != null) {
+            return CompletableFuture.supplyAsync(() -> this.loadModels(tile.getUrl(), tile.getTransform(), tileData), this.tileFetcher);
+        }
 
-                String copyright = child.getCopyright();
-                if (copyright != null) {
-                    // According to the Google Earth API specification:
-                    // 1. Extract all the copyright information from all the tiles in view.
-                    // 2. Separate multiple copyright sources with a semicolon.
-                    // 3. Sort the information based on the number of occurrences.
-                    // 4. Display the copyright sources on-screen, ordered from most occurrences to the least.
-                    String[] sources = copyright.split(";");
-                    for (String source : sources) {
-                        if (source.isEmpty()) continue;
-                        int count = this.copyrightOccurrences.getOrDefault(source, 0);
-                        this.copyrightOccurrences.put(source, count + 1);
-                    }
-                }
+        CompletableFuture<List<PreBakedModel>> result = new CompletableFuture<>();
+        this.tileFetcher.execute(() -> {
+            if (result.isDone()) return; // Cancelled
+            try {
+                List<PreBakedModel> cached = this.readCachedModels(tile);
+                if (cached != null) { result.complete(cached); return; }
+            } catch (Throwable t) { result.completeExceptionally(t); return; }
+
+            // Evicted from the mesh cache since the traversal found it there, so the tile has to be downloaded after all
+            CompletableFuture<TileData> download = this.fetchTileData(key, tile.getUrl(), new RequestPriority(0));
+            FutureUtil.cancelUpstream(result, download);
+            download.thenApplyAsync(data -> this.loadModels(tile.getUrl(), tile.getTransform(), data), this.tileFetcher)
+                    .whenComplete((models, error) -> {
+                        if (error != null) result.completeExceptionally(error);
+                        else result.complete(models);
+                    });
+        });
+        return result;
+    }
 
-                if (child instanceof Tileset) {
-                    Tileset childTileset = (Tileset) child;
-                    Ogc3dTilesetBfsNode newNode = new Ogc3dTilesetBfsNode(this, childTileset, currentUrl, currentKeys, currentTransform);
-                    nodes.add(newNode);
-                }
-            }
+    /**
+     * @return The models of a tile that was found in the mesh cache, or {@code null} if they aren't there anymore
+     */
+    @Nullable
+    private List<PreBakedModel> readCachedModels(LoadedTile tile) {
+        String cacheKey = this.getMeshCacheKey(tile.getUrl(), tile.getTransform());
+        // The models read during the traversal are handed out once, as baking modifies them
+        if (cacheKey.equals(tile.getMeshCacheKey())) {
+            List<PreBakedModel> models = tile.cachedModels.getAndSet(null);
+            if (models != null) return models;
         }
+        PreBakedModelCache cache = PreBakedModelCache.get();
+        PreBakedModelCache.Entry entry = cache != null ? cache.read(cacheKey) : null;
+        return entry != null ? entry.getModels() : null;
+    }
 
+    /**
+     * Reads the converted models from the mesh cache, or converts them and stores them there.
+     */
+    private List<PreBakedModel> loadModels(URL url, Matrix4d transform, TileData tileData) {
+        PreBakedModelCache cache = PreBakedModelCache.get();
+        if (cache == null) return this.parse(transform, tileData);
+
+        String cacheKey = this.getMeshCacheKey(url, transform);
+        PreBakedModelCache.Entry cached = cache.read(cacheKey);
+        if (cached != null) return cached.getModels();
+
+        List<PreBakedModel> models = this.parse(transform, tileData);
+        // Empty tiles aren't cached, so that finding an entry means the tile has content
+        if (models.isEmpty()) return models;
+        // The pixels are extracted here rather than before baking, so that the texture is cached as well
+        List<PreBakedModel> result = new ArrayList<>(models.size());
+        for (PreBakedModel model : models) result.add(model.extractPixels());
+        cache.writeAsync(cacheKey, tileData.getCopyright(), result);
         return result;
     }
 
-    @Override
-    protected @Nullable CompletableFuture<List<PreBakedModel>> processModel(Key key) {
-        Pair<Matrix4d, TileData> pair = this.tileDataStorage.getOrCompute(key, () -> null);
-        if (pair == null) return null;
-        return CompletableFuture.supplyAsync(() -> this.parse(pair.getLeft(), pair.getRight()), this.tileFetcher);
+    /**
+     * The converted vertices depend on everything that goes into {@link #parse}, so every one of them is in the key.
+     */
+    private String getMeshCacheKey(URL url, Matrix4d transform) {
+        String projection;
+        try { projection = BTETerraRenderer.JSON_MAPPER.writeValueAsString(this.getHologramProjection()); }
+        catch (JsonProcessingException e) { projection = this.getHologramProjection().toString(); }
+        return url + "\n" + Arrays.toString(transform.get(new double[16])) + "\n" + projection
+                + "\n" + this.geoidType + "\n" + this.rotateModelAlongEarthXAxis;
     }
 
     private List<PreBakedModel> parse(Matrix4d transform, TileData tileData) {
+        // The transform is shared with the tile data storage, so it shouldn't be modified
+        transform = new Matrix4d(transform);
         // From 6.7.1.6. Transforms:
         // ...
         // More broadly the order of transformations is:
@@ -342,13 +372,68 @@ public class Ogc3dTileMapService extends AbstractTileMapService<Ogc3dTileMapServ
         return GltfModelConverter.convertModel(gltfModel, transform, this.getHologramProjection(), coordConverter);
     }
 
-    private Pair<Matrix4d, TileData> downloadModel(Key key, Matrix4d transform, URL url) {
-        return this.tileDataStorage.getOrCompute(key, () -> HttpResourceManager.download(url.toString(), this.getNThreads())
-                .thenApply(ByteBufInputStream::new)
-                .thenApplyAsync(stream -> {
-                    try { return Pair.of(transform, TileResourceManager.parse(stream, this.coordConverter)); }
-                    catch (IOException e) { throw new RuntimeException(e); }
-                }, TILE_PARSER));
+    /**
+     * Looks the tile up in the mesh cache first, so that cached content tiles are neither downloaded nor parsed.
+     * @param distance The distance from the camera to the tile. Closer tiles are downloaded first
+     */
+    LoadedTile downloadModel(Key key, Matrix4d transform, URL url, double distance) {
+        RequestPriority pending = this.requestPriorities.get(key);
+        if (pending != null) pending.set(distance);
+
+        return this.tileDataStorage.getOrCompute(key, () -> {
+            CompletableFuture<LoadedTile> result = new CompletableFuture<>();
+            TILE_PARSER.execute(() -> {
+                if (result.isDone()) return; // Cancelled
+                String cacheKey;
+                PreBakedModelCache.Entry cached;
+                try {
+                    PreBakedModelCache cache = PreBakedModelCache.get();
+                    cacheKey = this.getMeshCacheKey(url, transform);
+                    cached = cache != null ? cache.read(cacheKey) : null;
+                } catch (Throwable t) { result.completeExceptionally(t); return; }
+                if (cached != null) {
+                    result.complete(new LoadedTile(url, transform, null, cacheKey, cached.getCopyright(), cached.getModels()));
+                    return;
+                }
+
+                CompletableFuture<TileData> download = this.fetchTileData(key, url, new RequestPriority(distance));
+                FutureUtil.cancelUpstream(result, download);
+                download.whenComplete((data, error) -> {
+                    if (error != null) result.completeExceptionally(error);
+                    else result.complete(new LoadedTile(url, transform, data, cacheKey, data.getCopyright(), null));
+                });
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Downloads and parses a tile. The priority is updated on every traversal until the download finishes.
+     */
+    private CompletableFuture<TileData> fetchTileData(Key key, URL url, RequestPriority priority) {
+        this.requestPriorities.put(key, priority);
+        CompletableFuture<ByteBuf> download = HttpResourceManager.download(url.toString(), this.getNThreads(), priority);
+        CompletableFuture<TileData> result = new CompletableFuture<>();
+        download.whenComplete((buf, error) -> {
+            this.requestPriorities.remove(key, priority);
+            if (error != null) { result.completeExceptionally(error); return; }
+            if (buf == null) { result.completeExceptionally(new RuntimeException("Tile not found: " + url)); return; }
+            // Not thenApplyAsync, since a skipped stage would never release the buffer
+            TILE_PARSER.execute(() -> {
+                try {
+                    if (result.isDone()) return; // Cancelled
+                    result.complete(TileResourceManager.parse(buf, this.coordConverter));
+                }
+                catch (Throwable t) { result.completeExceptionally(t); }
+                finally { buf.release(); }
+            });
+        });
+        return FutureUtil.cancelUpstream(result, download);
+    }
+
+    @Override
+    protected long getCancelledDownloadCount() {
+        return this.tileDataStorage.getCancelledCount();
     }
 
     @Override
@@ -375,6 +460,38 @@ public class Ogc3dTileMapService extends AbstractTileMapService<Ogc3dTileMapServ
         WHITE_TEXTURE = new ImageTexturePair(white);
     }
 
+    /**
+     * A tile as the traversal sees it. Tiles found in the mesh cache are content tiles, and have no {@link #data}.
+     */
+    @Getter
+    static class LoadedTile {
+        private final URL url;
+        private final Matrix4d transform;
+        /** The parsed tile, or {@code null} if it was found in the mesh cache */
+        @Nullable
+        private final TileData data;
+        private final String meshCacheKey;
+        @Nullable
+        private final String copyright;
+        /** The models read from the mesh cache, until {@link Ogc3dTileMapService#processModel} takes them */
+        @Getter(AccessLevel.NONE)
+        private final AtomicReference<List<PreBakedModel>> cachedModels;
+
+        private LoadedTile(URL url, Matrix4d transform, @Nullable TileData data, String meshCacheKey,
+                           @Nullable String copyright, @Nullable List<PreBakedModel> cachedModels) {
+            this.url = url;
+            this.transform = transform;
+            this.data = data;
+            this.meshCacheKey = meshCacheKey;
+            this.copyright = copyright;
+            this.cachedModels = new AtomicReference<>(cachedModels);
+        }
+
+        boolean hasContent() {
+            return this.data == null || this.data.getGltfModelInstance() != null;
+        }
+    }
+
     @Data
     public static class Key {
         public static final Key ROOT = new Key(new TileLocalKey[0]);
@@ -15,10 +15,12 @@ import lombok.RequiredArgsConstructor;
 import org.joml.Matrix4d;
 import org.joml.Vector3d;
 
+import javax.annotation.Nullable;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
 
 @Getter
 @RequiredArgsConstructor
@@ -32,54 +34,72 @@ public class Ogc3dTilesetBfsNode {
     public List<LocalTileNode> selectIntersections(SpheroidFrustum frustum) {
 
         List<LocalTileNode> resultList = new ArrayList<>();
-        Stack<IntersectionBfsNode> nodeStack = new Stack<>();
-        nodeStack.push(new IntersectionBfsNode(new int[0], this.tileset.getRootTile()));
-
+        Tile rootTile = this.tileset.getRootTile();
         boolean renderSurroundings = tms.isRenderSurroundings();
+        if (!renderSurroundings && !this.shouldIncludeTile(rootTile, frustum)) return resultList;
+
+        // Every tile on the stack has already passed the frustum/LOD test, so it is never run twice
+        Deque<IntersectionBfsNode> nodeStack = new ArrayDeque<>();
+        nodeStack.push(new IntersectionBfsNode(new int[0], rootTile));
 
         while (!nodeStack.isEmpty()) {
             IntersectionBfsNode currentNode = nodeStack.pop();
             int[] currentIndexes = currentNode.indexes;
             Tile currentTile = currentNode.tile;
 
-            if (!renderSurroundings && !this.shouldIncludeTile(currentTile, frustum)) continue;
-
-            boolean atLeastOneChildIntersects = this.atLeastOneChildIntersects(currentTile, frustum);
+            boolean[] childIntersections = this.getChildIntersections(currentTile, frustum);
+            boolean atLeastOneChildIntersects = childIntersections != null;
             boolean includeCurrentTileContent = !atLeastOneChildIntersects
                     || currentTile.getRefinement() == TileRefinement.ADD;
 
             if (includeCurrentTileContent) {
-                this.addContentsToResult(resultList, currentTile, currentIndexes);
+                this.addContentsToResult(resultList, currentTile, currentIndexes, frustum);
             }
             if (atLeastOneChildIntersects) {
-                this.addChildrenToStack(nodeStack, currentTile, currentIndexes);
+                this.addChildrenToStack(nodeStack, currentTile, currentIndexes,
+                        renderSurroundings ? null : childIntersections);
             }
         }
 
         return resultList;
     }
 
-    private void addContentsToResult(List<LocalTileNode> resultList, Tile tile, int[] indexes) {
+    private void addContentsToResult(List<LocalTileNode> resultList, Tile tile, int[] indexes, SpheroidFrustum frustum) {
+        if (tile.getContents().isEmpty()) return;
+        Matrix4d transform = tile.getGlobalTransform(this.parentTilesetTransform);
+        double distance = this.getEffectiveDistance(tile.getBoundingVolume(), transform, frustum);
         for (int i = 0; i < tile.getContents().size(); i++) {
             TileLocalKey contentKey = new TileLocalKey(indexes, i);
             TileContentLink content = tile.getContents().get(i);
-            Matrix4d transform = tile.getGlobalTransform(this.parentTilesetTransform);
-            resultList.add(new LocalTileNode(contentKey, content, transform));
+            resultList.add(new LocalTileNode(contentKey, content, transform, distance));
         }
     }
 
-    private void addChildrenToStack(Stack<IntersectionBfsNode> stack, Tile tile, int[] indexes) {
+    /**
+     * @param filter If not null, only the children whose value is {@code true} are added
+     */
+    private void addChildrenToStack(Deque<IntersectionBfsNode> stack, Tile tile, int[] indexes,
+                                    @Nullable boolean[] filter) {
         for (int i = 0; i < tile.getChildren().size(); i++) {
+            if (filter != null && !filter[i]) continue;
             Tile child = tile.getChildren().get(i);
-            stack.add(new IntersectionBfsNode(ArrayUtil.expandOne(indexes, i), child));
+            stack.push(new IntersectionBfsNode(ArrayUtil.expandOne(indexes, i), child));
         }
     }
 
-    private boolean atLeastOneChildIntersects(Tile currentTile, SpheroidFrustum frustum) {
-        for (Tile child : currentTile.getChildren()) {
-            if (this.shouldIncludeTile(child, frustum)) return true;
+    /**
+     * @return Whether each child should be included, or {@code null} if none of them should
+     */
+    @Nullable
+    private boolean[] getChildIntersections(Tile currentTile, SpheroidFrustum frustum) {
+        List<Tile> children = currentTile.getChildren();
+        boolean[] result = new boolean[children.size()];
+        boolean atLeastOne = false;
+        for (int i = 0; i < children.size(); i++) {
+            result[i] = this.shouldIncludeTile(children.get(i), frustum);
+            atLeastOne |= result[i];
         }
-        return false;
+        return atLeastOne ? result : null;
     }
 
     public TileLocalKey[] attachKey(LocalTileNode node) {
@@ -95,16 +115,19 @@ public class Ogc3dTilesetBfsNode {
         double lodFactor = tms.getLodFactor(); // ranges from 0 to 5
         double lodFactorPow = Math.pow(2, lodFactor); // ranges from 1 to 32
 
+        double effectiveDistance = this.getEffectiveDistance(volume, transform, frustum);
+        double geometricError = tile.getGeometricError();
+        return effectiveDistance < geometricError * lodFactorPow;
+    }
+
+    private double getEffectiveDistance(Volume volume, Matrix4d transform, SpheroidFrustum frustum) {
         BoundingSphere lodSphere = volume.getLevelOfDetailSphere(transform, tms.getCoordConverter());
         Vector3d sphereCenter = lodSphere.getCenter();
         double sphereRadius = lodSphere.getRadius();
 
         Vector3d cameraPosition = frustum.getCameraPosition();
         double distance = sphereCenter.distance(cameraPosition);
-        double effectiveDistance = Math.max(distance - sphereRadius, 0);
-
-        double geometricError = tile.getGeometricError();
-        return effectiveDistance < geometricError * lodFactorPow;
+        return Math.max(distance - sphereRadius, 0);
     }
 
     public static Ogc3dTilesetBfsNode fromRoot(Ogc3dTileMapService tms, Tileset tileset, URL parentUrl) {
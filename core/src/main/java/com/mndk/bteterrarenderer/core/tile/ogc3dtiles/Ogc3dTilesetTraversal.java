@@ -0,0 +1,110 @@
+package com.mndk.bteterrarenderer.core.tile.ogc3dtiles;
+
+import com.mndk.bteterrarenderer.core.tile.ogc3dtiles.key.LocalTileNode;
+import com.mndk.bteterrarenderer.core.tile.ogc3dtiles.key.TileLocalKey;
+import com.mndk.bteterrarenderer.ogc3dtiles.TileData;
+import com.mndk.bteterrarenderer.ogc3dtiles.math.SpheroidFrustum;
+import com.mndk.bteterrarenderer.ogc3dtiles.tile.TileContentLink;
+import com.mndk.bteterrarenderer.ogc3dtiles.tile.Tileset;
+import com.mndk.bteterrarenderer.util.Loggers;
+import lombok.RequiredArgsConstructor;
+import org.joml.Matrix4d;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Walks a tileset hierarchy, fanning the nested tilesets out over a {@link ForkJoinPool}.
+ * <p>
+ * Each task owns exactly one tileset, so no tile is ever visited by two threads at once.
+ * The results of the child tasks are joined in the order their tilesets were found,
+ * which keeps the key list identical from frame to frame regardless of how the work was stolen.
+ */
+@RequiredArgsConstructor
+class Ogc3dTilesetTraversal extends RecursiveTask<Ogc3dTilesetTraversal.Result> {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private final Ogc3dTileMapService tms;
+    private final Ogc3dTilesetBfsNode node;
+    private final SpheroidFrustum frustum;
+
+    static Result traverse(Ogc3dTileMapService tms, Tileset rootTileset, URL rootUrl, SpheroidFrustum frustum) {
+        Ogc3dTilesetBfsNode root = Ogc3dTilesetBfsNode.fromRoot(tms, rootTileset, rootUrl);
+        return POOL.invoke(new Ogc3dTilesetTraversal(tms, root, frustum));
+    }
+
+    @Override
+    protected Result compute() {
+        Result result = new Result();
+        List<Ogc3dTilesetTraversal> subtasks = new ArrayList<>();
+
+        // Get intersections from the current tileset
+        for (LocalTileNode localTileNode : this.node.selectIntersections(this.frustum)) {
+            TileContentLink contentLink = localTileNode.getContentLink();
+            Matrix4d currentTransform = localTileNode.getTransform();
+
+            // Skip if the url is malformed
+            URL currentUrl;
+            try { currentUrl = contentLink.getTrueUrl(this.node.getParentUrl()); }
+            catch (MalformedURLException e) {
+                Loggers.get(this).warn("Malformed URL: {} (parent: {})", contentLink, this.node.getParentUrl());
+                continue;
+            }
+
+            TileLocalKey[] currentKeys = this.node.attachKey(localTileNode);
+            Ogc3dTileMapService.Key currentKey = new Ogc3dTileMapService.Key(currentKeys);
+
+            // Get data from cache
+            Ogc3dTileMapService.LoadedTile tile = this.tms.downloadModel(currentKey, currentTransform, currentUrl,
+                    localTileNode.getDistance());
+            if (tile == null) continue;
+
+            if (tile.hasContent()) {
+                result.keys.add(currentKey);
+            }
+
+            String copyright = tile.getCopyright();
+            if (copyright != null) {
+                // According to the Google Earth API specification:
+                // 1. Extract all the copyright information from all the tiles in view.
+                // 2. Separate multiple copyright sources with a semicolon.
+                // 3. Sort the information based on the number of occurrences.
+                // 4. Display the copyright sources on-screen, ordered from most occurrences to the least.
+                for (String source : copyright.split(";")) {
+                    if (!source.isEmpty()) result.copyrightSources.add(source);
+                }
+            }
+
+            // Tiles found in the mesh cache have no data, and are never tilesets
+            TileData child = tile.getData();
+            if (child instanceof Tileset) {
+                Tileset childTileset = (Tileset) child;
+                Ogc3dTilesetBfsNode newNode = new Ogc3dTilesetBfsNode(this.tms, childTileset, currentUrl, currentKeys, currentTransform);
+                subtasks.add(new Ogc3dTilesetTraversal(this.tms, newNode, this.frustum));
+            }
+        }
+
+        if (subtasks.isEmpty()) return result;
+        ForkJoinTask.invokeAll(subtasks);
+        for (Ogc3dTilesetTraversal subtask : subtasks) {
+            result.append(subtask.join());
+        }
+        return result;
+    }
+
+    static class Result {
+        final List<Ogc3dTileMapService.Key> keys = new ArrayList<>();
+        final List<String> copyrightSources = new ArrayList<>();
+
+        private void append(Result other) {
+            this.keys.addAll(other.keys);
+            this.copyrightSources.addAll(other.copyrightSources);
+        }
+    }
+}
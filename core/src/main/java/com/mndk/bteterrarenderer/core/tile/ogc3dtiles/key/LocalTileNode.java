@@ -11,4 +11,6 @@ public class LocalTileNode {
     private final TileLocalKey key;
     private final TileContentLink contentLink;
     private final Matrix4d transform;
+    /** The distance from the camera to the tile's bounding volume */
+    private final double distance;
 }
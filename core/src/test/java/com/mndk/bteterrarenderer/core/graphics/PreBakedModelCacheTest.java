@@ -0,0 +1,124 @@
+package com.mndk.bteterrarenderer.core.graphics;
+
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.DrawingFormat;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShapes;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsTriangle;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTexNorm;
+import com.mndk.bteterrarenderer.mcconnector.util.math.McCoord;
+import com.mndk.bteterrarenderer.util.image.RawImage;
+import org.joml.Vector2f;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PreBakedModelCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PreBakedModel model(double offset) {
+        GraphicsShapes shapes = new GraphicsShapes();
+        McCoord normal = new McCoord(0, 1, 0);
+        shapes.add(DrawingFormat.TRI_PTN, new GraphicsTriangle<>(
+                new PosTexNorm(new McCoord(offset, 1, 2), new Vector2f(0, 0), normal),
+                new PosTexNorm(new McCoord(offset + 1_000_000.125, 1, 2), new Vector2f(1, 0), normal),
+                new PosTexNorm(new McCoord(offset, 3, -4_000_000.5), new Vector2f(0, 1), normal)
+        ));
+        RawImage pixels = new RawImage(2, 2, new int[] { 0xFF000000, 0xFFFF0000, 0x8000FF00, 0x000000FF });
+        return new PreBakedModel(null, shapes, pixels);
+    }
+
+    @Test
+    public void givenWrittenModels_testReadReturnsSameVerticesAndPixels() throws Exception {
+        PreBakedModelCache cache = new PreBakedModelCache(folder.getRoot().toPath(), () -> Long.MAX_VALUE);
+        cache.write("tile", "Data SIO", Collections.singletonList(model(10)));
+
+        PreBakedModelCache.Entry entry = cache.read("tile");
+        Assert.assertNotNull(entry);
+        Assert.assertEquals("Data SIO", entry.getCopyright());
+        List<PreBakedModel> read = entry.getModels();
+        Assert.assertEquals(1, read.size());
+        Assert.assertArrayEquals(model(10).getPixels().getArgb(), read.get(0).getPixels().getArgb());
+
+        PackedVertexBuffer expected = model(10).getShapes().getVertices().get(DrawingFormat.TRI_PTN);
+        PackedVertexBuffer actual = read.get(0).getShapes().getVertices().get(DrawingFormat.TRI_PTN);
+        Assert.assertEquals(expected.getVertexCount(), actual.getVertexCount());
+        for (int i = 0; i < expected.getVertexCount(); i++) {
+            Assert.assertEquals(expected.getX(i), actual.getX(i), 0);
+            Assert.assertEquals(expected.getZ(i), actual.getZ(i), 0);
+            Assert.assertEquals(expected.getV(i), actual.getV(i), 0);
+        }
+
+        Assert.assertNull(cache.read("other tile"));
+        Assert.assertNotSame(read.get(0).getShapes(), cache.read("tile").getModels().get(0).getShapes());
+    }
+
+    @Test
+    public void givenCorruptedFile_testReadTreatsItAsMissing() throws Exception {
+        Path root = folder.getRoot().toPath();
+        PreBakedModelCache cache = new PreBakedModelCache(root, () -> Long.MAX_VALUE);
+        cache.write("tile", "Data SIO", Collections.singletonList(model(0)));
+
+        Path file = listFiles(root).get(0);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        Assert.assertNull(cache.read("tile"));
+        Assert.assertTrue(listFiles(root).isEmpty());
+    }
+
+    @Test
+    public void givenSizeLimit_testLeastRecentlyUsedFilesAreEvicted() throws Exception {
+        Path root = folder.newFolder("cache").toPath();
+        long entrySize;
+        {
+            PreBakedModelCache probe = new PreBakedModelCache(folder.newFolder("probe").toPath(), () -> Long.MAX_VALUE);
+            probe.write("probe", null, Collections.singletonList(model(0)));
+            entrySize = probe.getTotalBytes();
+        }
+
+        PreBakedModelCache cache = new PreBakedModelCache(root, () -> entrySize * 3);
+        for (int i = 0; i < 3; i++) {
+            cache.write("tile" + i, null, Collections.singletonList(model(i)));
+            age(root);
+        }
+        Assert.assertNotNull(cache.read("tile0")); // tile1 is now the least recently used one
+        age(root);
+
+        cache.write("tile3", null, Collections.singletonList(model(3)));
+        Assert.assertTrue(cache.getTotalBytes() <= entrySize * 3);
+        Assert.assertNull(cache.read("tile1"));
+        Assert.assertNotNull(cache.read("tile0"));
+        Assert.assertNotNull(cache.read("tile3"));
+        Assert.assertNull(cache.read("tile3").getCopyright());
+
+        // The size is recovered from the files on reopening
+        Assert.assertEquals(cache.getTotalBytes(), new PreBakedModelCache(root, () -> Long.MAX_VALUE).getTotalBytes());
+    }
+
+    /** Moves the modification times of the files an hour back, so that the order of use doesn't depend on the clock */
+    private static void age(Path root) throws Exception {
+        for (Path file : listFiles(root)) {
+            long millis = Files.getLastModifiedTime(file).toMillis();
+            Files.setLastModifiedTime(file, FileTime.fromMillis(millis - TimeUnit.HOURS.toMillis(1)));
+        }
+    }
+
+    private static List<Path> listFiles(Path root) throws Exception {
+        try (Stream<Path> stream = Files.list(root)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+}
@@ -35,6 +35,20 @@ public class FlatTileProjectionTest {
         );
     }
 
+    @Test
+    public void givenYamlConfig_testZoomLevelsLineUpAsQuadTree() {
+        FlatTileProjection webMercator = PROJECTION_MAP.get("webmercator");
+        Assert.assertTrue(webMercator.isQuadTreeAncestor(20, 21));
+        Assert.assertTrue(webMercator.isQuadTreeAncestor(17, 21));
+        Assert.assertFalse(webMercator.isQuadTreeAncestor(21, 20));
+
+        // Kakao's tiles get larger as the zoom level increases
+        FlatTileProjection kakaoProjection = PROJECTION_MAP.get("kakaoprojection");
+        Assert.assertTrue(kakaoProjection.isQuadTreeAncestor(2, 1));
+        Assert.assertFalse(kakaoProjection.isQuadTreeAncestor(1, 2));
+        Assert.assertFalse(kakaoProjection.isQuadTreeAncestor(15, 14));
+    }
+
     static {
         BTETerraRendererCore.initialize(TestEnvironmentDummyMinecraft.getInstance());
         PROJECTION_MAP = LoaderRegistry.flatProj().getResult();
@@ -7,6 +7,9 @@ import com.mndk.bteterrarenderer.dep.terraplusplus.projection.OutOfProjectionBou
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 public class GeographicProjectionTest {
 
     public static final double[] GEO_COORD = new double[] { -73.98566440289457, 40.74843814459844 };
@@ -24,6 +27,44 @@ public class GeographicProjectionTest {
         validateBTEProjection(projection);
     }
 
+    @Test
+    public void givenBTEProjection_testBulkConversionMatchesSinglePoint() throws OutOfProjectionBoundsException {
+        GeographicProjection projection = Projections.BTE;
+        Random random = new Random(42);
+        int count = 1000;
+
+        double[] lonLat = new double[count * 2];
+        double[] expected = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            lonLat[i * 2] = random.nextDouble() * 360 - 180;
+            lonLat[i * 2 + 1] = random.nextDouble() * 170 - 85;
+            double[] pos = projection.fromGeo(lonLat[i * 2], lonLat[i * 2 + 1]);
+            expected[i * 2] = pos[0];
+            expected[i * 2 + 1] = pos[1];
+        }
+        double[] actual = new double[count * 2];
+        projection.fromGeo(lonLat, actual, count);
+        Assert.assertArrayEquals(expected, actual, 0);
+
+        // Some points near the cuts cannot be converted back, so only the convertible ones are compared
+        double[] xy = new double[count * 2];
+        double[] expectedGeo = new double[count * 2];
+        int convertible = 0;
+        for (int i = 0; i < count; i++) {
+            double[] geo;
+            try { geo = projection.toGeo(expected[i * 2], expected[i * 2 + 1]); }
+            catch (OutOfProjectionBoundsException e) { continue; }
+            xy[convertible * 2] = expected[i * 2];
+            xy[convertible * 2 + 1] = expected[i * 2 + 1];
+            expectedGeo[convertible * 2] = geo[0];
+            expectedGeo[convertible * 2 + 1] = geo[1];
+            convertible++;
+        }
+        // Convert in place
+        projection.toGeo(xy, xy, convertible);
+        Assert.assertArrayEquals(Arrays.copyOf(expectedGeo, convertible * 2), Arrays.copyOf(xy, convertible * 2), 0);
+    }
+
     public static void validateBTEProjection(GeographicProjection projection) {
         try {
             Assert.assertArrayEquals(GAME_COORD, projection.fromGeo(GEO_COORD[0], GEO_COORD[1]), 0);
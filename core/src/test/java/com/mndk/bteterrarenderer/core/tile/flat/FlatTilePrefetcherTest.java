@@ -0,0 +1,141 @@
+package com.mndk.bteterrarenderer.core.tile.flat;
+
+import com.mndk.bteterrarenderer.util.concurrent.CacheStorage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+public class FlatTilePrefetcherTest {
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final double TILE_SIZE = 150;
+    private static final int RADIUS = 2;
+    private static final double LATENCY_SECONDS = 1.5;
+    /** The same as the map services', which is shorter than both the lookahead and the latency */
+    private static final int CANCEL_AFTER_FRAMES = 60;
+
+    /**
+     * Flies over a grid of tiles that take {@link #LATENCY_SECONDS} to download, cancelling the unrequested
+     * downloads every frame like the map service does, and returns the fraction of tiles that were already
+     * downloaded when they first came into view after the start.
+     */
+    private static double simulateFlight(double lookaheadSeconds, double speed, double headingDegrees) {
+        FlatTilePrefetcher prefetcher = new FlatTilePrefetcher(() -> lookaheadSeconds, () -> 16);
+        CacheStorage<Long, Long> cache = new CacheStorage<>(null);
+        Map<CompletableFuture<Long>, Long> downloads = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        int hits = 0, misses = 0;
+
+        double vx = speed * Math.cos(Math.toRadians(headingDegrees));
+        double vz = speed * Math.sin(Math.toRadians(headingDegrees));
+        for (long frame = 0; frame < 60 * 30; frame++) {
+            long now = frame * FRAME_NANOS;
+            double x = vx * now / 1e9, z = vz * now / 1e9;
+            Function<Long, CompletableFuture<Long>> download = tile -> {
+                CompletableFuture<Long> future = new CompletableFuture<>();
+                downloads.put(future, now + (long) (LATENCY_SECONDS * 1e9));
+                return future;
+            };
+
+            cache.cancelUnrequested(CANCEL_AFTER_FRAMES);
+            for (Iterator<Map.Entry<CompletableFuture<Long>, Long>> it = downloads.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<CompletableFuture<Long>, Long> entry = it.next();
+                if (entry.getValue() <= now) entry.getKey().complete(0L);
+                if (entry.getKey().isDone()) it.remove();
+            }
+
+            prefetcher.update(x, z, now);
+            Set<Long> visible = new HashSet<>();
+            for (long tile : square(x, z)) visible.add(tile);
+            prefetcher.prefetch(cache, visible, position -> square(position[0], position[1]), download);
+
+            for (long tile : square(x, z)) {
+                Long image = cache.getOrCompute(tile, () -> download.apply(tile));
+                // The tiles around the starting point can't have been fetched ahead of time
+                if (!seen.add(tile) || frame == 0) continue;
+                if (image != null) hits++;
+                else misses++;
+            }
+        }
+        return (double) hits / (hits + misses);
+    }
+
+    private static List<Long> square(double x, double z) {
+        int tileX = (int) Math.floor(x / TILE_SIZE), tileZ = (int) Math.floor(z / TILE_SIZE);
+        List<Long> result = new ArrayList<>((2 * RADIUS + 1) * (2 * RADIUS + 1));
+        for (int dx = -RADIUS; dx <= RADIUS; dx++) {
+            for (int dz = -RADIUS; dz <= RADIUS; dz++) {
+                result.add(((long) (tileX + dx) << 32) | ((tileZ + dz) & 0xFFFFFFFFL));
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void givenSimulatedFlight_testPrefetchesSurviveUntilInView() {
+        for (double speed : new double[] { 20, 60, 100 }) {
+            double withoutPrefetch = simulateFlight(0, speed, 30);
+            double withPrefetch = simulateFlight(3, speed, 30);
+            Assert.assertTrue(withPrefetch > 0.8);
+            Assert.assertTrue(withPrefetch > withoutPrefetch + 0.5);
+        }
+    }
+
+    @Test
+    public void givenExhaustedBudget_testInFlightPrefetchesAreStillRequested() {
+        FlatTilePrefetcher prefetcher = new FlatTilePrefetcher(() -> 2, () -> 0.5);
+        CacheStorage<Long, Long> cache = new CacheStorage<>(null);
+        List<Long> tiles = new ArrayList<>();
+        for (long tile = 0; tile < 64; tile++) tiles.add(tile);
+        List<CompletableFuture<Long>> started = new ArrayList<>();
+
+        // The downloads never finish, and the budget allows one every 2s, much longer than CANCEL_AFTER_FRAMES
+        for (int frame = 0; frame < 60 * 10; frame++) {
+            cache.cancelUnrequested(CANCEL_AFTER_FRAMES);
+            prefetcher.update(frame, 0, frame * FRAME_NANOS);
+            prefetcher.prefetch(cache, new HashSet<>(), position -> tiles, tile -> {
+                CompletableFuture<Long> future = new CompletableFuture<>();
+                started.add(future);
+                return future;
+            });
+        }
+
+        Assert.assertTrue(started.size() >= 4 && started.size() <= 5);
+        Assert.assertEquals(0, cache.getCancelledCount());
+        for (CompletableFuture<Long> future : started) Assert.assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void givenTeleport_testPredictionIsReset() {
+        FlatTilePrefetcher prefetcher = new FlatTilePrefetcher(() -> 2, () -> 16);
+        for (int frame = 0; frame < 60; frame++) {
+            prefetcher.update(frame, 0, frame * FRAME_NANOS); // 60 blocks/s towards +X
+        }
+        List<double[]> path = prefetcher.predictPath();
+        Assert.assertEquals(8, path.size());
+        Assert.assertEquals(59 + 120, path.get(path.size() - 1)[0], 10);
+
+        prefetcher.update(100_000, 0, 60 * FRAME_NANOS);
+        Assert.assertTrue(prefetcher.predictPath().isEmpty());
+    }
+
+    @Test
+    public void givenRequestRate_testBudgetIsCapped() {
+        FlatTilePrefetcher prefetcher = new FlatTilePrefetcher(() -> 2, () -> 10);
+        int acquired = 0;
+        for (int frame = 0; frame <= 60 * 5; frame++) {
+            prefetcher.update(frame, 0, frame * FRAME_NANOS);
+            while (prefetcher.tryAcquire()) acquired++;
+        }
+        Assert.assertTrue(acquired >= 49 && acquired <= 50);
+    }
+}
@@ -0,0 +1,87 @@
+package com.mndk.bteterrarenderer.core.tile.ogc3dtiles;
+
+import com.mndk.bteterrarenderer.core.graphics.PreBakedModel;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.DrawingFormat;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShapes;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsTriangle;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTexNorm;
+import com.mndk.bteterrarenderer.mcconnector.util.math.McCoord;
+import de.javagl.jgltf.model.impl.DefaultImageModel;
+import de.javagl.jgltf.model.impl.DefaultTextureModel;
+import de.javagl.jgltf.model.v2.MaterialModelV2;
+import org.joml.Vector2f;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+public class GltfImageCacheTest {
+
+    private static MaterialModelV2 material(int color) throws Exception {
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, color);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+
+        DefaultImageModel imageModel = new DefaultImageModel();
+        imageModel.setImageData(ByteBuffer.wrap(png.toByteArray()));
+        DefaultTextureModel textureModel = new DefaultTextureModel();
+        textureModel.setImageModel(imageModel);
+        MaterialModelV2 material = new MaterialModelV2();
+        material.setBaseColorTexture(textureModel);
+        return material;
+    }
+
+    private static PreBakedModel triangle(BufferedImage image, double x) {
+        GraphicsShapes shapes = new GraphicsShapes();
+        McCoord normal = new McCoord(0, 1, 0);
+        shapes.add(DrawingFormat.TRI_PTN, new GraphicsTriangle<>(
+                new PosTexNorm(new McCoord(x, 0, 0), new Vector2f(0, 0), normal),
+                new PosTexNorm(new McCoord(x + 1, 0, 0), new Vector2f(1, 0), normal),
+                new PosTexNorm(new McCoord(x, 0, 1), new Vector2f(0, 1), normal)
+        ));
+        return new PreBakedModel(image, shapes);
+    }
+
+    @Test
+    public void givenDuplicateImages_testTheyAreDecodedOnce() throws Exception {
+        GltfImageCache cache = new GltfImageCache();
+        MaterialModelV2 red = material(0xFFFF0000), sameRed = material(0xFFFF0000), blue = material(0xFF0000FF);
+
+        BufferedImage image = cache.readMaterialModel(red);
+        Assert.assertNotNull(image);
+        Assert.assertSame(image, cache.readMaterialModel(red));
+        Assert.assertSame(image, cache.readMaterialModel(sameRed));
+        Assert.assertNotSame(image, cache.readMaterialModel(blue));
+        Assert.assertNull(cache.readMaterialModel(null));
+    }
+
+    @Test
+    public void givenPrimitivesSharingImages_testTheyAreMerged() throws Exception {
+        GltfImageCache cache = new GltfImageCache();
+        BufferedImage red = cache.readMaterialModel(material(0xFFFF0000));
+        BufferedImage sameRed = cache.readMaterialModel(material(0xFFFF0000));
+        BufferedImage blue = cache.readMaterialModel(material(0xFF0000FF));
+
+        List<PreBakedModel> merged = PreBakedModel.mergeByImage(Arrays.asList(
+                triangle(red, 0), triangle(blue, 10), triangle(sameRed, 20), triangle(null, 30), triangle(red, 40)
+        ));
+        Assert.assertEquals(3, merged.size());
+        Assert.assertSame(red, merged.get(0).getImage());
+        Assert.assertSame(blue, merged.get(1).getImage());
+        Assert.assertNull(merged.get(2).getImage());
+
+        PackedVertexBuffer vertices = merged.get(0).getShapes().getVertices().get(DrawingFormat.TRI_PTN);
+        Assert.assertEquals(9, vertices.getVertexCount());
+        Assert.assertEquals(0, vertices.getX(0), 0);
+        Assert.assertEquals(20, vertices.getX(3), 0);
+        Assert.assertEquals(41, vertices.getX(7), 0);
+        Assert.assertEquals(1, vertices.getV(8), 0);
+    }
+}
@@ -31,7 +31,7 @@ import java.util.concurrent.atomic.AtomicReference;
 public class RAnsBitDecoder {
 
     private final Ans.Decoder ansDecoder = new Ans.Decoder();
-    private UByte probZero = UByte.ZERO;
+    private int probZero = 0;
 
     /**
      * Sets {@code sourceBuffer} as the buffer to decode bits from.
@@ -43,7 +43,7 @@ public class RAnsBitDecoder {
         this.clear();
         Pointer<UByte> probZeroRef = Pointer.newUByte();
         if (sourceBuffer.decode(probZeroRef).isError(chain)) return chain.get();
-        this.probZero = probZeroRef.get();
+        this.probZero = probZeroRef.get().intValue();
 
         Pointer<UInt> sizeInBytesRef = Pointer.newUInt();
         if (sourceBuffer.getBitstreamVersion() < DracoVersions.getBitstreamVersion(2, 2)) {
@@ -72,12 +72,12 @@ public class RAnsBitDecoder {
             throw new IllegalArgumentException("number of bits(got " + nBits + ") must be > 0 and <= 32");
         }
 
-        UInt result = UInt.ZERO;
+        int result = 0;
         while (nBits > 0) {
-            result = result.shl(1).add(ansDecoder.rabsRead(probZero) ? 1 : 0);
+            result = (result << 1) | (ansDecoder.rabsRead(probZero) ? 1 : 0);
             nBits--;
         }
-        value.set(result);
+        value.set(UInt.of(result));
     }
 
     public void endDecoding() {}
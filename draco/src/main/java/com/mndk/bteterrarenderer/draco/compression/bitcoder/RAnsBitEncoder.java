@@ -69,7 +69,7 @@ public class RAnsBitEncoder {
         int remaining = 32 - numLocalBits;
 
         if (nBits <= remaining) {
-            Pointer<UInt> localBitsRef = Pointer.newUInt();
+            Pointer<UInt> localBitsRef = Pointer.newUInt(localBits);
             BitUtils.copyBits32(localBitsRef, numLocalBits, reversed, 0, nBits);
             localBits = localBitsRef.get();
             numLocalBits += nBits;
@@ -79,10 +79,10 @@ public class RAnsBitEncoder {
                 numLocalBits = 0;
             }
         } else {
-            Pointer<UInt> localBitsRef = Pointer.newUInt();
+            Pointer<UInt> localBitsRef = Pointer.newUInt(localBits);
             BitUtils.copyBits32(localBitsRef, numLocalBits, reversed, 0, remaining);
             bits.pushBack(localBitsRef.get());
-            localBits = UInt.ZERO;
+            localBitsRef.set(UInt.ZERO);
             BitUtils.copyBits32(localBitsRef, 0, reversed, remaining, nBits - remaining);
             localBits = localBitsRef.get();
             numLocalBits = nBits - remaining;
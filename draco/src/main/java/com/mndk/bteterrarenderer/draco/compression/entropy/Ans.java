@@ -142,115 +142,141 @@ public class Ans {
         }
     }
 
+    /**
+     * The decoder keeps its state in a primitive int, since it is read for every decoded bit.
+     * {@code p} is still wrapped to a byte like the {@code uint8_t} of the original code.
+     * The state never reaches {@code 2^31}, so signed arithmetic gives the same results as the
+     * unsigned one of the original code.
+     */
     public static class Decoder {
         public RawPointer buf = null;
         public long bufOffset = 0;
-        public UInt state = UInt.ZERO;
+        public int state = 0;
 
         public boolean rabsRead(UByte p0) {
+            return this.rabsDescRead(p0.intValue());
+        }
+
+        public boolean rabsRead(int p0) {
             return this.rabsDescRead(p0);
         }
 
         public boolean rabsDescRead(UByte p0) {
-            UByte p = UByte.of(DRACO_ANS_P8_PRECISION).sub(p0);
-            if (this.state.lt(DRACO_ANS_L_BASE) && this.bufOffset > 0) {
-                this.state = this.state.mul(DRACO_ANS_IO_BASE).add(this.buf.getRawUByte(--this.bufOffset).uIntValue());
+            return this.rabsDescRead(p0.intValue());
+        }
+
+        public boolean rabsDescRead(int p0) {
+            int p = (DRACO_ANS_P8_PRECISION - p0) & 0xFF;
+            if (this.state < DRACO_ANS_L_BASE && this.bufOffset > 0) {
+                this.state = this.state * DRACO_ANS_IO_BASE + this.nextByte();
             }
-            UInt x = this.state;
-            UInt quot = x.div(DRACO_ANS_P8_PRECISION);
-            UInt rem = x.mod(DRACO_ANS_P8_PRECISION);
-            UInt xn = quot.mul(p.uIntValue());
-            boolean val = rem.lt(p.uIntValue());
+            int x = this.state;
+            int quot = x / DRACO_ANS_P8_PRECISION;
+            int rem = x % DRACO_ANS_P8_PRECISION;
+            int xn = quot * p;
+            boolean val = rem < p;
             if (val) {
-                this.state = xn.add(rem);
+                this.state = xn + rem;
             } else {
-                this.state = x.sub(xn).sub(p.uIntValue());
+                this.state = x - xn - p;
             }
             return val;
         }
 
         public boolean rabsAscRead(UByte p0) {
-            UByte p = UByte.of(DRACO_ANS_P8_PRECISION).sub(p0);
-            if (this.state.lt(DRACO_ANS_L_BASE)) {
-                this.state = this.state.mul(DRACO_ANS_IO_BASE).add(this.buf.getRawUByte(--this.bufOffset).uIntValue());
+            return this.rabsAscRead(p0.intValue());
+        }
+
+        public boolean rabsAscRead(int p0) {
+            int p = (DRACO_ANS_P8_PRECISION - p0) & 0xFF;
+            if (this.state < DRACO_ANS_L_BASE) {
+                this.state = this.state * DRACO_ANS_IO_BASE + this.nextByte();
             }
-            UInt x = this.state;
-            UInt quot = x.div(DRACO_ANS_P8_PRECISION);
-            UInt rem = x.mod(DRACO_ANS_P8_PRECISION);
-            UInt xn = quot.mul(p.uIntValue());
-            boolean val = rem.ge(p0.uIntValue());
+            int x = this.state;
+            int quot = x / DRACO_ANS_P8_PRECISION;
+            int rem = x % DRACO_ANS_P8_PRECISION;
+            int xn = quot * p;
+            boolean val = rem >= p0;
             if (val) {
-                this.state = xn.add(rem).sub(p0.uIntValue());
+                this.state = xn + rem - p0;
             } else {
-                this.state = x.sub(xn);
+                this.state = x - xn;
             }
             return val;
         }
 
         public boolean uabsRead(UByte p0) {
-            UByte p = UByte.of(DRACO_ANS_P8_PRECISION).sub(p0);
-            UInt state = this.state;
-            while (state.lt(DRACO_ANS_L_BASE) && this.bufOffset > 0) {
-                state = state.mul(DRACO_ANS_IO_BASE).add(this.buf.getRawUByte(--this.bufOffset).uIntValue());
+            return this.uabsRead(p0.intValue());
+        }
+
+        public boolean uabsRead(int p0) {
+            int p = (DRACO_ANS_P8_PRECISION - p0) & 0xFF;
+            int state = this.state;
+            while (state < DRACO_ANS_L_BASE && this.bufOffset > 0) {
+                state = state * DRACO_ANS_IO_BASE + this.nextByte();
             }
-            UInt sp = state.mul(p.uIntValue());
-            UInt xp = sp.div(DRACO_ANS_P8_PRECISION);
-            boolean s = sp.and(0xFF).ge(p0.uIntValue());
+            int sp = state * p;
+            int xp = sp / DRACO_ANS_P8_PRECISION;
+            boolean s = (sp & 0xFF) >= p0;
             if (s) {
                 this.state = xp;
             } else {
-                this.state = state.sub(xp);
+                this.state = state - xp;
             }
             return s;
         }
 
         public int uabsReadBit() {
-            UInt state = this.state;
-            while (state.lt(DRACO_ANS_L_BASE) && this.bufOffset > 0) {
-                state = state.mul(DRACO_ANS_IO_BASE).add(this.buf.getRawUByte(--this.bufOffset).uIntValue());
+            int state = this.state;
+            while (state < DRACO_ANS_L_BASE && this.bufOffset > 0) {
+                state = state * DRACO_ANS_IO_BASE + this.nextByte();
             }
-            int s = state.and(1).intValue();
-            this.state = state.shr(1);
+            int s = state & 1;
+            this.state = state >> 1;
             return s;
         }
 
+        private int nextByte() {
+            return this.buf.getRawByte(--this.bufOffset) & 0xFF;
+        }
+
         public Status ansReadInit(RawPointer buf, int offset) {
             if (offset < 1) {
                 return Status.ioError("Buffer offset is too small: " + offset);
             }
             this.buf = buf;
-            int x = buf.getRawUByte(offset - 1).shr(6).intValue();
+            int x = (buf.getRawByte(offset - 1) & 0xFF) >> 6;
             if (x == 0) {
                 this.bufOffset = offset - 1;
-                this.state = buf.getRawUByte(offset - 1).and(0x3F).uIntValue();
+                this.state = buf.getRawByte(offset - 1) & 0x3F;
             } else if (x == 1) {
                 if (offset < 2) {
                     return Status.ioError("Buffer offset is too small");
                 }
                 this.bufOffset = offset - 2;
-                this.state = getLE16(buf.rawAdd(offset - 2)).and(0x3FFF).uIntValue();
+                this.state = getLE16(buf.rawAdd(offset - 2)).intValue() & 0x3FFF;
             } else if (x == 2) {
                 if (offset < 3) {
                     return Status.ioError("Buffer offset is too small");
                 }
                 this.bufOffset = offset - 3;
-                this.state = getLE24(buf.rawAdd(offset - 3)).and(0x3FFFFF);
+                this.state = getLE24(buf.rawAdd(offset - 3)).intValue() & 0x3FFFFF;
             } else {
                 return Status.ioError("Invalid buffer offset: " + x);
             }
-            this.state = this.state.add(DRACO_ANS_L_BASE);
-            if (this.state.ge(DRACO_ANS_L_BASE * DRACO_ANS_IO_BASE)) {
+            this.state += DRACO_ANS_L_BASE;
+            if (this.state >= DRACO_ANS_L_BASE * DRACO_ANS_IO_BASE) {
                 return Status.ioError("Invalid buffer offset");
             }
             return Status.ok();
         }
 
         public boolean ansReadEnd() {
-            return this.state.equals(DRACO_ANS_L_BASE);
+            return this.state == DRACO_ANS_L_BASE;
         }
 
         public boolean ansReaderHasError() {
-            return this.state.lt(DRACO_ANS_L_BASE) && this.bufOffset == 0;
+            return this.state < DRACO_ANS_L_BASE && this.bufOffset == 0;
         }
     }
 }
@@ -17,7 +17,6 @@
 
 package com.mndk.bteterrarenderer.draco.compression.entropy;
 
-import com.mndk.bteterrarenderer.datatype.DataType;
 import com.mndk.bteterrarenderer.datatype.number.UInt;
 import com.mndk.bteterrarenderer.datatype.pointer.RawPointer;
 import com.mndk.bteterrarenderer.datatype.vector.CppVector;
@@ -27,99 +26,107 @@ import com.mndk.bteterrarenderer.draco.core.Status;
  * Class for performing rANS decoding using a desired number of precision bits.
  * The number of precision bits needs to be the same as with the RAnsEncoder
  * that was used to encode the input data.
+ * <p>
+ * Unlike most of the other translated classes, the decoding state and the tables are kept in
+ * primitive ints instead of {@link UInt}s, since this is the innermost loop of the mesh decoding.
+ * Every intermediate value stays below {@code 2^31} (the state is always less than
+ * {@code lRansBase * DRACO_ANS_IO_BASE <= 2^30}), so signed int arithmetic yields the same results
+ * as the original unsigned one.
  */
 public class RAnsDecoder {
 
     private final int ransPrecision;
+    private final int ransPrecisionMask;
+    private final int ransPrecisionBits;
     private final int lRansBase;
-    private final CppVector<UInt> lutTable = new CppVector<>(DataType.uint32());
-    private final CppVector<RAnsSymbol> probabilityTable = new CppVector<>(RAnsSymbol::new);
-    private final Ans.Decoder ans = new Ans.Decoder();
+    private int[] lutTable = new int[0];
+    private int[] probTable = new int[0];
+    private int[] cumProbTable = new int[0];
+    private RawPointer buf = null;
+    private long bufOffset = 0;
+    private int state = 0;
 
     public RAnsDecoder(int ransPrecisionBits) {
+        this.ransPrecisionBits = ransPrecisionBits;
         this.ransPrecision = 1 << ransPrecisionBits;
+        this.ransPrecisionMask = this.ransPrecision - 1;
         this.lRansBase = this.ransPrecision * 4;
     }
 
     public Status readInit(RawPointer buf, long offset) {
         if (offset < 1) return Status.dracoError("Invalid offset: " + offset);
-        ans.buf = buf;
-        int x = buf.getRawUByte(offset - 1).shr(6).intValue();
+        this.buf = buf;
+        int x = (buf.getRawByte(offset - 1) & 0xFF) >> 6;
         if (x == 0) {
-            ans.bufOffset = offset - 1;
-            ans.state = buf.getRawUByte(offset - 1).and(0x3F).uIntValue();
+            this.bufOffset = offset - 1;
+            this.state = buf.getRawByte(offset - 1) & 0x3F;
         } else if (x == 1) {
             if (offset < 2) return Status.dracoError("Invalid offset: " + offset);
-            ans.bufOffset = offset - 2;
-            ans.state = Ans.getLE16(buf.rawAdd(offset - 2)).and(0x3FFF).uIntValue();
+            this.bufOffset = offset - 2;
+            this.state = Ans.getLE16(buf.rawAdd(offset - 2)).intValue() & 0x3FFF;
         } else if (x == 2) {
             if (offset < 3) return Status.dracoError("Invalid offset: " + offset);
-            ans.bufOffset = offset - 3;
-            ans.state = Ans.getLE24(buf.rawAdd(offset - 3)).and(0x3FFFFF);
-        } else if (x == 3) {
-            ans.bufOffset = offset - 4;
-            ans.state = Ans.getLE32(buf.rawAdd(offset - 4)).and(0x3FFFFFFF);
+            this.bufOffset = offset - 3;
+            this.state = Ans.getLE24(buf.rawAdd(offset - 3)).intValue() & 0x3FFFFF;
         } else {
-            return Status.dracoError("Invalid x: " + x);
+            this.bufOffset = offset - 4;
+            this.state = Ans.getLE32(buf.rawAdd(offset - 4)).intValue() & 0x3FFFFFFF;
         }
-        ans.state = ans.state.add(lRansBase);
-        if (ans.state.ge(lRansBase * Ans.DRACO_ANS_IO_BASE)) {
+        this.state += lRansBase;
+        if (this.state >= lRansBase * Ans.DRACO_ANS_IO_BASE) {
             return Status.dracoError("state is too large: (state = "
-                    + ans.state + ") >= " + lRansBase * Ans.DRACO_ANS_IO_BASE);
+                    + this.state + ") >= " + lRansBase * Ans.DRACO_ANS_IO_BASE);
         }
         return Status.ok();
     }
 
     public boolean readEnd() {
-        return ans.state.equals(lRansBase);
+        return this.state == lRansBase;
     }
 
     public boolean readerHasError() {
-        return ans.state.lt(lRansBase) && ans.bufOffset == 0;
+        return this.state < lRansBase && this.bufOffset == 0;
     }
 
-    public UInt ransRead() {
-        RAnsDecoderSymbol sym = new RAnsDecoderSymbol();
-        while (ans.state.lt(lRansBase) && ans.bufOffset > 0) {
-            ans.state = ans.state.mul(Ans.DRACO_ANS_IO_BASE).add(ans.buf.getRawUByte(--ans.bufOffset).uIntValue());
+    public int ransRead() {
+        int state = this.state;
+        while (state < lRansBase && this.bufOffset > 0) {
+            state = state * Ans.DRACO_ANS_IO_BASE + (this.buf.getRawByte(--this.bufOffset) & 0xFF);
         }
-        UInt quo = ans.state.div(ransPrecision);
-        UInt rem = ans.state.mod(ransPrecision);
-        this.fetchSym(sym, rem);
-        ans.state = quo.mul(sym.prob).add(rem).sub(sym.cumProb);
-        return sym.val;
+        int quo = state >>> ransPrecisionBits;
+        int rem = state & ransPrecisionMask;
+        int symbol = this.lutTable[rem];
+        this.state = quo * this.probTable[symbol] + rem - this.cumProbTable[symbol];
+        return symbol;
     }
 
     public Status ransBuildLookUpTable(CppVector<UInt> tokenProbs, UInt numSymbols) {
-        this.lutTable.resize(ransPrecision);
-        this.probabilityTable.resize(numSymbols.intValue());
-        UInt cumProb = UInt.ZERO;
-        UInt actProb = UInt.ZERO;
-        for (UInt i = UInt.ZERO; i.lt(numSymbols); i = i.add(1)) {
-            UInt tokenProb = tokenProbs.get(i);
-            RAnsSymbol symbol = this.probabilityTable.get(i);
-            symbol.prob = tokenProb;
-            symbol.cumProb = cumProb;
-            cumProb = cumProb.add(tokenProb);
-            if (cumProb.gt(ransPrecision)) {
+        int symbolCount = numSymbols.intValue();
+        if (this.lutTable.length != ransPrecision) this.lutTable = new int[ransPrecision];
+        if (this.probTable.length != symbolCount) {
+            this.probTable = new int[symbolCount];
+            this.cumProbTable = new int[symbolCount];
+        }
+        int cumProb = 0;
+        int actProb = 0;
+        for (int i = 0; i < symbolCount; i++) {
+            int tokenProb = tokenProbs.get(i).intValue();
+            // Checked before the addition, since tokenProb itself may be out of the range
+            if (tokenProb < 0 || tokenProb > ransPrecision - cumProb) {
                 return Status.dracoError("cumProb > ransPrecision");
             }
-            for (UInt j = actProb; j.lt(cumProb); j = j.add(1)) {
-                this.lutTable.set(j, i);
+            this.probTable[i] = tokenProb;
+            this.cumProbTable[i] = cumProb;
+            cumProb += tokenProb;
+            for (int j = actProb; j < cumProb; j++) {
+                this.lutTable[j] = i;
             }
             actProb = cumProb;
         }
-        if (!cumProb.equals(ransPrecision)) {
+        if (cumProb != ransPrecision) {
             return Status.dracoError("cumProb != ransPrecision");
         }
         return Status.ok();
     }
 
-    private void fetchSym(RAnsDecoderSymbol out, UInt rem) {
-        UInt symbol = this.lutTable.get(rem);
-        out.val = symbol;
-        out.prob = this.probabilityTable.get(symbol).prob;
-        out.cumProb = this.probabilityTable.get(symbol).cumProb;
-    }
-
 }
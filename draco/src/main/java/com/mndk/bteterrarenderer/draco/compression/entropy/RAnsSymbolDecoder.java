@@ -131,7 +131,7 @@ public class RAnsSymbolDecoder implements SymbolDecoder {
     }
 
     @Override
-    public UInt decodeSymbol() {
+    public int decodeSymbol() {
         return ans.ransRead();
     }
 
@@ -29,7 +29,8 @@ public interface SymbolDecoder {
 
     UInt getNumSymbols();
 
-    UInt decodeSymbol();
+    /** @return The next symbol, which is never negative */
+    int decodeSymbol();
 
     void endDecoding();
 
@@ -20,6 +20,7 @@ package com.mndk.bteterrarenderer.draco.compression.entropy;
 import com.mndk.bteterrarenderer.datatype.number.UByte;
 import com.mndk.bteterrarenderer.datatype.number.UInt;
 import com.mndk.bteterrarenderer.datatype.pointer.Pointer;
+import com.mndk.bteterrarenderer.datatype.pointer.RawIntPointer;
 import com.mndk.bteterrarenderer.draco.compression.config.SymbolCodingMethod;
 import com.mndk.bteterrarenderer.draco.core.DecoderBuffer;
 import com.mndk.bteterrarenderer.draco.core.Status;
@@ -67,12 +68,12 @@ public class SymbolDecoding {
         // values are encoded).
         srcBuffer.startBitDecoding(false, Pointer.newULong());
         int valueId = 0;
+        Pointer<UInt> val = Pointer.newUInt();
         for (UInt i = UInt.ZERO; i.lt(numValues); i = i.add(numComponents)) {
             // Decode the tag.
-            UInt bitLength = tagDecoder.decodeSymbol();
+            int bitLength = tagDecoder.decodeSymbol();
             // Decode the actual value.
             for (int j = 0; j < numComponents; j++) {
-                Pointer<UInt> val = Pointer.newUInt();
                 if (srcBuffer.decodeLeastSignificantBits32(bitLength, val).isError(chain)) return chain.get();
                 outValues.set(valueId++, val.get());
             }
@@ -94,10 +95,13 @@ public class SymbolDecoding {
         }
 
         if (decoder.startDecoding(srcBuffer).isError(chain)) return chain.get();
+        // Symbols are written as raw ints when the output is backed by ints, so that they're never boxed
+        RawIntPointer rawOutValues = outValues instanceof RawIntPointer ? (RawIntPointer) outValues : null;
         for (int i = 0, until = numValues.intValue(); i < until; i++) {
             // Decode a symbol into the value.
-            UInt value = decoder.decodeSymbol();
-            outValues.set(i, value);
+            int value = decoder.decodeSymbol();
+            if (rawOutValues != null) rawOutValues.setRawInt(i, value);
+            else outValues.set(i, UInt.of(value));
         }
         decoder.endDecoding();
         return Status.ok();
@@ -36,10 +36,10 @@ public class BitUtils {
     }
 
     public UInt reverseBits32(UInt n) {
-        n = n.shl(1).and(0x55555555).or(n.and(0x55555555).shr(1));
-        n = n.shl(2).and(0x33333333).or(n.and(0x33333333).shr(2));
-        n = n.shl(4).and(0x0F0F0F0F).or(n.and(0x0F0F0F0F).shr(4));
-        n = n.shl(8).and(0x00FF00FF).or(n.and(0x00FF00FF).shr(8));
+        n = n.shr(1).and(0x55555555).or(n.and(0x55555555).shl(1));
+        n = n.shr(2).and(0x33333333).or(n.and(0x33333333).shl(2));
+        n = n.shr(4).and(0x0F0F0F0F).or(n.and(0x0F0F0F0F).shl(4));
+        n = n.shr(8).and(0x00FF00FF).or(n.and(0x00FF00FF).shl(8));
         return n.shr(16).or(n.shl(16));
     }
 
@@ -68,8 +68,26 @@ public class DecoderBuffer {
         this.init(Pointer.wrap(data).asRaw(), data.length);
     }
     public void init(InputStream inputStream) throws IOException { this.init(IOUtil.readAllBytes(inputStream)); }
-    public void init(ByteBuf byteBuf) { this.init(IOUtil.readAllBytes(byteBuf)); }
-    public void init(ByteBuffer byteBuffer) { this.init(IOUtil.readAllBytes(byteBuffer)); }
+    /** Heap-backed buffers are wrapped without a copy, and consumed just like the copying path. */
+    public void init(ByteBuf byteBuf) {
+        if (!byteBuf.hasArray()) {
+            this.init(IOUtil.readAllBytes(byteBuf));
+            return;
+        }
+        int size = byteBuf.readableBytes();
+        this.init(Pointer.wrap(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex()).asRaw(), size);
+        byteBuf.skipBytes(size);
+    }
+    /** Heap-backed buffers are wrapped without a copy, and consumed just like the copying path. */
+    public void init(ByteBuffer byteBuffer) {
+        if (!byteBuffer.hasArray()) {
+            this.init(IOUtil.readAllBytes(byteBuffer));
+            return;
+        }
+        int size = byteBuffer.remaining();
+        this.init(Pointer.wrap(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position()).asRaw(), size);
+        byteBuffer.position(byteBuffer.limit());
+    }
 
     /** Sets the buffer's internal data. {@code version} is the Draco bitstream version. */
     public void init(RawPointer data, long dataSize, int version) {
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 The Draco Authors (for providing the original C++ code)
+ * Copyright (C) 2024 m4ndeokyi (for translating the code into Java)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mndk.bteterrarenderer.draco.compression.bitcoder;
+
+import com.mndk.bteterrarenderer.datatype.number.UInt;
+import com.mndk.bteterrarenderer.draco.compression.config.DracoVersions;
+import com.mndk.bteterrarenderer.draco.core.DecoderBuffer;
+import com.mndk.bteterrarenderer.draco.core.EncoderBuffer;
+import com.mndk.bteterrarenderer.draco.core.StatusAssert;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RAnsBitCodingTest {
+
+    private static final int BITSTREAM_VERSION = DracoVersions.MESH_BIT_STREAM_VERSION;
+
+    private static DecoderBuffer toDecoderBuffer(EncoderBuffer eb) {
+        DecoderBuffer db = new DecoderBuffer();
+        db.init(eb.getData(), eb.size());
+        db.setBitstreamVersion(BITSTREAM_VERSION);
+        return db;
+    }
+
+    @Test
+    public void testSkewedBits() {
+        // Covers the extreme zero probabilities as well (clamped to 255 and 1 by the encoder)
+        double[] oneRatios = { 0, 0.001, 0.1, 0.5, 0.9, 0.999, 1 };
+        Random random = new Random(1234);
+        for (double oneRatio : oneRatios) {
+            boolean[] bits = new boolean[5000];
+            RAnsBitEncoder encoder = new RAnsBitEncoder();
+            encoder.startEncoding();
+            for (int i = 0; i < bits.length; ++i) {
+                bits[i] = random.nextDouble() < oneRatio;
+                encoder.encodeBit(bits[i]);
+            }
+            EncoderBuffer eb = new EncoderBuffer();
+            encoder.endEncoding(eb);
+
+            RAnsBitDecoder decoder = new RAnsBitDecoder();
+            StatusAssert.assertOk(decoder.startDecoding(toDecoderBuffer(eb)));
+            for (int i = 0; i < bits.length; ++i) {
+                Assert.assertEquals("ratio=" + oneRatio + ", i=" + i, bits[i], decoder.decodeNextBit());
+            }
+            decoder.endDecoding();
+        }
+    }
+
+    @Test
+    public void testLeastSignificantBits() {
+        int[] values = { 0, 1, 0x7F, 0x1234, 0xFFFF, 0x7FFFFFFF, 0xFFFFFFFF, 0x80000000 };
+        int[] bitLengths = { 1, 1, 7, 13, 16, 31, 32, 32 };
+        RAnsBitEncoder encoder = new RAnsBitEncoder();
+        encoder.startEncoding();
+        for (int i = 0; i < values.length; ++i) {
+            encoder.encodeLeastSignificantBits32(bitLengths[i], UInt.of(values[i]));
+        }
+        EncoderBuffer eb = new EncoderBuffer();
+        encoder.endEncoding(eb);
+
+        RAnsBitDecoder decoder = new RAnsBitDecoder();
+        StatusAssert.assertOk(decoder.startDecoding(toDecoderBuffer(eb)));
+        AtomicReference<UInt> value = new AtomicReference<>();
+        for (int i = 0; i < values.length; ++i) {
+            decoder.decodeLeastSignificantBits32(bitLengths[i], value);
+            Assert.assertEquals(UInt.of(values[i]), value.get());
+        }
+        decoder.endDecoding();
+    }
+
+}
@@ -4,13 +4,11 @@ import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsQuad;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsTriangle;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTex;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTexNorm;
-import com.mndk.bteterrarenderer.mcconnector.util.math.McCoord;
 import net.minecraft.client.render.*;
 import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.TriState;
 import net.minecraft.util.Util;
-import org.joml.Vector2f;
 
 import java.util.function.BiFunction;
 
@@ -44,16 +42,15 @@ public class BufferBuildersManagerImpl implements BufferBuildersManager {
 
         // DrawMode.QUADS
         // VertexFormats.POSITION_COLOR_TEXTURE_OVERLAY_LIGHT_NORMAL
-        return new QuadBufferBuilderWrapper<>() {
+        return new QuadBufferBuilderWrapper() {
             private MatrixStack.Entry entry;
             private VertexConsumer consumer;
             public void setContext(WorldDrawContextWrapper context) {
                 this.entry = ((WorldDrawContextWrapperImpl) context).stack().peek();
                 this.consumer = ((WorldDrawContextWrapperImpl) context).provider().getBuffer(renderLayer);
             }
-            public void next(PosTex vertex) {
-                McCoord tp = this.getTransformer().transform(vertex.pos);
-                nextVertex(entry, consumer, tp, vertex.tex, new McCoord(0, 1, 0), alpha);
+            protected void nextVertex(double x, double y, double z, float u, float v) {
+                writeVertex(entry, consumer, x, y, z, u, v, 0, 1, 0, alpha);
             }
         };
     }
@@ -66,27 +63,29 @@ public class BufferBuildersManagerImpl implements BufferBuildersManager {
 
         // DrawMode.QUADS
         // VertexFormats.POSITION_COLOR_TEXTURE_OVERLAY_LIGHT_NORMAL
-        return new TriangleBufferBuilderWrapper<>() {
+        return new TriangleBufferBuilderWrapper() {
             private MatrixStack.Entry entry;
             private VertexConsumer consumer;
             public void setContext(WorldDrawContextWrapper context) {
                 this.entry = ((WorldDrawContextWrapperImpl) context).stack().peek();
                 this.consumer = ((WorldDrawContextWrapperImpl) context).provider().getBuffer(renderLayer);
             }
-            public void next(PosTexNorm vertex) {
-                PosTexNorm tv = vertex.transform(this.getTransformer());
-                nextVertex(entry, consumer, tv.pos, tv.tex, enableNormal ? tv.normal : new McCoord(0, 1, 0), alpha);
+            protected void nextVertex(double x, double y, double z, float u, float v,
+                                      double nx, double ny, double nz) {
+                if (enableNormal) writeVertex(entry, consumer, x, y, z, u, v, nx, ny, nz, alpha);
+                else writeVertex(entry, consumer, x, y, z, u, v, 0, 1, 0, alpha);
             }
         };
     }
 
-    private static void nextVertex(MatrixStack.Entry entry, VertexConsumer consumer,
-                                   McCoord pos, Vector2f tex, McCoord normal, float alpha) {
-        consumer.vertex(entry, (float) pos.getX(), pos.getY(), (float) pos.getZ())
+    private static void writeVertex(MatrixStack.Entry entry, VertexConsumer consumer,
+                                    double x, double y, double z, float u, float v,
+                                    double nx, double ny, double nz, float alpha) {
+        consumer.vertex(entry, (float) x, (float) y, (float) z)
                 .color(1, 1, 1, alpha)
-                .texture(tex.x, tex.y)
+                .texture(u, v)
                 .overlay(OverlayTexture.DEFAULT_UV)
                 .light(0x00F000F0)
-                .normal(entry, (float) normal.getX(), normal.getY(), (float) normal.getZ());
+                .normal(entry, (float) nx, (float) ny, (float) nz);
     }
 }
@@ -1,8 +1,10 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 
 import com.mndk.bteterrarenderer.util.IOUtil;
+import com.mndk.bteterrarenderer.util.image.RawImage;
 import lombok.SneakyThrows;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.texture.AbstractTexture;
 import net.minecraft.client.texture.MissingSprite;
 import net.minecraft.client.texture.NativeImage;
 import net.minecraft.client.texture.NativeImageBackedTexture;
@@ -18,13 +20,40 @@ public class TextureManagerImpl extends TextureManager {
     }
     @SneakyThrows
     protected NativeTextureWrapper allocateAndGetTextureObject(String modId, int count, @Nonnull BufferedImage image) {
+        NativeImage nativeImage = NativeImage.read(IOUtil.imageToInputStream(image));
+        return this.registerNativeImage(modId, count, nativeImage);
+    }
+    protected NativeTextureWrapper allocateAndGetTextureObject(String modId, int count, @Nonnull RawImage image) {
         int width = image.getWidth();
         int height = image.getHeight();
-        NativeImage nativeImage = NativeImage.read(IOUtil.imageToInputStream(image));
+        NativeImage nativeImage = new NativeImage(width, height, false);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) nativeImage.setColorArgb(x, y, image.getArgb(x, y));
+        }
+        return this.registerNativeImage(modId, count, nativeImage);
+    }
+    private NativeTextureWrapper registerNativeImage(String modId, int count, NativeImage nativeImage) {
         NativeImageBackedTexture texture = new NativeImageBackedTexture(nativeImage);
         Identifier id = Identifier.of(modId, "dynamic-" + count);
         MinecraftClient.getInstance().getTextureManager().registerTexture(id, texture);
-        return new NativeTextureWrapperImpl(id, width, height);
+        return new NativeTextureWrapperImpl(id, nativeImage.getWidth(), nativeImage.getHeight());
+    }
+    protected boolean writeTextureRegionInternal(NativeTextureWrapper textureObject, int offsetX, int offsetY, @Nonnull RawImage image) {
+        AbstractTexture texture = this.getTexture(textureObject);
+        if (!(texture instanceof NativeImageBackedTexture)) return false;
+        NativeImage nativeImage = ((NativeImageBackedTexture) texture).getImage();
+        if (nativeImage == null) return false;
+        for (int y = 0; y < image.getHeight(); ++y) {
+            for (int x = 0; x < image.getWidth(); ++x) nativeImage.setColorArgb(offsetX + x, offsetY + y, image.getArgb(x, y));
+        }
+        return true;
+    }
+    protected void flushTextureUpdatesInternal(NativeTextureWrapper textureObject) {
+        AbstractTexture texture = this.getTexture(textureObject);
+        if (texture instanceof NativeImageBackedTexture) ((NativeImageBackedTexture) texture).upload();
+    }
+    private AbstractTexture getTexture(NativeTextureWrapper textureObject) {
+        return MinecraftClient.getInstance().getTextureManager().getTexture(((NativeTextureWrapperImpl) textureObject).delegate);
     }
     protected void deleteTextureObjectInternal(NativeTextureWrapper textureObject) {
         MinecraftClient.getInstance().getTextureManager().destroyTexture(((NativeTextureWrapperImpl) textureObject).delegate);
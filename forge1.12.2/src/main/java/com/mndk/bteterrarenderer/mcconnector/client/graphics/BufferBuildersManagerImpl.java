@@ -4,12 +4,10 @@ import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsQuad;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsTriangle;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTex;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTexNorm;
-import com.mndk.bteterrarenderer.mcconnector.util.math.McCoord;
 import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.GlStateManager;
 import net.minecraft.client.renderer.Tessellator;
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
-import org.joml.Vector2f;
 import org.lwjgl.opengl.GL11;
 
 public class BufferBuildersManagerImpl implements BufferBuildersManager {
@@ -20,7 +18,7 @@ public class BufferBuildersManagerImpl implements BufferBuildersManager {
 
         // GL11.GL_QUADS
         // DefaultVertexFormats.POSITION_COLOR_TEX_LIGHT
-        return new QuadBufferBuilderWrapper<PosTex>() {
+        return new QuadBufferBuilderWrapper() {
             public void setContext(WorldDrawContextWrapper context) {}
             public void preUpload() {
                 GlStateManager.disableCull();
@@ -29,8 +27,8 @@ public class BufferBuildersManagerImpl implements BufferBuildersManager {
                 GlStateManager.bindTexture(((NativeTextureWrapperImpl) texture).delegate);
                 bufferBuilder.begin(GL11.GL_QUADS, DefaultVertexFormats.BLOCK);
             }
-            public void next(PosTex vertex) {
-                nextVertex(bufferBuilder, this.getTransformer().transform(vertex.pos), vertex.tex, alpha);
+            protected void nextVertex(double x, double y, double z, float u, float v) {
+                writeVertex(bufferBuilder, x, y, z, u, v, alpha);
             }
             public void upload() {
                 tessellator.draw();
@@ -48,7 +46,7 @@ public class BufferBuildersManagerImpl implements BufferBuildersManager {
 
         // GL11.GL_TRIANGLES
         // DefaultVertexFormats.POSITION_COLOR_TEX_LIGHT
-        return new TriangleBufferBuilderWrapper<PosTexNorm>() {
+        return new TriangleBufferBuilderWrapper() {
             public void setContext(WorldDrawContextWrapper context) {}
             public void preUpload() {
                 GlStateManager.disableCull();
@@ -58,8 +56,9 @@ public class BufferBuildersManagerImpl implements BufferBuildersManager {
 
                 bufferBuilder.begin(GL11.GL_TRIANGLES, DefaultVertexFormats.BLOCK);
             }
-            public void next(PosTexNorm vertex) {
-                nextVertex(bufferBuilder, this.getTransformer().transform(vertex.pos), vertex.tex, alpha);
+            protected void nextVertex(double x, double y, double z, float u, float v,
+                                      double nx, double ny, double nz) {
+                writeVertex(bufferBuilder, x, y, z, u, v, alpha);
             }
             public void upload() {
                 tessellator.draw();
@@ -70,10 +69,11 @@ public class BufferBuildersManagerImpl implements BufferBuildersManager {
         };
     }
 
-    private static void nextVertex(BufferBuilder bufferBuilder, McCoord pos, Vector2f tex, float alpha) {
-        bufferBuilder.pos((float) pos.getX(), pos.getY(), (float) pos.getZ())
+    private static void writeVertex(BufferBuilder bufferBuilder, double x, double y, double z,
+                                    float u, float v, float alpha) {
+        bufferBuilder.pos((float) x, (float) y, (float) z)
                 .color(1, 1, 1, alpha)
-                .tex(tex.x, tex.y)
+                .tex(u, v)
                 .lightmap(0xf0, 0xf0)
                 .endVertex();
     }
@@ -1,5 +1,6 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 
+import com.mndk.bteterrarenderer.util.image.RawImage;
 import net.minecraft.client.renderer.GlStateManager;
 import net.minecraft.client.renderer.texture.TextureUtil;
 import org.lwjgl.opengl.GL11;
@@ -13,15 +14,20 @@ public class TextureManagerImpl extends TextureManager {
         return new NativeTextureWrapperImpl(TextureUtil.MISSING_TEXTURE.getGlTextureId(), 16, 16);
     }
     protected NativeTextureWrapper allocateAndGetTextureObject(String modId, int count, @Nonnull BufferedImage image) {
+        return this.allocateAndGetTextureObject(modId, count, RawImage.fromImage(image));
+    }
+    protected NativeTextureWrapper allocateAndGetTextureObject(String modId, int count, @Nonnull RawImage image) {
         int glId = GL11.glGenTextures();
         int width = image.getWidth(), height = image.getHeight();
         TextureUtil.allocateTexture(glId, width, height);
-
-        int[] imageData = new int[width * height];
-        image.getRGB(0, 0, width, height, imageData, 0, width);
-        TextureUtil.uploadTexture(glId, imageData, width, height);
+        TextureUtil.uploadTexture(glId, image.getArgb(), width, height);
         return new NativeTextureWrapperImpl(glId, width, height);
     }
+    protected boolean writeTextureRegionInternal(NativeTextureWrapper textureObject, int x, int y, @Nonnull RawImage image) {
+        GlStateManager.bindTexture(((NativeTextureWrapperImpl) textureObject).delegate);
+        TextureUtil.uploadTextureMipmap(new int[][] { image.getArgb() }, image.getWidth(), image.getHeight(), x, y, false, false);
+        return true;
+    }
     protected void deleteTextureObjectInternal(NativeTextureWrapper textureObject) {
         GlStateManager.deleteTexture(((NativeTextureWrapperImpl) textureObject).delegate);
     }
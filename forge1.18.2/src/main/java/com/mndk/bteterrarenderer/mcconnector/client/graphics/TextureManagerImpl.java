@@ -1,9 +1,11 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 
 import com.mndk.bteterrarenderer.util.IOUtil;
+import com.mndk.bteterrarenderer.util.image.RawImage;
 import com.mojang.blaze3d.platform.NativeImage;
 import lombok.SneakyThrows;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.texture.AbstractTexture;
 import net.minecraft.client.renderer.texture.DynamicTexture;
 import net.minecraft.client.renderer.texture.MissingTextureAtlasSprite;
 import net.minecraft.resources.ResourceLocation;
@@ -18,13 +20,40 @@ public class TextureManagerImpl extends TextureManager {
     }
     @SneakyThrows
     protected NativeTextureWrapper allocateAndGetTextureObject(String modId, int count, @Nonnull BufferedImage image) {
+        NativeImage nativeImage = NativeImage.read(IOUtil.imageToInputStream(image));
+        return this.registerNativeImage(modId, count, nativeImage);
+    }
+    protected NativeTextureWrapper allocateAndGetTextureObject(String modId, int count, @Nonnull RawImage image) {
         int width = image.getWidth();
         int height = image.getHeight();
-        NativeImage nativeImage = NativeImage.read(IOUtil.imageToInputStream(image));
+        NativeImage nativeImage = new NativeImage(width, height, false);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) nativeImage.setPixelRGBA(x, y, image.getAbgr(x, y));
+        }
+        return this.registerNativeImage(modId, count, nativeImage);
+    }
+    private NativeTextureWrapper registerNativeImage(String modId, int count, NativeImage nativeImage) {
         DynamicTexture texture = new DynamicTexture(nativeImage);
         ResourceLocation location = new ResourceLocation(modId, "dynamic-" + count);
         Minecraft.getInstance().getTextureManager().register(location, texture);
-        return new NativeTextureWrapperImpl(location, width, height);
+        return new NativeTextureWrapperImpl(location, nativeImage.getWidth(), nativeImage.getHeight());
+    }
+    protected boolean writeTextureRegionInternal(NativeTextureWrapper textureObject, int offsetX, int offsetY, @Nonnull RawImage image) {
+        AbstractTexture texture = this.getTexture(textureObject);
+        if (!(texture instanceof DynamicTexture)) return false;
+        NativeImage nativeImage = ((DynamicTexture) texture).getPixels();
+        if (nativeImage == null) return false;
+        for (int y = 0; y < image.getHeight(); ++y) {
+            for (int x = 0; x < image.getWidth(); ++x) nativeImage.setPixelRGBA(offsetX + x, offsetY + y, image.getAbgr(x, y));
+        }
+        return true;
+    }
+    protected void flushTextureUpdatesInternal(NativeTextureWrapper textureObject) {
+        AbstractTexture texture = this.getTexture(textureObject);
+        if (texture instanceof DynamicTexture) ((DynamicTexture) texture).upload();
+    }
+    private AbstractTexture getTexture(NativeTextureWrapper textureObject) {
+        return Minecraft.getInstance().getTextureManager().getTexture(((NativeTextureWrapperImpl) textureObject).delegate);
     }
     protected void deleteTextureObjectInternal(NativeTextureWrapper textureObject) {
         Minecraft.getInstance().getTextureManager().release(((NativeTextureWrapperImpl) textureObject).delegate);
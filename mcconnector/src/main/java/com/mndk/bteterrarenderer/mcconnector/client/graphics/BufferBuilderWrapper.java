@@ -1,12 +1,18 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShape;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
 import com.mndk.bteterrarenderer.mcconnector.util.math.McCoordTransformer;
 
 public interface BufferBuilderWrapper<S extends GraphicsShape> {
     void setContext(WorldDrawContextWrapper context);
     void setTransformer(McCoordTransformer modelPosTransformer);
     void nextShape(S shape);
+    /**
+     * Streams every vertex in the buffer without allocating per-vertex objects.
+     * The buffer must have been packed with the {@link DrawingFormat} this builder was started from.
+     */
+    void nextVertices(PackedVertexBuffer vertices);
 
     default void preUpload() {}
     default void upload() {}
@@ -3,13 +3,36 @@ package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsQuad;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShape;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsTriangle;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTex;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTexNorm;
 
 public interface DrawingFormat<S extends GraphicsShape> {
 
-    DrawingFormat<GraphicsQuad<PosTex>> QUAD_PT = VertexBeginner::begin3dQuad;
-    DrawingFormat<GraphicsTriangle<PosTexNorm>> TRI_PTN = VertexBeginner::begin3dTri;
+    DrawingFormat<GraphicsQuad<PosTex>> QUAD_PT = new DrawingFormat<GraphicsQuad<PosTex>>() {
+        public BufferBuilderWrapper<GraphicsQuad<PosTex>> begin(VertexBeginner beginner, NativeTextureWrapper texture) {
+            return beginner.begin3dQuad(texture);
+        }
+        public void pack(GraphicsQuad<PosTex> shape, PackedVertexBuffer buffer) {
+            buffer.add(shape.v0);
+            buffer.add(shape.v1);
+            buffer.add(shape.v2);
+            buffer.add(shape.v3);
+        }
+    };
+    DrawingFormat<GraphicsTriangle<PosTexNorm>> TRI_PTN = new DrawingFormat<GraphicsTriangle<PosTexNorm>>() {
+        public BufferBuilderWrapper<GraphicsTriangle<PosTexNorm>> begin(VertexBeginner beginner, NativeTextureWrapper texture) {
+            return beginner.begin3dTri(texture);
+        }
+        public void pack(GraphicsTriangle<PosTexNorm> shape, PackedVertexBuffer buffer) {
+            buffer.add(shape.v0);
+            buffer.add(shape.v1);
+            buffer.add(shape.v2);
+        }
+    };
 
     BufferBuilderWrapper<S> begin(VertexBeginner beginner, NativeTextureWrapper texture);
+
+    /** Appends the vertices of the shape to the buffer, in the order the builder expects them */
+    void pack(S shape, PackedVertexBuffer buffer);
 }
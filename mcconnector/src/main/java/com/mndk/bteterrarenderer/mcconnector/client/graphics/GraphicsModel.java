@@ -2,6 +2,7 @@ package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 
 import com.mndk.bteterrarenderer.mcconnector.McConnector;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShapes;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
 import com.mndk.bteterrarenderer.mcconnector.util.math.McCoordTransformer;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -9,6 +10,9 @@ import lombok.RequiredArgsConstructor;
 @Data
 @RequiredArgsConstructor
 public class GraphicsModel {
+    public static final long BYTES_PER_PIXEL = 4;
+    public static final long BYTES_PER_VERTEX = PackedVertexBuffer.BYTES_PER_VERTEX;
+
     private final NativeTextureWrapper textureObject;
     private final GraphicsShapes shapes;
 
@@ -19,4 +23,10 @@ public class GraphicsModel {
                 : this.textureObject;
         shapes.drawAndRender(context, texture, modelPosTransformer, beginner);
     }
+
+    /** @return The approximate memory used by the texture and the vertices of this model, in bytes */
+    public long estimateWeightBytes() {
+        long pixels = (long) this.textureObject.getWidth() * this.textureObject.getHeight();
+        return pixels * BYTES_PER_PIXEL + this.shapes.getVertexCount() * BYTES_PER_VERTEX;
+    }
 }
@@ -1,14 +1,16 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsQuad;
-import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.GraphicsVertex;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTex;
 import com.mndk.bteterrarenderer.mcconnector.util.math.McCoordTransformer;
 import lombok.Getter;
 
-@Getter
-public abstract class QuadBufferBuilderWrapper<V extends GraphicsVertex> implements BufferBuilderWrapper<GraphicsQuad<V>> {
+public abstract class QuadBufferBuilderWrapper implements BufferBuilderWrapper<GraphicsQuad<PosTex>> {
     // late init
+    @Getter
     private McCoordTransformer transformer = null;
+    private final double[] pos = new double[3];
 
     @Override
     public final void setTransformer(McCoordTransformer transformer) {
@@ -16,12 +18,29 @@ public abstract class QuadBufferBuilderWrapper<V extends GraphicsVertex> impleme
     }
 
     @Override
-    public final void nextShape(GraphicsQuad<V> shape) {
+    public final void nextShape(GraphicsQuad<PosTex> shape) {
         this.next(shape.v0);
         this.next(shape.v1);
         this.next(shape.v2);
         this.next(shape.v3);
     }
 
-    protected abstract void next(V vertex);
+    @Override
+    public final void nextVertices(PackedVertexBuffer vertices) {
+        for (int i = 0, count = vertices.getVertexCount(); i < count; i++) {
+            this.next(vertices.getX(i), vertices.getY(i), vertices.getZ(i), vertices.getU(i), vertices.getV(i));
+        }
+    }
+
+    private void next(PosTex vertex) {
+        this.next(vertex.pos.getX(), vertex.pos.getY(), vertex.pos.getZ(), vertex.tex.x, vertex.tex.y);
+    }
+
+    private void next(double x, double y, double z, float u, float v) {
+        this.transformer.transform(x, y, z, pos);
+        this.nextVertex(pos[0], pos[1], pos[2], u, v);
+    }
+
+    /** Position is already transformed */
+    protected abstract void nextVertex(double x, double y, double z, float u, float v);
 }
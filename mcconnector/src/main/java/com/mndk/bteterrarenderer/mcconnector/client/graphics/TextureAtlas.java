@@ -0,0 +1,154 @@
+package com.mndk.bteterrarenderer.mcconnector.client.graphics;
+
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShapes;
+import com.mndk.bteterrarenderer.util.image.RawImage;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Packs same-sized images into shared textures ("pages"), so that the models using them can be drawn in a few
+ * batches instead of one per image. Images enter and leave the pages as they're allocated and released, and
+ * pages are deleted once they're empty.<br>
+ * This only works with texture managers that can {@link TextureManager#writeTextureRegion update textures in place}.
+ * Not thread-safe; meant to be used from the render thread.
+ */
+public class TextureAtlas {
+
+    private final TextureManager textureManager;
+    private final String modId;
+    private final int pageSize;
+    private final Map<Long, List<Page>> pagesBySize = new HashMap<>();
+    private final Set<Page> dirtyPages = new LinkedHashSet<>();
+    /** Set once the texture manager turns out not to support in-place updates */
+    private boolean unsupported = false;
+
+    /**
+     * @param pageSize The maximum width and height of a page, in pixels
+     */
+    public TextureAtlas(TextureManager textureManager, String modId, int pageSize) {
+        this.textureManager = textureManager;
+        this.modId = modId;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Copies the image into a free slot, allocating a new page if needed.
+     * Call {@link #flush()} before drawing the models that use the slot.
+     *
+     * @return The slot, or {@code null} if the image is too large to share a page, or the texture manager
+     *         doesn't support the atlas. The image should be given its own texture in that case.
+     */
+    @Nullable
+    public Slot allocate(RawImage image) {
+        if (this.unsupported) return null;
+        int width = image.getWidth(), height = image.getHeight();
+        int columns = this.pageSize / width, rows = this.pageSize / height;
+        if (columns * rows < 2) return null;
+
+        List<Page> pages = this.pagesBySize.computeIfAbsent(((long) width << 32) | height, key -> new ArrayList<>());
+        Page page = null;
+        for (Page candidate : pages) {
+            if (candidate.usedCount < candidate.capacity) { page = candidate; break; }
+        }
+        boolean newPage = page == null;
+        if (newPage) {
+            page = new Page(pages, width, height, columns, rows);
+            pages.add(page);
+        }
+
+        int index = page.used.nextClearBit(0);
+        int x = (index % page.columns) * width, y = (index / page.columns) * height;
+        if (!this.textureManager.writeTextureRegion(page.texture, x, y, image)) {
+            this.unsupported = true;
+            if (newPage) page.delete();
+            return null;
+        }
+        page.used.set(index);
+        page.usedCount++;
+        this.dirtyPages.add(page);
+        return new Slot(page, index, x, y);
+    }
+
+    /** Uploads the pages that were written to since the last call */
+    public void flush() {
+        for (Page page : this.dirtyPages) this.textureManager.flushTextureUpdates(page.texture);
+        this.dirtyPages.clear();
+    }
+
+    /** @return The number of pages currently allocated */
+    public int getPageCount() {
+        int count = 0;
+        for (List<Page> pages : this.pagesBySize.values()) count += pages.size();
+        return count;
+    }
+
+    private class Page {
+        private final List<Page> siblings;
+        private final int slotWidth, slotHeight, columns, capacity;
+        private final NativeTextureWrapper texture;
+        private final BitSet used;
+        private int usedCount = 0;
+
+        private Page(List<Page> siblings, int slotWidth, int slotHeight, int columns, int rows) {
+            this.siblings = siblings;
+            this.slotWidth = slotWidth;
+            this.slotHeight = slotHeight;
+            this.columns = columns;
+            this.capacity = columns * rows;
+            this.used = new BitSet(this.capacity);
+            int width = columns * slotWidth, height = rows * slotHeight;
+            this.texture = textureManager.allocateAndGetTextureObject(modId, new RawImage(width, height, new int[width * height]));
+        }
+
+        private void delete() {
+            this.siblings.remove(this);
+            dirtyPages.remove(this);
+            textureManager.deleteTextureObject(this.texture);
+        }
+    }
+
+    /** A region of a page that holds one image */
+    public class Slot {
+        private final Page page;
+        private final int index;
+        @Getter private final int x, y;
+        private boolean released = false;
+
+        private Slot(Page page, int index, int x, int y) {
+            this.page = page;
+            this.index = index;
+            this.x = x;
+            this.y = y;
+        }
+
+        /** @return The page's texture, which is shared with the other slots of the page */
+        public NativeTextureWrapper getTexture() {
+            return this.page.texture;
+        }
+
+        public int getWidth() { return this.page.slotWidth; }
+        public int getHeight() { return this.page.slotHeight; }
+
+        /**
+         * Maps the texture coordinates of the shapes from the image's {@code [0, 1]} range to the slot's region
+         * of the page. The region is inset by half a pixel so that the neighbouring slots don't bleed in.
+         */
+        public void mapTextureCoords(GraphicsShapes shapes) {
+            float pageWidth = this.page.texture.getWidth(), pageHeight = this.page.texture.getHeight();
+            shapes.mapTextureCoords(
+                    (this.x + 0.5f) / pageWidth, (this.y + 0.5f) / pageHeight,
+                    (this.getWidth() - 1) / pageWidth, (this.getHeight() - 1) / pageHeight
+            );
+        }
+
+        /** Frees the slot for other images. The page is deleted once all of its slots are free. */
+        public void release() {
+            if (this.released) return;
+            this.released = true;
+            this.page.used.clear(this.index);
+            if (--this.page.usedCount == 0) this.page.delete();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 
+import com.mndk.bteterrarenderer.util.image.RawImage;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.awt.image.BufferedImage;
@@ -13,11 +15,45 @@ public abstract class TextureManager {
     protected abstract NativeTextureWrapper getMissingTextureObject();
     public final NativeTextureWrapper allocateAndGetTextureObject(String modId, @Nullable BufferedImage image) {
         if (image == null) return this.getMissingTextureObject();
+        return this.allocateAndGetTextureObject(modId, this.nextTextureCount(modId), image);
+    }
+    /**
+     * Allocates a texture from already extracted pixels. Prefer this over the {@link BufferedImage}
+     * variant on the render thread, as implementations can copy the pixels straight into the native
+     * image instead of going through an image codec.
+     */
+    public final NativeTextureWrapper allocateAndGetTextureObject(String modId, @Nullable RawImage image) {
+        if (image == null) return this.getMissingTextureObject();
+        return this.allocateAndGetTextureObject(modId, this.nextTextureCount(modId), image);
+    }
+    private int nextTextureCount(String modId) {
         int id = textureIdMap.getOrDefault(modId, 0);
         textureIdMap.put(modId, id + 1);
-        return this.allocateAndGetTextureObject(modId, id, image);
+        return id;
     }
     protected abstract NativeTextureWrapper allocateAndGetTextureObject(String modId, int count, @Nonnull BufferedImage image);
+    protected NativeTextureWrapper allocateAndGetTextureObject(String modId, int count, @Nonnull RawImage image) {
+        return this.allocateAndGetTextureObject(modId, count, image.toBufferedImage());
+    }
+    /**
+     * Copies the pixels into a texture allocated by this manager, with their top left corner at {@code (x, y)}.
+     * The change may not be visible until {@link #flushTextureUpdates} is called.
+     *
+     * @return {@code false} if textures can't be updated in place, in which case nothing is changed
+     */
+    public final boolean writeTextureRegion(NativeTextureWrapper textureObject, int x, int y, @Nonnull RawImage image) {
+        if (textureObject.isDeleted()) return false;
+        return this.writeTextureRegionInternal(textureObject, x, y, image);
+    }
+    protected boolean writeTextureRegionInternal(NativeTextureWrapper textureObject, int x, int y, @Nonnull RawImage image) {
+        return false;
+    }
+    /** Uploads the changes made by {@link #writeTextureRegion} to the texture */
+    public final void flushTextureUpdates(NativeTextureWrapper textureObject) {
+        if (textureObject.isDeleted()) return;
+        this.flushTextureUpdatesInternal(textureObject);
+    }
+    protected void flushTextureUpdatesInternal(NativeTextureWrapper textureObject) {}
     protected abstract void deleteTextureObjectInternal(NativeTextureWrapper textureObject);
     public final void deleteTextureObject(NativeTextureWrapper textureObject) {
         if (textureObject.isDeleted()) return;
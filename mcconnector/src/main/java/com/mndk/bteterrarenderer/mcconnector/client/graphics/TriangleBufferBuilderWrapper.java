@@ -1,14 +1,17 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics;
 
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsTriangle;
-import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.GraphicsVertex;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTexNorm;
 import com.mndk.bteterrarenderer.mcconnector.util.math.McCoordTransformer;
 import lombok.Getter;
 
-@Getter
-public abstract class TriangleBufferBuilderWrapper<V extends GraphicsVertex> implements BufferBuilderWrapper<GraphicsTriangle<V>> {
+public abstract class TriangleBufferBuilderWrapper implements BufferBuilderWrapper<GraphicsTriangle<PosTexNorm>> {
     // late init
+    @Getter
     private McCoordTransformer transformer = null;
+    private final double[] pos = new double[3];
+    private final double[] normalEnd = new double[3];
 
     @Override
     public final void setTransformer(McCoordTransformer transformer) {
@@ -16,11 +19,34 @@ public abstract class TriangleBufferBuilderWrapper<V extends GraphicsVertex> imp
     }
 
     @Override
-    public final void nextShape(GraphicsTriangle<V> shape) {
+    public final void nextShape(GraphicsTriangle<PosTexNorm> shape) {
         this.next(shape.v0);
         this.next(shape.v1);
         this.next(shape.v2);
     }
 
-    protected abstract void next(V vertex);
+    @Override
+    public final void nextVertices(PackedVertexBuffer vertices) {
+        for (int i = 0, count = vertices.getVertexCount(); i < count; i++) {
+            this.next(vertices.getX(i), vertices.getY(i), vertices.getZ(i), vertices.getU(i), vertices.getV(i),
+                    vertices.getNormalX(i), vertices.getNormalY(i), vertices.getNormalZ(i));
+        }
+    }
+
+    private void next(PosTexNorm vertex) {
+        this.next(vertex.pos.getX(), vertex.pos.getY(), vertex.pos.getZ(), vertex.tex.x, vertex.tex.y,
+                vertex.normal.getX(), vertex.normal.getY(), vertex.normal.getZ());
+    }
+
+    private void next(double x, double y, double z, float u, float v, double nx, double ny, double nz) {
+        // Same as PosTexNorm.transform(), but without allocating
+        this.transformer.transform(x, y, z, pos);
+        this.transformer.transform(x + nx, y + ny, z + nz, normalEnd);
+        this.nextVertex(pos[0], pos[1], pos[2], u, v,
+                normalEnd[0] - pos[0], normalEnd[1] - pos[1], normalEnd[2] - pos[2]);
+    }
+
+    /** Position and normal are already transformed */
+    protected abstract void nextVertex(double x, double y, double z, float u, float v,
+                                       double nx, double ny, double nz);
 }
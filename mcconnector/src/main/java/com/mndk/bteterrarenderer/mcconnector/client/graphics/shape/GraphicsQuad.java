@@ -10,6 +10,11 @@ public class GraphicsQuad<T extends GraphicsVertex> implements GraphicsShape {
 
     public final T v0, v1, v2, v3;
 
+    @Override
+    public int getVertexCount() {
+        return 4;
+    }
+
     public void forEach(Consumer<T> consumer) {
         consumer.accept(this.v0);
         consumer.accept(this.v1);
@@ -1,3 +1,5 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics.shape;
 
-public interface GraphicsShape {}
+public interface GraphicsShape {
+    int getVertexCount();
+}
@@ -1,25 +1,63 @@
 package com.mndk.bteterrarenderer.mcconnector.client.graphics.shape;
 
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.*;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
 import com.mndk.bteterrarenderer.mcconnector.util.math.McCoordTransformer;
-import com.mndk.bteterrarenderer.util.BTRUtil;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+/**
+ * Shapes grouped by their drawing format. The shapes are not kept as objects; their vertices
+ * are packed into a {@link PackedVertexBuffer} as soon as they are added.
+ */
 public class GraphicsShapes {
-    private final Map<DrawingFormat<?>, List<GraphicsShape>> shapeMap = new HashMap<>();
+    private final Map<DrawingFormat<?>, PackedVertexBuffer> bufferMap = new HashMap<>();
 
     public <S extends GraphicsShape> void add(DrawingFormat<S> format, S shape) {
-        List<S> list = BTRUtil.uncheckedCast(shapeMap.computeIfAbsent(format, key -> new ArrayList<>()));
-        list.add(shape);
+        format.pack(shape, bufferMap.computeIfAbsent(format, key -> new PackedVertexBuffer()));
+    }
+
+    /** Appends the vertices of the other shapes, format by format */
+    public void addAll(GraphicsShapes other) {
+        other.bufferMap.forEach((format, vertices) -> bufferMap
+                .computeIfAbsent(format, key -> new PackedVertexBuffer(vertices.getVertexCount()))
+                .addAll(vertices));
+    }
+
+    /** Replaces the vertices of the given format with an already packed buffer */
+    public void setVertices(DrawingFormat<?> format, PackedVertexBuffer vertices) {
+        bufferMap.put(format, vertices);
+    }
+
+    /** @return The packed vertices of each format. The map can't be modified */
+    public Map<DrawingFormat<?>, PackedVertexBuffer> getVertices() {
+        return Collections.unmodifiableMap(bufferMap);
+    }
+
+    /**
+     * Maps the texture coordinates of every vertex in place.
+     * @see PackedVertexBuffer#mapTextureCoords(float, float, float, float)
+     */
+    public void mapTextureCoords(float uOffset, float vOffset, float uScale, float vScale) {
+        bufferMap.values().forEach(buffer -> buffer.mapTextureCoords(uOffset, vOffset, uScale, vScale));
+    }
+
+    /** Releases the unused capacity of the buffers. Call this once every shape is added. */
+    public void trimToSize() {
+        bufferMap.values().forEach(PackedVertexBuffer::trimToSize);
+    }
+
+    public int getVertexCount() {
+        int count = 0;
+        for (PackedVertexBuffer buffer : bufferMap.values()) count += buffer.getVertexCount();
+        return count;
     }
 
     public void drawAndRender(WorldDrawContextWrapper context, NativeTextureWrapper texture,
                               McCoordTransformer modelPosTransformer, VertexBeginner beginner) {
-        shapeMap.forEach((format, shapes) -> {
+        bufferMap.forEach((format, vertices) -> {
             BufferBuilderWrapper<?> builder = format.begin(beginner, texture);
             builder.setContext(context);
             builder.setTransformer(modelPosTransformer);
@@ -27,9 +65,7 @@ public class GraphicsShapes {
             // be pre-configured after 1.18.2, we still need to call preUpload()
             // since 1.12.2 requires it.
             builder.preUpload();
-            for (GraphicsShape shape : shapes) {
-                builder.nextShape(BTRUtil.uncheckedCast(shape));
-            }
+            builder.nextVertices(vertices);
             // Even though vertex consumers do not need to be uploaded after 1.18.2,
             // we still need to call upload() since 1.12.2 requires it.
             builder.upload();
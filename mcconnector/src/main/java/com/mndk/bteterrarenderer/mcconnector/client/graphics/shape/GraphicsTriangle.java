@@ -8,6 +8,11 @@ public class GraphicsTriangle<T extends GraphicsVertex> implements GraphicsShape
 
     public final T v0, v1, v2;
 
+    @Override
+    public int getVertexCount() {
+        return 3;
+    }
+
     @Override
     public String toString() {
         return String.format("GraphicsTriangle[%s, %s, %s]", v0, v1, v2);
@@ -0,0 +1,134 @@
+package com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex;
+
+import com.mndk.bteterrarenderer.mcconnector.util.math.McCoord;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable vertex storage backed by primitive arrays, so that keeping and streaming
+ * vertices does not involve any per-vertex objects.<br>
+ * Positions are kept in double precision ({@code x, y, z}), and the rest of the attributes
+ * in single precision ({@code u, v, nx, ny, nz}). Vertices without a normal are stored with
+ * the {@code (0, 1, 0)} normal.
+ */
+public class PackedVertexBuffer {
+    private static final int POSITION_STRIDE = 3;
+    private static final int ATTRIBUTE_STRIDE = 5;
+    private static final int DEFAULT_CAPACITY = 16;
+    public static final long BYTES_PER_VERTEX = POSITION_STRIDE * Double.BYTES + ATTRIBUTE_STRIDE * Float.BYTES;
+
+    private double[] positions;
+    private float[] attributes;
+    @Getter
+    private int vertexCount = 0;
+
+    public PackedVertexBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PackedVertexBuffer(int initialCapacity) {
+        this.positions = new double[initialCapacity * POSITION_STRIDE];
+        this.attributes = new float[initialCapacity * ATTRIBUTE_STRIDE];
+    }
+
+    public void add(double x, double y, double z, float u, float v, float nx, float ny, float nz) {
+        this.ensureCapacity(this.vertexCount + 1);
+        int p = this.vertexCount * POSITION_STRIDE, a = this.vertexCount * ATTRIBUTE_STRIDE;
+        this.positions[p] = x;
+        this.positions[p + 1] = y;
+        this.positions[p + 2] = z;
+        this.attributes[a] = u;
+        this.attributes[a + 1] = v;
+        this.attributes[a + 2] = nx;
+        this.attributes[a + 3] = ny;
+        this.attributes[a + 4] = nz;
+        this.vertexCount++;
+    }
+
+    public void add(PosTex vertex) {
+        McCoord pos = vertex.pos;
+        this.add(pos.getX(), pos.getY(), pos.getZ(), vertex.tex.x, vertex.tex.y, 0, 1, 0);
+    }
+
+    public void add(PosTexNorm vertex) {
+        McCoord pos = vertex.pos, normal = vertex.normal;
+        this.add(pos.getX(), pos.getY(), pos.getZ(), vertex.tex.x, vertex.tex.y,
+                (float) normal.getX(), normal.getY(), (float) normal.getZ());
+    }
+
+    /** Appends every vertex of the other buffer */
+    public void addAll(PackedVertexBuffer other) {
+        this.ensureCapacity(this.vertexCount + other.vertexCount);
+        System.arraycopy(other.positions, 0, this.positions, this.vertexCount * POSITION_STRIDE,
+                other.vertexCount * POSITION_STRIDE);
+        System.arraycopy(other.attributes, 0, this.attributes, this.vertexCount * ATTRIBUTE_STRIDE,
+                other.vertexCount * ATTRIBUTE_STRIDE);
+        this.vertexCount += other.vertexCount;
+    }
+
+    public double getX(int index) { return this.positions[index * POSITION_STRIDE]; }
+    public double getY(int index) { return this.positions[index * POSITION_STRIDE + 1]; }
+    public double getZ(int index) { return this.positions[index * POSITION_STRIDE + 2]; }
+    public float getU(int index) { return this.attributes[index * ATTRIBUTE_STRIDE]; }
+    public float getV(int index) { return this.attributes[index * ATTRIBUTE_STRIDE + 1]; }
+    public float getNormalX(int index) { return this.attributes[index * ATTRIBUTE_STRIDE + 2]; }
+    public float getNormalY(int index) { return this.attributes[index * ATTRIBUTE_STRIDE + 3]; }
+    public float getNormalZ(int index) { return this.attributes[index * ATTRIBUTE_STRIDE + 4]; }
+
+    /** Maps every texture coordinate {@code (u, v)} to {@code (uOffset + u * uScale, vOffset + v * vScale)} */
+    public void mapTextureCoords(float uOffset, float vOffset, float uScale, float vScale) {
+        for (int a = 0; a < this.vertexCount * ATTRIBUTE_STRIDE; a += ATTRIBUTE_STRIDE) {
+            this.attributes[a] = uOffset + this.attributes[a] * uScale;
+            this.attributes[a + 1] = vOffset + this.attributes[a + 1] * vScale;
+        }
+    }
+
+    /** @return The number of bytes {@link #write(ByteBuffer)} takes */
+    public int getSerializedSize() {
+        return Integer.BYTES + this.vertexCount * (int) BYTES_PER_VERTEX;
+    }
+
+    /**
+     * Writes the vertex count followed by the position and attribute arrays, in the byte order of {@code dst}.
+     * @see #read(ByteBuffer)
+     */
+    public void write(ByteBuffer dst) {
+        dst.putInt(this.vertexCount);
+        dst.asDoubleBuffer().put(this.positions, 0, this.vertexCount * POSITION_STRIDE);
+        dst.position(dst.position() + this.vertexCount * POSITION_STRIDE * Double.BYTES);
+        dst.asFloatBuffer().put(this.attributes, 0, this.vertexCount * ATTRIBUTE_STRIDE);
+        dst.position(dst.position() + this.vertexCount * ATTRIBUTE_STRIDE * Float.BYTES);
+    }
+
+    /** Reads a buffer written by {@link #write(ByteBuffer)} */
+    public static PackedVertexBuffer read(ByteBuffer src) {
+        int vertexCount = src.getInt();
+        if (vertexCount < 0 || (long) vertexCount * BYTES_PER_VERTEX > src.remaining()) {
+            throw new IllegalArgumentException("invalid vertex count: " + vertexCount);
+        }
+        PackedVertexBuffer buffer = new PackedVertexBuffer(vertexCount);
+        src.asDoubleBuffer().get(buffer.positions);
+        src.position(src.position() + buffer.positions.length * Double.BYTES);
+        src.asFloatBuffer().get(buffer.attributes);
+        src.position(src.position() + buffer.attributes.length * Float.BYTES);
+        buffer.vertexCount = vertexCount;
+        return buffer;
+    }
+
+    /** Releases the unused capacity. Call this once the buffer is fully built. */
+    public void trimToSize() {
+        if (this.positions.length == this.vertexCount * POSITION_STRIDE) return;
+        this.positions = Arrays.copyOf(this.positions, this.vertexCount * POSITION_STRIDE);
+        this.attributes = Arrays.copyOf(this.attributes, this.vertexCount * ATTRIBUTE_STRIDE);
+    }
+
+    private void ensureCapacity(int vertexCount) {
+        int capacity = this.positions.length / POSITION_STRIDE;
+        if (vertexCount <= capacity) return;
+        int newCapacity = Math.max(vertexCount, Math.max(capacity * 2, DEFAULT_CAPACITY));
+        this.positions = Arrays.copyOf(this.positions, newCapacity * POSITION_STRIDE);
+        this.attributes = Arrays.copyOf(this.attributes, newCapacity * ATTRIBUTE_STRIDE);
+    }
+}
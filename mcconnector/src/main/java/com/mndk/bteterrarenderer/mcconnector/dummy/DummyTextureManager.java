@@ -2,6 +2,7 @@ package com.mndk.bteterrarenderer.mcconnector.dummy;
 
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.NativeTextureWrapper;
 import com.mndk.bteterrarenderer.mcconnector.client.graphics.TextureManager;
+import com.mndk.bteterrarenderer.util.image.RawImage;
 
 import javax.annotation.Nonnull;
 import java.awt.image.BufferedImage;
@@ -19,4 +20,10 @@ public class DummyTextureManager extends TextureManager {
         int height = image.getHeight();
         return new DummyNativeTextureWrapperImpl(image, width, height);
     }
+    @Override
+    protected boolean writeTextureRegionInternal(NativeTextureWrapper textureObject, int x, int y, @Nonnull RawImage image) {
+        BufferedImage delegate = ((DummyNativeTextureWrapperImpl) textureObject).delegate;
+        delegate.setRGB(x, y, image.getWidth(), image.getHeight(), image.getArgb(), 0, image.getWidth());
+        return true;
+    }
 }
@@ -0,0 +1,37 @@
+package com.mndk.bteterrarenderer.mcconnector.util.math;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Translation with an optional y scale. Chaining two of these folds them into one,
+ * so the per-vertex cost stays the same no matter how many of them are combined.
+ */
+@RequiredArgsConstructor
+class AxisAlignedTransformer implements McCoordTransformer {
+    private final double yScale;
+    private final double dx, dy, dz;
+
+    @Override
+    public McCoord transform(McCoord coord) {
+        return new McCoord(coord.getX() + dx, (float) (coord.getY() * yScale + dy), coord.getZ() + dz);
+    }
+
+    @Override
+    public void transform(double x, double y, double z, double[] out) {
+        out[0] = x + dx;
+        out[1] = y * yScale + dy;
+        out[2] = z + dz;
+    }
+
+    @Override
+    public McCoordTransformer andThen(McCoordTransformer after) {
+        if (!(after instanceof AxisAlignedTransformer)) return McCoordTransformer.super.andThen(after);
+        AxisAlignedTransformer other = (AxisAlignedTransformer) after;
+        return new AxisAlignedTransformer(
+                this.yScale * other.yScale,
+                this.dx + other.dx,
+                this.dy * other.yScale + other.dy,
+                this.dz + other.dz
+        );
+    }
+}
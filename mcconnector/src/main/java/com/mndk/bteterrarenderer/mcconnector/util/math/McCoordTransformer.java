@@ -1,7 +1,41 @@
 package com.mndk.bteterrarenderer.mcconnector.util.math;
 
 public interface McCoordTransformer {
-    McCoordTransformer IDENTITY = coord -> coord;
+    McCoordTransformer IDENTITY = translate(0, 0, 0);
 
     McCoord transform(McCoord coord);
+
+    /**
+     * Primitive variant of {@link #transform(McCoord)}, used while streaming packed vertices.
+     * The result is written to {@code out[0..2]}, which may be the same array the input was read from.<br>
+     * The default implementation allocates, so transformers used on the render path should override it.
+     */
+    default void transform(double x, double y, double z, double[] out) {
+        McCoord result = this.transform(new McCoord(x, (float) y, z));
+        out[0] = result.getX();
+        out[1] = result.getY();
+        out[2] = result.getZ();
+    }
+
+    default McCoordTransformer andThen(McCoordTransformer after) {
+        McCoordTransformer before = this;
+        return new McCoordTransformer() {
+            public McCoord transform(McCoord coord) {
+                return after.transform(before.transform(coord));
+            }
+            public void transform(double x, double y, double z, double[] out) {
+                before.transform(x, y, z, out);
+                after.transform(out[0], out[1], out[2], out);
+            }
+        };
+    }
+
+    static McCoordTransformer translate(double dx, double dy, double dz) {
+        return new AxisAlignedTransformer(1, dx, dy, dz);
+    }
+
+    /** {@code y' = y * yScale + dy}, while x and z are only translated */
+    static McCoordTransformer scaleYAndTranslate(double yScale, double dx, double dy, double dz) {
+        return new AxisAlignedTransformer(yScale, dx, dy, dz);
+    }
 }
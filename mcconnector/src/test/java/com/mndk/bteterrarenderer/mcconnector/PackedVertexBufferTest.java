@@ -0,0 +1,92 @@
+package com.mndk.bteterrarenderer.mcconnector;
+
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.DrawingFormat;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.TriangleBufferBuilderWrapper;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.WorldDrawContextWrapper;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsTriangle;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTexNorm;
+import com.mndk.bteterrarenderer.mcconnector.util.math.McCoord;
+import com.mndk.bteterrarenderer.mcconnector.util.math.McCoordTransformer;
+import org.joml.Vector2f;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PackedVertexBufferTest {
+
+    private static final double EPSILON = 1e-4;
+
+    private static class RecordingBuilder extends TriangleBufferBuilderWrapper {
+        private final List<double[]> vertices = new ArrayList<>();
+        public void setContext(WorldDrawContextWrapper context) {}
+        protected void nextVertex(double x, double y, double z, float u, float v, double nx, double ny, double nz) {
+            vertices.add(new double[] { x, y, z, u, v, nx, ny, nz });
+        }
+    }
+
+    private static PosTexNorm vertex(double x, float y, double z, float u, float v) {
+        return new PosTexNorm(new McCoord(x, y, z), new Vector2f(u, v), new McCoord(0.6, 0.8f, 0));
+    }
+
+    @Test
+    public void givenTriangle_testPackedStreamMatchesObjectTransform() {
+        GraphicsTriangle<PosTexNorm> triangle = new GraphicsTriangle<>(
+                vertex(1_234_567.25, 12, -7_654_321.5, 0, 0),
+                vertex(1_234_568.25, 14, -7_654_321.5, 1, 0),
+                vertex(1_234_567.25, 13, -7_654_320.5, 0, 1)
+        );
+        McCoord camera = new McCoord(1_234_560, 70, -7_654_300);
+        McCoordTransformer transformer = McCoordTransformer.scaleYAndTranslate(1.5, 0, 30, 0)
+                .andThen(McCoordTransformer.translate(-camera.getX(), -camera.getY(), -camera.getZ()));
+        McCoordTransformer reference = pos -> new McCoord(pos.getX(), (float) (pos.getY() * 1.5 + 30), pos.getZ())
+                .subtract(camera);
+
+        PackedVertexBuffer buffer = new PackedVertexBuffer();
+        DrawingFormat.TRI_PTN.pack(triangle, buffer);
+        RecordingBuilder builder = new RecordingBuilder();
+        builder.setTransformer(transformer);
+        builder.nextVertices(buffer);
+
+        PosTexNorm[] expected = { triangle.v0, triangle.v1, triangle.v2 };
+        Assert.assertEquals(expected.length, builder.vertices.size());
+        for (int i = 0; i < expected.length; i++) {
+            PosTexNorm tv = expected[i].transform(reference);
+            double[] actual = builder.vertices.get(i);
+            Assert.assertEquals(tv.pos.getX(), actual[0], EPSILON);
+            Assert.assertEquals(tv.pos.getY(), actual[1], EPSILON);
+            Assert.assertEquals(tv.pos.getZ(), actual[2], EPSILON);
+            Assert.assertEquals(tv.tex.x, actual[3], EPSILON);
+            Assert.assertEquals(tv.tex.y, actual[4], EPSILON);
+            Assert.assertEquals(tv.normal.getX(), actual[5], EPSILON);
+            Assert.assertEquals(tv.normal.getY(), actual[6], EPSILON);
+            Assert.assertEquals(tv.normal.getZ(), actual[7], EPSILON);
+        }
+    }
+
+    @Test
+    public void givenCustomTransformer_testChainFallsBackToObjectTransform() {
+        McCoordTransformer mirror = pos -> new McCoord(-pos.getX(), pos.getY(), pos.getZ());
+        McCoordTransformer chained = mirror.andThen(McCoordTransformer.translate(1, 2, 3));
+        double[] out = new double[3];
+        chained.transform(5, 6, 7, out);
+        Assert.assertArrayEquals(new double[] { -4, 8, 10 }, out, EPSILON);
+    }
+
+    @Test
+    public void givenManyVertices_testBufferGrowsAndTrims() {
+        PackedVertexBuffer buffer = new PackedVertexBuffer(1);
+        for (int i = 0; i < 100; i++) buffer.add(i, i + 0.5, -i, i / 100f, 1, 0, 1, 0);
+        buffer.trimToSize();
+
+        Assert.assertEquals(100, buffer.getVertexCount());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, buffer.getX(i), 0);
+            Assert.assertEquals(i + 0.5, buffer.getY(i), 0);
+            Assert.assertEquals(-i, buffer.getZ(i), 0);
+            Assert.assertEquals(i / 100f, buffer.getU(i), 0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.mndk.bteterrarenderer.mcconnector;
+
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.DrawingFormat;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.NativeTextureWrapper;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.TextureAtlas;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsQuad;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.shape.GraphicsShapes;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PackedVertexBuffer;
+import com.mndk.bteterrarenderer.mcconnector.client.graphics.vertex.PosTex;
+import com.mndk.bteterrarenderer.mcconnector.dummy.DummyNativeTextureWrapperImpl;
+import com.mndk.bteterrarenderer.mcconnector.dummy.DummyTextureManager;
+import com.mndk.bteterrarenderer.mcconnector.util.math.McCoord;
+import com.mndk.bteterrarenderer.util.image.RawImage;
+import org.joml.Vector2f;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TextureAtlasTest {
+
+    private static RawImage image(int width, int height, int color) {
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, color);
+        return new RawImage(width, height, argb);
+    }
+
+    @Test
+    public void givenSameSizedImages_testTheyShareOnePage() {
+        TextureAtlas atlas = new TextureAtlas(new DummyTextureManager(), "test", 64);
+        List<TextureAtlas.Slot> slots = new ArrayList<>();
+        for (int i = 0; i < 16; i++) slots.add(atlas.allocate(image(16, 16, 0xFF000000 | i)));
+
+        Assert.assertEquals(1, atlas.getPageCount());
+        NativeTextureWrapper page = slots.get(0).getTexture();
+        for (int i = 0; i < 16; i++) {
+            TextureAtlas.Slot slot = slots.get(i);
+            Assert.assertSame(page, slot.getTexture());
+            int pixel = ((DummyNativeTextureWrapperImpl) page).delegate.getRGB(slot.getX() + 15, slot.getY() + 15);
+            Assert.assertEquals(0xFF000000 | i, pixel);
+        }
+
+        // A full page makes way for a new one, and differently sized images get pages of their own
+        atlas.allocate(image(16, 16, 0));
+        atlas.allocate(image(32, 32, 0));
+        Assert.assertEquals(3, atlas.getPageCount());
+        Assert.assertNull(atlas.allocate(image(64, 64, 0)));
+    }
+
+    @Test
+    public void givenReleasedSlots_testTheyAreReusedAndEmptyPagesDeleted() {
+        TextureAtlas atlas = new TextureAtlas(new DummyTextureManager(), "test", 32);
+        TextureAtlas.Slot first = atlas.allocate(image(16, 16, 0));
+        TextureAtlas.Slot second = atlas.allocate(image(16, 16, 0));
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+
+        first.release();
+        TextureAtlas.Slot third = atlas.allocate(image(16, 16, 0));
+        Assert.assertNotNull(third);
+        Assert.assertEquals(first.getX(), third.getX());
+        Assert.assertEquals(first.getY(), third.getY());
+
+        NativeTextureWrapper page = second.getTexture();
+        second.release();
+        third.release();
+        Assert.assertTrue(page.isDeleted());
+        Assert.assertEquals(0, atlas.getPageCount());
+    }
+
+    @Test
+    public void givenShapes_testTextureCoordsAreMappedIntoSlot() {
+        TextureAtlas atlas = new TextureAtlas(new DummyTextureManager(), "test", 64);
+        atlas.allocate(image(16, 16, 0));
+        TextureAtlas.Slot slot = atlas.allocate(image(16, 16, 0));
+        Assert.assertNotNull(slot);
+
+        GraphicsShapes shapes = new GraphicsShapes();
+        shapes.add(DrawingFormat.QUAD_PT, new GraphicsQuad<>(
+                new PosTex(new McCoord(0, 0, 0), new Vector2f(0, 0)),
+                new PosTex(new McCoord(0, 0, 1), new Vector2f(0, 1)),
+                new PosTex(new McCoord(1, 0, 1), new Vector2f(1, 1)),
+                new PosTex(new McCoord(1, 0, 0), new Vector2f(1, 0))
+        ));
+        slot.mapTextureCoords(shapes);
+
+        PackedVertexBuffer vertices = shapes.getVertices().get(DrawingFormat.QUAD_PT);
+        Assert.assertEquals((16 + 0.5f) / 64, vertices.getU(0), 1e-6);
+        Assert.assertEquals(0.5f / 64, vertices.getV(0), 1e-6);
+        Assert.assertEquals((32 - 0.5f) / 64, vertices.getU(2), 1e-6);
+        Assert.assertEquals((16 - 0.5f) / 64, vertices.getV(2), 1e-6);
+    }
+
+    @Test
+    public void givenManagerWithoutInPlaceUpdates_testAllocationFails() {
+        DummyTextureManager manager = new DummyTextureManager() {
+            @Override
+            protected boolean writeTextureRegionInternal(NativeTextureWrapper textureObject, int x, int y, RawImage image) {
+                return false;
+            }
+        };
+        TextureAtlas atlas = new TextureAtlas(manager, "test", 64);
+        Assert.assertNull(atlas.allocate(image(16, 16, 0)));
+        Assert.assertEquals(0, atlas.getPageCount());
+    }
+}
@@ -0,0 +1,51 @@
+package com.mndk.bteterrarenderer.mcconnector;
+
+import com.mndk.bteterrarenderer.util.IOUtil;
+import com.mndk.bteterrarenderer.util.image.RawImage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Checks the raw pixel texture path against the PNG round-trip that the texture managers
+ * used to do. Since native images are not available without Minecraft, the PNG path is
+ * compared up to the decoded pixels, which is the part that the raw path replaces.
+ */
+public class TextureUploadPathTest {
+
+    private static final int IMAGE_SIZE = 512;
+
+    private static BufferedImage randomImage(int type) {
+        Random random = new Random(42);
+        BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, type);
+        for (int y = 0; y < IMAGE_SIZE; ++y) {
+            for (int x = 0; x < IMAGE_SIZE; ++x) image.setRGB(x, y, random.nextInt() | 0xFF000000);
+        }
+        return image;
+    }
+
+    private static int[] pngRoundTrip(BufferedImage image) throws IOException {
+        BufferedImage decoded = ImageIO.read(IOUtil.imageToInputStream(image));
+        return decoded.getRGB(0, 0, decoded.getWidth(), decoded.getHeight(), null, 0, decoded.getWidth());
+    }
+
+    @Test
+    public void givenImages_testRawPixelsMatchPngRoundTrip() throws IOException {
+        int[] types = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR };
+        for (int type : types) {
+            BufferedImage image = randomImage(type);
+            Assert.assertArrayEquals(pngRoundTrip(image), RawImage.fromImage(image).getArgb());
+        }
+    }
+
+    @Test
+    public void givenArgbPixel_testAbgrConversion() {
+        RawImage image = new RawImage(1, 1, new int[] { 0x80112233 });
+        Assert.assertEquals(0x80332211, image.getAbgr(0, 0));
+        Assert.assertEquals(0x80112233, image.toBufferedImage().getRGB(0, 0));
+    }
+}
@@ -5,7 +5,6 @@ import com.mndk.bteterrarenderer.ogc3dtiles.gltf.TileGltfModel;
 import com.mndk.bteterrarenderer.ogc3dtiles.i3dm.Instanced3DModel;
 import com.mndk.bteterrarenderer.ogc3dtiles.math.SpheroidCoordinatesConverter;
 import com.mndk.bteterrarenderer.ogc3dtiles.tile.Tileset;
-import com.mndk.bteterrarenderer.util.BTRUtil;
 import com.mndk.bteterrarenderer.util.IOUtil;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
@@ -29,32 +28,45 @@ public class TileResourceManager {
      * @throws IOException If something goes wrong while fetching the data
      */
     public TileData parse(InputStream stream, SpheroidCoordinatesConverter converter) throws IOException {
+        return parse(Unpooled.wrappedBuffer(IOUtil.readAllBytes(stream)), converter);
+    }
 
-        byte[] byteArray = IOUtil.readAllBytes(stream);
-
+    /**
+     * Parses the data directly from the buffer, without copying it into an array first.
+     * <p>
+     * The binary glTF chunk of the result references the buffer's memory instead of a copy when nothing reuses that
+     * memory after the buffer is released, i.e. when it's an unpooled heap array or a read-only NIO buffer (such as
+     * a memory-mapped cache hit). Pooled buffers, including slices of them, and unpooled direct buffers have their
+     * binary chunk copied. Either way, the caller stays responsible for releasing the buffer.
+     * @param buf The buffer. Its reader index is advanced past the parsed data
+     * @return The data
+     * @throws IOException If something goes wrong while parsing the data
+     */
+    public TileData parse(ByteBuf buf, SpheroidCoordinatesConverter converter) throws IOException {
         TileData result;
-        if (BTRUtil.arrayStartsWith(byteArray, B3DM_START)) {
-            ByteBuf buf = Unpooled.wrappedBuffer(byteArray);
+        if (startsWith(buf, B3DM_START)) {
             result = Batched3DModel.from(buf);
         }
-        else if (BTRUtil.arrayStartsWith(byteArray, I3DM_START)) {
-            ByteBuf buf = Unpooled.wrappedBuffer(byteArray);
+        else if (startsWith(buf, I3DM_START)) {
             result = Instanced3DModel.from(buf, converter);
         }
-        else if (BTRUtil.arrayStartsWith(byteArray, GLTF_START)) {
-            ByteBuf buf = Unpooled.wrappedBuffer(byteArray);
+        else if (startsWith(buf, GLTF_START)) {
             result = TileGltfModel.from(buf);
         }
-        else if (BTRUtil.arrayStartsWith(byteArray, UTF8_BOM)) {
-            ByteBuf buf = Unpooled.wrappedBuffer(byteArray, 3, byteArray.length - 3);
-            result = Ogc3dTiles.jsonMapper().readValue((InputStream) new ByteBufInputStream(buf), Tileset.class);
-        }
         else {
-            String jsonTry = new String(byteArray);
-            result = Ogc3dTiles.jsonMapper().readValue(jsonTry, Tileset.class);
+            if (startsWith(buf, UTF8_BOM)) buf.skipBytes(UTF8_BOM.length);
+            result = Ogc3dTiles.jsonMapper().readValue((InputStream) new ByteBufInputStream(buf), Tileset.class);
         }
 
         return result;
     }
 
+    private boolean startsWith(ByteBuf buf, byte[] prefix) {
+        if (buf.readableBytes() < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf.getByte(buf.readerIndex() + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
 }
@@ -34,7 +34,7 @@ public class Batched3DModel extends TileData {
     }
 
     public static Batched3DModel from(ByteBuf buf) throws IOException {
-        String magic = buf.readBytes(4).toString(StandardCharsets.UTF_8);
+        String magic = buf.readCharSequence(4, StandardCharsets.UTF_8).toString();
         if (!"b3dm".equals(magic)) throw new IOException("expected b3dm format, found: " + magic);
 
         int version = buf.readIntLE();
@@ -44,13 +44,13 @@ public class Batched3DModel extends TileData {
         int batchTableJSONByteLength = buf.readIntLE();
         int batchTableBinaryByteLength = buf.readIntLE();
 
-        String featureTableJson = buf.readBytes(featureTableJSONByteLength).toString(StandardCharsets.UTF_8);
-        byte[] featureTableBinary = IOUtil.readAllBytes(buf.readBytes(featureTableBinaryByteLength));
+        String featureTableJson = buf.readCharSequence(featureTableJSONByteLength, StandardCharsets.UTF_8).toString();
+        byte[] featureTableBinary = IOUtil.readAllBytes(buf.readSlice(featureTableBinaryByteLength));
         B3dmFeatureTable featureTable = B3dmFeatureTable.from(featureTableJson, featureTableBinary);
 
         int batchModelCount = featureTable.getBatchLength();
-        String batchTableJson = buf.readBytes(batchTableJSONByteLength).toString(StandardCharsets.UTF_8);
-        byte[] batchTableBinary = IOUtil.readAllBytes(buf.readBytes(batchTableBinaryByteLength));
+        String batchTableJson = buf.readCharSequence(batchTableJSONByteLength, StandardCharsets.UTF_8).toString();
+        byte[] batchTableBinary = IOUtil.readAllBytes(buf.readSlice(batchTableBinaryByteLength));
         BatchTable batchTable = batchTableBinaryByteLength == 0 ?
                 BatchTable.empty() :
                 BatchTable.from(batchModelCount, batchTableJson, batchTableBinary);
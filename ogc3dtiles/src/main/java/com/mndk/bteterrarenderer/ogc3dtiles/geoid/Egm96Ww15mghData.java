@@ -1,18 +1,30 @@
 package com.mndk.bteterrarenderer.ogc3dtiles.geoid;
 
+import com.mndk.bteterrarenderer.BTETerraRenderer;
+import com.mndk.bteterrarenderer.mcconnector.McConnector;
 import com.mndk.bteterrarenderer.ogc3dtiles.math.Spheroid3;
-import com.mndk.bteterrarenderer.util.IOUtil;
+import com.mndk.bteterrarenderer.util.loader.UnpackedTableLoader;
 import com.mndk.bteterrarenderer.util.math.Interpolation;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.zip.GZIPInputStream;
 
 class Egm96Ww15mghData implements GeoidHeightFunction {
 
     private static final int WIDTH = 1440, HEIGHT = 721;
+    private static final String UNPACKED_NAME = "WW15MGH.bin";
+    private static final int UNPACKED_VERSION = 1;
+    /**
+     * The last cell looked up on each thread. Consecutive lookups mostly fall in the same cell, and
+     * single-point lookups don't have to allocate a patch of their own.
+     */
+    private static final ThreadLocal<Patch> PATCH = ThreadLocal.withInitial(Patch::new);
 
     // Data format:
     //  LAT \ LON | 0.00 | 0.25 | 0.50 | ... | 179.75 | 180.00(-180.00) | ... | 359.75(-0.25)
@@ -26,56 +38,113 @@ class Egm96Ww15mghData implements GeoidHeightFunction {
     //     -89.50 |
     //     -89.75 |
     //     -90.00 |
-    private final float[][] data = new float[HEIGHT][WIDTH];
+    // Stored row by row as big-endian floats, so that the value at (x, y) is at data.get(y * WIDTH + x)
 
-    Egm96Ww15mghData() {
+    /** Loads the data on first use, as it takes a while and not every map needs it */
+    private static class Holder {
+        private static final FloatBuffer DATA;
+        static {
+            File gameDirectory = McConnector.common() != null ? McConnector.common().getGameDirectory() : null;
+            File cacheDirectory = gameDirectory != null ? new File(gameDirectory, BTETerraRenderer.MODID + "/tables") : null;
+            try { DATA = load(cacheDirectory); }
+            catch (IOException e) { throw new RuntimeException(e); }
+        }
+    }
+
+    /**
+     * Reads the grid from the unpacked copy in the cache directory, memory-mapped, or unpacks it from the
+     * gzipped resource if there's no such copy yet.
+     * @param cacheDirectory The directory to keep the unpacked copy in, or {@code null} to always unpack
+     */
+    static FloatBuffer load(@Nullable File cacheDirectory) throws IOException {
+        ByteBuffer table = UnpackedTableLoader.load(cacheDirectory, UNPACKED_NAME, UNPACKED_VERSION, Egm96Ww15mghData::unpack);
+        if (table.remaining() != HEIGHT * WIDTH * Float.BYTES) throw new IOException("Invalid geoid table size: " + table.remaining());
+        return table.asFloatBuffer();
+    }
+
+    private static ByteBuffer unpack() throws IOException {
         try (InputStream stream = Egm96Ww15mghData.class.getResourceAsStream("WW15MGH.dat.gz")) {
             if (stream == null) throw new IOException("File not found");
 
-            GZIPInputStream gzipStream = new GZIPInputStream(stream);
-            byte[] data = IOUtil.readAllBytes(gzipStream);
-            ByteBuf buffer = Unpooled.wrappedBuffer(data);
-            for (int y = 0; y < HEIGHT; y++) {
-                for (int x = 0; x < WIDTH; x++) {
-                    this.data[y][x] = buffer.readFloat();
-                }
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            byte[] data = new byte[HEIGHT * WIDTH * Float.BYTES];
+            new DataInputStream(new GZIPInputStream(stream, 64 * 1024)).readFully(data);
+            return ByteBuffer.wrap(data);
         }
     }
 
     @Override
     public double getHeight(Spheroid3 spheroid3) {
-        double longitudeInDegrees = spheroid3.getLongitudeDegrees();
-        double latitudeInDegrees = spheroid3.getLatitudeDegrees();
+        return this.getHeight(spheroid3.getLongitudeDegrees(), spheroid3.getLatitudeDegrees(), PATCH.get());
+    }
+
+    @Override
+    public double getHeight(double longitudeInDegrees, double latitudeInDegrees) {
+        return this.getHeight(longitudeInDegrees, latitudeInDegrees, PATCH.get());
+    }
+
+    @Override
+    public void getHeights(double[] lonLat, double[] out, int count) {
+        // Points of a single tile mostly fall in the same few grid cells, so the last cell is kept
+        Patch patch = PATCH.get();
+        for (int i = 0; i < count; i++) {
+            out[i] = this.getHeight(lonLat[i * 2], lonLat[i * 2 + 1], patch);
+        }
+    }
+
+    private double getHeight(double longitudeInDegrees, double latitudeInDegrees, Patch patch) {
         if (latitudeInDegrees > 90 || latitudeInDegrees < -90) {
             throw new IllegalArgumentException("Latitude must be between -90 and 90 degrees, but was instead " + latitudeInDegrees);
         }
         double wrappedLongitude = ((longitudeInDegrees % 360) + 360) % 360;
         int xIndex = (int) Math.floor(wrappedLongitude * 4);
-        int yIndex = (int) Math.floor((90 - latitudeInDegrees) * 4);
-
-        double x = wrappedLongitude * 4 - xIndex;
-        double y = (90 - latitudeInDegrees) * 4 - yIndex;
-        float[] p = new float[4];
-        for (int i = 0; i < 4; i++) {
-            int wrappedYIndex = wrapYIndex(yIndex + i - 1);
-            p[i] = Interpolation.cubic(
-                    data[wrappedYIndex][wrapXIndex(xIndex - 1)],
-                    data[wrappedYIndex][wrapXIndex(xIndex    )],
-                    data[wrappedYIndex][wrapXIndex(xIndex + 1)],
-                    data[wrappedYIndex][wrapXIndex(xIndex + 2)],
-                    (float) x
-            );
+        // The last row (-90 degrees) is interpolated from the cell above it
+        int yIndex = Math.min((int) Math.floor((90 - latitudeInDegrees) * 4), HEIGHT - 2);
+
+        float x = (float) (wrappedLongitude * 4 - xIndex);
+        float y = (float) ((90 - latitudeInDegrees) * 4 - yIndex);
+
+        if (patch.xIndex != xIndex || patch.yIndex != yIndex) patch.load(xIndex, yIndex);
+
+        float[] v = patch.values;
+        return Interpolation.cubic(
+                Interpolation.cubic(v[0], v[1], v[2], v[3], x),
+                Interpolation.cubic(v[4], v[5], v[6], v[7], x),
+                Interpolation.cubic(v[8], v[9], v[10], v[11], x),
+                Interpolation.cubic(v[12], v[13], v[14], v[15], x),
+                y
+        );
+    }
+
+    /**
+     * The 4x4 grid values around a cell, which are needed for the bicubic interpolation.
+     */
+    private static class Patch {
+        private final float[] values = new float[16];
+        private int xIndex = -1, yIndex = -1;
+
+        private void load(int xIndex, int yIndex) {
+            FloatBuffer data = Holder.DATA;
+            int x0 = wrapXIndex(xIndex - 1), x1 = xIndex, x2 = wrapXIndex(xIndex + 1), x3 = wrapXIndex(xIndex + 2);
+            for (int i = 0; i < 4; i++) {
+                int rowStart = wrapYIndex(yIndex + i - 1) * WIDTH;
+                this.values[i * 4    ] = data.get(rowStart + x0);
+                this.values[i * 4 + 1] = data.get(rowStart + x1);
+                this.values[i * 4 + 2] = data.get(rowStart + x2);
+                this.values[i * 4 + 3] = data.get(rowStart + x3);
+            }
+            this.xIndex = xIndex;
+            this.yIndex = yIndex;
         }
-        return Interpolation.cubic(p[0], p[1], p[2], p[3], (float) y);
     }
 
-    private int wrapXIndex(int xIndex) { return (xIndex + WIDTH) % WIDTH; }
-    private int wrapYIndex(int yIndex) {
+    private static int wrapXIndex(int xIndex) {
+        if (xIndex < 0) return xIndex + WIDTH;
+        if (xIndex >= WIDTH) return xIndex - WIDTH;
+        return xIndex;
+    }
+    private static int wrapYIndex(int yIndex) {
         if (yIndex == -1) return 1;
-        if (yIndex == 721) return 719;
+        if (yIndex == HEIGHT) return HEIGHT - 2;
         return yIndex;
     }
 
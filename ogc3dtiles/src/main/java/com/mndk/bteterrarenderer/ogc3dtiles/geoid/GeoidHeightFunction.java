@@ -2,8 +2,15 @@ package com.mndk.bteterrarenderer.ogc3dtiles.geoid;
 
 import com.mndk.bteterrarenderer.ogc3dtiles.math.Spheroid3;
 
+import java.util.Arrays;
+
 public interface GeoidHeightFunction {
-    GeoidHeightFunction WGS84_ELLIPSOID = spheroid3 -> 0;
+    GeoidHeightFunction WGS84_ELLIPSOID = new GeoidHeightFunction() {
+        @Override
+        public double getHeight(Spheroid3 spheroid3) { return 0; }
+        @Override
+        public void getHeights(double[] lonLat, double[] out, int count) { Arrays.fill(out, 0, count, 0); }
+    };
     GeoidHeightFunction EGM96_WW15MGH = new Egm96Ww15mghData();
 
     /**
@@ -13,4 +20,26 @@ public interface GeoidHeightFunction {
      * @return The height of the geoid at the given point
      */
     double getHeight(Spheroid3 spheroid3);
+
+    /**
+     * Get the height of the geoid at the given point
+     * @param longitudeInDegrees The longitude, in degrees
+     * @param latitudeInDegrees The latitude, in degrees
+     * @return The height of the geoid at the given point
+     */
+    default double getHeight(double longitudeInDegrees, double latitudeInDegrees) {
+        return this.getHeight(Spheroid3.fromDegrees(longitudeInDegrees, latitudeInDegrees, 0));
+    }
+
+    /**
+     * Get the heights of the geoid at multiple points at once
+     * @param lonLat The points in degrees, as {longitude0, latitude0, longitude1, latitude1, ...}
+     * @param out The array to write the heights to, one for each point
+     * @param count The number of points
+     */
+    default void getHeights(double[] lonLat, double[] out, int count) {
+        for (int i = 0; i < count; i++) {
+            out[i] = this.getHeight(lonLat[i * 2], lonLat[i * 2 + 1]);
+        }
+    }
 }
@@ -2,25 +2,34 @@ package com.mndk.bteterrarenderer.ogc3dtiles.gltf;
 
 import com.mndk.bteterrarenderer.ogc3dtiles.TileData;
 import com.mndk.bteterrarenderer.ogc3dtiles.TileDataFormat;
+import de.javagl.jgltf.impl.v2.GlTF;
 import de.javagl.jgltf.model.GltfModel;
 import de.javagl.jgltf.model.io.*;
 import de.javagl.jgltf.model.io.v1.GltfAssetV1;
 import de.javagl.jgltf.model.io.v2.GltfAssetV2;
+import de.javagl.jgltf.model.io.v2.GltfReaderV2;
 import de.javagl.jgltf.model.v1.GltfModelV1;
 import de.javagl.jgltf.model.v2.GltfModelCreatorV2;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import lombok.Getter;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.function.Consumer;
 
 @Getter
 public class TileGltfModel extends TileData {
     private static final Consumer<? super JsonError> JSON_ERROR_CONSUMER = JsonErrorConsumers.createLogging();
 
+    private static final int GLB_HEADER_LENGTH = 12;
+    private static final int GLB_CHUNK_HEADER_LENGTH = 8;
+    private static final int GLB_CHUNK_JSON = 0x4E4F534A;
+    private static final int GLB_CHUNK_BIN = 0x004E4942;
+
     @Nullable
     private final String copyright;
     private final GltfModel instance;
@@ -31,7 +40,15 @@ public class TileGltfModel extends TileData {
         this.instance = instance;
     }
 
+    /**
+     * Reads a glTF model. The binary chunk of a binary glTF 2.0 model is referenced rather than copied
+     * whenever {@link com.mndk.bteterrarenderer.ogc3dtiles.TileResourceManager TileResourceManager} allows it.
+     */
     public static TileGltfModel from(ByteBuf buf) throws IOException {
+        if (buf.readableBytes() >= GLB_HEADER_LENGTH && buf.getIntLE(buf.readerIndex() + 4) == 2) {
+            return fromGlbV2(buf);
+        }
+
         String copyright;
         GltfModel model;
         try (InputStream gltfInputStream = new ByteBufInputStream(buf)) {
@@ -53,6 +70,57 @@ public class TileGltfModel extends TileData {
         return new TileGltfModel(copyright, model);
     }
 
+    private static TileGltfModel fromGlbV2(ByteBuf buf) throws IOException {
+        int start = buf.readerIndex();
+        buf.skipBytes(8); // magic, version
+        int end = start + buf.readIntLE();
+        if (end > buf.writerIndex()) throw new IOException("binary glTF length exceeds the data: " + (end - start));
+
+        GlTF gltf = null;
+        ByteBuffer binaryData = null;
+        while (buf.readerIndex() + GLB_CHUNK_HEADER_LENGTH <= end) {
+            int chunkLength = buf.readIntLE();
+            int chunkType = buf.readIntLE();
+            ByteBuf chunk = buf.readSlice(chunkLength);
+            if (chunkType == GLB_CHUNK_JSON && gltf == null) {
+                GltfReaderV2 reader = new GltfReaderV2();
+                reader.setJsonErrorConsumer(JSON_ERROR_CONSUMER);
+                try (InputStream jsonInputStream = new ByteBufInputStream(chunk)) {
+                    gltf = reader.read(jsonInputStream);
+                }
+            } else if (chunkType == GLB_CHUNK_BIN && binaryData == null) {
+                binaryData = toNioBuffer(chunk);
+            }
+        }
+        buf.readerIndex(end);
+        if (gltf == null) throw new IOException("binary glTF has no JSON chunk");
+
+        String copyright = gltf.getAsset() != null ? gltf.getAsset().getCopyright() : null;
+        GltfModel model = GltfModelCreatorV2.create(new GltfAssetV2(gltf, binaryData));
+        return new TileGltfModel(copyright, model);
+    }
+
+    private static ByteBuffer toNioBuffer(ByteBuf chunk) {
+        if (isKeptAfterRelease(chunk)) return chunk.nioBuffer();
+
+        ByteBuffer copy = ByteBuffer.allocate(chunk.readableBytes());
+        chunk.getBytes(chunk.readerIndex(), copy);
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Pooled memory, heap or direct, goes back to the pool when the buffer is released, and unpooled direct memory
+     * is freed. Only unpooled heap arrays and read-only NIO buffers (e.g. memory-mapped files) stay intact for as
+     * long as they're referenced.
+     */
+    private static boolean isKeptAfterRelease(ByteBuf buf) {
+        ByteBuf root = buf;
+        while (root.unwrap() != null) root = root.unwrap();
+        if (root.alloc() instanceof PooledByteBufAllocator) return false;
+        return root.hasArray() || root.isReadOnly();
+    }
+
     @Nullable
     @Override
     public GltfModel getGltfModelInstance() {
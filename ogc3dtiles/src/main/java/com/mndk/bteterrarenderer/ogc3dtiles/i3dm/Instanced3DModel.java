@@ -37,7 +37,7 @@ public class Instanced3DModel extends TileData {
     }
 
     public static Instanced3DModel from(ByteBuf buf, SpheroidCoordinatesConverter converter) throws IOException {
-        String magic = buf.readBytes(4).toString(StandardCharsets.UTF_8);
+        String magic = buf.readCharSequence(4, StandardCharsets.UTF_8).toString();
         if (!"i3dm".equals(magic)) throw new IOException("expected i3dm format, found: " + magic);
 
         int version = buf.readIntLE();
@@ -48,13 +48,13 @@ public class Instanced3DModel extends TileData {
         int batchTableBinaryByteLength = buf.readIntLE();
         int gltfFormat = buf.readIntLE();
 
-        String featureTableJson = buf.readBytes(featureTableJSONByteLength).toString(StandardCharsets.UTF_8);
-        byte[] featureTableBinary = IOUtil.readAllBytes(buf.readBytes(featureTableBinaryByteLength));
+        String featureTableJson = buf.readCharSequence(featureTableJSONByteLength, StandardCharsets.UTF_8).toString();
+        byte[] featureTableBinary = IOUtil.readAllBytes(buf.readSlice(featureTableBinaryByteLength));
         I3dmFeatureTable featureTable = I3dmFeatureTable.from(featureTableJson, featureTableBinary, converter);
 
         int batchModelCount = featureTable.getInstances().length;
-        String batchTableJson = buf.readBytes(batchTableJSONByteLength).toString(StandardCharsets.UTF_8);
-        byte[] batchTableBinary = IOUtil.readAllBytes(buf.readBytes(batchTableBinaryByteLength));
+        String batchTableJson = buf.readCharSequence(batchTableJSONByteLength, StandardCharsets.UTF_8).toString();
+        byte[] batchTableBinary = IOUtil.readAllBytes(buf.readSlice(batchTableBinaryByteLength));
         BatchTable batchTable = BatchTable.from(batchModelCount, batchTableJson, batchTableBinary);
 
         TileGltfModel gltfModel = TileGltfModel.from(buf);
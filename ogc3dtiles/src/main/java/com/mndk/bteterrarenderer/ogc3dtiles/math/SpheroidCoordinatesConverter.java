@@ -57,10 +57,44 @@ public class SpheroidCoordinatesConverter {
      * @return The spheroidal coordinate corresponding to the given cartesian coordinate
      */
     public Spheroid3 toSpheroid(Vector3d cartesian) {
-        double x = cartesian.x;
-        double y = cartesian.y;
-        double z = cartesian.z;
+        double[] ellipsoidal = new double[3];
+        this.toEllipsoidal(cartesian.x, cartesian.y, cartesian.z, ellipsoidal);
+        double longitude = ellipsoidal[0], latitude = ellipsoidal[1], height = ellipsoidal[2];
 
+        Spheroid3 tempCoordForGeoid = Spheroid3.fromRadians(longitude, latitude, 0);
+        double geoidHeight = this.geoidHeightFunction.getHeight(tempCoordForGeoid);
+        return Spheroid3.fromRadians(longitude, latitude, height - geoidHeight);
+    }
+
+    /**
+     * Converts multiple cartesian coordinates at once. The geoid heights are sampled in a single
+     * {@link GeoidHeightFunction#getHeights(double[], double[], int)} call.
+     * @param cartesian The cartesian coordinates, as {x0, y0, z0, x1, y1, z1, ...}
+     * @param lonLat The array to write {longitude, latitude} pairs to, in degrees
+     * @param heights The array to write the heights to
+     * @param count The number of points
+     * @see #toSpheroid(Vector3d)
+     */
+    public void toSpheroid(double[] cartesian, double[] lonLat, double[] heights, int count) {
+        double[] ellipsoidal = new double[3];
+        for (int i = 0; i < count; i++) {
+            this.toEllipsoidal(cartesian[i * 3], cartesian[i * 3 + 1], cartesian[i * 3 + 2], ellipsoidal);
+            lonLat[i * 2] = Math.toDegrees(ellipsoidal[0]);
+            lonLat[i * 2 + 1] = Math.toDegrees(ellipsoidal[1]);
+            heights[i] = ellipsoidal[2];
+        }
+
+        double[] geoidHeights = new double[count];
+        this.geoidHeightFunction.getHeights(lonLat, geoidHeights, count);
+        for (int i = 0; i < count; i++) {
+            heights[i] -= geoidHeights[i];
+        }
+    }
+
+    /**
+     * Writes the longitude and latitude (in radians) and the height from the ellipsoid to {@code out}
+     */
+    private void toEllipsoidal(double x, double y, double z, double[] out) {
         double longitude = Math.atan2(y, x);
         double p = Math.sqrt(x*x + y*y);
         double latitude = Math.atan2(z, (1 - this.eccentricitySquared) * p);
@@ -70,10 +104,9 @@ public class SpheroidCoordinatesConverter {
             height = p / Math.cos(latitude) - N;
             latitude = Math.atan2(z, (1 - this.eccentricitySquared * N / (N + height)) * p);
         }
-
-        Spheroid3 tempCoordForGeoid = Spheroid3.fromRadians(longitude, latitude, 0);
-        double geoidHeight = this.geoidHeightFunction.getHeight(tempCoordForGeoid);
-        return Spheroid3.fromRadians(longitude, latitude, height - geoidHeight);
+        out[0] = longitude;
+        out[1] = latitude;
+        out[2] = height;
     }
 
     public static double getEccentricitySquared(double semiMajorAxis, double semiMinorAxis) {
@@ -12,6 +12,8 @@ import de.javagl.jgltf.model.BufferViewModel;
 import de.javagl.jgltf.model.GltfModel;
 import de.javagl.jgltf.model.MeshModel;
 import de.javagl.jgltf.model.MeshPrimitiveModel;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Assert;
 import org.junit.Test;
@@ -19,7 +21,11 @@ import org.junit.Test;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -83,6 +89,42 @@ public class DracoCompressionTest {
         }
     }
 
+    @Test
+    public void givenMappedGlbFiles_testZeroCopyParseMatchesStreamParse() throws Exception {
+        SpheroidCoordinatesConverter converter = SpheroidCoordinatesConverter.WGS84;
+        String[] files = {
+                "glb_models/model_test1.glb",
+                "glb_models/model_test2.glb",
+                "glb_models/model_test3.glb",
+                "glb_models/model_test4.glb"
+        };
+        for (String file : files) {
+            GltfModel expected = this.readGltfModel(file, converter);
+
+            URL resource = getClass().getClassLoader().getResource(file);
+            if (resource == null) throw new IOException(file + " not found");
+            ByteBuf mapped;
+            try (FileChannel channel = FileChannel.open(Paths.get(resource.toURI()), StandardOpenOption.READ)) {
+                mapped = Unpooled.wrappedBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            GltfModel actual = TileResourceManager.parse(mapped, converter).getGltfModelInstance();
+            mapped.release();
+            if (actual == null) throw new IOException("model is null");
+
+            // The binary chunk should be referenced, not copied
+            Assert.assertTrue(actual.getBufferModels().get(0).getBufferData().isDirect());
+
+            List<Pair<Mesh, DracoMeshCompression>> expectedMeshes = this.decodeDracoMeshData(expected);
+            List<Pair<Mesh, DracoMeshCompression>> actualMeshes = this.decodeDracoMeshData(actual);
+            Assert.assertEquals(expectedMeshes.size(), actualMeshes.size());
+            for (int i = 0; i < expectedMeshes.size(); i++) {
+                Mesh expectedMesh = expectedMeshes.get(i).getLeft(), actualMesh = actualMeshes.get(i).getLeft();
+                Assert.assertEquals(expectedMesh.getNumPoints(), actualMesh.getNumPoints());
+                Assert.assertEquals(expectedMesh.getNumFaces(), actualMesh.getNumFaces());
+            }
+        }
+    }
+
 //    // This code is just for the visualization test! Keep this disabled, or it will make the logs dirty.
 //    @Test
 //    public void givenModelTestGlbFile_testDecode() throws IOException {
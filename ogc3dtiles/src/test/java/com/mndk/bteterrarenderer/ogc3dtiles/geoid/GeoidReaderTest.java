@@ -3,17 +3,24 @@ package com.mndk.bteterrarenderer.ogc3dtiles.geoid;
 import com.mndk.bteterrarenderer.ogc3dtiles.math.Spheroid3;
 import com.mndk.bteterrarenderer.util.IOUtil;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.FloatBuffer;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Random;
 import java.util.zip.GZIPInputStream;
 
 public class GeoidReaderTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void givenPOIs_testGeoidHeights() {
         GeoidHeightFunction function = GeoidHeightFunction.EGM96_WW15MGH;
@@ -25,6 +32,34 @@ public class GeoidReaderTest {
         Assert.assertEquals(36.63, function.getHeight(Spheroid3.fromDegrees(139.516599, 35.309069, 0)), 0.01);
     }
 
+    @Test
+    public void givenClusteredPoints_testBulkHeightsMatchSinglePoint() {
+        GeoidHeightFunction function = GeoidHeightFunction.EGM96_WW15MGH;
+        Random random = new Random(42);
+        int count = 10000;
+        double[] lonLat = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            // Clusters of nearby points, like the vertices of a tile
+            boolean newCluster = i % 100 == 0;
+            lonLat[i * 2] = newCluster ? random.nextDouble() * 360 - 180 : lonLat[i * 2 - 2] + random.nextDouble() * 0.01;
+            lonLat[i * 2 + 1] = newCluster ? random.nextDouble() * 170 - 85 : lonLat[i * 2 - 1] + random.nextDouble() * 0.01;
+        }
+
+        double[] heights = new double[count];
+        function.getHeights(lonLat, heights, count);
+        for (int i = 0; i < count; i++) {
+            double expected = function.getHeight(Spheroid3.fromDegrees(lonLat[i * 2], lonLat[i * 2 + 1], 0));
+            Assert.assertEquals(expected, heights[i], 0);
+        }
+    }
+
+    @Test
+    public void givenPoles_testGeoidHeights() {
+        GeoidHeightFunction function = GeoidHeightFunction.EGM96_WW15MGH;
+        Assert.assertEquals(13.61, function.getHeight(Spheroid3.fromDegrees(0, 90, 0)), 0.01);
+        Assert.assertEquals(-29.53, function.getHeight(Spheroid3.fromDegrees(0, -90, 0)), 0.01);
+    }
+
     @Test
     public void givenGzippedDataFile_testChecksum() throws IOException, NoSuchAlgorithmException {
         MessageDigest md = MessageDigest.getInstance("MD5");
@@ -45,4 +80,13 @@ public class GeoidReaderTest {
         }
     }
 
+    @Test
+    public void givenUnpackedTable_testMappedDataMatchesResource() throws IOException {
+        FloatBuffer unpacked = Egm96Ww15mghData.load(null);
+        Egm96Ww15mghData.load(this.folder.getRoot());
+        FloatBuffer mapped = Egm96Ww15mghData.load(this.folder.getRoot());
+
+        Assert.assertEquals(1440 * 721, mapped.remaining());
+        Assert.assertEquals(unpacked, mapped);
+    }
 }
@@ -0,0 +1,62 @@
+package com.mndk.bteterrarenderer.ogc3dtiles.gltf;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class TileGltfModelTest {
+
+    private static final byte[] BINARY = { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+    private static void writeGlb(ByteBuf buf) {
+        byte[] json = "{\"asset\":{\"version\":\"2.0\"},\"buffers\":[{\"byteLength\":8}]}".getBytes(StandardCharsets.UTF_8);
+        int jsonLength = (json.length + 3) & ~3;
+        buf.writeIntLE(0x46546C67).writeIntLE(2).writeIntLE(12 + 8 + jsonLength + 8 + BINARY.length);
+        buf.writeIntLE(jsonLength).writeIntLE(0x4E4F534A).writeBytes(json);
+        for (int i = json.length; i < jsonLength; i++) buf.writeByte(' ');
+        buf.writeIntLE(BINARY.length).writeIntLE(0x004E4942).writeBytes(BINARY);
+    }
+
+    private static byte[] binaryOf(TileGltfModel model) {
+        ByteBuffer data = model.getInstance().getBufferModels().get(0).getBufferData();
+        byte[] result = new byte[data.remaining()];
+        data.duplicate().get(result);
+        return result;
+    }
+
+    @Test
+    public void givenPooledBuffer_testBinaryChunkOutlivesRelease() throws IOException {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(false);
+        for (ByteBuf buf : new ByteBuf[] { allocator.heapBuffer(256), allocator.directBuffer(256) }) {
+            writeGlb(buf);
+            ByteBuf slice = buf.retainedSlice();
+            TileGltfModel model = TileGltfModel.from(slice);
+            slice.release();
+            buf.release();
+
+            // Whatever reuses the pooled memory mustn't show up in the model
+            ByteBuf reused = buf.isDirect() ? allocator.directBuffer(256) : allocator.heapBuffer(256);
+            while (reused.isWritable()) reused.writeByte(0xFF);
+            Assert.assertArrayEquals(BINARY, binaryOf(model));
+            reused.release();
+        }
+    }
+
+    @Test
+    public void givenUnpooledHeapBuffer_testBinaryChunkIsNotCopied() throws IOException {
+        ByteBuf buf = Unpooled.buffer(256);
+        writeGlb(buf);
+        TileGltfModel model = TileGltfModel.from(buf);
+
+        ByteBuffer data = model.getInstance().getBufferModels().get(0).getBufferData();
+        Assert.assertTrue(data.hasArray());
+        Assert.assertSame(buf.array(), data.array());
+        Assert.assertArrayEquals(BINARY, binaryOf(model));
+    }
+}
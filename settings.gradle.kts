@@ -22,6 +22,7 @@ include(":mcconnector")
 include(":ogc3dtiles")
 
 include(":core")
+include(":benchmarks")
 
 // Single-version build target
 //include(":forge1.12.2")
@@ -1,4 +1,6 @@
 
 dependencies {
     testImplementation("org.projectlombok:lombok:1.18.26")
+    // OpenSSL for the HTTP/2 tests, netty 4.1.9's JDK provider can't do ALPN on its own
+    testImplementation("io.netty:netty-tcnative-boringssl-static:2.0.0.Final")
 }
@@ -5,6 +5,8 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.simple.SimpleLogger;
 import org.apache.logging.log4j.util.PropertiesUtil;
 
+import java.util.Locale;
+
 public class TerraConfig {
     public static Logger LOGGER = new SimpleLogger("[terra++ bootstrap]", Level.INFO, true, false, true, false, "[yyyy/MM/dd HH:mm:ss:SSS]", null, new PropertiesUtil("log4j2.simplelog.properties"), System.out);
 
@@ -30,5 +32,31 @@ public class TerraConfig {
 
         public boolean cache = true;
         public int cacheTTL = 1440;
+        public int diskThreads = Integer.getInteger("terraplusplus.http.diskThreads", 1);
+        public boolean mmapReads = Boolean.parseBoolean(System.getProperty("terraplusplus.http.mmapReads", "false"));
+        public CacheMode cacheMode = CacheMode.parse(System.getProperty("terraplusplus.http.cacheMode", "FILES"));
+        /** Whether to offer HTTP/2 to HTTPS hosts. Hosts that don't pick it, or TLS implementations without ALPN, use HTTP/1.1 */
+        public boolean http2 = Boolean.parseBoolean(System.getProperty("terraplusplus.http.http2", "true"));
+        /** The maximum number of concurrent streams on an HTTP/2 connection, on top of the limit set by the server */
+        public int maxConcurrentStreams = Integer.getInteger("terraplusplus.http.maxConcurrentStreams", 32);
+    }
+
+    public enum CacheMode {
+        /** One file per cached URL */
+        FILES,
+        /** Append-only segment files with an in-memory index */
+        SEGMENTS;
+
+        /**
+         * @return the cache mode with the given name, or {@link #FILES} if there is none
+         */
+        public static CacheMode parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Unknown cache mode \"{}\", falling back to {}", name, FILES);
+                return FILES;
+            }
+        }
     }
 }
@@ -3,7 +3,6 @@ package com.mndk.bteterrarenderer.dep.terraplusplus.http;
 import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
 import com.mndk.bteterrarenderer.mcconnector.McConnector;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.DefaultEventLoop;
 import io.netty.channel.EventLoop;
 import io.netty.util.ReferenceCountUtil;
@@ -24,9 +23,7 @@ import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.CompletableFuture;
@@ -48,15 +45,39 @@ public class Disk {
     private final Path CACHE_ROOT;
     private final Path TMP_FILE;
 
+    /**
+     * Serves the per-file cache when {@link TerraConfig.HttpOpts#diskThreads} is more than 1, otherwise {@code null}.
+     */
+    private final DiskIOPool IO_POOL;
+
+    private final long SEGMENT_SIZE = 64L << 20L;
+    private final double SEGMENT_COMPACTION_THRESHOLD = 0.5d;
+
+    /**
+     * Opened on first use, and only ever accessed from {@link #DISK_EXECUTOR}.
+     */
+    private SegmentStore segmentStore;
+
     static {
         File mcRoot = McConnector.common().getGameDirectory();
         CACHE_ROOT = PFiles.ensureDirectoryExists(new File(mcRoot, "terraplusplus/cache")).toPath();
 
-        TMP_FILE = CACHE_ROOT.resolve("tmp");
-        PFiles.rm(TMP_FILE.toFile()); //delete temp file if it exists
+        TMP_FILE = CACHE_ROOT.resolve(DiskIOPool.TMP_PREFIX);
+        File[] tmpFiles = CACHE_ROOT.toFile().listFiles((dir, name) -> name.startsWith(DiskIOPool.TMP_PREFIX));
+        if (tmpFiles != null) { //delete temp files if they exist
+            for (File tmpFile : tmpFiles) {
+                PFiles.rm(tmpFile);
+            }
+        }
+
+        int diskThreads = TerraConfig.http.diskThreads;
+        IO_POOL = diskThreads > 1
+                ? new DiskIOPool(CACHE_ROOT, diskThreads, PThreadFactories.builder().daemon().minPriority().name("terra++ disk I/O pool thread").build())
+                : null;
 
         //periodically prune the cache
         DISK_EXECUTOR.scheduleWithFixedDelay((IORunnable) Disk::pruneCache, 1L, 60L, TimeUnit.MINUTES);
+        DISK_EXECUTOR.scheduleWithFixedDelay((IORunnable) Disk::compactSegments, 1L, 60L, TimeUnit.MINUTES);
     }
 
     /**
@@ -66,45 +87,66 @@ public class Disk {
      * @return a {@link CompletableFuture} which will be notified when the file has been read
      */
     public CompletableFuture<ByteBuf> read(@NonNull Path file) {
+        boolean map = TerraConfig.http.mmapReads;
+        if (IO_POOL != null) {
+            return IO_POOL.read(file, map);
+        }
+        return CompletableFuture.supplyAsync(() -> DiskIOPool.readFile(file, map), DISK_EXECUTOR);
+    }
+
+    /**
+     * Asynchronously writes a file's contents, replacing the existing file if it already exists.
+     *
+     * @param file the file
+     * @param data the data
+     */
+    public void write(@NonNull Path file, @NonNull ByteBuf data) {
+        if (IO_POOL != null) {
+            IO_POOL.write(file, data);
+            return;
+        }
+        DISK_EXECUTOR.submit(() -> DiskIOPool.writeFile(TMP_FILE, file, data));
+    }
+
+    /**
+     * Asynchronously reads the cached data for the given url, using the store selected by {@link TerraConfig.HttpOpts#cacheMode}.
+     *
+     * @param url the url
+     * @return a {@link CompletableFuture} which will be notified when the data has been read, or with {@code null} if nothing is cached
+     */
+    public CompletableFuture<ByteBuf> readCached(@NonNull String url) {
+        if (TerraConfig.http.cacheMode != TerraConfig.CacheMode.SEGMENTS) {
+            return read(cacheFileFor(url));
+        }
+
+        byte[] digest = digest(url);
+        boolean map = TerraConfig.http.mmapReads;
         return CompletableFuture.supplyAsync(() -> {
             try {
-                if (!Files.exists(file)) { //file doesn't exist
-                    return null;
-                }
-
-                ByteBuf buf = null;
-                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
-                    int size = toInt(channel.size(), "file size");
-                    buf = ByteBufAllocator.DEFAULT.ioBuffer(size, size);
-                    for (int i = 0; i < size; i += buf.writeBytes(channel, i, size - i)) {
-                    }
-                    return buf.retain();
-                } finally {
-                    ReferenceCountUtil.release(buf);
-                }
+                return segmentStore().read(digest, System.currentTimeMillis(), map);
             } catch (IOException e) {
-                throw new UncheckedIOException("unable to read file: " + file, e);
+                throw new UncheckedIOException("unable to read cache segment for: " + url, e);
             }
         }, DISK_EXECUTOR);
     }
 
     /**
-     * Asynchronously writes a file's contents, replacing the existing file if it already exists.
+     * Asynchronously writes the cached data for the given url, using the store selected by {@link TerraConfig.HttpOpts#cacheMode}.
      *
-     * @param file the file
-     * @param data the data
+     * @param url        the url
+     * @param expireTime the time after which the data may be discarded
+     * @param data       the data
      */
-    public void write(@NonNull Path file, @NonNull ByteBuf data) {
+    public void writeCached(@NonNull String url, long expireTime, @NonNull ByteBuf data) {
+        if (TerraConfig.http.cacheMode != TerraConfig.CacheMode.SEGMENTS) {
+            write(cacheFileFor(url), data);
+            return;
+        }
+
+        byte[] digest = digest(url);
         DISK_EXECUTOR.submit(() -> {
             try {
-                try (FileChannel channel = FileChannel.open(TMP_FILE, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                    while (data.isReadable()) {
-                        data.readBytes(channel, data.readableBytes());
-                    }
-                }
-
-                Files.move(TMP_FILE, file, StandardCopyOption.REPLACE_EXISTING);
-                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                segmentStore().write(digest, expireTime, data);
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             } finally {
@@ -120,13 +162,27 @@ public class Disk {
      * @return the cache file
      */
     public Path cacheFileFor(@NonNull String url) {
+        return CACHE_ROOT.resolve(Hex.encodeHexString(digest(url)));
+    }
+
+    private byte[] digest(@NonNull String url) {
         try {
-            return CACHE_ROOT.resolve(Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8))));
+            return MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 not supported", e);
         }
     }
 
+    private SegmentStore segmentStore() throws IOException {
+        if (segmentStore == null) {
+            segmentStore = new SegmentStore(CACHE_ROOT.resolve("segments"), SEGMENT_SIZE, SEGMENT_COMPACTION_THRESHOLD);
+            if (!TerraConfig.reducedConsoleMessages) {
+                TerraConfig.LOGGER.info("opened cache segments with {} entries", segmentStore.size());
+            }
+        }
+        return segmentStore;
+    }
+
     /**
      * Gets the path to an additional configuration file with the given name.
      *
@@ -137,6 +193,22 @@ public class Disk {
         return CACHE_ROOT.resolveSibling("config").resolve(name);
     }
 
+    private void compactSegments() {
+        if (segmentStore == null) { //segment mode was never used in this session
+            return;
+        }
+
+        try {
+            long reclaimed = segmentStore.compact(System.currentTimeMillis());
+            if (!TerraConfig.reducedConsoleMessages) {
+                double mib = Math.round(reclaimed / (1024.0d * 1024.0d) * 10.0d) / 10.0d;
+                TerraConfig.LOGGER.info("cache segment compaction complete. reclaimed {} bytes ({} MiB)", reclaimed, mib);
+            }
+        } catch (Throwable e) {
+            TerraConfig.LOGGER.error("exception occurred during cache segment compaction!", e);
+        }
+    }
+
     private void pruneCache() throws IOException {
         if (!TerraConfig.reducedConsoleMessages) {
             TerraConfig.LOGGER.info("running cache cleanup...");
@@ -149,6 +221,7 @@ public class Disk {
 
         try (Stream<Path> stream = Files.list(CACHE_ROOT)) {
             stream.filter(Files::isRegularFile)
+                    .filter(p -> !p.getFileName().toString().startsWith(DiskIOPool.TMP_PREFIX)) //still being written
                     .filter((IOPredicate<Path>) p -> {
                         try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
                             long chSize = channel.size();
@@ -0,0 +1,187 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.http;
+
+import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.daporkchop.lib.common.misc.file.PFiles;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.daporkchop.lib.common.util.PValidation.toInt;
+
+/**
+ * A bounded pool of disk I/O threads for the per-file cache.
+ * <p>
+ * Reads are always taken from the queue before writes, so a backlog of cache writes never delays a cache hit.
+ * Every write goes to its own temporary file before being atomically moved into place, so writes may overlap.
+ */
+class DiskIOPool {
+    static final String TMP_PREFIX = "tmp";
+
+    /**
+     * Reads at least this large are memory-mapped when mapping is enabled. Smaller ones are cheaper to copy.
+     */
+    static final int MAP_THRESHOLD = 64 * 1024;
+
+    static final int PRIORITY_READ = 0;
+    static final int PRIORITY_WRITE = 1;
+
+    private final Path tmpRoot;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param tmpRoot       the directory to create the temporary files in. Must be on the same file system as the cache files
+     * @param threads       the maximum number of I/O threads
+     * @param threadFactory the factory to create the I/O threads with
+     */
+    DiskIOPool(@NonNull Path tmpRoot, int threads, @NonNull ThreadFactory threadFactory) {
+        this.tmpRoot = tmpRoot;
+        this.executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Asynchronously reads a file's contents into a {@link ByteBuf}.
+     *
+     * @param file the file
+     * @param map  whether large files may be served as memory-mapped buffers
+     * @return a {@link CompletableFuture} which will be notified when the file has been read, or with {@code null} if it doesn't exist
+     */
+    public CompletableFuture<ByteBuf> read(@NonNull Path file, boolean map) {
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        this.submit(PRIORITY_READ, () -> {
+            try {
+                future.complete(readFile(file, map));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Asynchronously writes a file's contents, replacing the existing file if it already exists.
+     *
+     * @param file the file
+     * @param data the data. It will be released once written
+     */
+    public void write(@NonNull Path file, @NonNull ByteBuf data) {
+        Path tmpFile = this.tmpRoot.resolve(TMP_PREFIX + '-' + this.sequence.incrementAndGet());
+        this.submit(PRIORITY_WRITE, () -> {
+            try {
+                writeFile(tmpFile, file, data);
+            } catch (Throwable t) {
+                TerraConfig.LOGGER.error("unable to write file: " + file, t);
+                PFiles.rm(tmpFile.toFile());
+            }
+        });
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueuedCount() {
+        return this.executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        return this.executor.awaitTermination(timeout, unit);
+    }
+
+    void submit(int priority, Runnable task) {
+        this.executor.execute(new Task(priority, this.sequence.incrementAndGet(), task));
+    }
+
+    static ByteBuf readFile(@NonNull Path file, boolean map) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readRegion(channel, 0L, toInt(channel.size(), "file size"), map);
+        } catch (NoSuchFileException e) { //file doesn't exist, or was pruned from the cache since it was looked up
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to read file: " + file, e);
+        }
+    }
+
+    /**
+     * Reads a region of a file.
+     * <p>
+     * If {@code map} is set and the region is at least {@link #MAP_THRESHOLD} bytes, the region is memory-mapped and
+     * returned as a read-only buffer without copying. The mapping is owned by the garbage collector rather than the
+     * buffer's reference count, so it stays valid for as long as anything (including {@link ByteBuf#nioBuffer() NIO views})
+     * still references it, even after the buffer is released or the channel is closed. Cache files are only ever replaced
+     * by moving a new file over them, so a mapped region never changes under its readers.
+     */
+    static ByteBuf readRegion(@NonNull FileChannel channel, long position, int length, boolean map) throws IOException {
+        if (map && length >= MAP_THRESHOLD) {
+            return Unpooled.wrappedBuffer(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        }
+
+        ByteBuf buf = ByteBufAllocator.DEFAULT.ioBuffer(length, length);
+        try {
+            for (int i = 0; i < length; ) {
+                int read = buf.writeBytes(channel, position + i, length - i);
+                if (read < 0) {
+                    throw new IOException("unexpected end of file at " + (position + i));
+                }
+                i += read;
+            }
+            return buf.retain();
+        } finally {
+            buf.release();
+        }
+    }
+
+    static void writeFile(@NonNull Path tmpFile, @NonNull Path file, @NonNull ByteBuf data) {
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.isReadable()) {
+                    data.readBytes(channel, data.readableBytes());
+                }
+            }
+
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            ReferenceCountUtil.release(data);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class Task implements Runnable, Comparable<Task> {
+        private final int priority;
+        private final long sequence;
+        private final Runnable delegate;
+
+        @Override
+        public void run() {
+            this.delegate.run();
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            int result = Integer.compare(this.priority, o.priority);
+            return result != 0 ? result : Long.compare(this.sequence, o.sequence);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.mndk.bteterrarenderer.dep.terraplusplus.http;
 
+import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -20,6 +21,19 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpStatusClass;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.DelegatingDecompressorFrameListener;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionAdapter;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2Stream;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
 import io.netty.util.AttributeKey;
@@ -30,32 +44,50 @@ import lombok.ToString;
 import net.daporkchop.lib.common.misc.string.PStrings;
 import net.daporkchop.lib.common.util.PorkUtil;
 
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.mndk.bteterrarenderer.dep.terraplusplus.http.Http.*;
 import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
- * Manages request queueing, connection keepalives and potential HTTP/2 upgrades for a single remote host.
+ * Manages request queueing, connection keepalives and HTTP/2 negotiation for a single remote host.
+ * <p>
+ * Pending requests are sent in order of {@link Callback#getPriority() priority}, which is re-read every time a connection
+ * becomes free, so a request may move up or down the queue while it waits.
+ * <p>
+ * HTTPS hosts are offered HTTP/2 through ALPN. If a host picks it, every request is multiplexed over that one connection, as
+ * many at a time as both the host's {@link #setMaxConcurrentRequests limit} and the connection's stream limit allow.
+ * Otherwise, each request gets a keep-alive HTTP/1.1 connection to itself.
  *
  * @author DaPorkchop_
  */
 final class HostManager extends Host {
     private static final AttributeKey<Request> ATTR_REQUEST = AttributeKey.valueOf(Request.class, "terra++");
+    private static final AttributeKey<Http2Session> ATTR_HTTP2_SESSION = AttributeKey.valueOf(Http2Session.class, "terra++");
 
-    private final Deque<Request> pendingRequests = new ArrayDeque<>();
+    private final List<Request> pendingRequests = new ArrayList<>();
     private final Bootstrap bootstrap;
 
     private int maxConcurrentRequests = 1;
     private int activeRequests;
+    private final AtomicBoolean purgeScheduled = new AtomicBoolean();
 
     private final Set<Channel> channels = Collections.newSetFromMap(new IdentityHashMap<>());
     private ChannelFuture channelFuture;
+    /**
+     * The HTTP/2 connection to this host, if the host picked HTTP/2. While it's open, no other connections are opened.
+     */
+    private Http2Session http2Session;
 
     public HostManager(@NonNull Host host) {
         super(host);
@@ -80,6 +112,20 @@ final class HostManager extends Host {
         });
     }
 
+    /**
+     * Removes every cancelled request from the queue.
+     * <p>
+     * Requests which have already been sent can't be taken back, and will still be completed and cached.
+     */
+    public void purgeCancelled() {
+        if (this.purgeScheduled.compareAndSet(false, true)) { //a burst of cancellations only needs one pass over the queue
+            NETWORK_EVENT_LOOP.execute(() -> {
+                this.purgeScheduled.set(false);
+                this.pendingRequests.removeIf(request -> request.callback.isCancelled());
+            });
+        }
+    }
+
     /**
      * Updates the maximum number of concurrent requests to this host.
      *
@@ -90,9 +136,30 @@ final class HostManager extends Host {
     }
 
     private void tryWorkOffQueue() {
-        for (Request request; this.activeRequests < this.maxConcurrentRequests && (request = this.pendingRequests.peek()) != null && this.trySendRequest0(request); ) {
-            checkState(this.pendingRequests.poll() == request, "unable to remove request from queue!");
+        for (Request request; this.activeRequests < this.maxConcurrentRequests && (request = this.nextRequest()) != null && this.trySendRequest0(request); ) {
+            checkState(this.pendingRequests.remove(request), "unable to remove request from queue!");
+        }
+    }
+
+    /**
+     * @return the pending request with the lowest priority value, or {@code null} if there are none. Requests which were
+     * already sent once come first, and ties are broken in submission order
+     */
+    private Request nextRequest() {
+        Request best = null;
+        double bestPriority = Double.POSITIVE_INFINITY;
+        for (Request request : this.pendingRequests) {
+            if (request.resubmitted || request.callback.isCancelled()) { //cancelled requests are dropped by trySendRequest0
+                return request;
+            }
+
+            double priority = request.callback.getPriority();
+            if (best == null || priority < bestPriority) {
+                best = request;
+                bestPriority = priority;
+            }
         }
+        return best;
     }
 
     private boolean trySendRequest0(@NonNull Request request) {
@@ -100,6 +167,15 @@ final class HostManager extends Host {
             return true;
         }
 
+        Http2Session session = this.http2Session;
+        if (session != null) {
+            if (session.isUsable()) {
+                return session.trySend(request); //if all streams are in use, wait for one of them to complete
+            }
+            //the connection is going away. its unfinished streams will be resubmitted once they're closed
+            this.http2Session = null;
+        }
+
         for (Channel channel : this.channels) {
             if (channel.attr(ATTR_REQUEST).compareAndSet(null, request)) { //the channel is currently inactive
                 channel.pipeline().addFirst("read_timeout", new ReadTimeoutHandler(TIMEOUT, TimeUnit.SECONDS));
@@ -121,23 +197,60 @@ final class HostManager extends Host {
 
     private void handleChannelOpened(@NonNull ChannelFuture channelFuture) {
         checkState(channelFuture == this.channelFuture, "unknown channel future?!?");
-        this.channelFuture = null;
 
         if (!channelFuture.isSuccess()) {
-            this.pendingRequests.forEach(r -> r.callback.handle(null, channelFuture.cause()));
-            this.pendingRequests.clear();
+            this.handleConnectionFailed(channelFuture.cause());
             return;
         }
 
         Channel channel = channelFuture.channel();
-        this.channels.add(channel);
         channel.closeFuture().addListener((ChannelFutureListener) this::handleChannelClosed);
 
+        if (!this.ssl) {
+            this.handleChannelReady(channel, null);
+        }
+        //otherwise, the channel is ready once the TLS handshake has decided on a protocol (see Negotiator)
+    }
+
+    /**
+     * Makes a newly opened channel available for requests.
+     *
+     * @param channel the channel
+     * @param session the channel's HTTP/2 session, or {@code null} if it speaks HTTP/1.1
+     */
+    private void handleChannelReady(@NonNull Channel channel, Http2Session session) {
+        checkState(this.channelFuture != null && this.channelFuture.channel() == channel, "unknown channel?!?");
+        this.channelFuture = null;
+
+        if (session != null) {
+            this.http2Session = session;
+        } else {
+            this.channels.add(channel);
+        }
+
         this.tryWorkOffQueue();
     }
 
+    private void handleConnectionFailed(@NonNull Throwable cause) {
+        this.channelFuture = null;
+        this.pendingRequests.forEach(r -> r.callback.handle(null, cause));
+        this.pendingRequests.clear();
+    }
+
     private void handleChannelClosed(@NonNull ChannelFuture channelFuture) {
         Channel channel = channelFuture.channel();
+        if (this.channelFuture != null && this.channelFuture.channel() == channel) {
+            //the channel was closed before it became ready, probably because the TLS handshake failed
+            this.handleConnectionFailed(new ClosedChannelException());
+            return;
+        }
+        if (this.http2Session != null && this.http2Session.channel == channel) {
+            //the streams which were still open are resubmitted as they're closed
+            this.http2Session = null;
+            this.tryWorkOffQueue();
+            return;
+        }
+
         //if the channel is still stored as an active connection, it was closed for some other reason than the
         // server sending a "Connection: close" header, so let's double-check the channel state
         if (this.channels.remove(channel)) {
@@ -147,7 +260,8 @@ final class HostManager extends Host {
                 // and the server closed it at the same time as we sent the request. let's re-submit the request
                 // so that it can be issued again on a new channel
 
-                this.pendingRequests.addFirst(request); //add to front of queue so that it doesn't have to wait through the entire queue again
+                request.resubmitted = true; //send it before anything else so that it doesn't have to wait through the entire queue again
+                this.pendingRequests.add(0, request);
             }
 
             //working off the queue may open a new channel to replace this one if there are more pending requests
@@ -201,6 +315,17 @@ final class HostManager extends Host {
          */
         boolean isCancelled();
 
+        /**
+         * Gets the priority of the request. Requests with lower values are sent first.
+         * <p>
+         * This is queried every time a request is chosen to be sent, and so may change while the request is still queued.
+         *
+         * @return the current priority of the request
+         */
+        default double getPriority() {
+            return 0.0d;
+        }
+
         /**
          * Handles the response body.
          *
@@ -225,6 +350,8 @@ final class HostManager extends Host {
         @NonNull
         protected final HttpHeaders headers;
 
+        protected boolean resubmitted;
+
         public HttpRequest toNetty() {
             DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, this.path);
             request.headers()
@@ -250,15 +377,227 @@ final class HostManager extends Host {
         protected void initChannel(Channel ch) throws Exception {
             ch.pipeline().addLast(new WriteTimeoutHandler(TIMEOUT, TimeUnit.SECONDS));
 
-            if (HostManager.this.ssl) {
-                ch.pipeline().addLast(Http.SSL_CONTEXT.newHandler(ch.alloc(), HostManager.this.host, HostManager.this.port));
+            if (HostManager.this.ssl) { //the rest of the pipeline depends on the protocol picked during the handshake
+                ch.pipeline().addLast(
+                        Http.newSslHandler(ch, HostManager.this.host, HostManager.this.port),
+                        new Negotiator(this.httpHandler));
+            } else {
+                ch.pipeline().addLast(
+                        new HttpClientCodec(),
+                        new HttpContentDecompressor(),
+                        new HttpObjectAggregator(Http.MAX_CONTENT_LENGTH),
+                        this.httpHandler);
+            }
+        }
+    }
+
+    /**
+     * Completes the pipeline of a TLS channel once the protocol has been negotiated.
+     */
+    private final class Negotiator extends ApplicationProtocolNegotiationHandler {
+        private final ChannelHandler httpHandler;
+
+        public Negotiator(@NonNull ChannelHandler httpHandler) {
+            super(ApplicationProtocolNames.HTTP_1_1); //hosts without ALPN support speak HTTP/1.1
+            this.httpHandler = httpHandler;
+        }
+
+        @Override
+        protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
+            Channel channel = ctx.channel();
+            switch (protocol) {
+                case ApplicationProtocolNames.HTTP_2: {
+                    Http2Session session = new Http2Session(channel);
+                    channel.attr(ATTR_HTTP2_SESSION).set(session);
+                    ctx.pipeline().addLast(session.connectionHandler, this.httpHandler);
+                    HostManager.this.handleChannelReady(channel, session);
+                    break;
+                }
+                case ApplicationProtocolNames.HTTP_1_1:
+                    ctx.pipeline().addLast(
+                            new HttpClientCodec(),
+                            new HttpContentDecompressor(),
+                            new HttpObjectAggregator(Http.MAX_CONTENT_LENGTH),
+                            this.httpHandler);
+                    HostManager.this.handleChannelReady(channel, null);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown protocol: " + protocol);
+            }
+        }
+
+        @Override
+        protected void handshakeFailure(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            HostManager.this.handleConnectionFailed(cause);
+            ctx.close();
+        }
+    }
+
+    /**
+     * The state of an HTTP/2 connection. Requests and responses are translated from and to their HTTP/1.1 counterparts, and
+     * matched up by their stream ids.
+     */
+    private final class Http2Session extends Http2ConnectionAdapter {
+        protected final Channel channel;
+        protected final Http2Connection connection = new DefaultHttp2Connection(false);
+        protected final HttpToHttp2ConnectionHandler connectionHandler;
+        private final Map<Integer, Request> streams = new HashMap<>();
+        /**
+         * Whether the server's first SETTINGS frame has been received. Until then, its stream limit isn't known.
+         */
+        private boolean settingsReceived;
+        /**
+         * Set once a write has failed, after which the connection is assumed to be broken.
+         */
+        private boolean broken;
+
+        public Http2Session(@NonNull Channel channel) {
+            this.channel = channel;
+            this.connection.addListener(this);
+            this.connectionHandler = new HttpToHttp2ConnectionHandlerBuilder()
+                    .connection(this.connection)
+                    .frameListener(new DelegatingDecompressorFrameListener(this.connection, new InboundHttp2ToHttpAdapterBuilder(this.connection)
+                            .maxContentLength(Http.MAX_CONTENT_LENGTH)
+                            .propagateSettings(true)
+                            .build()))
+                    .build();
+        }
+
+        /**
+         * @return whether new streams may still be opened on this connection
+         */
+        public boolean isUsable() {
+            return !this.broken && this.channel.isActive() && !this.connection.goAwayReceived() && !this.connection.goAwaySent();
+        }
+
+        /**
+         * @return the maximum number of concurrent streams, as limited by both the server and the config
+         */
+        private int maxStreams() {
+            return Math.min(this.connection.local().maxActiveStreams(), Math.max(TerraConfig.http.maxConcurrentStreams, 1));
+        }
+
+        /**
+         * Sends the request on a new stream.
+         *
+         * @return whether the request was sent, or {@code false} if all streams are in use
+         */
+        public boolean trySend(@NonNull Request request) {
+            //a stream whose response was just handled is still counted as active by netty until it's closed
+            if (!this.settingsReceived || this.streams.size() >= this.maxStreams() || !this.connection.local().canOpenStream()) {
+                return false;
             }
 
-            ch.pipeline().addLast(
-                    new HttpClientCodec(),
-                    new HttpContentDecompressor(),
-                    new HttpObjectAggregator(Http.MAX_CONTENT_LENGTH),
-                    this.httpHandler);
+            int streamId = this.connection.local().incrementAndGetNextStreamId();
+            HttpRequest message = request.toNetty();
+            message.headers()
+                    .set(HttpConversionUtil.ExtensionHeaderNames.SCHEME.text(), "https")
+                    .set(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(), streamId);
+
+            this.streams.put(streamId, request);
+            HostManager.this.activeRequests++;
+            this.updateReadTimeout();
+            this.channel.writeAndFlush(message).addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) { //don't send the request again on the same connection
+                    this.broken = true;
+                    this.endStream(streamId, future.cause());
+                }
+            });
+            return true;
+        }
+
+        public void handleResponse(Object msg) {
+            Request request = null;
+            try {
+                if (msg instanceof Http2Settings) { //the server's limits are known now
+                    this.settingsReceived = true;
+                    return;
+                }
+                if (!(msg instanceof FullHttpResponse)) {
+                    throw new IllegalArgumentException(PorkUtil.className(msg));
+                }
+                FullHttpResponse response = (FullHttpResponse) msg;
+                if (response.status().codeClass() == HttpStatusClass.INFORMATIONAL) { //do nothing
+                    return;
+                }
+
+                Integer streamId = response.headers().getInt(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text());
+                request = streamId != null ? this.streams.remove(streamId) : null;
+                checkState(request != null, "received response on unknown stream %s?!?", streamId);
+
+                HostManager.this.activeRequests--;
+                this.updateReadTimeout();
+
+                request.callback.handle(response, null);
+            } catch (Exception e) {
+                if (request != null) {
+                    request.callback.handle(null, e);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+
+                HostManager.this.tryWorkOffQueue();
+            }
+        }
+
+        /**
+         * Fails every request which is waiting for a response on this connection.
+         */
+        public void failAll(@NonNull Throwable cause) {
+            List<Request> requests = new ArrayList<>(this.streams.values());
+            HostManager.this.activeRequests -= requests.size();
+            this.streams.clear();
+            this.updateReadTimeout();
+            requests.forEach(request -> request.callback.handle(null, cause));
+        }
+
+        @Override
+        public void onStreamClosed(Http2Stream stream) {
+            //streams are closed after their response has been handled. if the request is still here, the stream was reset
+            // or the connection went away before the response was complete
+            if (!this.endStream(stream.id(), null)) {
+                //either way, the stream doesn't count towards the limit anymore
+                NETWORK_EVENT_LOOP.execute(HostManager.this::tryWorkOffQueue);
+            }
+        }
+
+        /**
+         * Ends a stream which didn't get a response. The request is sent again once, or failed if it was already resent.
+         *
+         * @param cause the reason, or {@code null} if it's unknown
+         * @return whether the stream was still waiting for a response
+         */
+        public boolean endStream(int streamId, Throwable cause) {
+            Request request = this.streams.remove(streamId);
+            if (request == null) { //the response was already handled
+                return false;
+            }
+            HostManager.this.activeRequests--;
+            this.updateReadTimeout();
+
+            //this may be called while a request is being sent, so the queue is only touched later
+            NETWORK_EVENT_LOOP.execute(() -> {
+                if (request.resubmitted || request.callback.isCancelled()) {
+                    request.callback.handle(null, cause != null ? cause : new IOException("stream " + streamId + " was closed without a response"));
+                } else {
+                    request.resubmitted = true;
+                    HostManager.this.pendingRequests.add(0, request);
+                }
+                HostManager.this.tryWorkOffQueue();
+            });
+            return true;
+        }
+
+        /**
+         * Keeps a read timeout on the connection while any of its streams is waiting for a response.
+         */
+        private void updateReadTimeout() {
+            boolean present = this.channel.pipeline().get("read_timeout") != null;
+            if (this.streams.isEmpty() && present) {
+                this.channel.pipeline().remove("read_timeout");
+            } else if (!this.streams.isEmpty() && !present && this.channel.isActive()) {
+                this.channel.pipeline().addFirst("read_timeout", new ReadTimeoutHandler(TIMEOUT, TimeUnit.SECONDS));
+            }
         }
     }
 
@@ -271,12 +610,29 @@ final class HostManager extends Host {
     private final class Handler extends ChannelInboundHandlerAdapter {
         @Override
         public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            Http2Session session = ctx.channel().attr(ATTR_HTTP2_SESSION).get();
+            if (session != null) {
+                session.handleResponse(msg);
+                return;
+            }
+
             ctx.pipeline().remove("read_timeout"); //remove read timeout listener to prevent a fake timeout if the connection is idle
             HostManager.this.handleResponse(ctx.channel(), msg);
         }
 
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            Http2Session session = ctx.channel().attr(ATTR_HTTP2_SESSION).get();
+            if (session != null && cause instanceof Http2Exception.StreamException) { //only this stream was reset, so it's sent again
+                session.endStream(((Http2Exception.StreamException) cause).streamId(), cause);
+                return;
+            }
+            if (session != null) { //inform every request on the connection that it failed
+                session.failAll(cause);
+                ctx.close();
+                return;
+            }
+
             Request request = ctx.channel().attr(ATTR_REQUEST).getAndSet(null);
             if (request != null) { //inform request that it failed
                 request.callback.handle(null, cause);
@@ -5,6 +5,7 @@ import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoop;
 import io.netty.channel.epoll.Epoll;
@@ -17,12 +18,18 @@ import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.SupportedCipherSuiteFilter;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.util.ReferenceCountUtil;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.experimental.UtilityClass;
 import net.daporkchop.lib.common.function.throwing.EFunction;
 import net.daporkchop.lib.common.misc.threadfactory.PThreadFactories;
@@ -34,13 +41,17 @@ import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
+import java.util.function.DoubleSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -68,9 +79,27 @@ public class Http {
             .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, toInt(TimeUnit.SECONDS.toMillis(TIMEOUT)));
 
     protected final SslContext SSL_CONTEXT;
+    /**
+     * Same as {@link #SSL_CONTEXT}, but offers HTTP/2 over ALPN. {@code null} if the TLS implementation turned out not to
+     * support ALPN.
+     */
+    private SslContext HTTP2_SSL_CONTEXT;
 
     protected final Map<Host, HostManager> MANAGERS = new ConcurrentHashMap<>();
 
+    /**
+     * The requests which are currently being fetched, by {@link #coalescingKey(String) normalized URL}. Callers asking for a
+     * resource which is already in flight share its request instead of starting their own.
+     */
+    private final Map<String, InFlight> IN_FLIGHT = new ConcurrentHashMap<>();
+    private final LongAdder REQUEST_COUNT = new LongAdder();
+    private final LongAdder COALESCED_REQUEST_COUNT = new LongAdder();
+
+    /**
+     * The priority of requests which weren't given one. See {@link #get(String, DoubleSupplier)}.
+     */
+    public final DoubleSupplier DEFAULT_PRIORITY = () -> 0.0d;
+
     protected final int MAX_CONTENT_LENGTH = Integer.MAX_VALUE; //impossibly large, no requests will actually be this big but whatever
 
     protected static final Cached<Matcher> URL_FORMATTING_MATCHER_CACHE = Cached.regex(Pattern.compile("\\$\\{([a-z0-9.]+)}"));
@@ -84,6 +113,44 @@ public class Http {
         } catch (SSLException e) {
             throw new RuntimeException("unable to create ssl context", e);
         }
+
+        try { //the JDK provider can only do ALPN in this netty version with Jetty-ALPN, so prefer netty-tcnative if it's present
+            HTTP2_SSL_CONTEXT = SslContextBuilder.forClient()
+                    .sslProvider(OpenSsl.isAlpnSupported() ? SslProvider.OPENSSL : SslProvider.JDK)
+                    .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                    .applicationProtocolConfig(new ApplicationProtocolConfig(
+                            ApplicationProtocolConfig.Protocol.ALPN,
+                            ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                            ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                            ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1))
+                    .build();
+        } catch (Exception | LinkageError e) { //the JDK provider throws NoClassDefFoundError when Jetty-ALPN is missing
+            TerraConfig.LOGGER.warn("Unable to create HTTP/2 ssl context, falling back to HTTP/1.1", e);
+            HTTP2_SSL_CONTEXT = null;
+        }
+    }
+
+    /**
+     * Creates the TLS handler for a new connection, which offers HTTP/2 if it's enabled and supported.
+     * <p>
+     * Must be called on the network thread.
+     *
+     * @param channel the channel of the connection
+     * @param host    the remote host
+     * @param port    the remote port
+     * @return the TLS handler
+     */
+    protected SslHandler newSslHandler(@NonNull Channel channel, @NonNull String host, int port) {
+        if (TerraConfig.http.http2 && HTTP2_SSL_CONTEXT != null) {
+            try {
+                return HTTP2_SSL_CONTEXT.newHandler(channel.alloc(), host, port);
+            } catch (RuntimeException e) { //without netty-tcnative, ALPN needs Jetty-ALPN on the classpath
+                TerraConfig.LOGGER.warn("ALPN is not supported, falling back to HTTP/1.1", e);
+                HTTP2_SSL_CONTEXT = null;
+            }
+        }
+        return SSL_CONTEXT.newHandler(channel.alloc(), host, port);
     }
 
     private HostManager managerFor(@NonNull URL url) {
@@ -97,15 +164,199 @@ public class Http {
      * @return a {@link CompletableFuture} which will be completed with the resource data, or {@code null} if the resource isn't found
      */
     public CompletableFuture<ByteBuf> get(@NonNull String url) {
+        return get(url, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Asynchronously gets the contents of the given resource.
+     * <p>
+     * If the request has to wait for a connection to its host, requests with lower priority values are sent first.
+     * The priority is re-evaluated every time a connection becomes free, so it may be changed while the request is queued.
+     *
+     * @param url      the url of the resource to get
+     * @param priority supplies the current priority of the request
+     * @return a {@link CompletableFuture} which will be completed with the resource data, or {@code null} if the resource isn't found
+     */
+    public CompletableFuture<ByteBuf> get(@NonNull String url, @NonNull DoubleSupplier priority) {
         CompletableFuture<ByteBuf> future = new CompletableFuture<>();
-        get(url, future);
+        get(url, future, priority);
         return future;
     }
 
     public void get(@NonNull String _url, @NonNull CompletableFuture<ByteBuf> future) {
+        get(_url, future, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Asynchronously gets the contents of the given resource, completing the given future.
+     * <p>
+     * If the resource is already being fetched for another caller, the request is shared rather than sent again. Every caller
+     * receives its own {@link ByteBuf#retainedSlice() slice} of the data, which it must release as usual.
+     *
+     * @param url      the url of the resource to get
+     * @param future   the future to complete with the resource data, or {@code null} if the resource isn't found
+     * @param priority supplies the current priority of the request
+     */
+    public void get(@NonNull String url, @NonNull CompletableFuture<ByteBuf> future, @NonNull DoubleSupplier priority) {
+        REQUEST_COUNT.increment();
+
+        String key = coalescingKey(url);
+        while (true) {
+            InFlight inFlight = IN_FLIGHT.get(key);
+            if (inFlight == null) {
+                InFlight created = new InFlight(key);
+                if ((inFlight = IN_FLIGHT.putIfAbsent(key, created)) == null) {
+                    created.join(future, priority);
+                    created.start(url);
+                    return;
+                }
+            }
+
+            if (inFlight.join(future, priority)) {
+                COALESCED_REQUEST_COUNT.increment();
+                return;
+            }
+            //the request completed just now, and is about to be removed
+            IN_FLIGHT.remove(key, inFlight);
+        }
+    }
+
+    /**
+     * @return the total number of resources requested through {@link #get(String, CompletableFuture, DoubleSupplier)}
+     */
+    public long getRequestCount() {
+        return REQUEST_COUNT.sum();
+    }
+
+    /**
+     * @return the number of requests which were saved by sharing an identical request that was already in flight
+     */
+    public long getCoalescedRequestCount() {
+        return COALESCED_REQUEST_COUNT.sum();
+    }
+
+    /**
+     * @return the url with the parts that don't change the response normalized, so that equivalent urls produce equal keys
+     */
+    protected String coalescingKey(@NonNull String url) {
+        URL parsed;
+        try {
+            parsed = new URL(url);
+        } catch (MalformedURLException e) { //the request is going to fail anyway
+            return url;
+        }
+
+        StringBuilder builder = new StringBuilder()
+                .append(parsed.getProtocol().toLowerCase(Locale.ROOT)).append("://");
+        if (parsed.getUserInfo() != null) {
+            builder.append(parsed.getUserInfo()).append('@');
+        }
+        builder.append(parsed.getHost().toLowerCase(Locale.ROOT));
+        if (parsed.getPort() != -1 && parsed.getPort() != parsed.getDefaultPort()) {
+            builder.append(':').append(parsed.getPort());
+        }
+        return builder.append(parsed.getFile()).toString(); //the fragment is never sent, so it's left out
+    }
+
+    /**
+     * A single request shared by everyone who asked for the same resource while it was in flight.
+     * <p>
+     * The request is sent with the lowest priority of its callers, and is cancelled once all of them have cancelled.
+     */
+    @RequiredArgsConstructor
+    private final class InFlight implements DoubleSupplier {
+        @NonNull
+        private final String key;
+        private final CompletableFuture<ByteBuf> shared = new CompletableFuture<>();
+        private final Map<CompletableFuture<ByteBuf>, DoubleSupplier> callers = new IdentityHashMap<>();
+        private boolean closed;
+
+        /**
+         * Adds a caller to this request.
+         *
+         * @return whether the caller was added, or {@code false} if this request has already completed
+         */
+        public boolean join(@NonNull CompletableFuture<ByteBuf> future, @NonNull DoubleSupplier priority) {
+            synchronized (this) {
+                if (this.closed) {
+                    return false;
+                }
+                this.callers.put(future, priority);
+            }
+
+            future.whenComplete((v, t) -> {
+                if (future.isCancelled()) {
+                    this.cancelIfAbandoned();
+                }
+            });
+            return true;
+        }
+
+        public void start(@NonNull String url) {
+            this.shared.whenComplete(this::complete);
+            try {
+                getUncoalesced(url, this.shared, this);
+            } catch (RuntimeException e) { //don't leave the other callers waiting forever
+                this.shared.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public synchronized double getAsDouble() {
+            double priority = Double.POSITIVE_INFINITY;
+            for (Map.Entry<CompletableFuture<ByteBuf>, DoubleSupplier> entry : this.callers.entrySet()) {
+                if (!entry.getKey().isDone()) {
+                    priority = Math.min(priority, entry.getValue().getAsDouble());
+                }
+            }
+            return priority;
+        }
+
+        private void cancelIfAbandoned() {
+            synchronized (this) {
+                if (this.closed || !this.callers.keySet().stream().allMatch(CompletableFuture::isDone)) {
+                    return;
+                }
+                this.closed = true;
+            }
+            IN_FLIGHT.remove(this.key, this);
+            this.shared.cancel(false);
+        }
+
+        private void complete(ByteBuf data, Throwable throwable) {
+            List<CompletableFuture<ByteBuf>> callers;
+            synchronized (this) {
+                this.closed = true;
+                callers = new ArrayList<>(this.callers.keySet());
+                this.callers.clear();
+            }
+            IN_FLIGHT.remove(this.key, this); //remove before completing, so that callbacks asking again get a fresh request
+
+            try {
+                for (CompletableFuture<ByteBuf> future : callers) {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                    } else if (data == null) {
+                        future.complete(null);
+                    } else {
+                        ByteBuf slice = data.retainedSlice();
+                        if (!future.complete(slice)) { //the future was cancelled
+                            slice.release();
+                        }
+                    }
+                }
+            } finally {
+                ReferenceCountUtil.release(data);
+            }
+        }
+    }
+
+    private void getUncoalesced(@NonNull String _url, @NonNull CompletableFuture<ByteBuf> future, @NonNull DoubleSupplier priority) {
         class State implements BiConsumer<ByteBuf, Throwable>, HostManager.Callback {
             URL parsed;
-            Path cacheFile;
+            String cacheKey;
+            volatile HostManager manager;
 
             CacheEntry cacheEntry;
             ByteBuf cachedData;
@@ -116,6 +367,11 @@ public class Http {
                 return future.isDone();
             }
 
+            @Override
+            public double getPriority() {
+                return priority.getAsDouble();
+            }
+
             @Override
             public synchronized void accept(ByteBuf cachedData, Throwable throwable) { //stage 1: handle value from cache
                 if (throwable != null) {
@@ -159,17 +415,33 @@ public class Http {
                 }
 
                 //cache miss, send the actual request
-                managerFor(this.parsed).submit(this.parsed.getFile(), this, this.nextHeaders);
+                this.submit();
                 this.nextHeaders = EmptyHttpHeaders.INSTANCE;
             }
 
+            void submit() {
+                if (future.isDone()) { //cancelled while the cache was being read
+                    return;
+                }
+                (this.manager = managerFor(this.parsed)).submit(this.parsed.getFile(), this, this.nextHeaders);
+            }
+
+            void purge() {
+                HostManager manager = this.manager;
+                if (manager != null) {
+                    manager.purgeCancelled();
+                }
+            }
+
             void handleCacheEntry(@NonNull CacheEntry cacheEntry, @NonNull ByteBuf cachedData) {
                 switch (cacheEntry.status) {
                     case CacheEntry.STATUS_NOT_FOUND: //404 Not Found
                         future.complete(null);
                         return;
                     case CacheEntry.STATUS_SUCCESS: //2xx
-                        future.complete(cachedData.retain());
+                        if (!future.complete(cachedData.retain())) { //the future was cancelled
+                            cachedData.release();
+                        }
                         return;
                     case CacheEntry.STATUS_REDIRECT: //redirect
                         this.step(cacheEntry.location);
@@ -233,8 +505,8 @@ public class Http {
                         ByteBuf toCacheData = UnpooledByteBufAllocator.DEFAULT.compositeBuffer(2)
                                 .addComponent(true, cacheEntryBuffer)
                                 .addComponent(true, copiedBuffer.retainedSlice());
-                        if (!cacheEntry.noCache && this.cacheFile != null) { //store in cache
-                            Disk.write(this.cacheFile, toCacheData);
+                        if (!cacheEntry.noCache && this.cacheKey != null) { //store in cache
+                            Disk.writeCached(this.cacheKey, cacheEntry.expireTime, toCacheData);
                         } else { //manually release the data that would have been written to cache
                             toCacheData.release();
                         }
@@ -275,15 +547,21 @@ public class Http {
                 }
 
                 if (TerraConfig.http.cache) { //attempt to read from cache
-                    this.cacheFile = Disk.cacheFileFor(this.parsed.toString());
-                    Disk.read(this.cacheFile).whenComplete(this);
+                    this.cacheKey = this.parsed.toString();
+                    Disk.readCached(this.cacheKey).whenComplete(this);
                 } else { //send the actual request
-                    managerFor(this.parsed).submit(this.parsed.getFile(), this, this.nextHeaders);
+                    this.submit();
                 }
             }
         }
 
-        new State().step(_url);
+        State state = new State();
+        future.whenComplete((v, t) -> {
+            if (future.isCancelled()) { //don't leave the request sitting in its host's queue
+                state.purge();
+            }
+        });
+        state.step(_url);
     }
 
     /**
@@ -424,8 +702,8 @@ public class Http {
         src.whenComplete((v, t) -> {
             if (t != null) {
                 dst.completeExceptionally(t);
-            } else {
-                dst.complete(v);
+            } else if (!dst.complete(v)) { //dst was cancelled, nobody else is going to release the value
+                ReferenceCountUtil.release(v);
             }
         });
     }
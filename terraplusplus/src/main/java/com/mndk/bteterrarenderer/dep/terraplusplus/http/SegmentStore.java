@@ -0,0 +1,331 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.http;
+
+import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
+import io.netty.buffer.ByteBuf;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.daporkchop.lib.common.misc.file.PFiles;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A log-structured cache store, packing every entry into a few large append-only segment files.
+ * <p>
+ * Each record is laid out as {@code [int length][32-byte key digest][long expire time][length bytes of data]}.
+ * Only the record locations are kept in memory, and that index is rebuilt from the record headers on startup.
+ * Overwritten and expired records are reclaimed by {@link #compact(long)}, which rewrites the live records of
+ * mostly-dead segments into the active segment and deletes the old files.
+ * <p>
+ * This class is not thread-safe. {@link Disk} confines it to the disk I/O thread.
+ */
+class SegmentStore implements Closeable {
+    static final int DIGEST_SIZE = 32;
+    static final int HEADER_SIZE = 4 + DIGEST_SIZE + 8;
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+
+    private final Path root;
+    private final long maxSegmentSize;
+    private final double compactionThreshold;
+
+    /** Keyed by the first 8 bytes of the digest. The full digest is checked on read. */
+    private final Map<Long, Slot> index = new HashMap<>();
+    private final NavigableMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+
+    /**
+     * @param root                the directory to keep the segment files in
+     * @param maxSegmentSize      the size at which the active segment is sealed and a new one is started
+     * @param compactionThreshold sealed segments with less than this fraction of live bytes are compacted
+     */
+    SegmentStore(@NonNull Path root, long maxSegmentSize, double compactionThreshold) throws IOException {
+        this.root = PFiles.ensureDirectoryExists(root.toFile()).toPath();
+        this.maxSegmentSize = maxSegmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.rebuildIndex(System.currentTimeMillis());
+    }
+
+    private void rebuildIndex(long now) throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(this.root)) {
+            stream.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_EXTENSION))
+                    .forEach(name -> {
+                        try {
+                            ids.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_EXTENSION.length())));
+                        } catch (NumberFormatException ignored) {
+                            //not one of ours
+                        }
+                    });
+        }
+        Collections.sort(ids);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        byte[] digest = new byte[DIGEST_SIZE];
+        for (int id : ids) {
+            Segment segment = this.openSegment(id);
+            long size = segment.channel.size();
+            long position = 0L;
+            while (position < size) {
+                header.clear();
+                if (!readFully(segment.channel, header, position)) {
+                    break;
+                }
+                header.flip();
+                int length = header.getInt();
+                header.get(digest);
+                long expireTime = header.getLong();
+                if (length < 0 || position + HEADER_SIZE + length > size) { //torn write at the end of the segment
+                    break;
+                }
+
+                Slot slot = new Slot(id, toIntOffset(position), length, expireTime);
+                segment.liveBytes += slot.recordSize();
+                this.put(toKey(digest), slot);
+                if (slot.isExpired(now)) {
+                    this.remove(toKey(digest));
+                }
+                position += HEADER_SIZE + length;
+            }
+            if (position < size) { //drop the partial record so that appends start at a record boundary
+                segment.channel.truncate(position);
+            }
+            segment.size = position;
+        }
+
+        Map.Entry<Integer, Segment> last = this.segments.lastEntry();
+        this.active = last != null && last.getValue().size < this.maxSegmentSize
+                ? last.getValue()
+                : this.openSegment(last != null ? last.getKey() + 1 : 0);
+    }
+
+    /**
+     * Reads the data stored for the given key.
+     *
+     * @param digest the key digest
+     * @param now    the current time, used to discard expired entries
+     * @param map    whether large entries may be served as memory-mapped buffers
+     * @return the data, or {@code null} if there is no unexpired entry for the key
+     */
+    public ByteBuf read(@NonNull byte[] digest, long now, boolean map) throws IOException {
+        long key = toKey(digest);
+        Slot slot = this.index.get(key);
+        if (slot == null) {
+            return null;
+        } else if (slot.isExpired(now)) {
+            this.remove(key);
+            return null;
+        }
+
+        FileChannel channel = this.segments.get(slot.segment).channel;
+        ByteBuffer storedDigest = ByteBuffer.allocate(DIGEST_SIZE);
+        if (!readFully(channel, storedDigest, slot.offset + 4L) || !Arrays.equals(storedDigest.array(), digest)) {
+            return null; //another key sharing the same index entry
+        }
+
+        return DiskIOPool.readRegion(channel, slot.offset + (long) HEADER_SIZE, slot.length, map);
+    }
+
+    /**
+     * Appends an entry, replacing any existing entry for the same key.
+     *
+     * @param digest     the key digest
+     * @param expireTime the time after which the entry may be discarded
+     * @param data       the data. Its readable bytes are consumed, but it is not released
+     */
+    public void write(@NonNull byte[] digest, long expireTime, @NonNull ByteBuf data) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(data.readableBytes()).put(digest, 0, DIGEST_SIZE).putLong(expireTime).flip();
+        this.append(toKey(digest), header, data);
+    }
+
+    /**
+     * Rewrites the live records of every sealed segment whose live fraction is below the compaction threshold,
+     * then deletes those segments.
+     *
+     * @param now the current time, used to discard expired entries
+     * @return the number of bytes reclaimed
+     */
+    public long compact(long now) throws IOException {
+        //drop expired entries first so that they don't count as live
+        for (Iterator<Map.Entry<Long, Slot>> itr = this.index.entrySet().iterator(); itr.hasNext(); ) {
+            Slot slot = itr.next().getValue();
+            if (slot.isExpired(now)) {
+                this.segments.get(slot.segment).liveBytes -= slot.recordSize();
+                itr.remove();
+            }
+        }
+
+        Set<Integer> victims = new HashSet<>();
+        for (Segment segment : this.segments.values()) {
+            if (segment != this.active
+                    && (segment.liveBytes <= 0L || segment.liveBytes < segment.size * this.compactionThreshold)) {
+                victims.add(segment.id);
+            }
+        }
+        if (victims.isEmpty()) {
+            return 0L;
+        }
+
+        List<Map.Entry<Long, Slot>> moved = new ArrayList<>();
+        for (Map.Entry<Long, Slot> entry : this.index.entrySet()) {
+            if (victims.contains(entry.getValue().segment)) {
+                moved.add(entry);
+            }
+        }
+        //copy in file order to keep the reads sequential
+        moved.sort(Comparator.<Map.Entry<Long, Slot>>comparingInt(e -> e.getValue().segment)
+                .thenComparingInt(e -> e.getValue().offset));
+
+        long reclaimed = 0L;
+        for (Map.Entry<Long, Slot> entry : moved) {
+            Slot slot = entry.getValue();
+            ByteBuffer record = ByteBuffer.allocate(slot.recordSize());
+            if (!readFully(this.segments.get(slot.segment).channel, record, slot.offset)) {
+                this.remove(entry.getKey());
+                continue;
+            }
+            record.flip();
+            this.append(entry.getKey(), record, null);
+            reclaimed -= slot.recordSize();
+        }
+
+        for (int id : victims) {
+            Segment segment = this.segments.get(id);
+            segment.channel.close();
+            try {
+                Files.delete(segment.path);
+            } catch (IOException e) {
+                //e.g. on windows, where a file can't be deleted while a buffer mapped from it is still reachable.
+                // the segment holds no live records anymore, so it's left for the next compaction to retry
+                TerraConfig.LOGGER.warn("Unable to delete cache segment " + segment.path + ", retrying on the next compaction", e);
+                continue;
+            }
+            this.segments.remove(id);
+            reclaimed += segment.size;
+        }
+        return reclaimed;
+    }
+
+    /**
+     * @return the number of entries in the index
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : this.segments.values()) {
+            segment.channel.close();
+        }
+        this.segments.clear();
+        this.index.clear();
+    }
+
+    private void append(long key, ByteBuffer header, ByteBuf data) throws IOException {
+        int length = header.remaining() - HEADER_SIZE + (data != null ? data.readableBytes() : 0);
+        if (this.active.size > 0L && this.active.size + HEADER_SIZE + length > this.maxSegmentSize) {
+            this.active = this.openSegment(this.active.id + 1);
+        }
+
+        Segment segment = this.active;
+        long position = segment.size;
+        for (long p = position; header.hasRemaining(); ) {
+            p += segment.channel.write(header, p);
+        }
+        if (data != null) {
+            long p = position + HEADER_SIZE;
+            while (data.isReadable()) {
+                p += data.readBytes(segment.channel, p, data.readableBytes());
+            }
+        }
+        segment.size = position + HEADER_SIZE + length;
+
+        Slot slot = new Slot(segment.id, toIntOffset(position), length, header.getLong(4 + DIGEST_SIZE));
+        segment.liveBytes += slot.recordSize();
+        this.put(key, slot);
+    }
+
+    private void put(long key, Slot slot) {
+        Slot old = this.index.put(key, slot);
+        if (old != null) {
+            this.segments.get(old.segment).liveBytes -= old.recordSize();
+        }
+    }
+
+    private void remove(long key) {
+        Slot old = this.index.remove(key);
+        if (old != null) {
+            this.segments.get(old.segment).liveBytes -= old.recordSize();
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Path path = this.root.resolve(String.format("%08d%s", id, SEGMENT_EXTENSION));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        Segment segment = new Segment(id, path, channel);
+        segment.size = channel.size();
+        this.segments.put(id, segment);
+        return segment;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int read = channel.read(dst, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    private static int toIntOffset(long position) {
+        if (position > Integer.MAX_VALUE) {
+            throw new IllegalStateException("segment offset out of range: " + position);
+        }
+        return (int) position;
+    }
+
+    private static long toKey(byte[] digest) {
+        long key = 0L;
+        for (int i = 0; i < 8; i++) {
+            key = (key << 8) | (digest[i] & 0xFFL);
+        }
+        return key;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        long size;
+        long liveBytes;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Slot {
+        final int segment;
+        final int offset;
+        final int length;
+        final long expireTime;
+
+        int recordSize() {
+            return HEADER_SIZE + this.length;
+        }
+
+        boolean isExpired(long now) {
+            return now >= this.expireTime;
+        }
+    }
+}
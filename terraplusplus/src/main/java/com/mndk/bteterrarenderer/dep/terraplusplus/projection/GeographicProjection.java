@@ -54,6 +54,42 @@ public interface GeographicProjection {
      */
     double[] fromGeo(double longitude, double latitude) throws OutOfProjectionBoundsException;
 
+    /**
+     * Converts multiple map coordinates to geographic coordinates at once.
+     * <p>
+     * Implementations should override this when they can avoid the per-point allocations of {@link #toGeo(double, double)}.
+     *
+     * @param xy    - map coordinates, as {x0, y0, x1, y1, ...}
+     * @param out   - array to write {longitude, latitude} pairs to. This may be the same array as {@code xy}
+     * @param count - number of points to convert
+     * @throws OutOfProjectionBoundsException if any of the points cannot be mapped. The points before it may have already been written
+     */
+    default void toGeo(double[] xy, double[] out, int count) throws OutOfProjectionBoundsException {
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            double[] geo = this.toGeo(xy[j], xy[j + 1]);
+            out[j] = geo[0];
+            out[j + 1] = geo[1];
+        }
+    }
+
+    /**
+     * Converts multiple geographic coordinates to map coordinates at once.
+     * <p>
+     * Implementations should override this when they can avoid the per-point allocations of {@link #fromGeo(double, double)}.
+     *
+     * @param lonLat - geographic coordinates in degrees, as {longitude0, latitude0, longitude1, latitude1, ...}
+     * @param out    - array to write {x, y} pairs to. This may be the same array as {@code lonLat}
+     * @param count  - number of points to convert
+     * @throws OutOfProjectionBoundsException if any of the points cannot be mapped. The points before it may have already been written
+     */
+    default void fromGeo(double[] lonLat, double[] out, int count) throws OutOfProjectionBoundsException {
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            double[] pos = this.fromGeo(lonLat[j], lonLat[j + 1]);
+            out[j] = pos[0];
+            out[j + 1] = pos[1];
+        }
+    }
+
     /**
      * Gives an estimation of the scale of this projection.
      * This is just an estimation, as distortion is inevitable when projecting a sphere onto a flat surface,
@@ -28,10 +28,10 @@ public class BTEDymaxionProjection extends ConformalDynmaxionProjection {
     protected static final double ALEUTIAN_B = BERING_Y - ALEUTIAN_M * BERING_X;
 
     @Override
-    public double[] fromGeo(double longitude, double latitude) throws OutOfProjectionBoundsException {
-        double[] c = super.fromGeo(longitude, latitude);
-        double x = c[0];
-        double y = c[1];
+    protected void fromGeo(double longitude, double latitude, double[] out, int offset, double[] scratch) throws OutOfProjectionBoundsException {
+        super.fromGeo(longitude, latitude, out, offset, scratch);
+        double x = out[offset];
+        double y = out[offset + 1];
 
         boolean easia = this.isEurasianPart(x, y);
 
@@ -48,13 +48,12 @@ public class BTEDymaxionProjection extends ConformalDynmaxionProjection {
             x -= ARC;
         }
 
-        c[0] = y;
-        c[1] = -x;
-        return c;
+        out[offset] = y;
+        out[offset + 1] = -x;
     }
 
     @Override
-    public double[] toGeo(double x, double y) throws OutOfProjectionBoundsException {
+    protected void toGeo(double x, double y, double[] out, int offset, double[] scratch) throws OutOfProjectionBoundsException {
         boolean easia;
         if (y < 0) {
             easia = x > 0;
@@ -85,7 +84,7 @@ public class BTEDymaxionProjection extends ConformalDynmaxionProjection {
             throw OutOfProjectionBoundsException.get();
         }
 
-        return super.toGeo(x, y);
+        super.toGeo(x, y, out, offset, scratch);
     }
 
     protected boolean isEurasianPart(double x, double y) {
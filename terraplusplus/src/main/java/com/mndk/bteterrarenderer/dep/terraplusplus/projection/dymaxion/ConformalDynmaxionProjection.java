@@ -2,16 +2,22 @@ package com.mndk.bteterrarenderer.dep.terraplusplus.projection.dymaxion;
 
 import LZMA.LzmaInputStream;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.mndk.bteterrarenderer.BTETerraRenderer;
 import com.mndk.bteterrarenderer.dep.terraplusplus.util.MathUtils;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import com.mndk.bteterrarenderer.mcconnector.McConnector;
+import com.mndk.bteterrarenderer.util.loader.UnpackedTableLoader;
 import net.daporkchop.lib.binary.oio.StreamUtil;
 import net.daporkchop.lib.common.function.io.IOSupplier;
 import net.daporkchop.lib.common.reference.ReferenceStrength;
 import net.daporkchop.lib.common.reference.cache.Cached;
 import net.daporkchop.lib.common.util.PArrays;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 
 /**
  * Implementation of the Dynmaxion like conformal projection.
@@ -24,59 +30,165 @@ public class ConformalDynmaxionProjection extends DymaxionProjection {
     protected static final double VECTOR_SCALE_FACTOR = 1.0d / 1.1473979730192934d;
     protected static final int SIDE_LENGTH = 256;
 
-    protected static final Cached<InvertableVectorField> INVERSE_CACHE = Cached.global((IOSupplier<InvertableVectorField>) () -> {
+    protected static final Cached<InvertableVectorField> INVERSE_CACHE = Cached.global(
+            (IOSupplier<InvertableVectorField>) () -> loadInverse(tableDirectory()), ReferenceStrength.SOFT);
+
+    /**
+     * Maximum number of Newton's method iterations in {@link #triangleTransform(double, double, double, double[])}
+     */
+    protected static final int NEWTON_ITERATIONS = 5;
+
+    /**
+     * Newton's method stops once the error gets below this value, in the Dymaxion triangle units.
+     * One unit is about 7.3 million meters in the BTE projection.
+     */
+    protected static final double NEWTON_TOLERANCE = Double.parseDouble(System.getProperty("terraplusplus.conformal.tolerance", "1e-12"));
+
+    /**
+     * The inverse of {@link #INVERSE_CACHE}, which gives a close enough initial guess for Newton's method.
+     * This is computed from {@link #INVERSE_CACHE} on the first use.
+     * <p>
+     * Both fields are looked up on every transform rather than kept by the projection, so that constructing one (e.g. while
+     * parsing a map's JSON) doesn't load them, and so that they can still be collected while no projection is in use.
+     */
+    protected static final Cached<InvertableVectorField> FORWARD_CACHE = Cached.global(
+            (IOSupplier<InvertableVectorField>) () -> loadForward(INVERSE_CACHE.get(), tableDirectory()), ReferenceStrength.SOFT);
+
+    /**
+     * Version of the unpacked forward table. Must be bumped whenever {@link #computeForward} or the inverse field change.
+     */
+    protected static final int FORWARD_TABLE_VERSION = 1;
+
+    /**
+     * @return The directory to keep the unpacked tables in, or {@code null} if there's no game directory (e.g. in tests)
+     */
+    @Nullable
+    private static File tableDirectory() {
+        File gameDirectory = McConnector.common() != null ? McConnector.common().getGameDirectory() : null;
+        return gameDirectory != null ? new File(gameDirectory, BTETerraRenderer.MODID + "/tables") : null;
+    }
+
+    /**
+     * Loads the inverse vector field, from the unpacked copy in the cache directory if there is one.
+     *
+     * @param cacheDirectory - the directory to keep the unpacked copy in, or {@code null} to always unpack
+     */
+    static InvertableVectorField loadInverse(@Nullable File cacheDirectory) throws IOException {
+        ByteBuffer table = UnpackedTableLoader.load(cacheDirectory, "conformal.bin", 1, () -> {
+            try (InputStream in = new LzmaInputStream(ConformalDynmaxionProjection.class.getResourceAsStream("conformal.lzma"))) {
+                return ByteBuffer.wrap(StreamUtil.toByteArray(in));
+            }
+        });
+        return readField(table, VECTOR_SCALE_FACTOR);
+    }
+
+    /**
+     * Loads the forward vector field, computing it from the inverse one if there's no unpacked copy in the cache directory.
+     *
+     * @param cacheDirectory - the directory to keep the unpacked copy in, or {@code null} to always compute it
+     */
+    static InvertableVectorField loadForward(InvertableVectorField inverse, @Nullable File cacheDirectory) throws IOException {
+        ByteBuffer table = UnpackedTableLoader.load(cacheDirectory, "conformal_forward.bin", FORWARD_TABLE_VERSION,
+                () -> writeField(computeForward(inverse)));
+        return readField(table, 1);
+    }
+
+    private static InvertableVectorField computeForward(InvertableVectorField inverse) {
         double[][] vx = PArrays.filledBy(SIDE_LENGTH + 1, double[][]::new, i -> new double[SIDE_LENGTH + 1 - i]);
         double[][] vy = PArrays.filledBy(SIDE_LENGTH + 1, double[][]::new, i -> new double[SIDE_LENGTH + 1 - i]);
 
-        ByteBuf buf;
-        try (InputStream in = new LzmaInputStream(ConformalDynmaxionProjection.class.getResourceAsStream("conformal.lzma"))) {
-            buf = Unpooled.wrappedBuffer(StreamUtil.toByteArray(in));
+        double[] scratch = new double[SCRATCH_LENGTH];
+        for (int v = 0; v < SIDE_LENGTH + 1; v++) {
+            for (int u = 0; u < SIDE_LENGTH + 1 - v; u++) {
+                //grid vertex in the same triangle units as the inverse field
+                double x = (u + 0.5 * v) / SIDE_LENGTH;
+                double y = 0.5 * MathUtils.ROOT3 * v / SIDE_LENGTH;
+
+                //solve it without any guess, as the current implementation does
+                inverse.applyNewtonsMethod((x - 0.5) * ARC, (y - MathUtils.ROOT3 / 6) * ARC, x, y, NEWTON_ITERATIONS * 4, 0, scratch);
+                vx[u][v] = scratch[0];
+                vy[u][v] = scratch[1];
+            }
+        }
+
+        return new InvertableVectorField(vx, vy);
+    }
+
+    /**
+     * Reads a vector field stored as big-endian {@code (x, y)} pairs of doubles, for {@code v} from 0 to {@link #SIDE_LENGTH},
+     * then for {@code u} from 0 to {@code SIDE_LENGTH - v}.
+     */
+    private static InvertableVectorField readField(ByteBuffer table, double scale) throws IOException {
+        int vertices = (SIDE_LENGTH + 1) * (SIDE_LENGTH + 2) / 2;
+        DoubleBuffer values = table.asDoubleBuffer();
+        if (values.remaining() < vertices * 2) {
+            throw new IOException("vector field is too short: " + values.remaining() + " < " + vertices * 2);
         }
 
+        double[][] vx = PArrays.filledBy(SIDE_LENGTH + 1, double[][]::new, i -> new double[SIDE_LENGTH + 1 - i]);
+        double[][] vy = PArrays.filledBy(SIDE_LENGTH + 1, double[][]::new, i -> new double[SIDE_LENGTH + 1 - i]);
         for (int v = 0; v < SIDE_LENGTH + 1; v++) {
             for (int u = 0; u < SIDE_LENGTH + 1 - v; u++) {
-                vx[u][v] = buf.readDouble() * VECTOR_SCALE_FACTOR;
-                vy[u][v] = buf.readDouble() * VECTOR_SCALE_FACTOR;
+                vx[u][v] = values.get() * scale;
+                vy[u][v] = values.get() * scale;
             }
         }
-
         return new InvertableVectorField(vx, vy);
-    }, ReferenceStrength.SOFT);
+    }
 
-    protected final InvertableVectorField inverse = INVERSE_CACHE.get();
+    private static ByteBuffer writeField(InvertableVectorField field) {
+        int vertices = (SIDE_LENGTH + 1) * (SIDE_LENGTH + 2) / 2;
+        ByteBuffer table = ByteBuffer.allocate(vertices * 2 * Double.BYTES);
+        for (int v = 0; v < SIDE_LENGTH + 1; v++) {
+            for (int u = 0; u < SIDE_LENGTH + 1 - v; u++) {
+                table.putDouble(field.vx[u][v]).putDouble(field.vy[u][v]);
+            }
+        }
+        table.flip();
+        return table;
+    }
 
     @Override
-    protected double[] triangleTransform(double[] vec) {
-        double[] c = super.triangleTransform(vec);
+    protected void triangleTransform(double x, double y, double z, double[] scratch) {
+        super.triangleTransform(x, y, z, scratch);
+        this.conformalTriangleTransform(FORWARD_CACHE.get(), NEWTON_ITERATIONS, NEWTON_TOLERANCE, scratch);
+    }
 
-        double x = c[0];
-        double y = c[1];
+    /**
+     * Moves the point at {@code scratch[0..1]} from the Dymaxion triangle to the conformal triangle.
+     *
+     * @param forward       - field to get the initial guess from, or {@code null} to start from the point itself
+     * @param maxIterations - maximum number of Newton's method iterations
+     * @param tolerance     - the error at which Newton's method can stop early
+     */
+    void conformalTriangleTransform(InvertableVectorField forward, int maxIterations, double tolerance, double[] scratch) {
+        double x = scratch[0];
+        double y = scratch[1];
 
-        c[0] /= ARC;
-        c[1] /= ARC;
+        double cx = x / ARC;
+        double cy = y / ARC;
 
-        c[0] += 0.5;
-        c[1] += MathUtils.ROOT3 / 6;
+        cx += 0.5;
+        cy += MathUtils.ROOT3 / 6;
 
         //use another interpolated vector to have a really good guess before using Newton's method
-        //Note: foward was removed for now, will need to be added back if this improvement is ever re-implemented
-        //c = forward.getInterpolatedVector(c[0], c[1]);
-        //c = inverse.applyNewtonsMethod(x, y, c[0]/ARC + 0.5, c[1]/ARC + ROOT3/6, 1);
-
-        //just use newtons method: slower
-        c = this.inverse.applyNewtonsMethod(x, y, c[0], c[1], 5);//c[0]/ARC + 0.5, c[1]/ARC + ROOT3/6
+        if (forward != null) {
+            forward.getInterpolatedVector(cx, cy, scratch);
+            cx = scratch[0];
+            cy = scratch[1];
+        }
 
-        c[0] -= 0.5;
-        c[1] -= MathUtils.ROOT3 / 6;
+        INVERSE_CACHE.get().applyNewtonsMethod(x, y, cx, cy, maxIterations, tolerance, scratch);
 
-        c[0] *= ARC;
-        c[1] *= ARC;
+        scratch[0] -= 0.5;
+        scratch[1] -= MathUtils.ROOT3 / 6;
 
-        return c;
+        scratch[0] *= ARC;
+        scratch[1] *= ARC;
     }
 
     @Override
-    protected double[] inverseTriangleTransform(double x, double y) {
+    protected void inverseTriangleTransform(double x, double y, double[] scratch) {
 
         x /= ARC;
         y /= ARC;
@@ -84,8 +196,8 @@ public class ConformalDynmaxionProjection extends DymaxionProjection {
         x += 0.5;
         y += MathUtils.ROOT3 / 6;
 
-        double[] c = this.inverse.getInterpolatedVector(x, y);
-        return super.inverseTriangleTransform(c[0], c[1]);
+        INVERSE_CACHE.get().getInterpolatedVector(x, y, scratch);
+        super.inverseTriangleTransform(scratch[0], scratch[1], scratch);
     }
 
     @Override
@@ -98,7 +210,7 @@ public class ConformalDynmaxionProjection extends DymaxionProjection {
         return "Conformal Dymaxion";
     }
 
-    private static class InvertableVectorField {
+    static class InvertableVectorField {
         private final double[][] vx;
         private final double[][] vy;
 
@@ -107,7 +219,10 @@ public class ConformalDynmaxionProjection extends DymaxionProjection {
             this.vy = vy;
         }
 
-        public double[] getInterpolatedVector(double x, double y) {
+        /**
+         * Writes the interpolated vector and its partial derivatives to {@code out[0..5]}.
+         */
+        public void getInterpolatedVector(double x, double y, double[] out) {
             //scale up triangle to be triangleSize across
             x *= SIDE_LENGTH;
             y *= SIDE_LENGTH;
@@ -171,21 +286,34 @@ public class ConformalDynmaxionProjection extends DymaxionProjection {
             double w2 = 2 * (y - y3) / MathUtils.ROOT3;
             double w3 = 1 - w1 - w2;
 
-            return new double[]{ valx1 * w1 + valx2 * w2 + valx3 * w3, valy1 * w1 + valy2 * w2 + valy3 * w3,
-                    (valx3 - valx1) * SIDE_LENGTH, SIDE_LENGTH * flip * (2 * valx2 - valx1 - valx3) / MathUtils.ROOT3,
-                    (valy3 - valy1) * SIDE_LENGTH, SIDE_LENGTH * flip * (2 * valy2 - valy1 - valy3) / MathUtils.ROOT3 };
+            out[0] = valx1 * w1 + valx2 * w2 + valx3 * w3;
+            out[1] = valy1 * w1 + valy2 * w2 + valy3 * w3;
+            out[2] = (valx3 - valx1) * SIDE_LENGTH;
+            out[3] = SIDE_LENGTH * flip * (2 * valx2 - valx1 - valx3) / MathUtils.ROOT3;
+            out[4] = (valy3 - valy1) * SIDE_LENGTH;
+            out[5] = SIDE_LENGTH * flip * (2 * valy2 - valy1 - valy3) / MathUtils.ROOT3;
         }
 
-        public double[] applyNewtonsMethod(double expectedf, double expectedg, double xest, double yest, int iter) {
+        /**
+         * Writes the estimated point to {@code out[0..1]}. {@code out} is also used as a working space, so it
+         * should be at least 6 in length.
+         *
+         * @param tolerance - stops iterating when both errors are within this value
+         */
+        public void applyNewtonsMethod(double expectedf, double expectedg, double xest, double yest, int iter, double tolerance, double[] out) {
             for (int i = 0; i < iter; i++) {
-                double[] c = this.getInterpolatedVector(xest, yest);
+                this.getInterpolatedVector(xest, yest, out);
+
+                double f = out[0] - expectedf;
+                double g = out[1] - expectedg;
+                if (Math.abs(f) <= tolerance && Math.abs(g) <= tolerance) {
+                    break;
+                }
 
-                double f = c[0] - expectedf;
-                double g = c[1] - expectedg;
-                double dfdx = c[2];
-                double dfdy = c[3];
-                double dgdx = c[4];
-                double dgdy = c[5];
+                double dfdx = out[2];
+                double dfdy = out[3];
+                double dgdx = out[4];
+                double dgdy = out[5];
 
                 double determinant = 1 / (dfdx * dgdy - dfdy * dgdx);
 
@@ -193,7 +321,8 @@ public class ConformalDynmaxionProjection extends DymaxionProjection {
                 yest -= determinant * (-dgdx * f + dfdx * g);
             }
 
-            return new double[]{ xest, yest };
+            out[0] = xest;
+            out[1] = yest;
         }
     }
 }
\ No newline at end of file
@@ -26,6 +26,11 @@ public class DymaxionProjection implements GeographicProjection {
      */
     private static final int NEWTON = 5;
 
+    /**
+     * Minimum length of the scratch arrays passed around by the allocation-free methods
+     */
+    protected static final int SCRATCH_LENGTH = 6;
+
     /**
      * This contains the vertices of the icosahedron,
      * identified by their geographic longitude and latitude in degrees.
@@ -248,18 +253,20 @@ public class DymaxionProjection implements GeographicProjection {
      * Finds the face of the icosahedron on which to project a point.
      * In practice, it works by finding the face with the closest centroid to the point.
      *
-     * @param vector - position vector as double array of length 3, using Cartesian coordinates
+     * @param x - x component of the position vector, using Cartesian coordinates
+     * @param y - y component of the position vector
+     * @param z - z component of the position vector
      * @return an integer identifying the face on which to project the point
      */
-    protected int findTriangle(double[] vector) {
+    protected int findTriangle(double x, double y, double z) {
 
         double min = Double.MAX_VALUE;
         int face = 0;
 
         for (int i = 0; i < 20; i++) {
-            double xd = CENTROIDS[i][0] - vector[0];
-            double yd = CENTROIDS[i][1] - vector[1];
-            double zd = CENTROIDS[i][2] - vector[2];
+            double xd = CENTROIDS[i][0] - x;
+            double yd = CENTROIDS[i][1] - y;
+            double zd = CENTROIDS[i][2] - z;
 
             double dissq = xd * xd + yd * yd + zd * zd;
             if (dissq < min) {
@@ -277,21 +284,30 @@ public class DymaxionProjection implements GeographicProjection {
         return face;
     }
 
-    protected double[] triangleTransform(double[] vec) {
+    /**
+     * Projects a point of the template triangle, and writes the result to {@code scratch[0]} and {@code scratch[1]}.
+     *
+     * @param scratch - array of length {@link #SCRATCH_LENGTH}, which may be used as a working space
+     */
+    protected void triangleTransform(double x, double y, double z, double[] scratch) {
 
-        double S = Z / vec[2];
+        double S = Z / z;
 
-        double xp = S * vec[0];
-        double yp = S * vec[1];
+        double xp = S * x;
+        double yp = S * y;
 
         double a = Math.atan((2 * yp / MathUtils.ROOT3 - EL6) / DVE); //ARC/2 terms cancel
         double b = Math.atan((xp - yp / MathUtils.ROOT3 - EL6) / DVE);
         double c = Math.atan((-xp - yp / MathUtils.ROOT3 - EL6) / DVE);
 
-        return new double[]{ 0.5 * (b - c), (2 * a - b - c) / (2 * MathUtils.ROOT3) };
+        scratch[0] = 0.5 * (b - c);
+        scratch[1] = (2 * a - b - c) / (2 * MathUtils.ROOT3);
     }
 
-    protected double[] inverseTriangleTransformNewton(double xpp, double ypp) {
+    /**
+     * Writes the Cartesian coordinates of the point to {@code scratch[0..2]}.
+     */
+    protected void inverseTriangleTransformNewton(double xpp, double ypp, double[] scratch) {
 
         //a & b are linearly related to c, so using the tan of sum formula we know: tan(c+off) = (tanc + tanoff)/(1-tanc*tanoff)
         double tanaoff = Math.tan(MathUtils.ROOT3 * ypp + xpp); // a = c + root3*y'' + x''
@@ -334,48 +350,106 @@ public class DymaxionProjection implements GeographicProjection {
 
         double z = 1 / Math.sqrt(1 + xpoZ * xpoZ + ypoZ * ypoZ);
 
-        return new double[]{ z * xpoZ, z * ypoZ, z };
+        scratch[0] = z * xpoZ;
+        scratch[1] = z * ypoZ;
+        scratch[2] = z;
     }
 
-    protected double[] inverseTriangleTransform(double x, double y) {
-        return this.inverseTriangleTransformNewton(x, y);
+    /**
+     * Writes the Cartesian coordinates of the point to {@code scratch[0..2]}.
+     *
+     * @param scratch - array of length {@link #SCRATCH_LENGTH}, which may be used as a working space
+     */
+    protected void inverseTriangleTransform(double x, double y, double[] scratch) {
+        this.inverseTriangleTransformNewton(x, y, scratch);
     }
 
     @Override
     public double[] fromGeo(double longitude, double latitude) throws OutOfProjectionBoundsException {
-    	
-    	OutOfProjectionBoundsException.checkLongitudeLatitudeInRange(longitude, latitude);
+        double[] out = new double[2];
+        this.fromGeo(longitude, latitude, out, 0, new double[SCRATCH_LENGTH]);
+        return out;
+    }
 
-        double[] vector = MathUtils.spherical2Cartesian(MathUtils.geo2Spherical(new double[]{ longitude, latitude }));
+    @Override
+    public void fromGeo(double[] lonLat, double[] out, int count) throws OutOfProjectionBoundsException {
+        double[] scratch = new double[SCRATCH_LENGTH];
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            this.fromGeo(lonLat[j], lonLat[j + 1], out, j, scratch);
+        }
+    }
 
-        int face = this.findTriangle(vector);
+    /**
+     * Allocation-free version of {@link #fromGeo(double, double)}.
+     *
+     * @param out     - array to write {x, y} to
+     * @param offset  - index in {@code out} to write x to
+     * @param scratch - array of length {@link #SCRATCH_LENGTH}, which may be used as a working space
+     */
+    protected void fromGeo(double longitude, double latitude, double[] out, int offset, double[] scratch) throws OutOfProjectionBoundsException {
+
+        OutOfProjectionBoundsException.checkLongitudeLatitudeInRange(longitude, latitude);
+
+        double lambda = Math.toRadians(longitude);
+        double phi = Math.toRadians(90 - latitude);
+        double sinphi = Math.sin(phi);
+        double vx = sinphi * Math.cos(lambda);
+        double vy = sinphi * Math.sin(lambda);
+        double vz = Math.cos(phi);
+
+        int face = this.findTriangle(vx, vy, vz);
 
         //apply rotation matrix (move triangle onto template triangle)
-        double[] pvec = MathUtils.matVecProdD(ROTATION_MATRICES[face], vector);
-        double[] projectedVec = this.triangleTransform(pvec);
+        double[][] m = ROTATION_MATRICES[face];
+        this.triangleTransform(
+                m[0][0] * vx + m[0][1] * vy + m[0][2] * vz,
+                m[1][0] * vx + m[1][1] * vy + m[1][2] * vz,
+                m[2][0] * vx + m[2][1] * vy + m[2][2] * vz,
+                scratch);
+        double x = scratch[0];
+        double y = scratch[1];
 
         //flip triangle to correct orientation
         if (FLIP_TRIANGLE[face]) {
-            projectedVec[0] = -projectedVec[0];
-            projectedVec[1] = -projectedVec[1];
+            x = -x;
+            y = -y;
         }
 
-        vector[0] = projectedVec[0];
         //deal with special snowflakes (child faces 20, 21)
-        if (((face == 15 && vector[0] > projectedVec[1] * MathUtils.ROOT3) || face == 14) && vector[0] > 0) {
-            projectedVec[0] = 0.5 * vector[0] - 0.5 * MathUtils.ROOT3 * projectedVec[1];
-            projectedVec[1] = 0.5 * MathUtils.ROOT3 * vector[0] + 0.5 * projectedVec[1];
+        if (((face == 15 && x > y * MathUtils.ROOT3) || face == 14) && x > 0) {
+            double t = x;
+            x = 0.5 * t - 0.5 * MathUtils.ROOT3 * y;
+            y = 0.5 * MathUtils.ROOT3 * t + 0.5 * y;
             face += 6; //shift 14->20 & 15->21
         }
 
-        projectedVec[0] += CENTER_MAP[face][0];
-        projectedVec[1] += CENTER_MAP[face][1];
-
-        return projectedVec;
+        out[offset] = x + CENTER_MAP[face][0];
+        out[offset + 1] = y + CENTER_MAP[face][1];
     }
 
     @Override
     public double[] toGeo(double x, double y) throws OutOfProjectionBoundsException {
+        double[] out = new double[2];
+        this.toGeo(x, y, out, 0, new double[SCRATCH_LENGTH]);
+        return out;
+    }
+
+    @Override
+    public void toGeo(double[] xy, double[] out, int count) throws OutOfProjectionBoundsException {
+        double[] scratch = new double[SCRATCH_LENGTH];
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            this.toGeo(xy[j], xy[j + 1], out, j, scratch);
+        }
+    }
+
+    /**
+     * Allocation-free version of {@link #toGeo(double, double)}.
+     *
+     * @param out     - array to write {longitude, latitude} to
+     * @param offset  - index in {@code out} to write the longitude to
+     * @param scratch - array of length {@link #SCRATCH_LENGTH}, which may be used as a working space
+     */
+    protected void toGeo(double x, double y, double[] out, int offset, double[] scratch) throws OutOfProjectionBoundsException {
         int face = findTriangleGrid(x, y);
 
         if (face == -1) {
@@ -416,17 +490,22 @@ public class DymaxionProjection implements GeographicProjection {
         }
 
         //invert triangle transform
-        double[] c = this.inverseTriangleTransform(x, y);
-        x = c[0];
-        y = c[1];
-        double z = c[2];
+        this.inverseTriangleTransform(x, y, scratch);
+        double cx = scratch[0];
+        double cy = scratch[1];
+        double cz = scratch[2];
 
-        double[] vec = { x, y, z };
         //apply inverse rotation matrix (move triangle from template triangle to correct position on globe)
-        double[] vecp = MathUtils.matVecProdD(INVERSE_ROTATION_MATRICES[face], vec);
+        double[][] m = INVERSE_ROTATION_MATRICES[face];
+        double px = m[0][0] * cx + m[0][1] * cy + m[0][2] * cz;
+        double py = m[1][0] * cx + m[1][1] * cy + m[1][2] * cz;
+        double pz = m[2][0] * cx + m[2][1] * cy + m[2][2] * cz;
 
         //convert back to geo coordinates
-        return MathUtils.spherical2Geo(MathUtils.cartesian2Spherical(vecp));
+        double lambda = Math.atan2(py, px);
+        double phi = Math.atan2(Math.sqrt(px * px + py * py), pz);
+        out[offset] = Math.toDegrees(lambda);
+        out[offset + 1] = 90 - Math.toDegrees(phi);
     }
 
     @Override
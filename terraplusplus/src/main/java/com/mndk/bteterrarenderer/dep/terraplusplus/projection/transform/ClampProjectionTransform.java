@@ -62,6 +62,26 @@ public class ClampProjectionTransform extends ProjectionTransform {
         return pos;
     }
 
+    @Override
+    public void toGeo(double[] xy, double[] out, int count) throws OutOfProjectionBoundsException {
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            if (xy[j] < this.minX || xy[j] > this.maxX || xy[j + 1] < this.minY || xy[j + 1] > this.maxY) {
+                throw OutOfProjectionBoundsException.get();
+            }
+        }
+        super.delegate.toGeo(xy, out, count);
+    }
+
+    @Override
+    public void fromGeo(double[] lonLat, double[] out, int count) throws OutOfProjectionBoundsException {
+        super.delegate.fromGeo(lonLat, out, count);
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            if (out[j] < this.minX || out[j] > this.maxX || out[j + 1] < this.minY || out[j + 1] > this.maxY) {
+                throw OutOfProjectionBoundsException.get();
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "Clamp (" + super.delegate + ") to " + Arrays.toString(this.bounds());
@@ -33,6 +33,23 @@ public class FlipHorizontalProjectionTransform extends ProjectionTransform {
         return p;
     }
 
+    @Override
+    public void toGeo(double[] xy, double[] out, int count) throws OutOfProjectionBoundsException {
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            out[j] = -xy[j];
+            out[j + 1] = xy[j + 1];
+        }
+        super.delegate.toGeo(out, out, count);
+    }
+
+    @Override
+    public void fromGeo(double[] lonLat, double[] out, int count) throws OutOfProjectionBoundsException {
+        super.delegate.fromGeo(lonLat, out, count);
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            out[j] = -out[j];
+        }
+    }
+
     @Override
     public boolean upright() {
         return !this.delegate.upright();
@@ -58,6 +58,24 @@ public class OffsetProjectionTransform extends ProjectionTransform {
         return pos;
     }
 
+    @Override
+    public void toGeo(double[] xy, double[] out, int count) throws OutOfProjectionBoundsException {
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            out[j] = xy[j] - this.dx;
+            out[j + 1] = xy[j + 1] - this.dy;
+        }
+        super.delegate.toGeo(out, out, count);
+    }
+
+    @Override
+    public void fromGeo(double[] lonLat, double[] out, int count) throws OutOfProjectionBoundsException {
+        super.delegate.fromGeo(lonLat, out, count);
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            out[j] += this.dx;
+            out[j + 1] += this.dy;
+        }
+    }
+
     @Override
     public String toString() {
         return "Offset (" + super.delegate + ") by " + this.dx + ", " + this.dy;
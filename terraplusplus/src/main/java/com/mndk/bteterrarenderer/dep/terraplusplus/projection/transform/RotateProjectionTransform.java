@@ -81,6 +81,26 @@ public class RotateProjectionTransform extends ProjectionTransform {
         };
     }
 
+    @Override
+    public void toGeo(double[] xy, double[] out, int count) throws OutOfProjectionBoundsException {
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            double x = xy[j], y = xy[j + 1];
+            out[j] = x * this.cos - y * this.sin;
+            out[j + 1] = x * this.sin + y * this.cos;
+        }
+        super.delegate.toGeo(out, out, count);
+    }
+
+    @Override
+    public void fromGeo(double[] lonLat, double[] out, int count) throws OutOfProjectionBoundsException {
+        super.delegate.fromGeo(lonLat, out, count);
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            double x = out[j], y = out[j + 1];
+            out[j] = x * this.cosBackwards - y * this.sinBackwards;
+            out[j + 1] = x * this.sinBackwards + y * this.cosBackwards;
+        }
+    }
+
     @Override
     public String toString() {
         return "Rotate (" + super.delegate + ") by " + this.by + " degrees";
@@ -51,6 +51,24 @@ public class ScaleProjectionTransform extends ProjectionTransform {
         return p;
     }
 
+    @Override
+    public void toGeo(double[] xy, double[] out, int count) throws OutOfProjectionBoundsException {
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            out[j] = xy[j] / this.x;
+            out[j + 1] = xy[j + 1] / this.y;
+        }
+        super.delegate.toGeo(out, out, count);
+    }
+
+    @Override
+    public void fromGeo(double[] lonLat, double[] out, int count) throws OutOfProjectionBoundsException {
+        super.delegate.fromGeo(lonLat, out, count);
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            out[j] *= this.x;
+            out[j + 1] *= this.y;
+        }
+    }
+
     @Override
     public boolean upright() {
         return (this.y < 0) ^ this.delegate.upright();
@@ -35,6 +35,26 @@ public class SwapAxesProjectionTransform extends ProjectionTransform {
         return p;
     }
 
+    @Override
+    public void toGeo(double[] xy, double[] out, int count) throws OutOfProjectionBoundsException {
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            double t = xy[j];
+            out[j] = xy[j + 1];
+            out[j + 1] = t;
+        }
+        super.delegate.toGeo(out, out, count);
+    }
+
+    @Override
+    public void fromGeo(double[] lonLat, double[] out, int count) throws OutOfProjectionBoundsException {
+        super.delegate.fromGeo(lonLat, out, count);
+        for (int i = 0, j = 0; i < count; i++, j += 2) {
+            double t = out[j];
+            out[j] = out[j + 1];
+            out[j + 1] = t;
+        }
+    }
+
     @Override
     public double[] bounds() {
         double[] b = this.delegate.bounds();
@@ -0,0 +1,95 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class DiskIOPoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenQueuedWrites_testReadIsRunFirst() throws Exception {
+        DiskIOPool pool = new DiskIOPool(folder.getRoot().toPath(), 1, Thread::new);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        CountDownLatch blocker = new CountDownLatch(1);
+        pool.submit(DiskIOPool.PRIORITY_WRITE, () -> {
+            try { blocker.await(); }
+            catch (InterruptedException e) { throw new RuntimeException(e); }
+        });
+        pool.submit(DiskIOPool.PRIORITY_WRITE, () -> order.add("write1"));
+        pool.submit(DiskIOPool.PRIORITY_WRITE, () -> order.add("write2"));
+        pool.submit(DiskIOPool.PRIORITY_READ, () -> order.add("read"));
+        blocker.countDown();
+
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("read", "write1", "write2"), order);
+    }
+
+    @Test
+    public void givenOverlappingWrites_testEveryFileIsComplete() throws Exception {
+        Path root = folder.getRoot().toPath();
+        DiskIOPool pool = new DiskIOPool(root, 4, Thread::new);
+        for (int i = 0; i < 200; i++) {
+            String content = "content" + i;
+            pool.write(root.resolve("file" + (i % 10)), Unpooled.copiedBuffer(content, StandardCharsets.UTF_8));
+        }
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; i++) {
+            String content = new String(Files.readAllBytes(root.resolve("file" + i)), StandardCharsets.UTF_8);
+            Assert.assertTrue(content, content.matches("content\\d+") && Integer.parseInt(content.substring(7)) % 10 == i);
+        }
+        try (Stream<Path> files = Files.list(root)) {
+            Assert.assertEquals("temp files were left behind", 10, files.count());
+        }
+    }
+
+    @Test
+    public void givenLargeFile_testMappedReadMatchesCopiedRead() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("large");
+        byte[] data = new byte[DiskIOPool.MAP_THRESHOLD * 2];
+        ThreadLocalRandom.current().nextBytes(data);
+        Files.write(file, data);
+
+        ByteBuf copied = DiskIOPool.readFile(file, false);
+        ByteBuf mapped = DiskIOPool.readFile(file, true);
+        try {
+            Assert.assertFalse(copied.isReadOnly());
+            Assert.assertTrue(mapped.isReadOnly());
+            Assert.assertEquals(copied, mapped);
+        } finally {
+            copied.release();
+            mapped.release();
+        }
+    }
+
+    @Test
+    public void givenMissingFile_testReadIsMiss() throws Exception {
+        Path root = folder.getRoot().toPath();
+        DiskIOPool pool = new DiskIOPool(root, 1, Thread::new);
+
+        Assert.assertNull(pool.read(root.resolve("missing"), false).get(10, TimeUnit.SECONDS));
+        Assert.assertNull(pool.read(root.resolve("missing"), true).get(10, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,267 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.http;
+
+import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HostManagerHttp2Test {
+
+    private static final int SERVER_MAX_STREAMS = 2;
+
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    private boolean oldCache;
+
+    private final List<String> protocols = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /** What the server does with the first HTTP/2 request for each path */
+    private volatile Failure failure = Failure.NONE;
+    private final Set<String> failedPaths = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean goAwaySent = new AtomicBoolean();
+    private final AtomicInteger resets = new AtomicInteger();
+
+    private enum Failure { NONE, RESET_STREAM, GO_AWAY }
+
+    @Before
+    public void setUp() {
+        this.group = new NioEventLoopGroup(1);
+        this.oldCache = TerraConfig.http.cache;
+        TerraConfig.http.cache = false;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TerraConfig.http.cache = this.oldCache;
+        if (this.serverChannel != null) this.serverChannel.close().sync();
+        if (this.group != null) this.group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    /** Starts a TLS server which offers the given protocols, and answers every request after a short delay */
+    private String startServer(String... protocols) throws Exception {
+        //a fixed certificate, since netty can't generate one on newer JDKs. the client trusts any certificate anyway
+        SslContext sslContext;
+        try (InputStream certificate = this.getClass().getResourceAsStream("/ssl/localhost.crt");
+             InputStream key = this.getClass().getResourceAsStream("/ssl/localhost.key")) {
+            SslContextBuilder builder = SslContextBuilder.forServer(certificate, key)
+                    .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE);
+            //without ALPN the server can only speak HTTP/1.1, which is all the tests that don't assume HTTP/2 need
+            if (OpenSsl.isAlpnSupported()) {
+                builder.sslProvider(SslProvider.OPENSSL)
+                        .applicationProtocolConfig(new ApplicationProtocolConfig(
+                                ApplicationProtocolConfig.Protocol.ALPN,
+                                ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                                ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                                protocols));
+            }
+            sslContext = builder.build();
+        }
+
+        this.serverChannel = new ServerBootstrap()
+                .group(this.group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        connections.incrementAndGet();
+                        ch.pipeline().addLast(sslContext.newHandler(ch.alloc()), new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+                            @Override
+                            protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+                                HostManagerHttp2Test.this.protocols.add(protocol);
+                                if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                                    Http2Connection connection = new DefaultHttp2Connection(true);
+                                    ctx.pipeline().addLast(new HttpToHttp2ConnectionHandlerBuilder()
+                                            .connection(connection)
+                                            .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                                                    .maxContentLength(1 << 20)
+                                                    .propagateSettings(false)
+                                                    .build())
+                                            .initialSettings(new Http2Settings().maxConcurrentStreams(SERVER_MAX_STREAMS))
+                                            .build());
+                                } else {
+                                    ctx.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(1 << 20));
+                                }
+                                ctx.pipeline().addLast(new EchoHandler());
+                            }
+                        });
+                    }
+                })
+                .bind("localhost", 0).sync().channel();
+        return "https://localhost:" + ((InetSocketAddress) this.serverChannel.localAddress()).getPort();
+    }
+
+    /** Responds with the request's path, keeping the stream id so that the response reaches the right stream */
+    private class EchoHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            String streamId = request.headers().get(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text());
+            if (streamId != null && this.fail(ctx, Integer.parseInt(streamId), request.uri())) {
+                return;
+            }
+
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                    Unpooled.copiedBuffer(request.uri(), StandardCharsets.UTF_8));
+            if (streamId != null) response.headers().set(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(), streamId);
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+            HttpUtil.setKeepAlive(response, true);
+
+            ctx.executor().schedule(() -> {
+                inFlight.decrementAndGet();
+                ctx.writeAndFlush(response);
+            }, 20, TimeUnit.MILLISECONDS);
+        }
+
+        /** @return whether the request was failed instead of answered */
+        private boolean fail(ChannelHandlerContext ctx, int streamId, String path) {
+            Http2ConnectionHandler handler = ctx.pipeline().get(Http2ConnectionHandler.class);
+            ChannelHandlerContext handlerCtx = ctx.pipeline().context(handler);
+            switch (failure) {
+                case RESET_STREAM:
+                    if (!failedPaths.add(path)) return false;
+                    resets.incrementAndGet();
+                    handler.resetStream(handlerCtx, streamId, Http2Error.CANCEL.code(), ctx.newPromise());
+                    ctx.flush();
+                    return true;
+                case GO_AWAY: //none of the streams so far will be processed, and the connection is closed
+                    if (!goAwaySent.compareAndSet(false, true)) return false;
+                    handler.goAway(handlerCtx, 0, Http2Error.NO_ERROR.code(), Unpooled.EMPTY_BUFFER, ctx.newPromise())
+                            .addListener(ChannelFutureListener.CLOSE);
+                    ctx.flush();
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private void getAll(String baseUrl, int count) throws Exception {
+        List<CompletableFuture<ByteBuf>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) futures.add(Http.get(baseUrl + "/tile/" + i));
+        for (int i = 0; i < count; i++) {
+            ByteBuf data = futures.get(i).get(10, TimeUnit.SECONDS);
+            try {
+                Assert.assertEquals("/tile/" + i, data.toString(StandardCharsets.UTF_8));
+            } finally {
+                data.release();
+            }
+        }
+    }
+
+    private static void assumeHttp2() {
+        Assume.assumeTrue(TerraConfig.http.http2);
+        //netty-tcnative is a test dependency, the JDK provider can't do ALPN without extra libraries
+        Assume.assumeTrue("OpenSSL with ALPN is unavailable: " + OpenSsl.unavailabilityCause(), OpenSsl.isAlpnSupported());
+    }
+
+    @Test
+    public void givenHttp2Server_testRequestsShareOneConnection() throws Exception {
+        assumeHttp2();
+        String baseUrl = this.startServer(ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1);
+        Http.setMaximumConcurrentRequestsTo(baseUrl, 8);
+
+        this.getAll(baseUrl, 20);
+
+        Assert.assertEquals(Collections.singletonList(ApplicationProtocolNames.HTTP_2), this.protocols);
+        Assert.assertEquals(1, this.connections.get());
+        Assert.assertTrue(this.maxInFlight.get() > 1);
+        Assert.assertTrue(this.maxInFlight.get() <= SERVER_MAX_STREAMS);
+    }
+
+    @Test
+    public void givenResetStreams_testRequestsAreResubmitted() throws Exception {
+        assumeHttp2();
+        String baseUrl = this.startServer(ApplicationProtocolNames.HTTP_2);
+        Http.setMaximumConcurrentRequestsTo(baseUrl, 8);
+        this.failure = Failure.RESET_STREAM;
+
+        this.getAll(baseUrl, 10);
+
+        //every request was reset once and sent again on the same connection
+        Assert.assertEquals(10, this.resets.get());
+        Assert.assertEquals(1, this.connections.get());
+    }
+
+    @Test
+    public void givenGoAway_testRequestsMoveToNewConnection() throws Exception {
+        assumeHttp2();
+        String baseUrl = this.startServer(ApplicationProtocolNames.HTTP_2);
+        Http.setMaximumConcurrentRequestsTo(baseUrl, 8);
+        this.failure = Failure.GO_AWAY;
+
+        this.getAll(baseUrl, 10);
+
+        Assert.assertTrue(this.goAwaySent.get());
+        Assert.assertEquals(2, this.connections.get());
+        Assert.assertEquals(Arrays.asList(ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_2), this.protocols);
+    }
+
+    @Test
+    public void givenHttp1Server_testFallsBackToHttp1() throws Exception {
+        String baseUrl = this.startServer(ApplicationProtocolNames.HTTP_1_1);
+        Http.setMaximumConcurrentRequestsTo(baseUrl, 4);
+
+        this.getAll(baseUrl, 10);
+
+        Assert.assertFalse(this.protocols.contains(ApplicationProtocolNames.HTTP_2));
+        Assert.assertTrue(this.connections.get() >= 1 && this.connections.get() <= 4);
+    }
+}
@@ -0,0 +1,121 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.http;
+
+import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class HostManagerTest {
+
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    private String baseUrl;
+    private boolean oldCache;
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private final CountDownLatch blockerReceived = new CountDownLatch(1);
+    private final CompletableFuture<Void> releaseBlocker = new CompletableFuture<>();
+
+    @Before
+    public void setUp() throws Exception {
+        this.oldCache = TerraConfig.http.cache;
+        TerraConfig.http.cache = false;
+
+        this.group = new NioEventLoopGroup(1);
+        this.serverChannel = new ServerBootstrap()
+                .group(this.group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(1 << 20), new EchoHandler());
+                    }
+                })
+                .bind("localhost", 0).sync().channel();
+        this.baseUrl = "http://localhost:" + ((InetSocketAddress) this.serverChannel.localAddress()).getPort();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TerraConfig.http.cache = this.oldCache;
+        this.releaseBlocker.complete(null);
+        this.serverChannel.close().sync();
+        this.group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    /** Responds with the request's path, holding back the response to {@code /blocker} until it's released */
+    private class EchoHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            String path = request.uri();
+            received.add(path);
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                    Unpooled.copiedBuffer(path, StandardCharsets.UTF_8));
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+            HttpUtil.setKeepAlive(response, true);
+            if (!"/blocker".equals(path)) {
+                ctx.writeAndFlush(response);
+                return;
+            }
+            blockerReceived.countDown();
+            releaseBlocker.thenRun(() -> ctx.executor().execute(() -> ctx.writeAndFlush(response)));
+        }
+    }
+
+    @Test
+    public void givenChangedPriorities_testQueueIsSentInNewOrder() throws Exception {
+        Http.setMaximumConcurrentRequestsTo(this.baseUrl, 1);
+
+        // Occupy the only connection, so that the following requests have to wait in the queue
+        CompletableFuture<ByteBuf> blocker = Http.get(this.baseUrl + "/blocker");
+        Assert.assertTrue(this.blockerReceived.await(10, TimeUnit.SECONDS));
+
+        String[] paths = { "/a", "/b", "/c", "/d" };
+        AtomicIntegerArray priorities = new AtomicIntegerArray(new int[] { 1, 2, 3, 4 });
+        List<CompletableFuture<ByteBuf>> futures = new ArrayList<>();
+        for (int i = 0; i < paths.length; i++) {
+            int index = i;
+            futures.add(Http.get(this.baseUrl + paths[i], () -> priorities.get(index)));
+        }
+        // The requests are queued on the network thread, so wait for it to catch up before moving them around
+        Http.NETWORK_EVENT_LOOP.submit(() -> {}).sync();
+
+        priorities.set(3, 0);
+        priorities.set(0, 5);
+        this.releaseBlocker.complete(null);
+
+        blocker.get(10, TimeUnit.SECONDS).release();
+        for (CompletableFuture<ByteBuf> future : futures) future.get(10, TimeUnit.SECONDS).release();
+        Assert.assertEquals(Arrays.asList("/blocker", "/d", "/b", "/c", "/a"), this.received);
+    }
+}
@@ -0,0 +1,126 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.http;
+
+import com.mndk.bteterrarenderer.dep.terraplusplus.TerraConfig;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpCoalescingTest {
+
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    private String baseUrl;
+    private boolean oldCache;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        this.oldCache = TerraConfig.http.cache;
+        TerraConfig.http.cache = false;
+
+        this.group = new NioEventLoopGroup(1);
+        this.serverChannel = new ServerBootstrap()
+                .group(this.group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(1 << 20), new SlowEchoHandler());
+                    }
+                })
+                .bind("localhost", 0).sync().channel();
+        this.baseUrl = "http://localhost:" + ((InetSocketAddress) this.serverChannel.localAddress()).getPort();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TerraConfig.http.cache = this.oldCache;
+        this.serverChannel.close().sync();
+        this.group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    /** Responds with the request's path after a delay, long enough for the test's requests to pile up */
+    private class SlowEchoHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            hits.incrementAndGet();
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                    Unpooled.copiedBuffer(request.uri(), StandardCharsets.UTF_8));
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+            HttpUtil.setKeepAlive(response, true);
+            ctx.executor().schedule(() -> ctx.writeAndFlush(response), 200, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void givenConcurrentRequests_testOnlyOneIsSent() throws Exception {
+        long coalescedBefore = Http.getCoalescedRequestCount();
+        List<CompletableFuture<ByteBuf>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // Equivalent spellings of the same URL share the request too
+            String url = i % 2 == 0 ? this.baseUrl + "/tileset.json" : this.baseUrl.replace("localhost", "LOCALHOST") + "/tileset.json#root";
+            futures.add(Http.get(url));
+        }
+        futures.get(0).cancel(false); // The others keep the request alive
+
+        List<ByteBuf> results = new ArrayList<>();
+        for (int i = 1; i < futures.size(); i++) results.add(futures.get(i).get(10, TimeUnit.SECONDS));
+        for (ByteBuf data : results) {
+            Assert.assertEquals("/tileset.json", data.toString(StandardCharsets.UTF_8));
+            data.skipBytes(1); // Every caller has its own reader index
+        }
+        for (ByteBuf data : results) data.release();
+
+        Assert.assertEquals(1, this.hits.get());
+        Assert.assertEquals(9, Http.getCoalescedRequestCount() - coalescedBefore);
+
+        // Once the request is done, asking again sends a new one
+        ByteBuf data = Http.get(this.baseUrl + "/tileset.json").get(10, TimeUnit.SECONDS);
+        data.release();
+        Assert.assertEquals(2, this.hits.get());
+    }
+
+    @Test
+    public void givenAllCallersCancelled_testRequestIsDropped() throws Exception {
+        long coalescedBefore = Http.getCoalescedRequestCount();
+        CompletableFuture<ByteBuf> first = Http.get(this.baseUrl + "/dropped");
+        CompletableFuture<ByteBuf> second = Http.get(this.baseUrl + "/dropped");
+        first.cancel(false);
+        second.cancel(false);
+        Assert.assertEquals(1, Http.getCoalescedRequestCount() - coalescedBefore);
+
+        // The abandoned request is gone, so this one is sent on its own instead of joining it
+        ByteBuf data = Http.get(this.baseUrl + "/dropped").get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("/dropped", data.toString(StandardCharsets.UTF_8));
+        data.release();
+        Assert.assertEquals(1, Http.getCoalescedRequestCount() - coalescedBefore);
+        Assert.assertEquals(1, this.hits.get());
+    }
+}
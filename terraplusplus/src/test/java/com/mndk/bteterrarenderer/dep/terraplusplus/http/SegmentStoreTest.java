@@ -0,0 +1,153 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.stream.Stream;
+
+public class SegmentStoreTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final long SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenEntries_testReadReturnsLatestUnexpiredValue() throws Exception {
+        try (SegmentStore store = new SegmentStore(folder.getRoot().toPath(), SEGMENT_SIZE, 0.5)) {
+            write(store, "a", NEVER, "first");
+            write(store, "b", 5, "expires");
+            write(store, "a", NEVER, "second");
+
+            Assert.assertEquals("second", read(store, "a", 0));
+            Assert.assertEquals("expires", read(store, "b", 0));
+            Assert.assertNull(read(store, "b", 10));
+            Assert.assertNull(read(store, "missing", 0));
+        }
+    }
+
+    @Test
+    public void givenReopenedStore_testIndexIsRebuiltAndTornRecordIsDropped() throws Exception {
+        Path root = folder.getRoot().toPath();
+        try (SegmentStore store = new SegmentStore(root, SEGMENT_SIZE, 0.5)) {
+            for (int i = 0; i < 20; i++) write(store, "key" + i, NEVER, "value" + i);
+            write(store, "key3", NEVER, "overwritten");
+        }
+
+        // Simulate a crash in the middle of an append
+        try (RandomAccessFile file = new RandomAccessFile(lastSegment(root).toFile(), "rw")) {
+            file.seek(file.length());
+            file.write(new byte[] { 0, 0, 1, 0, 1, 2, 3 });
+        }
+
+        try (SegmentStore store = new SegmentStore(root, SEGMENT_SIZE, 0.5)) {
+            Assert.assertEquals(20, store.size());
+            Assert.assertEquals("overwritten", read(store, "key3", 0));
+            Assert.assertEquals("value19", read(store, "key19", 0));
+            write(store, "appended", NEVER, "after crash");
+        }
+        try (SegmentStore store = new SegmentStore(root, SEGMENT_SIZE, 0.5)) {
+            Assert.assertEquals("after crash", read(store, "appended", 0));
+        }
+    }
+
+    @Test
+    public void givenMostlyDeadSegments_testCompactionKeepsLiveEntries() throws Exception {
+        Path root = folder.getRoot().toPath();
+        try (SegmentStore store = new SegmentStore(root, SEGMENT_SIZE, 0.5)) {
+            for (int i = 0; i < 20; i++) write(store, "key" + i, NEVER, "value" + i);
+            for (int i = 0; i < 18; i++) write(store, "key" + i, NEVER, "new" + i);
+
+            long before = totalSize(root);
+            long reclaimed = store.compact(System.currentTimeMillis());
+            Assert.assertTrue(reclaimed > 0);
+            Assert.assertEquals(before - reclaimed, totalSize(root));
+
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals((i < 18 ? "new" : "value") + i, read(store, "key" + i, 0));
+            }
+        }
+    }
+
+    @Test
+    public void givenUndeletableSegment_testCompactionContinuesAndRetries() throws Exception {
+        Path root = folder.getRoot().toPath();
+        try (SegmentStore store = new SegmentStore(root, SEGMENT_SIZE, 0.5)) {
+            for (int i = 0; i < 20; i++) write(store, "key" + i, NEVER, "value" + i);
+            for (int i = 0; i < 18; i++) write(store, "key" + i, NEVER, "new" + i);
+
+            // A non-empty directory in place of the first segment makes its deletion fail, like a mapped file on windows
+            Path first = firstSegment(root);
+            try {
+                Files.delete(first);
+            } catch (IOException e) {
+                Assume.assumeNoException("open files can't be deleted on this platform", e);
+            }
+            Files.createFile(Files.createDirectory(first).resolve("blocker"));
+
+            long reclaimed = store.compact(System.currentTimeMillis());
+            Assert.assertTrue(reclaimed > 0);
+            Assert.assertTrue(Files.exists(first));
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals((i < 18 ? "new" : "value") + i, read(store, "key" + i, 0));
+            }
+
+            Files.delete(first.resolve("blocker"));
+            Assert.assertTrue(store.compact(System.currentTimeMillis()) > 0);
+            Assert.assertFalse(Files.exists(first));
+        }
+    }
+
+    private static void write(SegmentStore store, String key, long expireTime, String value) throws Exception {
+        ByteBuf data = Unpooled.copiedBuffer(value, StandardCharsets.UTF_8);
+        try {
+            store.write(digest(key), expireTime, data);
+        } finally {
+            data.release();
+        }
+    }
+
+    private static String read(SegmentStore store, String key, long now) throws Exception {
+        ByteBuf data = store.read(digest(key), now, false);
+        if (data == null) return null;
+        try {
+            return data.toString(StandardCharsets.UTF_8);
+        } finally {
+            data.release();
+        }
+    }
+
+    private static byte[] digest(String key) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Path firstSegment(Path root) throws IOException {
+        try (Stream<Path> stream = Files.list(root)) {
+            return stream.sorted().findFirst().orElseThrow(IllegalStateException::new);
+        }
+    }
+
+    private static Path lastSegment(Path root) throws IOException {
+        try (Stream<Path> stream = Files.list(root)) {
+            return stream.sorted().reduce((a, b) -> b).orElseThrow(IllegalStateException::new);
+        }
+    }
+
+    private static long totalSize(Path root) throws IOException {
+        try (Stream<Path> stream = Files.list(root)) {
+            return stream.mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.mndk.bteterrarenderer.dep.terraplusplus.projection.dymaxion;
+
+import com.mndk.bteterrarenderer.dep.terraplusplus.util.MathUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Compares the forward-guess triangle transform against the previous implementation, which ran
+ * five Newton's method iterations from the untransformed point.
+ */
+public class ConformalDynmaxionProjectionTest {
+
+    private static final int POINTS = 100000;
+
+    private static final ConformalDynmaxionProjection PROJECTION = new ConformalDynmaxionProjection();
+
+    /** Random points on the Dymaxion triangle, as {x0, y0, x1, y1, ...} */
+    private static double[] randomTrianglePoints() {
+        Random random = new Random(42);
+        double arc = DymaxionProjection.ARC;
+        double[] points = new double[POINTS * 2];
+        for (int i = 0; i < POINTS; i++) {
+            double u = random.nextDouble(), v = random.nextDouble();
+            if (u + v > 1) {
+                u = 1 - u;
+                v = 1 - v;
+            }
+            points[i * 2] = (u + 0.5 * v - 0.5) * arc;
+            points[i * 2 + 1] = (0.5 * MathUtils.ROOT3 * v - MathUtils.ROOT3 / 6) * arc;
+        }
+        return points;
+    }
+
+    private static void previousTransform(double x, double y, double[] scratch) {
+        scratch[0] = x;
+        scratch[1] = y;
+        PROJECTION.conformalTriangleTransform(null, 5, 0, scratch);
+    }
+
+    private static void currentTransform(double x, double y, double[] scratch) {
+        scratch[0] = x;
+        scratch[1] = y;
+        PROJECTION.conformalTriangleTransform(ConformalDynmaxionProjection.FORWARD_CACHE.get(),
+                ConformalDynmaxionProjection.NEWTON_ITERATIONS, ConformalDynmaxionProjection.NEWTON_TOLERANCE, scratch);
+    }
+
+    @Test
+    public void givenTrianglePoints_testForwardGuessMatchesPreviousTransform() {
+        double[] points = randomTrianglePoints();
+        double[] expected = new double[DymaxionProjection.SCRATCH_LENGTH];
+        double[] actual = new double[DymaxionProjection.SCRATCH_LENGTH];
+        for (int i = 0; i < POINTS; i++) {
+            previousTransform(points[i * 2], points[i * 2 + 1], expected);
+            currentTransform(points[i * 2], points[i * 2 + 1], actual);
+            Assert.assertEquals(expected[0], actual[0], ConformalDynmaxionProjection.NEWTON_TOLERANCE);
+            Assert.assertEquals(expected[1], actual[1], ConformalDynmaxionProjection.NEWTON_TOLERANCE);
+        }
+    }
+}